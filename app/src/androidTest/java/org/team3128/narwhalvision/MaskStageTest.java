@@ -0,0 +1,80 @@
+package org.team3128.narwhalvision;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+/**
+ * Compares the lookup table mask stage against the OpenCV one on the device, and logs how long each takes.
+ */
+public class MaskStageTest extends AndroidTestCase
+{
+	private final static String TAG = "MaskStageTest";
+
+	private final static int BENCHMARK_FRAMES = 50;
+
+	private Mat frame;
+
+	private Scalar lowerLimit = new Scalar(40, 100, 50);
+	private Scalar upperLimit = new Scalar(80, 255, 255);
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		assertTrue("OpenCV failed to load", OpenCVLoader.initDebug());
+
+		//random noise hits every branch of the HSV conversion
+		frame = new Mat(480, 640, CvType.CV_8UC4);
+		Core.randu(frame, 0, 256);
+	}
+
+	public void testLookupTableMatchesOpenCV() throws Exception
+	{
+		MaskStage openCVStage = new OpenCVMaskStage();
+		openCVStage.setLimits(lowerLimit, upperLimit);
+
+		MaskStage lookupStage = new LookupTableMaskStage();
+		lookupStage.setLimits(lowerLimit, upperLimit);
+
+		Mat openCVMask = new Mat();
+		Mat lookupMask = new Mat();
+
+		openCVStage.apply(frame, openCVMask);
+		lookupStage.apply(frame, lookupMask);
+
+		Mat difference = new Mat();
+		Core.absdiff(openCVMask, lookupMask, difference);
+
+		assertEquals(0, Core.countNonZero(difference));
+	}
+
+	public void testBenchmark() throws Exception
+	{
+		MaskStage[] stages = {new OpenCVMaskStage(), new LookupTableMaskStage()};
+
+		Mat mask = new Mat();
+
+		for(MaskStage stage : stages)
+		{
+			stage.setLimits(lowerLimit, upperLimit);
+
+			//warm up
+			stage.apply(frame, mask);
+
+			long startTime = System.nanoTime();
+			for(int count = 0; count < BENCHMARK_FRAMES; ++count)
+			{
+				stage.apply(frame, mask);
+			}
+			long averageTime = (System.nanoTime() - startTime) / BENCHMARK_FRAMES;
+
+			Log.i(TAG, stage.getClass().getSimpleName() + ": " + averageTime / 1000 + " us per 640x480 frame");
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.team3128.narwhalvision;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the whole pipeline on a synthetic frame at different processing scales, and logs how long each one takes
+ * and how far its bounding box is from the real one.
+ */
+public class ProcessingScaleTest extends AndroidTestCase
+{
+	private final static String TAG = "ProcessingScaleTest";
+
+	private final static int BENCHMARK_FRAMES = 50;
+
+	private final static int WIDTH = 640, HEIGHT = 480;
+
+	private final static int[] SCALES = {1, 2, 3, 4};
+
+	// deliberately not a multiple of any of the scales
+	private final static Rect TARGET = new Rect(211, 157, 97, 43);
+
+	private Mat rgbaFrame;
+	private Mat yuvFrame;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		assertTrue("OpenCV failed to load", OpenCVLoader.initDebug());
+
+		Settings.lowH = 50;
+		Settings.highH = 70;
+		Settings.lowS = 100;
+		Settings.highS = 255;
+		Settings.lowV = 100;
+		Settings.highV = 255;
+
+		Settings.minArea = 0;
+		Settings.targetSolidity = 100;
+		Settings.targetWidth = 2;
+		Settings.targetHeight = 1;
+		Settings.numTargets = 1;
+		Settings.roiTracking = false;
+
+		//green target on a gray background
+		rgbaFrame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, new Scalar(90, 90, 90, 255));
+		Imgproc.rectangle(rgbaFrame, TARGET.tl(), TARGET.br(), new Scalar(0, 255, 0, 255), -1);
+
+		yuvFrame = toNV21(rgbaFrame);
+	}
+
+	/**
+	 * OpenCV can't produce NV21 directly, so convert to I420 and interleave the chroma planes.
+	 */
+	private static Mat toNV21(Mat rgbaFrame)
+	{
+		Mat i420Frame = new Mat();
+		Imgproc.cvtColor(rgbaFrame, i420Frame, Imgproc.COLOR_RGBA2YUV_I420);
+
+		byte[] i420 = new byte[WIDTH * HEIGHT * 3 / 2];
+		i420Frame.get(0, 0, i420);
+
+		byte[] nv21 = new byte[i420.length];
+		int lumaSize = WIDTH * HEIGHT, chromaSize = lumaSize / 4;
+
+		System.arraycopy(i420, 0, nv21, 0, lumaSize);
+		for(int index = 0; index < chromaSize; ++index)
+		{
+			nv21[lumaSize + 2 * index] = i420[lumaSize + chromaSize + index];
+			nv21[lumaSize + 2 * index + 1] = i420[lumaSize + index];
+		}
+
+		Mat nv21Frame = new Mat(HEIGHT * 3 / 2, WIDTH, CvType.CV_8UC1);
+		nv21Frame.put(0, 0, nv21);
+		return nv21Frame;
+	}
+
+	/**
+	 * @return the largest distance between an edge of the found target and the real one, in full resolution pixels
+	 */
+	private static float boxError(ArrayList<TargetInformation> targets)
+	{
+		assertNotNull(targets);
+		assertEquals(1, targets.size());
+
+		TargetInformation target = targets.get(0);
+
+		float error = Math.abs(target.boundingRectLeft - TARGET.x);
+		error = Math.max(error, Math.abs(target.boundingRectTop - TARGET.y));
+		error = Math.max(error, Math.abs(target.boundingRectRight - (TARGET.x + TARGET.width)));
+		error = Math.max(error, Math.abs(target.boundingRectBottom - (TARGET.y + TARGET.height)));
+
+		return error;
+	}
+
+	public void testNV21Benchmark() throws Exception
+	{
+		for(int scale : SCALES)
+		{
+			Settings.processingScale = scale;
+			Settings.publish();
+			TowerTrackerPipeline pipeline = new TowerTrackerPipeline(60, 45);
+
+			//warm up
+			PipelineResult result = pipeline.processNV21Image(yuvFrame, WIDTH, HEIGHT, System.nanoTime(), false);
+			float error = boxError(result.targets);
+
+			long startTime = System.nanoTime();
+			for(int count = 0; count < BENCHMARK_FRAMES; ++count)
+			{
+				pipeline.processNV21Image(yuvFrame, WIDTH, HEIGHT, System.nanoTime(), false);
+			}
+			long averageTime = (System.nanoTime() - startTime) / BENCHMARK_FRAMES;
+
+			Log.i(TAG, "NV21 1/" + scale + " scale: " + averageTime / 1000 + " us per frame, box error " + error + " px");
+
+			//it's sampling every scale-th pixel, so the edges can't be off by more than that
+			assertTrue(error <= scale);
+		}
+	}
+
+	public void testRGBABenchmark() throws Exception
+	{
+		//the pipeline draws on the frame, so each run gets a fresh copy
+		Mat workingFrame = new Mat();
+
+		for(int scale : SCALES)
+		{
+			Settings.processingScale = scale;
+			Settings.publish();
+			TowerTrackerPipeline pipeline = new TowerTrackerPipeline(60, 45);
+
+			rgbaFrame.copyTo(workingFrame);
+			PipelineResult result = pipeline.processImage(workingFrame, System.nanoTime(), false);
+			float error = boxError(result.targets);
+
+			long startTime = System.nanoTime();
+			for(int count = 0; count < BENCHMARK_FRAMES; ++count)
+			{
+				rgbaFrame.copyTo(workingFrame);
+				pipeline.processImage(workingFrame, System.nanoTime(), false);
+			}
+			long averageTime = (System.nanoTime() - startTime) / BENCHMARK_FRAMES;
+
+			Log.i(TAG, "RGBA 1/" + scale + " scale: " + averageTime / 1000 + " us per frame, box error " + error + " px");
+
+			//the pyramid blurs the edges as well as sampling them
+			assertTrue(error <= 2 * scale);
+		}
+	}
+}
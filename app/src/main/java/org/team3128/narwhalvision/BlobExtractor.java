@@ -0,0 +1,35 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+/**
+ * Interface for the stage of the pipeline which finds the separate blobs in the thresholded mask and measures them.
+ *
+ * Implementations can be swapped in with TowerTrackerPipeline.setBlobExtractor().
+ */
+public interface BlobExtractor
+{
+	/**
+	 * Find the blobs in a mask, replacing the last mask's.
+	 *
+	 * @param mask CV_8UC1 Mat, where nonzero pixels are inside the color range
+	 * @param offset added to every coordinate, e.g. the corner of the region the mask was taken from
+	 * @param minBoundingBoxArea blobs with smaller bounding boxes than this (in pixels of the mask) can be skipped
+	 * @return the number of blobs found
+	 */
+	int extract(Mat mask, Point offset, double minBoundingBoxArea);
+
+	int getLeft(int blob);
+
+	int getTop(int blob);
+
+	int getWidth(int blob);
+
+	int getHeight(int blob);
+
+	/**
+	 * @return the area of the blob, in pixels of the mask
+	 */
+	double getArea(int blob);
+}
@@ -0,0 +1,353 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Finds the connected blobs of set pixels in a mask, and measures their area, bounding box and centroid, without tracing contours.
+ *
+ * The mask is scanned once, one row at a time, and each row is split into runs of set pixels.  Runs which touch a run
+ * in the row above (including diagonally, like findContours()) are joined with a union-find, and once the whole mask is done
+ * each blob's runs are added up.  Only the runs are stored, so the work after the scan depends on how many there are,
+ * not on the size of the frame.
+ *
+ * The arrays grow as needed and are reused for every frame.  Only one thread may use a labeler.
+ *
+ * NOTE: this must not reference Android or OpenCV classes, so that it can be benchmarked on a normal JVM
+ */
+public class BlobLabeler
+{
+	// every run in the mask, in scan order.  Ends are exclusive.
+	private int[] runStarts = new int[1024];
+	private int[] runEnds = new int[1024];
+	private int[] runRows = new int[1024];
+
+	// union-find parent of each run.  Roots are always the run that was found first.
+	private int[] runParents = new int[1024];
+
+	// blob number of each root run while the blobs are being added up
+	private int[] runBlobs = new int[1024];
+
+	private int numRuns;
+
+	// per blob values, indexed by blob number
+	private int[] lefts = new int[64], tops = new int[64], rights = new int[64], bottoms = new int[64];
+	private long[] areas = new long[64];
+	private long[] sumsX = new long[64], sumsY = new long[64];
+
+	private int numBlobs;
+
+	/**
+	 * Label a mask, replacing the last one's blobs.
+	 *
+	 * @param mask width * height bytes, where any nonzero value is set
+	 * @param offsetX added to every x coordinate, e.g. the corner of the region the mask was taken from
+	 * @param offsetY added to every y coordinate
+	 * @param minBoundingBoxArea blobs with smaller bounding boxes than this are skipped
+	 * @return the number of blobs kept
+	 */
+	public int label(byte[] mask, int width, int height, int offsetX, int offsetY, double minBoundingBoxArea)
+	{
+		return label(mask, 0, width, height, offsetX, offsetY, minBoundingBoxArea);
+	}
+
+	/**
+	 * Label part of a bigger mask, e.g. one band of rows.
+	 *
+	 * @param maskOffset index of the first pixel to label.  Rows are still width bytes long.
+	 */
+	public int label(byte[] mask, int maskOffset, int width, int height, int offsetX, int offsetY, double minBoundingBoxArea)
+	{
+		numRuns = 0;
+		numBlobs = 0;
+
+		//runs in the row above are previousFirst until currentFirst
+		int previousFirst = 0;
+
+		for(int y = 0; y < height; ++y)
+		{
+			int currentFirst = numRuns;
+			int rowStart = maskOffset + y * width;
+
+			//the run above that the next run will be compared to first
+			int above = previousFirst;
+
+			int x = 0;
+			while(x < width)
+			{
+				if(mask[rowStart + x] == 0)
+				{
+					++x;
+					continue;
+				}
+
+				int start = x;
+				while(x < width && mask[rowStart + x] != 0)
+				{
+					++x;
+				}
+
+				int run = addRun(start, x, y);
+
+				//skip runs above which end before this one can touch them
+				while(above < currentFirst && runEnds[above] < start)
+				{
+					++above;
+				}
+
+				//join every run above that overlaps this one or touches one of its corners
+				for(int candidate = above; candidate < currentFirst && runStarts[candidate] <= x; ++candidate)
+				{
+					union(run, candidate);
+				}
+			}
+
+			previousFirst = currentFirst;
+		}
+
+		addUpBlobs(offsetX, offsetY, minBoundingBoxArea);
+
+		return numBlobs;
+	}
+
+	private int addRun(int start, int end, int row)
+	{
+		if(numRuns == runStarts.length)
+		{
+			int newSize = runStarts.length * 2;
+
+			runStarts = grow(runStarts, newSize, numRuns);
+			runEnds = grow(runEnds, newSize, numRuns);
+			runRows = grow(runRows, newSize, numRuns);
+			runParents = grow(runParents, newSize, numRuns);
+			runBlobs = new int[newSize];
+		}
+
+		runStarts[numRuns] = start;
+		runEnds[numRuns] = end;
+		runRows[numRuns] = row;
+		runParents[numRuns] = numRuns;
+
+		return numRuns++;
+	}
+
+	private int findRoot(int run)
+	{
+		while(runParents[run] != run)
+		{
+			//path halving
+			runParents[run] = runParents[runParents[run]];
+			run = runParents[run];
+		}
+
+		return run;
+	}
+
+	private void union(int first, int second)
+	{
+		int firstRoot = findRoot(first), secondRoot = findRoot(second);
+
+		if(firstRoot < secondRoot)
+		{
+			runParents[secondRoot] = firstRoot;
+		}
+		else if(secondRoot < firstRoot)
+		{
+			runParents[firstRoot] = secondRoot;
+		}
+	}
+
+	/**
+	 * Add up the runs of each blob, then drop the ones that are too small.
+	 */
+	private void addUpBlobs(int offsetX, int offsetY, double minBoundingBoxArea)
+	{
+		for(int run = 0; run < numRuns; ++run)
+		{
+			int root = findRoot(run);
+
+			int blob;
+			if(root == run)
+			{
+				//roots come before the rest of their runs, so this is a new blob
+				if(numBlobs == lefts.length)
+				{
+					growBlobs();
+				}
+
+				blob = numBlobs++;
+				runBlobs[run] = blob;
+
+				lefts[blob] = Integer.MAX_VALUE;
+				rights[blob] = Integer.MIN_VALUE;
+				tops[blob] = runRows[run];
+				areas[blob] = 0;
+				sumsX[blob] = 0;
+				sumsY[blob] = 0;
+			}
+			else
+			{
+				blob = runBlobs[root];
+			}
+
+			int start = runStarts[run], end = runEnds[run], row = runRows[run];
+			int length = end - start;
+
+			lefts[blob] = Math.min(lefts[blob], start);
+			rights[blob] = Math.max(rights[blob], end);
+			bottoms[blob] = row + 1;
+
+			areas[blob] += length;
+
+			//sum of start..end-1
+			sumsX[blob] += ((long) (start + end - 1)) * length / 2;
+			sumsY[blob] += ((long) row) * length;
+		}
+
+		//keep the big enough blobs, moving them down over the dropped ones, and put them in frame coordinates
+		int numKept = 0;
+		for(int blob = 0; blob < numBlobs; ++blob)
+		{
+			int width = rights[blob] - lefts[blob], height = bottoms[blob] - tops[blob];
+			if(((double) width) * height < minBoundingBoxArea)
+			{
+				continue;
+			}
+
+			lefts[numKept] = lefts[blob] + offsetX;
+			rights[numKept] = rights[blob] + offsetX;
+			tops[numKept] = tops[blob] + offsetY;
+			bottoms[numKept] = bottoms[blob] + offsetY;
+
+			areas[numKept] = areas[blob];
+			sumsX[numKept] = sumsX[blob] + ((long) offsetX) * areas[blob];
+			sumsY[numKept] = sumsY[blob] + ((long) offsetY) * areas[blob];
+
+			++numKept;
+		}
+
+		numBlobs = numKept;
+	}
+
+	private void growBlobs()
+	{
+		int newSize = lefts.length * 2;
+
+		lefts = grow(lefts, newSize, numBlobs);
+		tops = grow(tops, newSize, numBlobs);
+		rights = grow(rights, newSize, numBlobs);
+		bottoms = grow(bottoms, newSize, numBlobs);
+
+		areas = grow(areas, newSize, numBlobs);
+		sumsX = grow(sumsX, newSize, numBlobs);
+		sumsY = grow(sumsY, newSize, numBlobs);
+	}
+
+	private static int[] grow(int[] array, int newSize, int used)
+	{
+		int[] newArray = new int[newSize];
+		System.arraycopy(array, 0, newArray, 0, used);
+		return newArray;
+	}
+
+	private static long[] grow(long[] array, int newSize, int used)
+	{
+		long[] newArray = new long[newSize];
+		System.arraycopy(array, 0, newArray, 0, used);
+		return newArray;
+	}
+
+	/**
+	 * @return the number of blobs kept from the last mask
+	 */
+	public int size()
+	{
+		return numBlobs;
+	}
+
+	public int getLeft(int blob)
+	{
+		return lefts[blob];
+	}
+
+	public int getTop(int blob)
+	{
+		return tops[blob];
+	}
+
+	public int getWidth(int blob)
+	{
+		return rights[blob] - lefts[blob];
+	}
+
+	public int getHeight(int blob)
+	{
+		return bottoms[blob] - tops[blob];
+	}
+
+	/**
+	 * @return the number of pixels in the blob
+	 */
+	public long getArea(int blob)
+	{
+		return areas[blob];
+	}
+
+	public double getCentroidX(int blob)
+	{
+		return ((double) sumsX[blob]) / areas[blob];
+	}
+
+	public double getCentroidY(int blob)
+	{
+		return ((double) sumsY[blob]) / areas[blob];
+	}
+
+	// sums of every pixel's coordinates, for adding blobs together
+	long getSumX(int blob)
+	{
+		return sumsX[blob];
+	}
+
+	long getSumY(int blob)
+	{
+		return sumsY[blob];
+	}
+
+	/**
+	 * @return the number of runs of set pixels in the last mask
+	 */
+	public int getRunCount()
+	{
+		return numRuns;
+	}
+
+	/**
+	 * @return the first column of the run, in mask coordinates (without the offset)
+	 */
+	public int getRunStart(int run)
+	{
+		return runStarts[run];
+	}
+
+	/**
+	 * @return the column after the run's last pixel, in mask coordinates
+	 */
+	public int getRunEnd(int run)
+	{
+		return runEnds[run];
+	}
+
+	/**
+	 * @return the row of the run, in mask coordinates
+	 */
+	public int getRunRow(int run)
+	{
+		return runRows[run];
+	}
+
+	/**
+	 * @return the blob the run is part of.  Only valid if the last mask was labeled with a minBoundingBoxArea of 0, so that no blobs were dropped.
+	 */
+	public int getRunBlob(int run)
+	{
+		return runBlobs[findRoot(run)];
+	}
+}
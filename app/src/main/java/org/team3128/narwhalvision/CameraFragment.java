@@ -18,7 +18,11 @@ import android.widget.Switch;
 
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.JavaCameraView;
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 
@@ -38,12 +42,31 @@ public class CameraFragment extends NarwhalVisionFragment implements CameraBridg
 
 	private Switch colorFilterSwitch;
 
+	private Switch timingOverlaySwitch;
+
+	private Switch recordSwitch;
+
 	private CheckBox roborioConnectionIndicator;
 
 	//private SeekBar exposureSeekBar;
 
 	private TowerTrackerPipeline pipeline;
 
+	//runs the pipeline on its own thread
+	private VisionWorker visionWorker;
+
+	//only used by the camera thread once the view has started
+	private int exposureCompensation;
+
+	private final Scalar TARGET_COLOR = new Scalar(0, 255, 0);
+
+	//stage timings are drawn under the FPS meter, and only reformatted every few frames
+	private final static int TIMING_OVERLAY_UPDATE_FRAMES = 15;
+	private final Scalar TIMING_OVERLAY_COLOR = new Scalar(0, 0, 255);
+	//one line per stage, then the end to end latencies
+	private final String[] timingOverlayLines = new String[TowerTrackerPipeline.Stage.values().length + 2];
+	private int framesSinceOverlayUpdate = TIMING_OVERLAY_UPDATE_FRAMES;
+
 	//class variables for touch selection
 	private boolean userTouchedPixel;
 	private int touchX, touchY;
@@ -70,6 +93,8 @@ public class CameraFragment extends NarwhalVisionFragment implements CameraBridg
 		mOpenCvCameraView.setCvCameraViewListener(this);
 
 		colorFilterSwitch = (Switch) content.findViewById(R.id.colorFilterSwitch);
+		timingOverlaySwitch = (Switch) content.findViewById(R.id.timingOverlaySwitch);
+		recordSwitch = (Switch) content.findViewById(R.id.recordSwitch);
 		roborioConnectionIndicator = (CheckBox) content.findViewById(R.id.roborioResolvedIndicator);
 		//exposureSeekBar = (SeekBar) content.findViewById(R.id.exposureSlider);
 
@@ -128,6 +153,12 @@ public class CameraFragment extends NarwhalVisionFragment implements CameraBridg
 
 		pipeline = new TowerTrackerPipeline(cameraParams.getHorizontalViewAngle(), cameraParams.getVerticalViewAngle());
 
+		//recordings go in app storage, so they can be pulled off with adb without any extra permissions
+		visionWorker = new VisionWorker(pipeline, (NarwhalVisionActivity)getActivity(), getContext().getExternalFilesDir("recordings"));
+		visionWorker.setExposureRange(cameraParams.getMinExposureCompensation(), cameraParams.getMaxExposureCompensation());
+		exposureCompensation = cameraParams.getExposureCompensation();
+		visionWorker.start();
+
 		mOpenCvCameraView.setOnTouchListener(new View.OnTouchListener()
 		{
 			@Override
@@ -145,18 +176,14 @@ public class CameraFragment extends NarwhalVisionFragment implements CameraBridg
 
 	public void onCameraViewStopped()
 	{
-	}
-
-
-	@Override
-	public void onSwapIn()
-	{
-		if(pipeline != null)
+		if(visionWorker != null)
 		{
-			pipeline.loadSettings();
+			visionWorker.stop();
+			visionWorker = null;
 		}
 	}
 
+
 	/**
 	 * Finds the coordinates on the preview image closest to the provided coordinates on the screen
 	 *
@@ -196,14 +223,46 @@ public class CameraFragment extends NarwhalVisionFragment implements CameraBridg
 		return new Pair<>(frameX, frameY);
 	}
 
-	public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame)
+	/**
+	 * Change the camera's exposure compensation.  Frames submitted after this are tagged with the new value.
+	 */
+	private void setExposureCompensation(int newExposureCompensation)
 	{
-		Mat rgbImg = inputFrame.rgba();
+		try
+		{
+			Camera.Parameters cameraParams = mOpenCvCameraView.getCamera().getParameters();
+			cameraParams.setExposureCompensation(newExposureCompensation);
+			mOpenCvCameraView.getCamera().setParameters(cameraParams);
 
-		if(((NarwhalVisionActivity)getActivity()).executeCommands())
+			exposureCompensation = newExposureCompensation;
+		}
+		catch(RuntimeException e)
 		{
-			pipeline.loadSettings();
+			//the command will time out and be nacked
+			Log.e(TAG, "Could not set exposure compensation to " + newExposureCompensation + ": " + e.getMessage());
 		}
+	}
+
+	public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame)
+	{
+		//hand the raw frame off to be processed
+		//this is just a copy, so the preview isn't held up by the pipeline
+		Mat yuvFrame = inputFrame.yuv();
+
+		boolean showColorFilter = colorFilterSwitch.isChecked();
+		visionWorker.setShowColorFilter(showColorFilter);
+		visionWorker.setRecording(recordSwitch.isChecked());
+		visionWorker.submitFrame(yuvFrame, yuvFrame.cols(), yuvFrame.rows() * 2 / 3, inputFrame.timestampNanos(), exposureCompensation);
+
+		//the robot can change the exposure, but the camera can only be changed from here.  This frame was captured before the change.
+		int requestedExposure = visionWorker.takeExposureRequest();
+		if(requestedExposure != VisionWorker.NO_EXPOSURE_REQUEST)
+		{
+			setExposureCompensation(requestedExposure);
+		}
+
+		//the preview still needs an RGBA image
+		Mat rgbImg = inputFrame.rgba();
 
 		//handle touch selection
 //		if(userTouchedPixel)
@@ -240,16 +299,57 @@ public class CameraFragment extends NarwhalVisionFragment implements CameraBridg
 //				}
 //			}
 //		}
-		Pair<Mat, ArrayList<TargetInformation>> result = pipeline.processImage(rgbImg, colorFilterSwitch.isChecked());
+		if(showColorFilter)
+		{
+			//show the latest thresholded image instead of the camera
+			visionWorker.copyFilterPreview(rgbImg);
+		}
+		else
+		{
+			//draw the latest targets on the live image
+			ArrayList<TargetInformation> latestTargets = visionWorker.getLatestTargets();
+
+			if(latestTargets != null)
+			{
+				for(TargetInformation target : latestTargets)
+				{
+					Imgproc.rectangle(rgbImg, new Point(target.boundingRectLeft, target.boundingRectTop), new Point(target.boundingRectRight, target.boundingRectBottom), TARGET_COLOR, 2);
+				}
+			}
+		}
+
+		if(timingOverlaySwitch.isChecked())
+		{
+			drawTimingOverlay(rgbImg);
+		}
+
+		return rgbImg;
+	}
+
+	/**
+	 * Draw the pipeline's per-stage timings and the frame latencies in the top left corner of the image.
+	 */
+	private void drawTimingOverlay(Mat rgbImg)
+	{
+		TowerTrackerPipeline.Stage[] stages = TowerTrackerPipeline.Stage.values();
 
-		if(result.second != null && result.second.size() > 0)
+		if(++framesSinceOverlayUpdate >= TIMING_OVERLAY_UPDATE_FRAMES)
 		{
-			Log.v(TAG, "Sending Target: " + result.second);
+			framesSinceOverlayUpdate = 0;
+
+			for(TowerTrackerPipeline.Stage stage : stages)
+			{
+				timingOverlayLines[stage.ordinal()] = stage.name() + ": " + pipeline.getStageLatency(stage);
+			}
 
-			((NarwhalVisionActivity)getActivity()).sendTargetInformation(result.second);
+			timingOverlayLines[stages.length] = "CAPTURE TO RESULT: " + visionWorker.getFrameLatency();
+			timingOverlayLines[stages.length + 1] = "CAPTURE TO SEND: " + ((NarwhalVisionActivity)getActivity()).getTargetSender().getSendLatency();
 		}
 
-		return result.first;
+		for(int line = 0; line < timingOverlayLines.length; ++line)
+		{
+			Imgproc.putText(rgbImg, timingOverlayLines[line], new Point(10, 50 + 20 * line), Core.FONT_HERSHEY_PLAIN, 1, TIMING_OVERLAY_COLOR);
+		}
 	}
 
 	@Override
@@ -0,0 +1,239 @@
+package org.team3128.narwhalvision;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the commands that arrived during one frame as a batch, and answers them.
+ *
+ * Commands with the same coalescing key replace each other, so only the last one of each kind in the batch runs.  The rest run in
+ * the order they arrived.  The batch array is reused, so running commands doesn't allocate once it has grown to fit a frame's worth.
+ *
+ * Commands that take effect on a later frame are kept until checkPending() finds them applied, and are acked with that frame's number.
+ *
+ * NOTE: this must not reference Android classes, so that it can be tested on a normal JVM
+ */
+public class CommandBatch
+{
+	// pending commands that still aren't applied after this long are nacked
+	public final static long PENDING_TIMEOUT_NANOS = 1000000000L;
+
+	private PhoneCommand[] commands;
+	private int numCommands;
+
+	// commands waiting to take effect, oldest first
+	private final ArrayList<PhoneCommand> pendingCommands = new ArrayList<>();
+
+	private final CommandResponse response = new CommandResponse();
+
+	// total number of commands skipped because a later one replaced them.  Only written by the thread running the batch.
+	private volatile long commandsCoalesced;
+
+	public CommandBatch(int initialCapacity)
+	{
+		commands = new PhoneCommand[Math.max(1, initialCapacity)];
+	}
+
+	/**
+	 * Take every command waiting in the queue, and run the ones that weren't replaced by a later command.
+	 * Must be called from the queue's consumer thread.
+	 *
+	 * @return the number of commands executed
+	 */
+	public int executeAll(SpscQueue<PhoneCommand> queue, CommandContext context, long nowNanos)
+	{
+		PhoneCommand command;
+		while((command = queue.poll()) != null)
+		{
+			add(command);
+		}
+
+		return execute(context, nowNanos);
+	}
+
+	/**
+	 * Add a command to the end of the batch.
+	 */
+	public void add(PhoneCommand command)
+	{
+		if(numCommands == commands.length)
+		{
+			PhoneCommand[] newCommands = new PhoneCommand[commands.length * 2];
+			System.arraycopy(commands, 0, newCommands, 0, numCommands);
+			commands = newCommands;
+		}
+
+		commands[numCommands++] = command;
+	}
+
+	/**
+	 * Run the batch, answer the commands that finished or failed, then empty it.
+	 *
+	 * @return the number of commands executed
+	 */
+	public int execute(CommandContext context, long nowNanos)
+	{
+		int executed = 0;
+
+		for(int index = 0; index < numCommands; ++index)
+		{
+			PhoneCommand command = commands[index];
+			Object key = command.getCoalescingKey();
+
+			//batches are a handful of commands at most, so just look ahead for a replacement
+			PhoneCommand replacement = findReplacement(index, key);
+			if(replacement != null)
+			{
+				++commandsCoalesced;
+
+				//a resent copy of the same command is answered when the copy runs
+				if(replacement.sequence != command.sequence)
+				{
+					respond(context, command, CommandResponse.NACK_SUPERSEDED, nowNanos);
+				}
+
+				continue;
+			}
+
+			if(key != null)
+			{
+				supersedePending(context, command, key, nowNanos);
+			}
+
+			byte status = command.execute(context);
+			++executed;
+
+			if(status == CommandResponse.PENDING)
+			{
+				pendingCommands.add(command);
+			}
+			else
+			{
+				respond(context, command, status, nowNanos);
+			}
+		}
+
+		clear();
+
+		return executed;
+	}
+
+	/**
+	 * Ack the pending commands that are now in effect, and nack the ones that have waited too long.
+	 * Call after each frame is processed.
+	 */
+	public void checkPending(CommandContext context, long nowNanos)
+	{
+		for(int index = 0; index < pendingCommands.size(); ++index)
+		{
+			PhoneCommand command = pendingCommands.get(index);
+
+			byte status;
+			if(command.isApplied(context))
+			{
+				status = CommandResponse.ACK;
+			}
+			else if(nowNanos - command.receiveTimeNanos > PENDING_TIMEOUT_NANOS)
+			{
+				status = CommandResponse.NACK_TIMEOUT;
+			}
+			else
+			{
+				continue;
+			}
+
+			respond(context, command, status, nowNanos);
+			pendingCommands.remove(index--);
+		}
+	}
+
+	/**
+	 * @return the last command after index with the same coalescing key, or null if there isn't one
+	 */
+	private PhoneCommand findReplacement(int index, Object key)
+	{
+		if(key == null)
+		{
+			return null;
+		}
+
+		for(int laterIndex = numCommands - 1; laterIndex > index; --laterIndex)
+		{
+			if(key.equals(commands[laterIndex].getCoalescingKey()))
+			{
+				return commands[laterIndex];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Drop the pending commands that a newer command with the same key is about to replace.
+	 */
+	private void supersedePending(CommandContext context, PhoneCommand newCommand, Object key, long nowNanos)
+	{
+		for(int index = 0; index < pendingCommands.size(); ++index)
+		{
+			PhoneCommand command = pendingCommands.get(index);
+			if(!key.equals(command.getCoalescingKey()))
+			{
+				continue;
+			}
+
+			++commandsCoalesced;
+
+			if(command.sequence != newCommand.sequence)
+			{
+				respond(context, command, CommandResponse.NACK_SUPERSEDED, nowNanos);
+			}
+
+			pendingCommands.remove(index--);
+		}
+	}
+
+	private void respond(CommandContext context, PhoneCommand command, byte status, long nowNanos)
+	{
+		if(command.sequence == 0)
+		{
+			return;
+		}
+
+		int frameNumber = status == CommandResponse.ACK ? (int) context.getFrameNumber() : 0;
+		int latencyMicros = (int) Math.max(0, Math.min((nowNanos - command.receiveTimeNanos) / 1000, Integer.MAX_VALUE));
+
+		response.set(command.sequence, status, frameNumber, latencyMicros);
+		context.sendResponse(response);
+	}
+
+	/**
+	 * Throw away the batch without running it.  Pending commands are kept.
+	 */
+	public void clear()
+	{
+		//don't hold on to commands that already ran
+		for(int index = 0; index < numCommands; ++index)
+		{
+			commands[index] = null;
+		}
+
+		numCommands = 0;
+	}
+
+	public int size()
+	{
+		return numCommands;
+	}
+
+	/**
+	 * @return the number of commands waiting to take effect
+	 */
+	public int getNumPending()
+	{
+		return pendingCommands.size();
+	}
+
+	public long getCommandsCoalesced()
+	{
+		return commandsCoalesced;
+	}
+}
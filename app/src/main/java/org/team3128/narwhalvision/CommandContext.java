@@ -0,0 +1,50 @@
+package org.team3128.narwhalvision;
+
+/**
+ * What a PhoneCommand can see and change while it runs.  Implemented by the VisionWorker, and only used from its thread.
+ *
+ * NOTE: this must not reference Android classes, so that commands can be tested on a normal JVM
+ */
+public interface CommandContext
+{
+	/**
+	 * @return the number of the camera frame being processed, which is also the sequence number of its target packet
+	 */
+	long getFrameNumber();
+
+	/**
+	 * @return the settings the pipeline used for the current frame, once it has been processed.
+	 * While processing is paused, the latest published settings, which the pipeline still picks up.
+	 */
+	SettingsSnapshot getSettings();
+
+	/**
+	 * Ask the camera to change its exposure compensation.  It changes on the camera thread, before a later frame.
+	 *
+	 * @return false if the camera doesn't support the value
+	 */
+	boolean requestExposureCompensation(int exposureCompensation);
+
+	/**
+	 * @return the exposure compensation the current frame was captured with
+	 */
+	int getExposureCompensation();
+
+	/**
+	 * Stop or start running the pipeline.  While paused, frames are still taken from the camera and commands still run,
+	 * but no targets are found or sent.
+	 */
+	void setProcessingPaused(boolean paused);
+
+	boolean isProcessingPaused();
+
+	/**
+	 * Send the robot a PhoneStats packet right away.
+	 */
+	void sendStats(int requestSequence);
+
+	/**
+	 * Send the robot an ack or nack right away.  The response object is reused, so it must not be kept.
+	 */
+	void sendResponse(CommandResponse response);
+}
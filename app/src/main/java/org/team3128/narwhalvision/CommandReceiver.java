@@ -0,0 +1,426 @@
+package org.team3128.narwhalvision;
+
+import android.util.Log;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Receives commands from the robot on its own thread, and queues them for the vision thread to run between frames.
+ * Responses to the commands are sent by the vision thread.
+ *
+ * The thread waits on a Selector until the robot channel has a packet, reads every waiting packet into one reused buffer,
+ * and decodes it with its own Kryo instance.  Decoded commands go into a bounded SpscQueue, so the vision thread can check for
+ * commands with a single volatile read when there aren't any.
+ *
+ * The channel is shared with the TargetSender, and must be in non-blocking mode.  It isn't connected, since the sender also sends to other
+ * subscribers, so only packets from the robot's address are read as commands.  Responses are only a few bytes, so the vision thread
+ * writes them straight to the channel instead of handing them to another thread.
+ */
+public class CommandReceiver implements Runnable
+{
+	private final static String TAG = "NVCmdReceiver";
+
+	// commands are rare, so this only fills up if the vision thread stops
+	private final static int QUEUE_CAPACITY = 16;
+
+	// no, as far as I can tell, there's no way to not have a fixed size buffer
+	private final static int RECEIVE_BUFFER_SIZE = 1024;
+
+	private final SpscQueue<PhoneCommand> commandQueue;
+
+	// only used by the vision thread
+	private final CommandBatch commandBatch;
+	private final ByteBuffer responseBuffer;
+
+	// only used by the receiving thread
+	private final Kryo kryo;
+	private final ByteBufferInput packetReader;
+	private final ByteBuffer receiveBuffer;
+
+	private volatile DatagramChannel channel;
+
+	// where commands come from and responses go.  null until the robot is found.
+	private volatile InetSocketAddress robotAddress;
+
+	private Thread thread;
+
+	// opened by the receiving thread
+	private volatile Selector selector;
+
+	// only written by the receiving thread
+	private volatile long commandsReceived;
+	private volatile long badPackets;
+	private volatile long commandsDropped;
+	private volatile long foreignPackets;
+	private volatile long receiveErrors;
+
+	// only written by the vision thread
+	private volatile long responsesSent;
+	private volatile long responseFailures;
+
+	public CommandReceiver()
+	{
+		commandQueue = new SpscQueue<>(QUEUE_CAPACITY);
+		commandBatch = new CommandBatch(QUEUE_CAPACITY);
+		responseBuffer = ByteBuffer.allocateDirect(Math.max(CommandResponse.PACKET_SIZE, PhoneStats.PACKET_SIZE));
+
+		//IDs have to match the robot's
+		kryo = new Kryo();
+		kryo.register(TargetInformation.class, 0);
+		kryo.register(SwitchSlotCommand.class, 1);
+		kryo.register(SetExposureCommand.class, 2);
+		kryo.register(SetNumTargetsCommand.class, 3);
+		kryo.register(RequestStatsCommand.class, 4);
+		kryo.register(SetProcessingPausedCommand.class, 5);
+
+		packetReader = new ByteBufferInput();
+		receiveBuffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+	}
+
+	public void start()
+	{
+		thread = new Thread(this, TAG);
+		thread.start();
+	}
+
+	/**
+	 * Stop the receiving thread.  Blocks until it exits.
+	 */
+	public void stop()
+	{
+		if(thread != null)
+		{
+			//interrupting a thread wakes it up from select()
+			thread.interrupt();
+
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+
+			thread = null;
+		}
+	}
+
+	/**
+	 * Set the channel to receive commands on.  It should be in non-blocking mode.
+	 */
+	public void setChannel(DatagramChannel channel)
+	{
+		this.channel = channel;
+
+		//registering has to happen on the receiving thread, since it would block while that thread is in select()
+		Selector currentSelector = selector;
+		if(currentSelector != null)
+		{
+			currentSelector.wakeup();
+		}
+	}
+
+	/**
+	 * Set the address that commands are accepted from and responses are sent to.
+	 */
+	public void setRobotAddress(InetSocketAddress robotAddress)
+	{
+		this.robotAddress = robotAddress;
+	}
+
+	/**
+	 * Run every command that has arrived since the last call, skipping ones that a later command replaces.
+	 * Called from the vision thread before each frame is processed.
+	 */
+	public void executeCommands(CommandContext context)
+	{
+		if(!commandQueue.isEmpty())
+		{
+			commandBatch.executeAll(commandQueue, context, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Ack the commands that the frame just processed was the first to reflect.  Called from the vision thread after each frame.
+	 */
+	public void checkPendingCommands(CommandContext context)
+	{
+		if(commandBatch.getNumPending() > 0)
+		{
+			commandBatch.checkPending(context, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Send an ack or nack to the robot.  Called from the vision thread.
+	 */
+	public void sendResponse(CommandResponse response)
+	{
+		responseBuffer.clear();
+		response.encode(responseBuffer);
+		sendResponseBuffer();
+	}
+
+	/**
+	 * Send a stats packet to the robot.  Called from the vision thread.
+	 */
+	public void sendStats(PhoneStats stats)
+	{
+		responseBuffer.clear();
+		stats.encode(responseBuffer);
+		sendResponseBuffer();
+	}
+
+	private void sendResponseBuffer()
+	{
+		DatagramChannel currentChannel = channel;
+		InetSocketAddress currentRobotAddress = robotAddress;
+		if(currentChannel == null || currentRobotAddress == null)
+		{
+			++responseFailures;
+			return;
+		}
+
+		responseBuffer.flip();
+
+		try
+		{
+			//non-blocking, so a full send buffer loses the response instead of holding up the frame.  The robot will resend the command.
+			if(currentChannel.send(responseBuffer, currentRobotAddress) == 0)
+			{
+				++responseFailures;
+				return;
+			}
+
+			++responsesSent;
+		}
+		catch(IOException e)
+		{
+			++responseFailures;
+			Log.e(TAG, "Failed to send command response to RoboRIO: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		Log.i(TAG, "Starting...");
+
+		try
+		{
+			selector = Selector.open();
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "Could not open selector: " + e.getMessage());
+			return;
+		}
+
+		DatagramChannel registeredChannel = null;
+
+		try
+		{
+			//if the channel was set before the selector was opened, it's picked up the first time around.
+			//Errors are counted and the loop goes on, so that one bad receive doesn't stop commands until the app restarts.
+			while(!Thread.currentThread().isInterrupted())
+			{
+				try
+				{
+					DatagramChannel currentChannel = channel;
+					if(currentChannel != null && currentChannel != registeredChannel)
+					{
+						if(registeredChannel != null)
+						{
+							//a closed channel's key is already gone
+							SelectionKey oldKey = registeredChannel.keyFor(selector);
+							if(oldKey != null)
+							{
+								oldKey.cancel();
+							}
+
+							registeredChannel = null;
+						}
+
+						currentChannel.register(selector, SelectionKey.OP_READ);
+						registeredChannel = currentChannel;
+					}
+
+					selector.select();
+					selector.selectedKeys().clear();
+				}
+				catch(IOException e)
+				{
+					++receiveErrors;
+					Log.e(TAG, "Error waiting for commands: " + e.getMessage());
+					continue;
+				}
+
+				if(registeredChannel != null)
+				{
+					receivePackets(registeredChannel);
+				}
+			}
+		}
+		catch(ClosedSelectorException e)
+		{
+			Log.e(TAG, "Command receiver failed: " + e.getMessage());
+		}
+		finally
+		{
+			try
+			{
+				selector.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		Log.i(TAG, "Stopped.  " + toString());
+	}
+
+	/**
+	 * Read and queue every packet waiting on the channel.
+	 */
+	private void receivePackets(DatagramChannel channel)
+	{
+		while(true)
+		{
+			receiveBuffer.clear();
+
+			SocketAddress source;
+			try
+			{
+				source = channel.receive(receiveBuffer);
+			}
+			catch(IOException e)
+			{
+				//go back to select(), which checks for interrupts, instead of retrying a channel that might keep failing
+				++receiveErrors;
+				Log.e(TAG, "Could not receive command: " + e.getMessage());
+				return;
+			}
+
+			if(source == null)
+			{
+				return;
+			}
+
+			//subscribers other than the robot don't get to send commands
+			if(!source.equals(robotAddress))
+			{
+				++foreignPackets;
+				continue;
+			}
+
+			receiveBuffer.flip();
+			packetReader.setBuffer(receiveBuffer);
+
+			Object command;
+			try
+			{
+				command = kryo.readClassAndObject(packetReader);
+			}
+			catch(KryoException e)
+			{
+				++badPackets;
+				Log.e(TAG, "Could not decode command: " + e.getMessage());
+				continue;
+			}
+
+			if(!(command instanceof PhoneCommand))
+			{
+				++badPackets;
+				Log.e(TAG, "Received something that isn't a command: " + command);
+				continue;
+			}
+
+			++commandsReceived;
+			((PhoneCommand) command).receiveTimeNanos = System.nanoTime();
+
+			if(!commandQueue.offer((PhoneCommand) command))
+			{
+				++commandsDropped;
+				Log.w(TAG, "Command queue is full, dropping " + command);
+			}
+		}
+	}
+
+	public long getCommandsReceived()
+	{
+		return commandsReceived;
+	}
+
+	/**
+	 * @return number of packets which could not be decoded into a command
+	 */
+	public long getBadPackets()
+	{
+		return badPackets;
+	}
+
+	/**
+	 * @return number of commands which were thrown away because the queue was full
+	 */
+	public long getCommandsDropped()
+	{
+		return commandsDropped;
+	}
+
+	/**
+	 * @return number of commands which were skipped because a later command in the same frame replaced them
+	 */
+	public long getCommandsCoalesced()
+	{
+		return commandBatch.getCommandsCoalesced();
+	}
+
+	/**
+	 * @return number of packets which were ignored because they didn't come from the robot
+	 */
+	public long getForeignPackets()
+	{
+		return foreignPackets;
+	}
+
+	/**
+	 * @return number of times receiving or waiting for a packet failed
+	 */
+	public long getReceiveErrors()
+	{
+		return receiveErrors;
+	}
+
+	public long getResponsesSent()
+	{
+		return responsesSent;
+	}
+
+	/**
+	 * @return number of acks, nacks and stats packets which could not be sent
+	 */
+	public long getResponseFailures()
+	{
+		return responseFailures;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Commands received: " + commandsReceived + ", bad packets: " + badPackets + ", commands dropped: " + commandsDropped + ", foreign packets: " + foreignPackets + ", receive errors: " + receiveErrors + ", commands coalesced: " + commandBatch.getCommandsCoalesced()
+				+ ", responses sent: " + responsesSent + ", response failures: " + responseFailures;
+	}
+}
@@ -0,0 +1,120 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The phone's answer to a command with a sequence number, sent to the robot on the same channel as the target packets.
+ *
+ * All values are big endian, like TargetPacket:
+ *
+ * <pre>
+ *   u8   packet type (PACKET_TYPE_COMMAND_RESPONSE)
+ *   u8   format version (VERSION)
+ *   u8   status (ACK, or one of the NACK_ codes)
+ *   u8   unused, always 0
+ *   u32  sequence number of the command being answered
+ *   u32  for acks, sequence number of the first target packet from a frame processed with the command in effect.  0 for nacks.
+ *   u32  microseconds between the command arriving and this response being sent
+ * </pre>
+ *
+ * A command is acked once, when it takes effect, or nacked once.  A command the robot never hears back about was lost, and can be
+ * sent again with the same sequence number: every command is safe to run twice.
+ *
+ * NOTE: like TargetInformation, this cannot reference any classes available on only one side or the other
+ */
+public class CommandResponse
+{
+	public final static byte PACKET_TYPE_COMMAND_RESPONSE = 2;
+
+	// increase this whenever the layout changes
+	public final static byte VERSION = 1;
+
+	public final static int PACKET_SIZE = 16;
+
+	// the command took effect
+	public final static byte ACK = 0;
+
+	// the command's arguments were out of range
+	public final static byte NACK_INVALID = 1;
+
+	// the phone can't do what the command asks, such as changing the exposure of a camera that doesn't support it
+	public final static byte NACK_UNSUPPORTED = 2;
+
+	// a newer command of the same kind replaced this one before it took effect
+	public final static byte NACK_SUPERSEDED = 3;
+
+	// the command was accepted, but hadn't taken effect after PENDING_TIMEOUT_NANOS
+	public final static byte NACK_TIMEOUT = 4;
+
+	// returned by PhoneCommand.execute() when the command takes effect on a later frame.  Never sent.
+	public final static byte PENDING = -1;
+
+	public int commandSequence;
+
+	public byte status;
+
+	public int frameNumber;
+
+	public int latencyMicros;
+
+	public void set(int commandSequence, byte status, int frameNumber, int latencyMicros)
+	{
+		this.commandSequence = commandSequence;
+		this.status = status;
+		this.frameNumber = frameNumber;
+		this.latencyMicros = latencyMicros;
+	}
+
+	public boolean isAck()
+	{
+		return status == ACK;
+	}
+
+	/**
+	 * Write the response at the buffer's position, and advance the position to the end of it.
+	 *
+	 * @return the number of bytes written
+	 */
+	public int encode(ByteBuffer buffer)
+	{
+		buffer.put(PACKET_TYPE_COMMAND_RESPONSE);
+		buffer.put(VERSION);
+		buffer.put(status);
+		buffer.put((byte) 0);
+		buffer.putInt(commandSequence);
+		buffer.putInt(frameNumber);
+		buffer.putInt(latencyMicros);
+
+		return PACKET_SIZE;
+	}
+
+	/**
+	 * Read a response from the buffer's position, and advance the position past it.
+	 *
+	 * @return false if the data is not a response of the supported version, or is cut off.  In that case, nothing is changed.
+	 */
+	public boolean decode(ByteBuffer buffer)
+	{
+		int startPosition = buffer.position();
+
+		if(buffer.remaining() < PACKET_SIZE || buffer.get(startPosition) != PACKET_TYPE_COMMAND_RESPONSE || buffer.get(startPosition + 1) != VERSION)
+		{
+			return false;
+		}
+
+		status = buffer.get(startPosition + 2);
+
+		buffer.position(startPosition + 4);
+		commandSequence = buffer.getInt();
+		frameNumber = buffer.getInt();
+		latencyMicros = buffer.getInt();
+
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		return (isAck() ? "Ack" : "Nack " + status) + " of command " + commandSequence + " at frame " + frameNumber + " after " + latencyMicros + "us";
+	}
+}
@@ -0,0 +1,108 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Blob extractor which uses OpenCV's connectedComponentsWithStats(), so the labeling happens in native code.
+ *
+ * Like RunLengthBlobExtractor, the area is the number of pixels in the blob.
+ * OpenCV also writes a label for every pixel, which is thrown away.
+ */
+public class ConnectedComponentsBlobExtractor implements BlobExtractor
+{
+	// outputs of connectedComponentsWithStats(), reused between frames
+	private Mat labels, stats, centroids;
+
+	// the stats Mat copied out, one row of Imgproc.CC_STAT_MAX ints per component
+	private int[] statsData = new int[0];
+
+	// per blob values, indexed by blob number
+	private int[] lefts = new int[64], tops = new int[64], widths = new int[64], heights = new int[64], areas = new int[64];
+
+	private int numBlobs;
+
+	@Override
+	public int extract(Mat mask, Point offset, double minBoundingBoxArea)
+	{
+		if(labels == null)
+		{
+			labels = new Mat();
+			stats = new Mat();
+			centroids = new Mat();
+		}
+
+		int numComponents = Imgproc.connectedComponentsWithStats(mask, labels, stats, centroids, 8, CvType.CV_32S);
+
+		if(statsData.length < numComponents * Imgproc.CC_STAT_MAX)
+		{
+			statsData = new int[numComponents * Imgproc.CC_STAT_MAX];
+		}
+		stats.get(0, 0, statsData);
+
+		if(lefts.length < numComponents)
+		{
+			lefts = new int[numComponents];
+			tops = new int[numComponents];
+			widths = new int[numComponents];
+			heights = new int[numComponents];
+			areas = new int[numComponents];
+		}
+
+		numBlobs = 0;
+
+		//component 0 is the background
+		for(int component = 1; component < numComponents; ++component)
+		{
+			int row = component * Imgproc.CC_STAT_MAX;
+			int width = statsData[row + Imgproc.CC_STAT_WIDTH], height = statsData[row + Imgproc.CC_STAT_HEIGHT];
+
+			if(((double) width) * height < minBoundingBoxArea)
+			{
+				continue;
+			}
+
+			lefts[numBlobs] = statsData[row + Imgproc.CC_STAT_LEFT] + (int) offset.x;
+			tops[numBlobs] = statsData[row + Imgproc.CC_STAT_TOP] + (int) offset.y;
+			widths[numBlobs] = width;
+			heights[numBlobs] = height;
+			areas[numBlobs] = statsData[row + Imgproc.CC_STAT_AREA];
+
+			++numBlobs;
+		}
+
+		return numBlobs;
+	}
+
+	@Override
+	public int getLeft(int blob)
+	{
+		return lefts[blob];
+	}
+
+	@Override
+	public int getTop(int blob)
+	{
+		return tops[blob];
+	}
+
+	@Override
+	public int getWidth(int blob)
+	{
+		return widths[blob];
+	}
+
+	@Override
+	public int getHeight(int blob)
+	{
+		return heights[blob];
+	}
+
+	@Override
+	public double getArea(int blob)
+	{
+		return areas[blob];
+	}
+}
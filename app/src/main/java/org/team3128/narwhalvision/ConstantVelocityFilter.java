@@ -0,0 +1,89 @@
+package org.team3128.narwhalvision;
+
+/**
+ * One dimensional Kalman filter which assumes the value moves at a constant velocity, disturbed by random acceleration.
+ *
+ * The state is just position and velocity, so the 2x2 matrices are written out by hand instead of using OpenCV's KalmanFilter,
+ * which would make a JNI call and allocate Mats for every step.
+ */
+class ConstantVelocityFilter
+{
+	// variance of the random acceleration, in units^2 / s^4
+	private final double accelerationVariance;
+
+	// variance of each measurement, in units^2
+	private final double measurementVariance;
+
+	private double position, velocity;
+
+	// covariance of the state estimate
+	private double positionVariance, covariance, velocityVariance;
+
+	ConstantVelocityFilter(double accelerationVariance, double measurementVariance)
+	{
+		this.accelerationVariance = accelerationVariance;
+		this.measurementVariance = measurementVariance;
+	}
+
+	/**
+	 * Start over from a single measurement, with the velocity completely unknown.
+	 *
+	 * @param initialVelocityVariance how far off a velocity of 0 could be, in units^2 / s^2
+	 */
+	void reset(double measurement, double initialVelocityVariance)
+	{
+		position = measurement;
+		velocity = 0;
+
+		positionVariance = measurementVariance;
+		covariance = 0;
+		velocityVariance = initialVelocityVariance;
+	}
+
+	/**
+	 * Move the estimate forward in time.
+	 *
+	 * @param dt seconds since the last prediction
+	 */
+	void predict(double dt)
+	{
+		position += velocity * dt;
+
+		//P = F P F^T + Q, where F = [1 dt; 0 1] and Q is the covariance of a random acceleration held for dt
+		double dt2 = dt * dt;
+
+		positionVariance += dt * (2 * covariance + dt * velocityVariance) + accelerationVariance * dt2 * dt2 / 4;
+		covariance += dt * velocityVariance + accelerationVariance * dt2 * dt / 2;
+		velocityVariance += accelerationVariance * dt2;
+	}
+
+	/**
+	 * Correct the estimate with a measurement of the position.
+	 */
+	void update(double measurement)
+	{
+		double innovation = measurement - position;
+		double innovationVariance = positionVariance + measurementVariance;
+
+		double positionGain = positionVariance / innovationVariance;
+		double velocityGain = covariance / innovationVariance;
+
+		position += positionGain * innovation;
+		velocity += velocityGain * innovation;
+
+		//P = (I - K H) P, where H = [1 0]
+		velocityVariance -= velocityGain * covariance;
+		covariance -= velocityGain * positionVariance;
+		positionVariance -= positionGain * positionVariance;
+	}
+
+	double getPosition()
+	{
+		return position;
+	}
+
+	double getVelocity()
+	{
+		return velocity;
+	}
+}
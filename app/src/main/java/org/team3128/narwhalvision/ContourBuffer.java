@@ -0,0 +1,309 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Holds the contours found in one frame, with every contour's points packed back to back in a single int array.
+ *
+ * Imgproc.findContours() normally creates a MatOfPoint for each contour, and their native memory is only freed when the
+ * garbage collector gets around to finalizing them.  This reads each native contour straight into the packed array
+ * and frees it immediately, so a noisy frame doesn't leave hundreds of native objects behind.
+ * Contours with too few points are freed without being copied at all.
+ *
+ * The bounding box and area of each contour are worked out in Java while packing, the same way
+ * Imgproc.boundingRect() and Imgproc.contourArea() would, instead of with two more JNI calls each.
+ * The bounding box is found first, and contours whose box is too small are dropped before they are packed or their area is calculated.
+ *
+ * The arrays grow as needed and are reused for every frame.  Only one thread may use a buffer.
+ */
+public class ContourBuffer implements BlobExtractor
+{
+	// contours smaller than this many points can't be a target, so they're dropped before anything is measured
+	public final static int MIN_CONTOUR_POINTS = 3;
+
+	// x, y pairs of every contour's points
+	private int[] points = new int[4096];
+
+	// scratch space for reading one contour, and the addresses of the native contours
+	private int[] contourPoints = new int[1024];
+	private int[] contourAddresses = new int[256];
+
+	// per contour values, indexed by contour number
+	private int[] pointStarts = new int[64];
+	private int[] pointCounts = new int[64];
+	private int[] lefts = new int[64], tops = new int[64], widths = new int[64], heights = new int[64];
+	private double[] areas = new double[64];
+
+	private int numContours;
+	private int numPoints;
+	private int numRejected;
+
+	// vector<Mat> written by the native findContours(), and its hierarchy, reused between frames
+	private Mat contoursMat, hierarchy;
+
+	/**
+	 * Find the outside contours of the blobs in the mask, leaving out ones with too few points.
+	 */
+	@Override
+	public int extract(Mat mask, Point offset, double minBoundingBoxArea)
+	{
+		if(hierarchy == null)
+		{
+			hierarchy = new Mat();
+		}
+
+		return findContours(mask, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, offset, MIN_CONTOUR_POINTS, minBoundingBoxArea);
+	}
+
+	/**
+	 * Find the contours in a mask, replacing the last frame's.
+	 *
+	 * @param offset added to every point, e.g. the corner of the region the mask was taken from
+	 * @param minPoints contours with fewer points than this are skipped
+	 * @param minBoundingBoxArea contours with smaller bounding boxes than this (in pixels of the mask) are skipped
+	 * @return the number of contours kept
+	 */
+	public int findContours(Mat mask, Mat hierarchy, int mode, int method, Point offset, int minPoints, double minBoundingBoxArea)
+	{
+		clear();
+
+		if(contoursMat == null)
+		{
+			contoursMat = new Mat();
+		}
+
+		Imgproc.findContours(mask, contoursMat, hierarchy, mode, method, offset);
+
+		int numFound = contoursMat.rows();
+		if(numFound == 0)
+		{
+			return 0;
+		}
+
+		if(contourAddresses.length < numFound * 2)
+		{
+			contourAddresses = new int[numFound * 2];
+		}
+		contoursMat.get(0, 0, contourAddresses);
+
+		for(int index = 0; index < numFound; ++index)
+		{
+			long address = (((long) contourAddresses[index * 2]) << 32) | (((long) contourAddresses[index * 2 + 1]) & 0xFFFFFFFFL);
+
+			int contourSize = Mat.nativeRows(address);
+
+			if(contourSize >= minPoints)
+			{
+				if(contourPoints.length < contourSize * 2)
+				{
+					contourPoints = new int[contourSize * 2];
+				}
+
+				Mat.nativeGetInts(address, contourPoints, contourSize * 2);
+				if(!addContour(contourPoints, contourSize, minBoundingBoxArea))
+				{
+					++numRejected;
+				}
+			}
+			else
+			{
+				++numRejected;
+			}
+
+			Mat.nativeDelete(address);
+		}
+
+		return numContours;
+	}
+
+	/**
+	 * Forget every contour.
+	 */
+	public void clear()
+	{
+		numContours = 0;
+		numPoints = 0;
+		numRejected = 0;
+	}
+
+	/**
+	 * Measure a contour's bounding box, and if it's big enough, copy it into the buffer and find its area.
+	 *
+	 * @param contour x, y pairs
+	 * @param contourSize number of points (not ints) to take from the array
+	 * @param minBoundingBoxArea smallest bounding box area to keep
+	 * @return whether the contour was kept
+	 */
+	public boolean addContour(int[] contour, int contourSize, double minBoundingBoxArea)
+	{
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+		for(int point = 0; point < contourSize; ++point)
+		{
+			int x = contour[point * 2], y = contour[point * 2 + 1];
+
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+
+		//boundingRect() counts pixels, so a one pixel contour is 1x1
+		int width = maxX - minX + 1, height = maxY - minY + 1;
+
+		if(((double) width) * height < minBoundingBoxArea)
+		{
+			return false;
+		}
+
+		if(numContours == pointStarts.length)
+		{
+			growContours();
+		}
+
+		if(points.length < (numPoints + contourSize) * 2)
+		{
+			int[] newPoints = new int[Math.max(points.length * 2, (numPoints + contourSize) * 2)];
+			System.arraycopy(points, 0, newPoints, 0, numPoints * 2);
+			points = newPoints;
+		}
+
+		System.arraycopy(contour, 0, points, numPoints * 2, contourSize * 2);
+
+		//shoelace formula, like contourArea()
+		long doubleArea = 0;
+
+		for(int point = 0; point < contourSize; ++point)
+		{
+			int next = (point + 1 == contourSize) ? 0 : point + 1;
+
+			doubleArea += ((long) contour[point * 2]) * contour[next * 2 + 1] - ((long) contour[next * 2]) * contour[point * 2 + 1];
+		}
+
+		pointStarts[numContours] = numPoints;
+		pointCounts[numContours] = contourSize;
+
+		lefts[numContours] = minX;
+		tops[numContours] = minY;
+		widths[numContours] = width;
+		heights[numContours] = height;
+
+		areas[numContours] = Math.abs(doubleArea) / 2.0;
+
+		numPoints += contourSize;
+		++numContours;
+
+		return true;
+	}
+
+	private void growContours()
+	{
+		int newSize = pointStarts.length * 2;
+
+		pointStarts = grow(pointStarts, newSize);
+		pointCounts = grow(pointCounts, newSize);
+		lefts = grow(lefts, newSize);
+		tops = grow(tops, newSize);
+		widths = grow(widths, newSize);
+		heights = grow(heights, newSize);
+
+		double[] newAreas = new double[newSize];
+		System.arraycopy(areas, 0, newAreas, 0, numContours);
+		areas = newAreas;
+	}
+
+	private int[] grow(int[] array, int newSize)
+	{
+		int[] newArray = new int[newSize];
+		System.arraycopy(array, 0, newArray, 0, numContours);
+		return newArray;
+	}
+
+	/**
+	 * Free the native memory.  The buffer can still be used afterwards.
+	 */
+	public void release()
+	{
+		if(contoursMat != null)
+		{
+			contoursMat.release();
+		}
+
+		if(hierarchy != null)
+		{
+			hierarchy.release();
+		}
+	}
+
+	/**
+	 * @return the number of contours kept from the last frame
+	 */
+	public int size()
+	{
+		return numContours;
+	}
+
+	/**
+	 * @return the number of contours in the last frame which were skipped for having too few points or too small a bounding box
+	 */
+	public int getNumRejected()
+	{
+		return numRejected;
+	}
+
+	@Override
+	public int getLeft(int contour)
+	{
+		return lefts[contour];
+	}
+
+	@Override
+	public int getTop(int contour)
+	{
+		return tops[contour];
+	}
+
+	@Override
+	public int getWidth(int contour)
+	{
+		return widths[contour];
+	}
+
+	@Override
+	public int getHeight(int contour)
+	{
+		return heights[contour];
+	}
+
+	/**
+	 * @return the area enclosed by the contour, the same as Imgproc.contourArea()
+	 */
+	@Override
+	public double getArea(int contour)
+	{
+		return areas[contour];
+	}
+
+	public int getPointCount(int contour)
+	{
+		return pointCounts[contour];
+	}
+
+	/**
+	 * @return the position of the contour's first point in getPoints(), in points (so multiply by 2 for the array index)
+	 */
+	public int getPointStart(int contour)
+	{
+		return pointStarts[contour];
+	}
+
+	/**
+	 * @return every contour's x, y pairs, back to back.  Only valid until the next call to findContours().
+	 */
+	public int[] getPoints()
+	{
+		return points;
+	}
+}
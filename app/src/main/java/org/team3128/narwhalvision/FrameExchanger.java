@@ -0,0 +1,87 @@
+package org.team3128.narwhalvision;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single slot, lock-free handoff between one producer thread and one consumer thread where only the newest item matters.
+ *
+ * If the producer offers a new item before the consumer takes the last one, the old one is handed back to the producer
+ * (so it can be reused) instead of being queued.  This keeps the consumer working on the freshest frame available.
+ */
+public class FrameExchanger<T>
+{
+	private final AtomicReference<T> pendingItem = new AtomicReference<>();
+
+	// thread blocked in take(), if any
+	private volatile Thread consumer;
+
+	// only written by the producer
+	private volatile long droppedItems;
+
+	/**
+	 * Make an item available to the consumer, replacing any item it hasn't taken yet.  Never blocks.
+	 *
+	 * @return the item that was replaced and never seen by the consumer, or null if the slot was empty.
+	 */
+	public T offer(T item)
+	{
+		T staleItem = pendingItem.getAndSet(item);
+
+		if(staleItem != null)
+		{
+			++droppedItems;
+		}
+
+		Thread waitingConsumer = consumer;
+		if(waitingConsumer != null)
+		{
+			LockSupport.unpark(waitingConsumer);
+		}
+
+		return staleItem;
+	}
+
+	/**
+	 * Take the newest item, waiting for one to be offered if the slot is empty.
+	 */
+	public T take() throws InterruptedException
+	{
+		consumer = Thread.currentThread();
+
+		while(true)
+		{
+			T item = pendingItem.getAndSet(null);
+
+			if(item != null)
+			{
+				return item;
+			}
+
+			LockSupport.park(this);
+
+			if(Thread.interrupted())
+			{
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Take the newest item without waiting.
+	 *
+	 * @return the item, or null if the slot was empty.
+	 */
+	public T poll()
+	{
+		return pendingItem.getAndSet(null);
+	}
+
+	/**
+	 * @return how many items were replaced before the consumer got to them
+	 */
+	public long getDroppedItems()
+	{
+		return droppedItems;
+	}
+}
@@ -0,0 +1,313 @@
+package org.team3128.narwhalvision;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Records camera frames and the targets found in them to a FrameRecording file, so a match can be replayed later.
+ *
+ * The file is a fixed size ring which is memory mapped when recording starts, so once it is full the oldest frames are
+ * overwritten and writing never has to grow the file or make a system call.
+ *
+ * The VisionWorker hands over each frame after processing it, and this thread copies it into the file and gives it back to the
+ * worker's pool.  So the camera thread does no extra work, and if the storage can't keep up, frames are dropped here instead of
+ * holding anything else up.
+ */
+public class FrameRecorder implements Runnable
+{
+	private final static String TAG = "NVRecorder";
+
+	// biggest recording file to make.  At 640x480, this is about 18 seconds of frames at 30 fps.
+	private final static long MAX_FILE_SIZE = 256L * 1024 * 1024;
+
+	private final File directory;
+	private final ObjectPool<VisionFrame> framePool;
+	private final float horizontalFOV, verticalFOV;
+
+	private final FrameExchanger<VisionFrame> frameExchanger;
+
+	private Thread thread;
+
+	private volatile boolean recording;
+
+	// increases every time recording is switched on, so each recording session gets its own file
+	// only written by the thread calling setRecording()
+	private volatile int session;
+
+	// only used by the recording thread
+	private RandomAccessFile file;
+	private MappedByteBuffer mappedFile;
+	private int fileSession, failedSession;
+	private int fileWidth, fileHeight;
+	private int slotSize, slotCount, nextSlot;
+	private byte[] frameBytes;
+
+	// only written by the recording thread
+	private volatile long framesRecorded;
+	private volatile long writeFailures;
+
+	/**
+	 * @param directory where to create the recording files
+	 * @param framePool where to return frames once they are recorded
+	 */
+	public FrameRecorder(File directory, ObjectPool<VisionFrame> framePool, float horizontalFOV, float verticalFOV)
+	{
+		this.directory = directory;
+		this.framePool = framePool;
+		this.horizontalFOV = horizontalFOV;
+		this.verticalFOV = verticalFOV;
+
+		frameExchanger = new FrameExchanger<>();
+	}
+
+	public void start()
+	{
+		thread = new Thread(this, TAG);
+		thread.start();
+	}
+
+	/**
+	 * Stop the recording thread and close the file.  Blocks until the thread exits.
+	 */
+	public void stop()
+	{
+		if(thread != null)
+		{
+			thread.interrupt();
+
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+
+			thread = null;
+		}
+
+		VisionFrame unrecordedFrame = frameExchanger.poll();
+		if(unrecordedFrame != null)
+		{
+			framePool.release(unrecordedFrame);
+		}
+	}
+
+	/**
+	 * Switch recording on or off.  Each time it is switched on, a new file is started.
+	 *
+	 * Should always be called from the same thread.
+	 */
+	public void setRecording(boolean recording)
+	{
+		if(recording && !this.recording)
+		{
+			++session;
+		}
+
+		this.recording = recording;
+	}
+
+	public boolean isRecording()
+	{
+		return recording;
+	}
+
+	/**
+	 * Hand a processed frame over to be recorded.  Called from the vision thread, and returns immediately.
+	 *
+	 * @return true if the recorder took the frame and will return it to the pool.  If false, the caller still owns it.
+	 */
+	public boolean offer(VisionFrame frame)
+	{
+		if(!recording)
+		{
+			return false;
+		}
+
+		VisionFrame staleFrame = frameExchanger.offer(frame);
+		if(staleFrame != null)
+		{
+			framePool.release(staleFrame);
+		}
+
+		return true;
+	}
+
+	@Override
+	public void run()
+	{
+		Log.i(TAG, "Starting...");
+
+		while(!Thread.currentThread().isInterrupted())
+		{
+			VisionFrame frame;
+
+			try
+			{
+				frame = frameExchanger.take();
+			}
+			catch(InterruptedException e)
+			{
+				break;
+			}
+
+			try
+			{
+				if(recording)
+				{
+					recordFrame(frame);
+				}
+			}
+			finally
+			{
+				framePool.release(frame);
+			}
+		}
+
+		closeFile();
+
+		Log.i(TAG, "Stopped.  " + toString());
+	}
+
+	private void recordFrame(VisionFrame frame)
+	{
+		int currentSession = session;
+
+		if(mappedFile == null || fileSession != currentSession || fileWidth != frame.width || fileHeight != frame.height)
+		{
+			if(failedSession == currentSession)
+			{
+				//don't keep trying to make a file that won't fit
+				return;
+			}
+
+			closeFile();
+
+			try
+			{
+				openFile(frame.width, frame.height);
+				fileSession = currentSession;
+			}
+			catch(IOException e)
+			{
+				++writeFailures;
+				failedSession = currentSession;
+				Log.e(TAG, "Failed to create recording file: " + e.getMessage());
+				closeFile();
+				return;
+			}
+		}
+
+		int slotStart = (int) FrameRecording.getSlotPosition(slotSize, nextSlot);
+
+		//mark the slot empty while it is being overwritten
+		mappedFile.putInt(slotStart + FrameRecording.SEQUENCE_OFFSET, 0);
+
+		mappedFile.putLong(slotStart + FrameRecording.CAPTURE_TIME_OFFSET, frame.captureTimeNanos);
+
+		int targetDataLength = 0;
+		if(frame.targets != null)
+		{
+			mappedFile.position(slotStart + FrameRecording.TARGET_DATA_OFFSET);
+			targetDataLength = TargetPacket.encode(mappedFile, (int) frame.frameNumber, frame.captureTimeNanos, frame.targets);
+		}
+		mappedFile.putShort(slotStart + FrameRecording.TARGET_DATA_LENGTH_OFFSET, (short) targetDataLength);
+
+		frame.image.get(0, 0, frameBytes);
+		mappedFile.position(slotStart + FrameRecording.FRAME_OFFSET);
+		mappedFile.put(frameBytes);
+
+		//written last, so the slot is only valid once everything else is there
+		mappedFile.putInt(slotStart + FrameRecording.SEQUENCE_OFFSET, (int) frame.frameNumber);
+
+		nextSlot = (nextSlot + 1) % slotCount;
+		++framesRecorded;
+	}
+
+	private void openFile(int width, int height) throws IOException
+	{
+		if(directory == null)
+		{
+			throw new IOException("No storage available");
+		}
+
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Could not create " + directory);
+		}
+
+		slotSize = FrameRecording.getSlotSize(FrameRecording.FORMAT_NV21, width, height);
+		slotCount = (int) Math.max(1, (MAX_FILE_SIZE - FrameRecording.HEADER_SIZE) / slotSize);
+		nextSlot = 0;
+
+		fileWidth = width;
+		fileHeight = height;
+		frameBytes = new byte[FrameRecording.getFrameSize(FrameRecording.FORMAT_NV21, width, height)];
+
+		String fileName = "frames-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".nvfr";
+		File recordingFile = new File(directory, fileName);
+
+		long fileSize = FrameRecording.getSlotPosition(slotSize, slotCount);
+
+		//the new file is all zeros, so every slot starts out empty
+		file = new RandomAccessFile(recordingFile, "rw");
+		file.setLength(fileSize);
+		mappedFile = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+		FrameRecording.writeHeader(mappedFile, FrameRecording.FORMAT_NV21, width, height, slotCount, horizontalFOV, verticalFOV);
+
+		Log.i(TAG, "Recording " + slotCount + " frames of " + width + "x" + height + " to " + recordingFile);
+	}
+
+	private void closeFile()
+	{
+		if(mappedFile != null)
+		{
+			mappedFile.force();
+			mappedFile = null;
+		}
+
+		if(file != null)
+		{
+			try
+			{
+				file.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+
+			file = null;
+		}
+	}
+
+	public long getFramesRecorded()
+	{
+		return framesRecorded;
+	}
+
+	/**
+	 * @return number of frames which were replaced by a newer one before they could be written
+	 */
+	public long getFramesDropped()
+	{
+		return frameExchanger.getDroppedItems();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Frames recorded: " + framesRecorded + ", frames dropped: " + getFramesDropped() + ", write failures: " + writeFailures;
+	}
+}
@@ -0,0 +1,113 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the files that camera frames are recorded into, so they can be run through the pipeline again later.
+ *
+ * A recording is a header followed by a fixed number of equally sized slots, one frame per slot.  Slots are written
+ * in a ring, so the newest frames overwrite the oldest ones, and the order of frames comes from their sequence numbers
+ * rather than their position in the file.  All values are big endian.
+ *
+ * <pre>
+ * header (HEADER_SIZE bytes):
+ *   u32  MAGIC
+ *   u16  format version (VERSION)
+ *   u8   frame format (FORMAT_NV21 or FORMAT_RGBA)
+ *   u8   reserved
+ *   u16  frame width
+ *   u16  frame height
+ *   u32  slot size in bytes
+ *   u32  number of slots
+ *   f32  horizontal FOV
+ *   f32  vertical FOV
+ *   (padding)
+ *
+ * slot (slot size bytes each):
+ *   u32  sequence number of the frame, or 0 if the slot is empty or being written
+ *   i64  capture time of the frame, in nanoseconds on the phone's monotonic clock
+ *   u16  length of the target packet
+ *   u16  reserved
+ *   the target packet the phone sent for this frame (see TargetPacket), in a MAX_TARGET_DATA_SIZE area
+ *   the frame, width * height * 3/2 bytes of NV21 or width * height * 4 bytes of RGBA
+ * </pre>
+ *
+ * Writers set a slot's sequence number to 0 before changing it and write the real one last, so a slot that was
+ * cut off part way through (say, by the app being killed) is skipped instead of read as a mix of two frames.
+ *
+ * NOTE: this must not reference Android classes, so that recordings can be read on a normal JVM
+ */
+public class FrameRecording
+{
+	// "NVFR"
+	public final static int MAGIC = 0x4E564652;
+
+	// increase this whenever the layout changes, including when TargetPacket.MAX_PACKET_SIZE does
+	public final static short VERSION = 2;
+
+	public final static byte FORMAT_NV21 = 1;
+	public final static byte FORMAT_RGBA = 2;
+
+	public final static int HEADER_SIZE = 32;
+	public final static int SLOT_HEADER_SIZE = 16;
+
+	// room for the largest possible target packet
+	public final static int MAX_TARGET_DATA_SIZE = TargetPacket.MAX_PACKET_SIZE;
+
+	// positions of fields within a slot
+	public final static int SEQUENCE_OFFSET = 0;
+	public final static int CAPTURE_TIME_OFFSET = 4;
+	public final static int TARGET_DATA_LENGTH_OFFSET = 12;
+	public final static int TARGET_DATA_OFFSET = SLOT_HEADER_SIZE;
+	public final static int FRAME_OFFSET = SLOT_HEADER_SIZE + MAX_TARGET_DATA_SIZE;
+
+	/**
+	 * @return the number of bytes in one frame of the given format and size
+	 */
+	public static int getFrameSize(byte format, int width, int height)
+	{
+		switch(format)
+		{
+			case FORMAT_NV21:
+				return width * height * 3 / 2;
+			case FORMAT_RGBA:
+				return width * height * 4;
+			default:
+				throw new IllegalArgumentException("Unknown frame format " + format);
+		}
+	}
+
+	/**
+	 * @return the size of the slots needed to hold frames of the given format and size
+	 */
+	public static int getSlotSize(byte format, int width, int height)
+	{
+		return FRAME_OFFSET + getFrameSize(format, width, height);
+	}
+
+	/**
+	 * @return the position of a slot in the file
+	 */
+	public static long getSlotPosition(int slotSize, int slot)
+	{
+		return HEADER_SIZE + ((long) slot) * slotSize;
+	}
+
+	/**
+	 * Write a recording header at the start of the buffer.  Does not change the buffer's position.
+	 */
+	public static void writeHeader(ByteBuffer buffer, byte format, int width, int height, int slotCount, float horizontalFOV, float verticalFOV)
+	{
+		buffer.putInt(0, MAGIC);
+		buffer.putShort(4, VERSION);
+		buffer.put(6, format);
+		buffer.put(7, (byte) 0);
+		buffer.putShort(8, (short) width);
+		buffer.putShort(10, (short) height);
+		buffer.putInt(12, getSlotSize(format, width, height));
+		buffer.putInt(16, slotCount);
+		buffer.putFloat(20, horizontalFOV);
+		buffer.putFloat(24, verticalFOV);
+		buffer.putInt(28, 0);
+	}
+}
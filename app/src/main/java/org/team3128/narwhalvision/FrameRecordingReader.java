@@ -0,0 +1,200 @@
+package org.team3128.narwhalvision;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the frames out of a FrameRecording file, oldest first.
+ *
+ * The file is memory mapped, so frames are copied straight from the page cache into the caller's array.
+ *
+ * NOTE: this must not reference Android classes, so that recordings can be read on a normal JVM
+ */
+public class FrameRecordingReader
+{
+	private final RandomAccessFile file;
+	private final MappedByteBuffer data;
+
+	private final byte format;
+	private final int width, height;
+	private final int slotSize;
+	private final float horizontalFOV, verticalFOV;
+
+	// positions of the filled slots, in the order the frames were captured
+	private final long[] framePositions;
+
+	public FrameRecordingReader(File recordingFile) throws IOException
+	{
+		file = new RandomAccessFile(recordingFile, "r");
+
+		try
+		{
+			long fileSize = file.length();
+			if(fileSize < FrameRecording.HEADER_SIZE || fileSize > Integer.MAX_VALUE)
+			{
+				throw new IOException(recordingFile + " is not a frame recording, or is too big to read");
+			}
+
+			data = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+			if(data.getInt(0) != FrameRecording.MAGIC)
+			{
+				throw new IOException(recordingFile + " is not a frame recording");
+			}
+			if(data.getShort(4) != FrameRecording.VERSION)
+			{
+				throw new IOException(recordingFile + " is version " + data.getShort(4) + " of the recording format, but only version " + FrameRecording.VERSION + " is supported");
+			}
+
+			format = data.get(6);
+			width = data.getShort(8) & 0xFFFF;
+			height = data.getShort(10) & 0xFFFF;
+			slotSize = data.getInt(12);
+			horizontalFOV = data.getFloat(20);
+			verticalFOV = data.getFloat(24);
+
+			int slotCount = data.getInt(16);
+
+			if(slotSize != FrameRecording.getSlotSize(format, width, height) || FrameRecording.getSlotPosition(slotSize, slotCount) > fileSize)
+			{
+				throw new IOException(recordingFile + " has a corrupt header");
+			}
+
+			framePositions = sortSlots(slotCount);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Find the slots with a frame in them, and put them in order of sequence number.
+	 */
+	private long[] sortSlots(int slotCount)
+	{
+		//sequence number in the high half, slot number in the low half, so sorting these sorts by sequence number
+		long[] keys = new long[slotCount];
+		int numFrames = 0;
+
+		for(int slot = 0; slot < slotCount; ++slot)
+		{
+			long sequence = data.getInt((int) FrameRecording.getSlotPosition(slotSize, slot) + FrameRecording.SEQUENCE_OFFSET) & 0xFFFFFFFFL;
+
+			if(sequence != 0)
+			{
+				keys[numFrames++] = (sequence << 32) | slot;
+			}
+		}
+
+		Arrays.sort(keys, 0, numFrames);
+
+		long[] positions = new long[numFrames];
+		for(int frame = 0; frame < numFrames; ++frame)
+		{
+			positions[frame] = FrameRecording.getSlotPosition(slotSize, (int) (keys[frame] & 0xFFFFFFFFL));
+		}
+
+		return positions;
+	}
+
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	/**
+	 * @return FrameRecording.FORMAT_NV21 or FrameRecording.FORMAT_RGBA
+	 */
+	public byte getFormat()
+	{
+		return format;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public float getHorizontalFOV()
+	{
+		return horizontalFOV;
+	}
+
+	public float getVerticalFOV()
+	{
+		return verticalFOV;
+	}
+
+	/**
+	 * @return the size of the array that readFrame() needs
+	 */
+	public int getFrameSize()
+	{
+		return FrameRecording.getFrameSize(format, width, height);
+	}
+
+	/**
+	 * @return the number of frames in the recording
+	 */
+	public int getFrameCount()
+	{
+		return framePositions.length;
+	}
+
+	public int getSequence(int frame)
+	{
+		return data.getInt(slotField(frame, FrameRecording.SEQUENCE_OFFSET));
+	}
+
+	public long getCaptureTimeNanos(int frame)
+	{
+		return data.getLong(slotField(frame, FrameRecording.CAPTURE_TIME_OFFSET));
+	}
+
+	/**
+	 * Copy a frame's pixels into the given array, which must be at least getFrameSize() long.
+	 */
+	public void readFrame(int frame, byte[] destination)
+	{
+		ByteBuffer frameData = data.duplicate();
+		frameData.position(slotField(frame, FrameRecording.FRAME_OFFSET));
+		frameData.get(destination, 0, getFrameSize());
+	}
+
+	/**
+	 * Decode the targets the phone found in a frame when it was recorded.
+	 *
+	 * @return false if none were saved with the frame
+	 */
+	public boolean decodeTargets(int frame, TargetPacketDecoder decoder)
+	{
+		int length = data.getShort(slotField(frame, FrameRecording.TARGET_DATA_LENGTH_OFFSET)) & 0xFFFF;
+		if(length == 0 || length > FrameRecording.MAX_TARGET_DATA_SIZE)
+		{
+			return false;
+		}
+
+		ByteBuffer targetData = data.duplicate();
+		targetData.position(slotField(frame, FrameRecording.TARGET_DATA_OFFSET));
+		targetData.limit(targetData.position() + length);
+
+		return decoder.decode(targetData);
+	}
+
+	private int slotField(int frame, int offset)
+	{
+		return (int) framePositions[frame] + offset;
+	}
+}
@@ -0,0 +1,337 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Lookup table which stores, for every possible 24 bit color, whether it is inside an HSV threshold range.
+ *
+ * The HSV values are calculated with the same integer math that OpenCV uses for its 8 bit COLOR_RGB2HSV conversion,
+ * so a mask made with this table is identical to one made by cvtColor() and inRange().
+ *
+ * The table can be indexed by RGB colors, or by the YUV colors that the camera produces.  A YUV table includes OpenCV's
+ * COLOR_YUV2RGB_NV21 conversion, so thresholding the raw camera image gives the same result as thresholding the RGBA one.
+ *
+ * Building the table is slow (it converts all 16.7 million colors), but using it is just a bit lookup per pixel.
+ * Objects of this class are immutable once built, so they can be handed between threads.
+ *
+ * NOTE: this class must not reference Android or OpenCV classes so that it can be tested on a normal JVM.
+ */
+public class HSVRangeTable
+{
+	// one bit for each 24 bit color
+	private final static int TABLE_WORDS = (1 << 24) / 32;
+
+	// fixed point shift used by OpenCV's conversion
+	private final static int HSV_SHIFT = 12;
+
+	// 8 bit OpenCV hue goes from 0 to 180
+	private final static int HUE_RANGE = 180;
+
+	// fixed point constants for OpenCV's ITU-R BT.601 YUV to RGB conversion
+	private final static int YUV_SHIFT = 20;
+	private final static int YUV_CY = 1220542;
+	private final static int YUV_CUB = 2116026;
+	private final static int YUV_CUG = -409993;
+	private final static int YUV_CVG = -852492;
+	private final static int YUV_CVR = 1673527;
+
+	/**
+	 * The color space that the table is indexed by.
+	 */
+	public enum ColorFormat
+	{
+		RGB,
+		YUV
+	}
+
+	private final static int[] SATURATION_DIV_TABLE = new int[256];
+	private final static int[] HUE_DIV_TABLE = new int[256];
+
+	static
+	{
+		// same tables as OpenCV's RGB2HSV_b (the 0 entries are never used to divide)
+		for(int index = 1; index < 256; ++index)
+		{
+			SATURATION_DIV_TABLE[index] = (int) Math.rint((255 << HSV_SHIFT) / (double) index);
+			HUE_DIV_TABLE[index] = (int) Math.rint((HUE_RANGE << HSV_SHIFT) / (6.0 * index));
+		}
+	}
+
+	private final int[] table;
+
+	public final ColorFormat format;
+
+	public final int lowH, lowS, lowV, highH, highS, highV;
+
+	/**
+	 * Build an RGB table for the given range.  All limits are inclusive, like Core.inRange().
+	 */
+	public HSVRangeTable(int lowH, int lowS, int lowV, int highH, int highS, int highV)
+	{
+		this(ColorFormat.RGB, lowH, lowS, lowV, highH, highS, highV);
+	}
+
+	/**
+	 * Build a table for the given range, indexed by colors in the given format.  All limits are inclusive, like Core.inRange().
+	 */
+	public HSVRangeTable(ColorFormat format, int lowH, int lowS, int lowV, int highH, int highS, int highV)
+	{
+		this.format = format;
+		this.lowH = lowH;
+		this.lowS = lowS;
+		this.lowV = lowV;
+		this.highH = highH;
+		this.highS = highS;
+		this.highV = highV;
+
+		table = new int[TABLE_WORDS];
+
+		for(int first = 0; first < 256; ++first)
+		{
+			for(int second = 0; second < 256; ++second)
+			{
+				int rowIndex = (first << 16) | (second << 8);
+
+				for(int third = 0; third < 256; ++third)
+				{
+					int hsv;
+					if(format == ColorFormat.YUV)
+					{
+						int rgb = yuvToRGB(first, second, third);
+						hsv = rgbToHSV(rgb >>> 16, (rgb >>> 8) & 0xFF, rgb & 0xFF);
+					}
+					else
+					{
+						hsv = rgbToHSV(first, second, third);
+					}
+
+					int hue = hsv >>> 16;
+					int saturation = (hsv >>> 8) & 0xFF;
+					int value = hsv & 0xFF;
+
+					if(hue >= lowH && hue <= highH && saturation >= lowS && saturation <= highS && value >= lowV && value <= highV)
+					{
+						int index = rowIndex | third;
+						table[index >>> 5] |= 1 << (index & 31);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convert a color to HSV exactly like OpenCV's 8 bit COLOR_RGB2HSV conversion does.
+	 *
+	 * @return the HSV color packed as 0x00HHSSVV
+	 */
+	public static int rgbToHSV(int red, int green, int blue)
+	{
+		int value = Math.max(red, Math.max(green, blue));
+		int min = Math.min(red, Math.min(green, blue));
+		int diff = value - min;
+
+		// these are all ones if the channel is the max
+		int redMask = value == red ? -1 : 0;
+		int greenMask = value == green ? -1 : 0;
+
+		int saturation = (diff * SATURATION_DIV_TABLE[value] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT;
+
+		int hue = (redMask & (green - blue)) + (~redMask & ((greenMask & (blue - red + 2 * diff)) + (~greenMask & (red - green + 4 * diff))));
+		hue = (hue * HUE_DIV_TABLE[diff] + (1 << (HSV_SHIFT - 1))) >> HSV_SHIFT;
+		hue += hue < 0 ? HUE_RANGE : 0;
+
+		return (hue << 16) | (saturation << 8) | value;
+	}
+
+	/**
+	 * Convert a camera color to RGB exactly like OpenCV's COLOR_YUV2RGB_NV21 conversion does.
+	 *
+	 * @return the RGB color packed as 0x00RRGGBB
+	 */
+	public static int yuvToRGB(int y, int u, int v)
+	{
+		int luma = Math.max(0, y - 16) * YUV_CY;
+		u -= 128;
+		v -= 128;
+
+		int red = (luma + (1 << (YUV_SHIFT - 1)) + YUV_CVR * v) >> YUV_SHIFT;
+		int green = (luma + (1 << (YUV_SHIFT - 1)) + YUV_CVG * v + YUV_CUG * u) >> YUV_SHIFT;
+		int blue = (luma + (1 << (YUV_SHIFT - 1)) + YUV_CUB * u) >> YUV_SHIFT;
+
+		return (clampByte(red) << 16) | (clampByte(green) << 8) | clampByte(blue);
+	}
+
+	private static int clampByte(int value)
+	{
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+
+	/**
+	 * @return true if this table was built for the given format and range
+	 */
+	public boolean matches(ColorFormat format, int lowH, int lowS, int lowV, int highH, int highS, int highV)
+	{
+		return this.format == format
+				&& this.lowH == lowH && this.lowS == lowS && this.lowV == lowV
+				&& this.highH == highH && this.highS == highS && this.highV == highV;
+	}
+
+	/**
+	 * @return true if the color (in the table's format) is inside the threshold range
+	 */
+	public boolean contains(int first, int second, int third)
+	{
+		int index = (first << 16) | (second << 8) | third;
+		return (table[index >>> 5] & (1 << (index & 31))) != 0;
+	}
+
+	/**
+	 * Threshold interleaved 8 bit pixel data in one pass.
+	 *
+	 * @param pixels the source pixels, in RGB order.  Any channels after the third (e.g. alpha) are ignored.
+	 * @param channels number of bytes per source pixel
+	 * @param mask where to write the result: 255 for pixels in the range, 0 for the rest
+	 * @param numPixels how many pixels to process
+	 */
+	public void threshold(byte[] pixels, int channels, byte[] mask, int numPixels)
+	{
+		threshold(pixels, channels, mask, 0, numPixels);
+	}
+
+	/**
+	 * Threshold some of the pixels, e.g. one band of rows.  Pixel n of the source is written to mask[n].
+	 *
+	 * @param firstPixel first pixel to process
+	 * @param numPixels how many pixels to process, starting from firstPixel
+	 */
+	public void threshold(byte[] pixels, int channels, byte[] mask, int firstPixel, int numPixels)
+	{
+		final int[] table = this.table;
+		final int endPixel = firstPixel + numPixels;
+
+		for(int pixel = firstPixel, source = firstPixel * channels; pixel < endPixel; ++pixel, source += channels)
+		{
+			int index = ((pixels[source] & 0xFF) << 16) | ((pixels[source + 1] & 0xFF) << 8) | (pixels[source + 2] & 0xFF);
+
+			// shift the color's bit up to the sign bit, then smear it across the whole word to get 0 or 255
+			mask[pixel] = (byte) ((table[index >>> 5] << (31 - (index & 31))) >> 31);
+		}
+	}
+
+	/**
+	 * Threshold part of an NV21 (YUV420sp) camera image in one pass, optionally downscaling it at the same time.
+	 *
+	 * NV21 images are a full resolution Y plane followed by a half resolution plane of interleaved V and U bytes.
+	 * Only the rows of each plane that the region covers need to be passed in.
+	 *
+	 * The region is in the coordinates of the downscaled image.  Pixel (x, y) of the downscaled image is sampled from pixel (x * step, y * step)
+	 * of the camera image, so only the sampled pixels are ever read.
+	 *
+	 * @param yPlane the Y plane, starting at the region's top row (regionTop * step).  Rows are frameWidth bytes long.
+	 * @param vuPlane the VU plane, starting at the row which holds the region's top row (regionTop * step / 2).
+	 * @param step downscale factor, 1 for full resolution
+	 * @param mask where to write the result, regionWidth bytes per row.
+	 */
+	public void thresholdNV21(byte[] yPlane, byte[] vuPlane, int frameWidth, int regionLeft, int regionTop, int regionWidth, int regionHeight, int step, byte[] mask)
+	{
+		thresholdNV21(yPlane, vuPlane, regionTop * step, frameWidth, regionLeft, regionTop, regionWidth, regionHeight, step, mask, 0);
+	}
+
+	/**
+	 * Threshold part of an NV21 image whose planes were copied starting from some row above the region, e.g. one band of a bigger region.
+	 *
+	 * @param planeFirstRow camera image row that yPlane starts at.  vuPlane starts at the row which holds it (planeFirstRow / 2).
+	 * @param maskOffset index in the mask to write the region's first pixel to
+	 */
+	public void thresholdNV21(byte[] yPlane, byte[] vuPlane, int planeFirstRow, int frameWidth, int regionLeft, int regionTop, int regionWidth, int regionHeight, int step, byte[] mask, int maskOffset)
+	{
+		final int[] table = this.table;
+
+		final int firstRow = planeFirstRow;
+
+		for(int row = 0; row < regionHeight; ++row)
+		{
+			int sourceRow = (regionTop + row) * step;
+
+			int yRowStart = (sourceRow - firstRow) * frameWidth;
+			int vuRowStart = (sourceRow / 2 - firstRow / 2) * frameWidth;
+			int maskIndex = maskOffset + row * regionWidth;
+
+			for(int column = 0; column < regionWidth; ++column, ++maskIndex)
+			{
+				int sourceColumn = (regionLeft + column) * step;
+
+				// each VU pair is shared by a 2x2 block of pixels
+				int vuIndex = vuRowStart + (sourceColumn & ~1);
+
+				int index = ((yPlane[yRowStart + sourceColumn] & 0xFF) << 16) | ((vuPlane[vuIndex + 1] & 0xFF) << 8) | (vuPlane[vuIndex] & 0xFF);
+
+				mask[maskIndex] = (byte) ((table[index >>> 5] << (31 - (index & 31))) >> 31);
+			}
+		}
+	}
+
+	/**
+	 * Threshold interleaved 8 bit pixel data against several tables in one pass, so the pixels are only read once.
+	 *
+	 * @param tables tables in the same format as the pixels.  At most 8.
+	 * @param slotMask where to write the result: bit n of each byte is set if the pixel is inside tables[n]'s range
+	 * @see #threshold(byte[], int, byte[], int)
+	 */
+	public static void thresholdSlots(HSVRangeTable[] tables, int numTables, byte[] pixels, int channels, byte[] slotMask, int numPixels)
+	{
+		for(int pixel = 0, source = 0; pixel < numPixels; ++pixel, source += channels)
+		{
+			int index = ((pixels[source] & 0xFF) << 16) | ((pixels[source + 1] & 0xFF) << 8) | (pixels[source + 2] & 0xFF);
+
+			slotMask[pixel] = (byte) lookupSlots(tables, numTables, index);
+		}
+	}
+
+	/**
+	 * Threshold an NV21 camera image against several tables in one pass, optionally downscaling it at the same time.
+	 *
+	 * @param tables YUV tables.  At most 8.
+	 * @param slotMask where to write the result, regionWidth bytes per row: bit n of each byte is set if the pixel is inside tables[n]'s range
+	 * @see #thresholdNV21(byte[], byte[], int, int, int, int, int, int, byte[])
+	 */
+	public static void thresholdSlotsNV21(HSVRangeTable[] tables, int numTables, byte[] yPlane, byte[] vuPlane, int frameWidth, int regionLeft, int regionTop, int regionWidth, int regionHeight, int step, byte[] slotMask)
+	{
+		final int firstRow = regionTop * step;
+
+		for(int row = 0; row < regionHeight; ++row)
+		{
+			int sourceRow = (regionTop + row) * step;
+
+			int yRowStart = (sourceRow - firstRow) * frameWidth;
+			int vuRowStart = (sourceRow / 2 - firstRow / 2) * frameWidth;
+			int maskIndex = row * regionWidth;
+
+			for(int column = 0; column < regionWidth; ++column, ++maskIndex)
+			{
+				int sourceColumn = (regionLeft + column) * step;
+
+				// each VU pair is shared by a 2x2 block of pixels
+				int vuIndex = vuRowStart + (sourceColumn & ~1);
+
+				int index = ((yPlane[yRowStart + sourceColumn] & 0xFF) << 16) | ((vuPlane[vuIndex + 1] & 0xFF) << 8) | (vuPlane[vuIndex] & 0xFF);
+
+				slotMask[maskIndex] = (byte) lookupSlots(tables, numTables, index);
+			}
+		}
+	}
+
+	/**
+	 * @return a bit for each table, set if the color is inside its range
+	 */
+	private static int lookupSlots(HSVRangeTable[] tables, int numTables, int index)
+	{
+		int word = index >>> 5, bit = index & 31;
+		int slots = 0;
+
+		for(int table = 0; table < numTables; ++table)
+		{
+			slots |= ((tables[table].table[word] >>> bit) & 1) << table;
+		}
+
+		return slots;
+	}
+}
@@ -7,7 +7,6 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
-import android.util.Pair;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -24,7 +23,6 @@ import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.io.File;
-import java.util.ArrayList;
 
 /**
  * Viewer which runs images through the pipeline instead of the camera data.
@@ -97,22 +95,24 @@ public class ImageFileFragment extends NarwhalVisionFragment
 	}
 
 
-	@Override
-	public void onSwapIn()
-	{
-		if(pipeline != null)
-		{
-			pipeline.loadSettings();
-		}
-	}
-
 	public void onDestroy() {
+		releasePipeline();
+
 		super.onDestroy();
 	}
 
+	@Override
+	public void onSwapOut()
+	{
+		//onOpenCVLoaded() makes a new pipeline each time the page is swapped in
+		releasePipeline();
+	}
+
 	@Override
 	public void onOpenCVLoaded()
 	{
+		releasePipeline();
+
 		//these are the Tower Tracker defaults
 		pipeline = new TowerTrackerPipeline(67F, 67F);
 
@@ -122,6 +122,18 @@ public class ImageFileFragment extends NarwhalVisionFragment
 		}
 	}
 
+	/**
+	 * Stop the pipeline's worker threads, if it has any.
+	 */
+	private void releasePipeline()
+	{
+		if(pipeline != null)
+		{
+			pipeline.release();
+			pipeline = null;
+		}
+	}
+
 	/**
 	 * Returns true if refreshImage() can be called, false if invokeImageChooser() must be called first.
 	 * @return
@@ -133,6 +145,12 @@ public class ImageFileFragment extends NarwhalVisionFragment
 
 	private void refreshImage()
 	{
+		//the image is processed when the page is swapped back in
+		if(pipeline == null)
+		{
+			return;
+		}
+
 		Log.i(TAG, "Loading file: " + Settings.testImagePath);
 
 		File imageFile = new File(Settings.testImagePath);
@@ -147,15 +165,15 @@ public class ImageFileFragment extends NarwhalVisionFragment
 
 		Imgproc.cvtColor(testImage, rgbaImg, Imgproc.COLOR_BGRA2RGBA);
 
-		Pair<Mat, ArrayList<TargetInformation>> results = pipeline.processImage(rgbaImg, colorThresholdToggle.isChecked());
+		PipelineResult results = pipeline.processImage(rgbaImg, System.nanoTime(), colorThresholdToggle.isChecked());
 
-		Mat resultImage = results.first;
+		Mat resultImage = results.image;
 
 		//convert Mat to Bitmap
 		Bitmap resultBitmap = Bitmap.createBitmap(resultImage.cols(), resultImage.rows(), Bitmap.Config.ARGB_8888);
 		Utils.matToBitmap(resultImage, resultBitmap);
 
-		Log.v(TAG, "Targets: " + String.valueOf(results.second));
+		Log.v(TAG, "Targets: " + String.valueOf(results.targets));
 
 		resultView.setImageBitmap(resultBitmap);
 	}
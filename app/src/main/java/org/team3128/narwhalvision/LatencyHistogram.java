@@ -0,0 +1,158 @@
+package org.team3128.narwhalvision;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Histogram of the last WINDOW_SIZE durations recorded, which can be read from any thread while it is being written.
+ *
+ * Durations are sorted into buckets that are 1/16 of a power of two wide, so percentiles are accurate to about 6%
+ * and recording or reading never allocates or sorts anything.  When the window is full, each new sample replaces the oldest one.
+ *
+ * Only one thread may call record().  Readers never block it, but may see a sample or two from the middle of an update.
+ *
+ * NOTE: this class must not reference Android or OpenCV classes so that it can be tested on a normal JVM.
+ */
+public class LatencyHistogram
+{
+	// number of samples that the statistics cover
+	public final static int WINDOW_SIZE = 256;
+
+	// each power of two is split into 2^SUB_BUCKET_BITS buckets
+	private final static int SUB_BUCKET_BITS = 4;
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// anything longer is counted as this (about 18 minutes)
+	private final static long MAX_VALUE_NANOS = (1L << 40) - 1;
+
+	private final static int NUM_BUCKETS = bucketIndex(MAX_VALUE_NANOS) + 1;
+
+	private final AtomicIntegerArray bucketCounts = new AtomicIntegerArray(NUM_BUCKETS);
+
+	// only touched by the recording thread
+	private final long[] window = new long[WINDOW_SIZE];
+	private int nextWindowIndex;
+
+	private volatile int sampleCount;
+
+	/**
+	 * Add a duration to the histogram, pushing out the oldest one if the window is full.
+	 */
+	public void record(long nanos)
+	{
+		nanos = Math.max(0, Math.min(nanos, MAX_VALUE_NANOS));
+
+		if(sampleCount == WINDOW_SIZE)
+		{
+			bucketCounts.decrementAndGet(bucketIndex(window[nextWindowIndex]));
+		}
+		else
+		{
+			++sampleCount;
+		}
+
+		window[nextWindowIndex] = nanos;
+		nextWindowIndex = (nextWindowIndex + 1) % WINDOW_SIZE;
+
+		bucketCounts.incrementAndGet(bucketIndex(nanos));
+	}
+
+	/**
+	 * Values below 2 * SUB_BUCKETS get their own buckets.  Above that, the bucket is picked by the
+	 * position of the highest set bit and the SUB_BUCKET_BITS bits below it.
+	 */
+	private static int bucketIndex(long nanos)
+	{
+		if(nanos < 2 * SUB_BUCKETS)
+		{
+			return (int) nanos;
+		}
+
+		int shift = (63 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS;
+
+		return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return the value in the middle of the given bucket
+	 */
+	private static long bucketValue(int index)
+	{
+		if(index < 2 * SUB_BUCKETS)
+		{
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+		return lowerBound + ((1L << shift) >> 1);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the duration that the given percentage of samples are at or below, in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile)
+	{
+		int totalSamples = sampleCount;
+		if(totalSamples == 0)
+		{
+			return 0;
+		}
+
+		long targetRank = Math.max(1, (long) Math.ceil(totalSamples * percentile / 100.0));
+		long rank = 0;
+
+		int lastUsedBucket = 0;
+		for(int index = 0; index < NUM_BUCKETS; ++index)
+		{
+			int count = bucketCounts.get(index);
+			if(count > 0)
+			{
+				rank += count;
+				lastUsedBucket = index;
+
+				if(rank >= targetRank)
+				{
+					return bucketValue(index);
+				}
+			}
+		}
+
+		//the writer moved samples around while we were counting
+		return bucketValue(lastUsedBucket);
+	}
+
+	/**
+	 * @return the longest duration in the window, in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getMax()
+	{
+		for(int index = NUM_BUCKETS - 1; index >= 0; --index)
+		{
+			if(bucketCounts.get(index) > 0)
+			{
+				return bucketValue(index);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return number of samples that the statistics currently cover, up to WINDOW_SIZE
+	 */
+	public int getSampleCount()
+	{
+		return sampleCount;
+	}
+
+	/**
+	 * Formats the statistics in milliseconds, e.g. "p50 1.2 p95 3.4 p99 5.6 max 7.8 ms"
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("p50 %.1f p95 %.1f p99 %.1f max %.1f ms", getPercentile(50) / 1e6, getPercentile(95) / 1e6, getPercentile(99) / 1e6, getMax() / 1e6);
+	}
+}
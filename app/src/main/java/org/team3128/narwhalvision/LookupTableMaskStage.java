@@ -0,0 +1,65 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+/**
+ * Mask stage which thresholds the RGBA frame directly using an HSVRangeTable.
+ *
+ * Instead of two color conversions and inRange() (three passes and two intermediate Mats), this makes one pass over the frame.
+ * The table is only built on the first frame after the limits change, so a pipeline that never sees an RGBA frame never builds one.
+ * The pixel buffers are reused between frames, and only grow, so nothing is allocated when the search region changes size.
+ */
+public class LookupTableMaskStage implements MaskStage
+{
+	private int lowH, lowS, lowV, highH, highS, highV;
+
+	// replaced, never modified, when the limits change.  Null until the first frame.
+	private HSVRangeTable rangeTable;
+
+	private byte[] frameBytes = new byte[0];
+	private byte[] maskBytes = new byte[0];
+
+	@Override
+	public void setLimits(Scalar lowerLimit, Scalar upperLimit)
+	{
+		lowH = (int) lowerLimit.val[0];
+		lowS = (int) lowerLimit.val[1];
+		lowV = (int) lowerLimit.val[2];
+		highH = (int) upperLimit.val[0];
+		highS = (int) upperLimit.val[1];
+		highV = (int) upperLimit.val[2];
+	}
+
+	@Override
+	public void apply(Mat frame, Mat mask)
+	{
+		//building the table is expensive, so don't do it if nothing changed
+		if(rangeTable == null || !rangeTable.matches(HSVRangeTable.ColorFormat.RGB, lowH, lowS, lowV, highH, highS, highV))
+		{
+			rangeTable = new HSVRangeTable(HSVRangeTable.ColorFormat.RGB, lowH, lowS, lowV, highH, highS, highV);
+		}
+
+		int numPixels = frame.rows() * frame.cols();
+		int channels = frame.channels();
+
+		if(frameBytes.length < numPixels * channels)
+		{
+			frameBytes = new byte[numPixels * channels];
+		}
+
+		if(maskBytes.length < numPixels)
+		{
+			maskBytes = new byte[numPixels];
+		}
+
+		frame.get(0, 0, frameBytes, numPixels * channels);
+
+		rangeTable.threshold(frameBytes, channels, maskBytes, numPixels);
+
+		mask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+		//put() stops at the end of the mask, so the rest of the buffer is ignored
+		mask.put(0, 0, maskBytes);
+	}
+}
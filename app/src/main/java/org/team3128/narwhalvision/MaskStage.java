@@ -0,0 +1,25 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+/**
+ * Interface for the first stage of the pipeline, which turns a camera frame into a binary mask of the pixels that are inside the color threshold range.
+ *
+ * Implementations can be swapped in with TowerTrackerPipeline.setMaskStage().
+ */
+public interface MaskStage
+{
+	/**
+	 * Called when the threshold settings change.
+	 * The limits are in OpenCV's 8 bit HSV color space, and are inclusive.
+	 */
+	void setLimits(Scalar lowerLimit, Scalar upperLimit);
+
+	/**
+	 * Threshold an RGBA frame.
+	 *
+	 * @param mask set to a CV_8UC1 Mat the same size as the frame, with 255 for pixels inside the range and 0 for everything else.
+	 */
+	void apply(Mat frame, Mat mask);
+}
@@ -0,0 +1,155 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Mask stage which thresholds a frame for several slots at once.
+ *
+ * Each slot has its own HSVRangeTable, but the frame is only copied out of its Mat and read once:
+ * every pixel's color is looked up in all of the tables, and then the result is split into one mask per slot.
+ * Both RGBA and NV21 frames are supported.  Tables are only built for the format that is actually used, and are kept
+ * until that slot's limits change.
+ */
+public class MultiSlotMaskStage
+{
+	// each slot's table is packed into one bit of the combined mask
+	public final static int MAX_SLOTS = 8;
+
+	private SlotSettings[] slots = new SlotSettings[0];
+
+	// tables for each slot, indexed like slots.  Built when first needed.
+	private final HSVRangeTable[] rgbTables = new HSVRangeTable[MAX_SLOTS];
+	private final HSVRangeTable[] yuvTables = new HSVRangeTable[MAX_SLOTS];
+
+	private byte[] frameBytes = new byte[0];
+	private byte[] yBytes = new byte[0];
+	private byte[] vuBytes = new byte[0];
+
+	// bit n is set for pixels inside slot n's range
+	private byte[] slotMaskBytes = new byte[0];
+
+	private byte[] maskBytes = new byte[0];
+
+	/**
+	 * Called when the settings change.  Only the first MAX_SLOTS slots are used.
+	 */
+	public void setSlots(SlotSettings[] slots)
+	{
+		this.slots = slots;
+	}
+
+	/**
+	 * @return how many slots apply() makes masks for
+	 */
+	public int getNumSlots()
+	{
+		return Math.min(slots.length, MAX_SLOTS);
+	}
+
+	/**
+	 * Threshold an RGBA frame for every slot.
+	 *
+	 * @param masks one Mat for each slot.  Each is set to a CV_8UC1 Mat the same size as the frame, with 255 for pixels inside that slot's range.
+	 */
+	public void apply(Mat frame, Mat[] masks)
+	{
+		int numSlots = getNumSlots();
+		updateTables(rgbTables, HSVRangeTable.ColorFormat.RGB, numSlots);
+
+		int numPixels = frame.rows() * frame.cols();
+		int channels = frame.channels();
+
+		if(frameBytes.length != numPixels * channels)
+		{
+			frameBytes = new byte[numPixels * channels];
+		}
+
+		allocateMasks(numPixels);
+
+		frame.get(0, 0, frameBytes);
+
+		HSVRangeTable.thresholdSlots(rgbTables, numSlots, frameBytes, channels, slotMaskBytes, numPixels);
+
+		splitMasks(masks, numSlots, frame.cols(), frame.rows());
+	}
+
+	/**
+	 * Threshold a whole NV21 frame for every slot.
+	 *
+	 * @param yuvFrame CV_8UC1 Mat holding the NV21 data, (height * 3/2) rows by width columns
+	 * @param scale downscale factor.  The masks are made from every scale-th pixel of every scale-th row.
+	 * @param masks one Mat for each slot.  Each is set to a CV_8UC1 Mat the size of the downscaled frame, with 255 for pixels inside that slot's range.
+	 */
+	public void applyNV21(Mat yuvFrame, int width, int height, int scale, Mat[] masks)
+	{
+		int numSlots = getNumSlots();
+		updateTables(yuvTables, HSVRangeTable.ColorFormat.YUV, numSlots);
+
+		int scaledWidth = width / scale, scaledHeight = height / scale;
+
+		if(yBytes.length != width * height)
+		{
+			yBytes = new byte[width * height];
+		}
+
+		if(vuBytes.length != width * height / 2)
+		{
+			vuBytes = new byte[width * height / 2];
+		}
+
+		allocateMasks(scaledWidth * scaledHeight);
+
+		yuvFrame.get(0, 0, yBytes);
+		yuvFrame.get(height, 0, vuBytes);
+
+		HSVRangeTable.thresholdSlotsNV21(yuvTables, numSlots, yBytes, vuBytes, width, 0, 0, scaledWidth, scaledHeight, scale, slotMaskBytes);
+
+		splitMasks(masks, numSlots, scaledWidth, scaledHeight);
+	}
+
+	/**
+	 * Rebuild any tables whose slot's limits have changed.
+	 */
+	private void updateTables(HSVRangeTable[] tables, HSVRangeTable.ColorFormat format, int numSlots)
+	{
+		for(int index = 0; index < numSlots; ++index)
+		{
+			SlotSettings slot = slots[index];
+
+			//building a table is expensive, so don't do it if nothing changed
+			if(tables[index] == null || !tables[index].matches(format, slot.lowH, slot.lowS, slot.lowV, slot.highH, slot.highS, slot.highV))
+			{
+				tables[index] = new HSVRangeTable(format, slot.lowH, slot.lowS, slot.lowV, slot.highH, slot.highS, slot.highV);
+			}
+		}
+	}
+
+	private void allocateMasks(int numPixels)
+	{
+		if(slotMaskBytes.length != numPixels)
+		{
+			slotMaskBytes = new byte[numPixels];
+			maskBytes = new byte[numPixels];
+		}
+	}
+
+	/**
+	 * Turn each bit of slotMaskBytes into its own 0 or 255 mask.
+	 */
+	private void splitMasks(Mat[] masks, int numSlots, int width, int height)
+	{
+		int numPixels = width * height;
+
+		for(int slot = 0; slot < numSlots; ++slot)
+		{
+			for(int pixel = 0; pixel < numPixels; ++pixel)
+			{
+				maskBytes[pixel] = (byte) -((slotMaskBytes[pixel] >> slot) & 1);
+			}
+
+			masks[slot].create(height, width, CvType.CV_8UC1);
+			masks[slot].put(0, 0, maskBytes);
+		}
+	}
+}
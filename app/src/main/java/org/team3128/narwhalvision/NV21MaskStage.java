@@ -0,0 +1,114 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+ * Mask stage which thresholds the camera's raw NV21 (YUV420sp) image directly, with no color conversions at all.
+ *
+ * The HSV limits are translated to YUV by building a YUV-indexed HSVRangeTable, so the mask is the same one
+ * the RGBA path would produce.  Only the rows of the frame that are sampled are copied out of the Mat, one at a time, into reused row buffers.
+ *
+ * The frame can also be downscaled while it is thresholded, by sampling every Nth pixel.
+ *
+ * The table is only built on the first frame after the limits change, instead of on whichever thread changed them.
+ */
+public class NV21MaskStage
+{
+	private int lowH, lowS, lowV, highH, highS, highV;
+
+	// replaced, never modified, when the limits change.  Null until the first frame.
+	private HSVRangeTable rangeTable;
+
+	// one row of each plane, the width of the frame
+	private byte[] yRow = new byte[0];
+	private byte[] vuRow = new byte[0];
+	private byte[] maskBytes = new byte[0];
+
+	/**
+	 * Called when the threshold settings change.
+	 * The limits are in OpenCV's 8 bit HSV color space, and are inclusive.
+	 */
+	public void setLimits(Scalar lowerLimit, Scalar upperLimit)
+	{
+		lowH = (int) lowerLimit.val[0];
+		lowS = (int) lowerLimit.val[1];
+		lowV = (int) lowerLimit.val[2];
+		highH = (int) upperLimit.val[0];
+		highS = (int) upperLimit.val[1];
+		highV = (int) upperLimit.val[2];
+	}
+
+	/**
+	 * Get the YUV table for the current limits, building it if this is the first time it's needed since they changed.
+	 * Other stages which threshold the same frames can use it instead of building their own.
+	 */
+	public HSVRangeTable getTable()
+	{
+		//building the table is expensive, so don't do it if nothing changed
+		if(rangeTable == null || !rangeTable.matches(HSVRangeTable.ColorFormat.YUV, lowH, lowS, lowV, highH, highS, highV))
+		{
+			rangeTable = new HSVRangeTable(HSVRangeTable.ColorFormat.YUV, lowH, lowS, lowV, highH, highS, highV);
+		}
+
+		return rangeTable;
+	}
+
+	/**
+	 * Threshold part of an NV21 frame.
+	 *
+	 * @param yuvFrame CV_8UC1 Mat holding the NV21 data, (height * 3/2) rows by width columns, like the one JavaCameraView receives.
+	 * @param scale downscale factor.  The mask is made from every scale-th pixel of every scale-th row.
+	 * @param region area of the downscaled frame to threshold, or null for the whole thing.
+	 * @param mask set to a CV_8UC1 Mat the size of the region, with 255 for pixels inside the range and 0 for everything else.
+	 */
+	public void apply(Mat yuvFrame, int width, int height, int scale, Rect region, Mat mask)
+	{
+		int left = 0, top = 0, regionWidth = width / scale, regionHeight = height / scale;
+
+		if(region != null)
+		{
+			left = region.x;
+			top = region.y;
+			regionWidth = region.width;
+			regionHeight = region.height;
+		}
+
+		if(yRow.length != width)
+		{
+			yRow = new byte[width];
+			vuRow = new byte[width];
+		}
+
+		//only grows, since the region changes size almost every frame
+		if(maskBytes.length < regionWidth * regionHeight)
+		{
+			maskBytes = new byte[regionWidth * regionHeight];
+		}
+
+		HSVRangeTable table = getTable();
+
+		int vuRowInBuffer = -1;
+
+		for(int row = 0; row < regionHeight; ++row)
+		{
+			int sourceRow = (top + row) * scale;
+
+			yuvFrame.get(sourceRow, 0, yRow, width);
+
+			//at full scale each VU row is shared by two Y rows, so it only has to be copied once
+			if(sourceRow / 2 != vuRowInBuffer)
+			{
+				vuRowInBuffer = sourceRow / 2;
+				yuvFrame.get(height + vuRowInBuffer, 0, vuRow, width);
+			}
+
+			table.thresholdNV21(yRow, vuRow, sourceRow, width, left, top + row, regionWidth, 1, scale, maskBytes, row * regionWidth);
+		}
+
+		mask.create(regionHeight, regionWidth, CvType.CV_8UC1);
+		mask.put(0, 0, maskBytes);
+	}
+}
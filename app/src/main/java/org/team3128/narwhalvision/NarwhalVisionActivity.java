@@ -12,22 +12,16 @@ import android.support.v4.view.ViewPager;
 import android.util.Log;
 import android.view.WindowManager;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.ByteBufferInput;
-import com.esotericsoftware.kryo.io.ByteBufferOutput;
-
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.nio.ByteBuffer;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 
 public class NarwhalVisionActivity extends FragmentActivity
 {
@@ -55,16 +49,18 @@ public class NarwhalVisionActivity extends FragmentActivity
 	private final static String ROBORIO_SERVICE_TYPE="_http._tcp.";
 
 	//------------------------------------
-	private Kryo kryo;
-	private ByteBufferInput packetReader;
-	private ByteBufferOutput packetWriter;
-
-	private Thread recieveThread;
+	//sends target packets on its own thread
+	private TargetSender targetSender;
 
 	//commands need to be run at a time when the vision code is not processing a frame
-	//so we just queue commands to be executed by the main thread
-	private BlockingQueue<PhoneCommand> commandQueue;
-	private DatagramSocket roborioSocket;
+	//so the receiver queues them to be executed by the vision thread
+	private CommandReceiver commandReceiver;
+
+	//one unconnected channel sends targets to every subscriber, and receives commands from the RoboRIO
+	private DatagramChannel targetChannel;
+
+	//null until the RoboRIO is found
+	private volatile TargetSubscriber roborioSubscriber;
 
 	//legal port per the 2016 game manual
 	final static int NARWHAL_VISION_PORT = 3128;
@@ -135,56 +131,27 @@ public class NarwhalVisionActivity extends FragmentActivity
 	{
 		Log.i(TAG, "Found roborio at " + roborioAddress.toString());
 
-		//create it if it hasn't been created yet
-		if (roborioSocket == null)
+		InetSocketAddress roborioSocketAddress = new InetSocketAddress(roborioAddress, NARWHAL_VISION_PORT);
+		TargetSubscriber oldSubscriber = roborioSubscriber;
+
+		if (oldSubscriber == null || !roborioSocketAddress.equals(oldSubscriber.address)) //check to make sure it isn't the same one
 		{
-			try
-			{
-				roborioSocket = new DatagramSocket();
-			}
-			catch (SocketException e)
+			//the RoboRIO gets every packet, so no rate limit
+			TargetSubscriber newSubscriber = new TargetSubscriber(roborioSocketAddress, 0);
+
+			if(oldSubscriber != null)
 			{
-				Log.e(TAG, "Failed to create roborio socket!");
-				e.printStackTrace();
+				targetSender.removeSubscriber(oldSubscriber);
 			}
-		}
+			targetSender.addSubscriber(newSubscriber);
+			commandReceiver.setRobotAddress(roborioSocketAddress);
 
-		if (roborioSocket.getInetAddress() != roborioAddress) //check to make sure it isn't the same one
-		{
-			roborioSocket.connect(roborioAddress, NARWHAL_VISION_PORT);
+			roborioSubscriber = newSubscriber;
 
 			if (pages[0] != null && currentPage == 0)
 			{
 				((CameraFragment) pages[0]).onRIOConnected();
 			}
-
-			recieveThread = new Thread(new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					Log.d("NV Cmd Reciever", "Starting...");
-
-					byte[] recvBuffer = new byte[SERIALIZATION_BUFFER_SIZE];
-
-					DatagramPacket commandPacket = new DatagramPacket(recvBuffer, SERIALIZATION_BUFFER_SIZE);
-
-					while(!Thread.interrupted())
-					{
-						try
-						{
-							roborioSocket.receive(commandPacket);
-							packetReader.setBuffer(recvBuffer);
-							PhoneCommand command = (PhoneCommand) kryo.readClassAndObject(packetReader);
-							commandQueue.add(command);
-						}
-						catch (IOException e)
-						{
-							e.printStackTrace();
-						}
-					}
-				}
-			});
 		}
 	}
 
@@ -240,7 +207,7 @@ public class NarwhalVisionActivity extends FragmentActivity
 	protected void onCreate(Bundle savedInstanceState)
 	{
 		super.onCreate(savedInstanceState);
-		Settings.setSharedPreferences(getSharedPreferences(PREFS_FILE_NAME, Context.MODE_PRIVATE));
+		SettingsPreferences.setSharedPreferences(getSharedPreferences(PREFS_FILE_NAME, Context.MODE_PRIVATE));
 
 		//-------------------------------------------------------------------
 		// Set up paged layout
@@ -317,18 +284,71 @@ public class NarwhalVisionActivity extends FragmentActivity
 		// Set up serializer
 		//-------------------------------------------------------------------
 
-		kryo = new Kryo();
-		kryo.register(TargetInformation.class, 0);
-		kryo.register(SwitchSlotCommand.class, 1);
-		packetReader = new ByteBufferInput();
-		packetWriter = new ByteBufferOutput();
+		targetSender = new TargetSender();
+		targetSender.start();
+
+		commandReceiver = new CommandReceiver();
+		commandReceiver.start();
+
+		openTargetChannel();
+	}
+
+	/**
+	 * Open the channel that targets are sent and commands are received on.  It's opened right away, rather than once the RoboRIO is found,
+	 * so that other subscribers get targets even when there's no robot.
+	 */
+	private void openTargetChannel()
+	{
+		try
+		{
+			//the channel lets the target sender send packets without allocating anything
+			targetChannel = DatagramChannel.open();
+
+			//the command receiver waits for packets with a selector, which only works with non-blocking channels
+			targetChannel.configureBlocking(false);
+
+			//any free port.  The robot answers to whichever one the packets come from.
+			targetChannel.socket().bind(null);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to create target socket!");
+			e.printStackTrace();
+			return;
+		}
+
+		targetSender.setChannel(targetChannel);
+		commandReceiver.setChannel(targetChannel);
+	}
+
+	@Override
+	protected void onDestroy()
+	{
+		super.onDestroy();
+
+		targetSender.stop();
+		Log.i(TAG, "Target sender stopped.  " + targetSender);
+
+		commandReceiver.stop();
+
+		if(targetChannel != null)
+		{
+			try
+			{
+				targetChannel.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
 	}
 
 	@Override
 	protected void onStop()
 	{
 		super.onStop();
-		Settings.savePreferences();
+		SettingsPreferences.savePreferences();
 	}
 
 	@Override
@@ -346,26 +366,20 @@ public class NarwhalVisionActivity extends FragmentActivity
 
 	/**
 	 * Execute all commands that have been recieved since the last time this function was called.
-	 * Called from the image processing loop.
-	 *
-	 * @return true if the pipeline needs to reload its settings
+	 * Called from the image processing loop before each frame.
 	 */
-	public boolean executeCommands()
+	public void executeCommands(CommandContext context)
 	{
-		boolean needReload = false;
-		while(commandQueue.size() > 0)
-		{
-			try
-			{
-				needReload |= commandQueue.take().execute();
-			}
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
-		}
+		commandReceiver.executeCommands(context);
+	}
 
-		return needReload;
+	/**
+	 * Acknowledge the commands which took effect in the frame that was just processed.
+	 * Called from the image processing loop after each frame.
+	 */
+	public void checkPendingCommands(CommandContext context)
+	{
+		commandReceiver.checkPendingCommands(context);
 	}
 
 	boolean notifyFirstFragmentOpenCVLoaded = false;
@@ -414,38 +428,41 @@ public class NarwhalVisionActivity extends FragmentActivity
 
 	public boolean hasFoundRIO()
 	{
-		return roborioSocket != null && roborioSocket.isConnected();
+		return roborioSubscriber != null;
 	}
 
-	// static buffer used to hold serialized objects
-	// no, as far as I can tell, there's no way to not have a fixed size buffer
-	final static int SERIALIZATION_BUFFER_SIZE=1024;
-
-	public void sendTargetInformation(ArrayList<TargetInformation> infoList)
+	/**
+	 * Send the targets found in a frame to the robot.  Called from the vision thread, and returns without waiting for the packet to be sent.
+	 *
+	 * @param sequence the frame's number
+	 * @param captureTimeNanos when the frame was captured, from System.nanoTime()
+	 */
+	public void sendTargetInformation(int sequence, long captureTimeNanos, ArrayList<TargetInformation> infoList)
 	{
-		if(roborioSocket != null)
-		{
-			ByteBuffer serializedBytes = ByteBuffer.allocate(SERIALIZATION_BUFFER_SIZE);
-			packetWriter.setBuffer(serializedBytes);
-
-			for(TargetInformation info : infoList)
-			{
-				kryo.writeObject(packetWriter, info);
-			}
+		targetSender.send(sequence, captureTimeNanos, infoList);
+	}
 
-			packetWriter.flush();
+	/**
+	 * Stream the targets found in a frame to the robot as a keyframe or delta.  Called from the vision thread for every processed frame.
+	 */
+	public void streamTargetInformation(int sequence, long captureTimeNanos, List<TargetInformation> infoList)
+	{
+		targetSender.stream(sequence, captureTimeNanos, infoList);
+	}
 
-			DatagramPacket packet = new DatagramPacket(serializedBytes.array(), SERIALIZATION_BUFFER_SIZE);
+	/**
+	 * Get the target sender, which has the packet statistics.
+	 */
+	public TargetSender getTargetSender()
+	{
+		return targetSender;
+	}
 
-			try
-			{
-				roborioSocket.send(packet);
-			}
-			catch (IOException e)
-			{
-				Log.e(TAG, "Failed to send target information to RoboRIO: " + e.getMessage());
-				e.printStackTrace();
-			}
-		}
+	/**
+	 * Get the command receiver, which has the command statistics and sends responses.
+	 */
+	public CommandReceiver getCommandReceiver()
+	{
+		return commandReceiver;
 	}
 }
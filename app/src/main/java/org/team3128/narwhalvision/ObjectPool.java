@@ -0,0 +1,55 @@
+package org.team3128.narwhalvision;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size, lock-free pool of reusable objects (e.g. frame buffers) that can be shared between threads.
+ *
+ * Acquiring and releasing never allocate, so this is safe to use on the camera thread.
+ */
+public class ObjectPool<T>
+{
+	private final AtomicReferenceArray<T> slots;
+
+	public ObjectPool(int capacity)
+	{
+		slots = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Take an object out of the pool.
+	 *
+	 * @return the object, or null if the pool is empty.
+	 */
+	public T acquire()
+	{
+		for(int index = 0; index < slots.length(); ++index)
+		{
+			T item = slots.get(index);
+			if(item != null && slots.compareAndSet(index, item, null))
+			{
+				return item;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Put an object (back) into the pool.
+	 *
+	 * @return false if the pool was already full, in which case the object was not added.
+	 */
+	public boolean release(T item)
+	{
+		for(int index = 0; index < slots.length(); ++index)
+		{
+			if(slots.compareAndSet(index, null, item))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,44 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Mask stage which uses OpenCV to convert the frame to HSV, then runs inRange() on it.
+ *
+ * This is how the pipeline originally worked.  It is kept around as a reference for the lookup table stage.
+ */
+public class OpenCVMaskStage implements MaskStage
+{
+	private Mat rgbImg, hsvImage;
+
+	private Scalar lowerLimit, upperLimit;
+
+	public OpenCVMaskStage()
+	{
+		rgbImg = new Mat();
+		hsvImage = new Mat();
+	}
+
+	@Override
+	public void setLimits(Scalar lowerLimit, Scalar upperLimit)
+	{
+		this.lowerLimit = lowerLimit;
+		this.upperLimit = upperLimit;
+	}
+
+	@Override
+	public void apply(Mat frame, Mat mask)
+	{
+		//RGBA to RGB
+		Imgproc.cvtColor(frame, rgbImg, Imgproc.COLOR_RGBA2RGB);
+
+		//RGB to HSV
+		Imgproc.cvtColor(rgbImg, hsvImage, Imgproc.COLOR_RGB2HSV);
+
+		//HSV threshold
+		Core.inRange(hsvImage, lowerLimit, upperLimit, mask);
+	}
+}
@@ -0,0 +1,571 @@
+package org.team3128.narwhalvision;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thresholds a frame and labels its blobs on several threads at once, by splitting it into horizontal bands.
+ *
+ * Each band is thresholded into its rows of a shared mask, then labeled by its own BlobLabeler, on a fixed pool of worker threads.
+ * Afterwards the calling thread joins blobs which cross from one band into the next, by comparing the runs on
+ * the last row of each band with the runs on the first row of the band below it.  The blobs come out the same, and in the same order,
+ * as if the whole mask had been labeled by one BlobLabeler.
+ *
+ * With one thread everything runs on the calling thread and no pool is created.
+ * Only one thread may use a labeler at a time, and shutdown() should be called when it isn't needed any more.
+ *
+ * NOTE: this must not reference Android or OpenCV classes, so that it can be benchmarked on a normal JVM
+ */
+public class ParallelBlobLabeler
+{
+	private enum Phase
+	{
+		THRESHOLD_RGB,
+		THRESHOLD_NV21,
+		LABEL
+	}
+
+	private final int numThreads;
+
+	// null when there's only one thread
+	private final ExecutorService workers;
+
+	private final BlobLabeler[] bandLabelers;
+	private final BandTask[] bandTasks;
+	private final Future<?>[] bandResults;
+
+	// row that each band starts at, with the mask's height at the end
+	private final int[] bandTops;
+	private int numBands;
+
+	// what the band tasks do next, and the values they need.  Only changed while no tasks are running.
+	private Phase phase;
+	private HSVRangeTable table;
+	private byte[] pixels, yPlane, vuPlane;
+	private int channels, planeFirstRow, frameWidth, regionLeft, regionTop, step;
+	private int offsetX, offsetY;
+
+	private byte[] mask = new byte[0];
+	private byte[] ownMask = new byte[0];
+	private int width, height;
+
+	// first blob number of each band's blobs, when they're all numbered together
+	private final int[] bandFirstBlobs;
+
+	// union-find parent of each band blob, and which merged blob each root became
+	private int[] blobParents = new int[256];
+	private int[] mergedBlobs = new int[256];
+
+	// per blob values, indexed by merged blob number.  Ends are exclusive.
+	private int[] lefts = new int[64], tops = new int[64], rights = new int[64], bottoms = new int[64];
+	private long[] areas = new long[64];
+	private long[] sumsX = new long[64], sumsY = new long[64];
+
+	private int numBlobs;
+
+	/**
+	 * @param numThreads how many bands to split frames into, and how many threads to process them on
+	 */
+	public ParallelBlobLabeler(int numThreads)
+	{
+		if(numThreads < 1)
+		{
+			throw new IllegalArgumentException("numThreads must be at least 1, got " + numThreads);
+		}
+
+		this.numThreads = numThreads;
+
+		workers = numThreads > 1 ? Executors.newFixedThreadPool(numThreads, new WorkerThreadFactory()) : null;
+
+		bandLabelers = new BlobLabeler[numThreads];
+		bandTasks = new BandTask[numThreads];
+		bandResults = new Future<?>[numThreads];
+		for(int band = 0; band < numThreads; ++band)
+		{
+			bandLabelers[band] = new BlobLabeler();
+			bandTasks[band] = new BandTask(band);
+		}
+
+		bandTops = new int[numThreads + 1];
+		bandFirstBlobs = new int[numThreads + 1];
+	}
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Threshold interleaved 8 bit RGB(A) pixels into the labeler's own mask, ready for label().
+	 *
+	 * @see HSVRangeTable#threshold(byte[], int, byte[], int)
+	 */
+	public void threshold(HSVRangeTable table, byte[] pixels, int channels, int width, int height)
+	{
+		useOwnMask(width, height);
+
+		this.table = table;
+		this.pixels = pixels;
+		this.channels = channels;
+
+		runBands(Phase.THRESHOLD_RGB);
+
+		this.pixels = null;
+	}
+
+	/**
+	 * Threshold part of an NV21 image into the labeler's own mask, ready for label().
+	 *
+	 * @param planeFirstRow camera image row that yPlane starts at.  vuPlane starts at the row which holds it (planeFirstRow / 2).
+	 * @see HSVRangeTable#thresholdNV21(byte[], byte[], int, int, int, int, int, int, int, byte[], int)
+	 */
+	public void thresholdNV21(HSVRangeTable table, byte[] yPlane, byte[] vuPlane, int planeFirstRow, int frameWidth, int regionLeft, int regionTop, int regionWidth, int regionHeight, int step)
+	{
+		useOwnMask(regionWidth, regionHeight);
+
+		this.table = table;
+		this.yPlane = yPlane;
+		this.vuPlane = vuPlane;
+		this.planeFirstRow = planeFirstRow;
+		this.frameWidth = frameWidth;
+		this.regionLeft = regionLeft;
+		this.regionTop = regionTop;
+		this.step = step;
+
+		runBands(Phase.THRESHOLD_NV21);
+
+		this.yPlane = null;
+		this.vuPlane = null;
+	}
+
+	/**
+	 * Label the mask made by the last threshold() or thresholdNV21() call.
+	 *
+	 * @param offsetX added to every x coordinate, e.g. the corner of the region the mask was taken from
+	 * @param offsetY added to every y coordinate
+	 * @param minBoundingBoxArea blobs with smaller bounding boxes than this are skipped
+	 * @return the number of blobs kept
+	 */
+	public int label(int offsetX, int offsetY, double minBoundingBoxArea)
+	{
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+
+		//a blob's bands may each be too small on their own, so nothing is dropped until they are joined
+		runBands(Phase.LABEL);
+
+		mergeBands(minBoundingBoxArea);
+
+		return numBlobs;
+	}
+
+	/**
+	 * Label an existing mask.
+	 *
+	 * @param mask width * height bytes, where any nonzero value is set.  Not modified.
+	 */
+	public int label(byte[] mask, int width, int height, int offsetX, int offsetY, double minBoundingBoxArea)
+	{
+		setBands(width, height);
+		this.mask = mask;
+
+		return label(offsetX, offsetY, minBoundingBoxArea);
+	}
+
+	/**
+	 * @return the mask from the last threshold() or thresholdNV21() call.  The first width * height bytes are 0 or 255, and the rest are unused.
+	 * Only valid until the next call.
+	 */
+	public byte[] getMask()
+	{
+		return ownMask;
+	}
+
+	/**
+	 * Stop the worker threads.  The labeler can't be used afterwards.
+	 */
+	public void shutdown()
+	{
+		if(workers != null)
+		{
+			workers.shutdown();
+		}
+	}
+
+	private void useOwnMask(int width, int height)
+	{
+		if(ownMask.length < width * height)
+		{
+			ownMask = new byte[width * height];
+		}
+
+		setBands(width, height);
+		mask = ownMask;
+	}
+
+	/**
+	 * Split the rows evenly between the bands.  Short masks get fewer bands, so that none are empty.
+	 */
+	private void setBands(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+
+		numBands = Math.max(1, Math.min(numThreads, height));
+
+		for(int band = 0; band <= numBands; ++band)
+		{
+			bandTops[band] = (int) (((long) height) * band / numBands);
+		}
+	}
+
+	/**
+	 * Run one phase on every band, and wait for all of them to finish.
+	 */
+	private void runBands(Phase phase)
+	{
+		this.phase = phase;
+
+		if(workers == null)
+		{
+			runBand(0);
+			return;
+		}
+
+		for(int band = 0; band < numBands; ++band)
+		{
+			bandResults[band] = workers.submit(bandTasks[band]);
+		}
+
+		//bands only take a few milliseconds, so finish them even if this thread is interrupted or one of them fails, and pass the interrupt
+		//or the failure on afterwards.  Giving up early would leave workers writing to the labelers while their results are read.
+		boolean interrupted = false;
+		Throwable failure = null;
+
+		for(int band = 0; band < numBands; ++band)
+		{
+			while(true)
+			{
+				try
+				{
+					//get() also makes the band's writes visible to this thread
+					bandResults[band].get();
+					break;
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+				catch(ExecutionException e)
+				{
+					if(failure == null)
+					{
+						failure = e.getCause();
+					}
+
+					break;
+				}
+			}
+
+			bandResults[band] = null;
+		}
+
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if(failure != null)
+		{
+			throw new RuntimeException("Error processing a band", failure);
+		}
+	}
+
+	private void runBand(int band)
+	{
+		int top = bandTops[band], bandHeight = bandTops[band + 1] - top;
+
+		switch(phase)
+		{
+			case THRESHOLD_RGB:
+				table.threshold(pixels, channels, mask, top * width, bandHeight * width);
+				break;
+			case THRESHOLD_NV21:
+				table.thresholdNV21(yPlane, vuPlane, planeFirstRow, frameWidth, regionLeft, regionTop + top, width, bandHeight, step, mask, top * width);
+				break;
+			case LABEL:
+				bandLabelers[band].label(mask, top * width, width, bandHeight, offsetX, offsetY + top, 0);
+				break;
+		}
+	}
+
+	/**
+	 * Join blobs which cross from one band into the next, add up each one's bands, then drop the ones that are too small.
+	 */
+	private void mergeBands(double minBoundingBoxArea)
+	{
+		int numBandBlobs = 0;
+		for(int band = 0; band < numBands; ++band)
+		{
+			bandFirstBlobs[band] = numBandBlobs;
+			numBandBlobs += bandLabelers[band].size();
+		}
+
+		if(blobParents.length < numBandBlobs)
+		{
+			blobParents = new int[Math.max(blobParents.length * 2, numBandBlobs)];
+			mergedBlobs = new int[blobParents.length];
+		}
+
+		for(int blob = 0; blob < numBandBlobs; ++blob)
+		{
+			blobParents[blob] = blob;
+		}
+
+		for(int band = 0; band + 1 < numBands; ++band)
+		{
+			joinBandEdge(band);
+		}
+
+		//roots are always the blob that was found first, so like BlobLabeler, the blobs stay in the order their first pixels were scanned
+		numBlobs = 0;
+		for(int band = 0; band < numBands; ++band)
+		{
+			BlobLabeler labeler = bandLabelers[band];
+
+			for(int bandBlob = 0; bandBlob < labeler.size(); ++bandBlob)
+			{
+				int blobNumber = bandFirstBlobs[band] + bandBlob;
+				int root = findRoot(blobNumber);
+
+				int left = labeler.getLeft(bandBlob), top = labeler.getTop(bandBlob);
+				int right = left + labeler.getWidth(bandBlob), bottom = top + labeler.getHeight(bandBlob);
+
+				if(root == blobNumber)
+				{
+					if(numBlobs == lefts.length)
+					{
+						growBlobs();
+					}
+
+					int blob = numBlobs++;
+					mergedBlobs[blobNumber] = blob;
+
+					lefts[blob] = left;
+					tops[blob] = top;
+					rights[blob] = right;
+					bottoms[blob] = bottom;
+					areas[blob] = labeler.getArea(bandBlob);
+					sumsX[blob] = labeler.getSumX(bandBlob);
+					sumsY[blob] = labeler.getSumY(bandBlob);
+				}
+				else
+				{
+					//the root's first pixel was scanned before this one's, so its top is already the highest
+					int blob = mergedBlobs[root];
+
+					lefts[blob] = Math.min(lefts[blob], left);
+					rights[blob] = Math.max(rights[blob], right);
+					bottoms[blob] = Math.max(bottoms[blob], bottom);
+					areas[blob] += labeler.getArea(bandBlob);
+					sumsX[blob] += labeler.getSumX(bandBlob);
+					sumsY[blob] += labeler.getSumY(bandBlob);
+				}
+			}
+		}
+
+		//keep the big enough blobs, moving them down over the dropped ones
+		int numKept = 0;
+		for(int blob = 0; blob < numBlobs; ++blob)
+		{
+			int blobWidth = rights[blob] - lefts[blob], blobHeight = bottoms[blob] - tops[blob];
+			if(((double) blobWidth) * blobHeight < minBoundingBoxArea)
+			{
+				continue;
+			}
+
+			lefts[numKept] = lefts[blob];
+			tops[numKept] = tops[blob];
+			rights[numKept] = rights[blob];
+			bottoms[numKept] = bottoms[blob];
+			areas[numKept] = areas[blob];
+			sumsX[numKept] = sumsX[blob];
+			sumsY[numKept] = sumsY[blob];
+
+			++numKept;
+		}
+
+		numBlobs = numKept;
+	}
+
+	/**
+	 * Join the blobs on the last row of a band to the ones they touch on the first row of the band below.
+	 */
+	private void joinBandEdge(int band)
+	{
+		BlobLabeler upper = bandLabelers[band], lower = bandLabelers[band + 1];
+
+		int upperLastRow = bandTops[band + 1] - bandTops[band] - 1;
+
+		//runs are in scan order, so the upper band's last row is at the end and the lower band's first row is at the start
+		int upperFirst = upper.getRunCount();
+		while(upperFirst > 0 && upper.getRunRow(upperFirst - 1) == upperLastRow)
+		{
+			--upperFirst;
+		}
+
+		int above = upperFirst;
+
+		for(int run = 0; run < lower.getRunCount() && lower.getRunRow(run) == 0; ++run)
+		{
+			int start = lower.getRunStart(run), end = lower.getRunEnd(run);
+
+			//skip runs above which end before this one can touch them
+			while(above < upper.getRunCount() && upper.getRunEnd(above) < start)
+			{
+				++above;
+			}
+
+			//join every run above that overlaps this one or touches one of its corners, the same as BlobLabeler does
+			for(int candidate = above; candidate < upper.getRunCount() && upper.getRunStart(candidate) <= end; ++candidate)
+			{
+				union(bandFirstBlobs[band] + upper.getRunBlob(candidate), bandFirstBlobs[band + 1] + lower.getRunBlob(run));
+			}
+		}
+	}
+
+	private int findRoot(int blob)
+	{
+		while(blobParents[blob] != blob)
+		{
+			//path halving
+			blobParents[blob] = blobParents[blobParents[blob]];
+			blob = blobParents[blob];
+		}
+
+		return blob;
+	}
+
+	private void union(int first, int second)
+	{
+		int firstRoot = findRoot(first), secondRoot = findRoot(second);
+
+		if(firstRoot < secondRoot)
+		{
+			blobParents[secondRoot] = firstRoot;
+		}
+		else if(secondRoot < firstRoot)
+		{
+			blobParents[firstRoot] = secondRoot;
+		}
+	}
+
+	private void growBlobs()
+	{
+		int newSize = lefts.length * 2;
+
+		lefts = grow(lefts, newSize);
+		tops = grow(tops, newSize);
+		rights = grow(rights, newSize);
+		bottoms = grow(bottoms, newSize);
+
+		areas = grow(areas, newSize);
+		sumsX = grow(sumsX, newSize);
+		sumsY = grow(sumsY, newSize);
+	}
+
+	private int[] grow(int[] array, int newSize)
+	{
+		int[] newArray = new int[newSize];
+		System.arraycopy(array, 0, newArray, 0, numBlobs);
+		return newArray;
+	}
+
+	private long[] grow(long[] array, int newSize)
+	{
+		long[] newArray = new long[newSize];
+		System.arraycopy(array, 0, newArray, 0, numBlobs);
+		return newArray;
+	}
+
+	/**
+	 * @return the number of blobs kept from the last mask
+	 */
+	public int size()
+	{
+		return numBlobs;
+	}
+
+	public int getLeft(int blob)
+	{
+		return lefts[blob];
+	}
+
+	public int getTop(int blob)
+	{
+		return tops[blob];
+	}
+
+	public int getWidth(int blob)
+	{
+		return rights[blob] - lefts[blob];
+	}
+
+	public int getHeight(int blob)
+	{
+		return bottoms[blob] - tops[blob];
+	}
+
+	/**
+	 * @return the number of pixels in the blob
+	 */
+	public long getArea(int blob)
+	{
+		return areas[blob];
+	}
+
+	public double getCentroidX(int blob)
+	{
+		return ((double) sumsX[blob]) / areas[blob];
+	}
+
+	public double getCentroidY(int blob)
+	{
+		return ((double) sumsY[blob]) / areas[blob];
+	}
+
+	private class BandTask implements Runnable
+	{
+		final int band;
+
+		BandTask(int band)
+		{
+			this.band = band;
+		}
+
+		@Override
+		public void run()
+		{
+			runBand(band);
+		}
+	}
+
+	/**
+	 * Daemon threads, so an idle pool never keeps the process alive.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+		private int numCreated;
+
+		@Override
+		public synchronized Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "NVBandWorker-" + (++numCreated));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+ * Does the threshold and blob extraction stages together, splitting the frame into horizontal bands which are processed on a pool of threads.
+ *
+ * Frames are thresholded with an HSVRangeTable straight into a Java mask, which is then labeled by a ParallelBlobLabeler,
+ * so the mask never goes back into a Mat.  The blobs are the same ones a RunLengthBlobExtractor would find.
+ * The RGB table is only built if RGBA frames are actually used, and is kept until the limits change.  NV21 frames are thresholded with
+ * the table the caller passes in, so the pipeline can share one with its NV21MaskStage instead of building the same table twice.
+ * The buffers only grow, so a search region that changes size every frame doesn't allocate.
+ *
+ * It can also be used on its own as a BlobExtractor, to label an existing mask in parallel.
+ */
+public class ParallelBlobStage implements BlobExtractor
+{
+	private final ParallelBlobLabeler labeler;
+
+	private int lowH, lowS, lowV, highH, highS, highV;
+
+	private HSVRangeTable rgbTable;
+
+	private byte[] frameBytes = new byte[0];
+	private byte[] yBytes = new byte[0];
+	private byte[] vuBytes = new byte[0];
+	private byte[] maskBytes = new byte[0];
+
+	/**
+	 * @param numThreads how many bands to split frames into, and how many threads to process them on
+	 */
+	public ParallelBlobStage(int numThreads)
+	{
+		labeler = new ParallelBlobLabeler(numThreads);
+	}
+
+	public int getNumThreads()
+	{
+		return labeler.getNumThreads();
+	}
+
+	/**
+	 * Called when the threshold settings change.  Only used for RGBA frames.
+	 * The limits are in OpenCV's 8 bit HSV color space, and are inclusive.
+	 */
+	public void setLimits(Scalar lowerLimit, Scalar upperLimit)
+	{
+		lowH = (int) lowerLimit.val[0];
+		lowS = (int) lowerLimit.val[1];
+		lowV = (int) lowerLimit.val[2];
+		highH = (int) upperLimit.val[0];
+		highS = (int) upperLimit.val[1];
+		highV = (int) upperLimit.val[2];
+	}
+
+	/**
+	 * Threshold an RGBA frame, ready for extractThresholded().
+	 */
+	public void threshold(Mat frame)
+	{
+		//building a table is expensive, so don't do it if nothing changed
+		if(rgbTable == null || !rgbTable.matches(HSVRangeTable.ColorFormat.RGB, lowH, lowS, lowV, highH, highS, highV))
+		{
+			rgbTable = new HSVRangeTable(HSVRangeTable.ColorFormat.RGB, lowH, lowS, lowV, highH, highS, highV);
+		}
+
+		int numPixels = frame.rows() * frame.cols();
+		int channels = frame.channels();
+
+		if(frameBytes.length < numPixels * channels)
+		{
+			frameBytes = new byte[numPixels * channels];
+		}
+
+		frame.get(0, 0, frameBytes, numPixels * channels);
+
+		labeler.threshold(rgbTable, frameBytes, channels, frame.cols(), frame.rows());
+	}
+
+	/**
+	 * Threshold part of an NV21 frame, ready for extractThresholded().
+	 *
+	 * @param yuvTable YUV table to threshold with, e.g. from NV21MaskStage.getTable().  The limits set here aren't used.
+	 * @see NV21MaskStage#apply(Mat, int, int, int, Rect, Mat)
+	 */
+	public void thresholdNV21(HSVRangeTable yuvTable, Mat yuvFrame, int width, int height, int scale, Rect region)
+	{
+		int left = 0, top = 0, regionWidth = width / scale, regionHeight = height / scale;
+
+		if(region != null)
+		{
+			left = region.x;
+			top = region.y;
+			regionWidth = region.width;
+			regionHeight = region.height;
+		}
+
+		// rows of each plane that the region covers
+		int yFirstRow = top * scale;
+		int yRows = (top + regionHeight - 1) * scale - yFirstRow + 1;
+
+		int vuFirstRow = yFirstRow / 2;
+		int vuRows = ((top + regionHeight - 1) * scale) / 2 - vuFirstRow + 1;
+
+		if(yBytes.length < yRows * width)
+		{
+			yBytes = new byte[yRows * width];
+		}
+
+		if(vuBytes.length < vuRows * width)
+		{
+			vuBytes = new byte[vuRows * width];
+		}
+
+		yuvFrame.get(yFirstRow, 0, yBytes, yRows * width);
+		yuvFrame.get(height + vuFirstRow, 0, vuBytes, vuRows * width);
+
+		labeler.thresholdNV21(yuvTable, yBytes, vuBytes, yFirstRow, width, left, top, regionWidth, regionHeight, scale);
+	}
+
+	/**
+	 * Find the blobs in the mask from the last threshold() or thresholdNV21() call.
+	 *
+	 * @param offset added to every coordinate, e.g. the corner of the region that was thresholded
+	 * @param minBoundingBoxArea blobs with smaller bounding boxes than this (in pixels of the mask) are skipped
+	 * @return the number of blobs kept
+	 */
+	public int extractThresholded(Point offset, double minBoundingBoxArea)
+	{
+		return labeler.label((int) offset.x, (int) offset.y, minBoundingBoxArea);
+	}
+
+	@Override
+	public int extract(Mat mask, Point offset, double minBoundingBoxArea)
+	{
+		int width = mask.cols(), height = mask.rows();
+
+		if(maskBytes.length < width * height)
+		{
+			maskBytes = new byte[width * height];
+		}
+
+		mask.get(0, 0, maskBytes, width * height);
+
+		return labeler.label(maskBytes, width, height, (int) offset.x, (int) offset.y, minBoundingBoxArea);
+	}
+
+	/**
+	 * Stop the worker threads.  The stage can't be used afterwards.
+	 */
+	public void shutdown()
+	{
+		labeler.shutdown();
+	}
+
+	@Override
+	public int getLeft(int blob)
+	{
+		return labeler.getLeft(blob);
+	}
+
+	@Override
+	public int getTop(int blob)
+	{
+		return labeler.getTop(blob);
+	}
+
+	@Override
+	public int getWidth(int blob)
+	{
+		return labeler.getWidth(blob);
+	}
+
+	@Override
+	public int getHeight(int blob)
+	{
+		return labeler.getHeight(blob);
+	}
+
+	@Override
+	public double getArea(int blob)
+	{
+		return labeler.getArea(blob);
+	}
+}
@@ -2,13 +2,48 @@ package org.team3128.narwhalvision;
 
 /**
  * Superclass for all commands that can be sent to the phone from the robot
+ *
+ * Every command the robot sends with a nonzero sequence number is answered with exactly one CommandResponse: an ack once it has taken
+ * effect, or a nack saying why it didn't.  Commands must be safe to run twice, so that the robot can resend ones it never heard back about.
+ *
+ * The robot has its own copies of the command classes, with the same fields and the Kryo IDs registered in CommandReceiver.
  */
 
 public abstract class PhoneCommand
 {
+	// chosen by the robot, and sent back in the response.  0 if the robot doesn't want a response.
+	public int sequence;
+
+	// when the phone received the command, from System.nanoTime().  Not sent.
+	transient long receiveTimeNanos;
+
+	/**
+	 * Do whatever the command needs to do.
+	 * Commands which change settings must publish them with Settings.publish() for the pipeline to see them.
+	 *
+	 * @return CommandResponse.ACK if the command has already taken effect, CommandResponse.PENDING if it takes effect on a later frame,
+	 * or one of the NACK_ codes if it won't take effect at all.
+	 */
+	public abstract byte execute(CommandContext context);
+
+	/**
+	 * Called after each frame while the command is pending, to find the first frame it affected.
+	 *
+	 * @return true once the command is in effect
+	 */
+	public boolean isApplied(CommandContext context)
+	{
+		return true;
+	}
+
 	/**
-	 * Do whatever the command needs to do;
-	 * @return true if the pipeline needs to reload its settings.
+	 * Commands with equal coalescing keys replace each other: if several arrive in the same frame, only the last one runs.
+	 * A pending command is also replaced when a newer one with the same key runs.
+	 *
+	 * @return the key, or null if every copy of this command should run.
 	 */
-	public abstract boolean execute();
+	public Object getCoalescingKey()
+	{
+		return null;
+	}
 }
@@ -0,0 +1,131 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Counters describing how the phone is keeping up, sent to the robot in answer to a RequestStatsCommand.
+ *
+ * All values are big endian, like TargetPacket.  Counters that don't fit in 32 bits are capped.
+ *
+ * <pre>
+ *   u8   packet type (PACKET_TYPE_STATS)
+ *   u8   format version (VERSION)
+ *   u8   selected settings slot
+ *   u8   flags (FLAG_PROCESSING_PAUSED)
+ *   u32  sequence number of the RequestStatsCommand
+ *   u32  number of the last camera frame processed, which is also its target packet's sequence number
+ *   u32  version of the settings in use
+ *   u32  camera frames dropped because processing was behind
+ *   u32  median microseconds from a frame's capture to its results being ready
+ *   u32  99th percentile of the same
+ *   u32  target packets sent
+ *   u32  target packets dropped
+ *   u32  commands received
+ *   u32  commands dropped because the queue was full
+ * </pre>
+ *
+ * NOTE: like TargetInformation, this cannot reference any classes available on only one side or the other
+ */
+public class PhoneStats
+{
+	public final static byte PACKET_TYPE_STATS = 3;
+
+	// increase this whenever the layout changes
+	public final static byte VERSION = 1;
+
+	public final static int PACKET_SIZE = 44;
+
+	public final static int FLAG_PROCESSING_PAUSED = 1;
+
+	public int requestSequence;
+
+	public int selectedSlot;
+
+	public boolean processingPaused;
+
+	public long frameNumber, settingsVersion, framesDropped;
+
+	public long medianLatencyMicros, worstLatencyMicros;
+
+	public long packetsSent, packetsDropped;
+
+	public long commandsReceived, commandsDropped;
+
+	/**
+	 * Write the stats at the buffer's position, and advance the position to the end of them.
+	 *
+	 * @return the number of bytes written
+	 */
+	public int encode(ByteBuffer buffer)
+	{
+		buffer.put(PACKET_TYPE_STATS);
+		buffer.put(VERSION);
+		buffer.put((byte) selectedSlot);
+		buffer.put((byte) (processingPaused ? FLAG_PROCESSING_PAUSED : 0));
+		buffer.putInt(requestSequence);
+
+		putUnsigned(buffer, frameNumber);
+		putUnsigned(buffer, settingsVersion);
+		putUnsigned(buffer, framesDropped);
+		putUnsigned(buffer, medianLatencyMicros);
+		putUnsigned(buffer, worstLatencyMicros);
+		putUnsigned(buffer, packetsSent);
+		putUnsigned(buffer, packetsDropped);
+		putUnsigned(buffer, commandsReceived);
+		putUnsigned(buffer, commandsDropped);
+
+		return PACKET_SIZE;
+	}
+
+	/**
+	 * Read stats from the buffer's position, and advance the position past them.
+	 *
+	 * @return false if the data is not a stats packet of the supported version, or is cut off.  In that case, nothing is changed.
+	 */
+	public boolean decode(ByteBuffer buffer)
+	{
+		int startPosition = buffer.position();
+
+		if(buffer.remaining() < PACKET_SIZE || buffer.get(startPosition) != PACKET_TYPE_STATS || buffer.get(startPosition + 1) != VERSION)
+		{
+			return false;
+		}
+
+		selectedSlot = buffer.get(startPosition + 2) & 0xFF;
+		processingPaused = (buffer.get(startPosition + 3) & FLAG_PROCESSING_PAUSED) != 0;
+
+		buffer.position(startPosition + 4);
+		requestSequence = buffer.getInt();
+
+		frameNumber = getUnsigned(buffer);
+		settingsVersion = getUnsigned(buffer);
+		framesDropped = getUnsigned(buffer);
+		medianLatencyMicros = getUnsigned(buffer);
+		worstLatencyMicros = getUnsigned(buffer);
+		packetsSent = getUnsigned(buffer);
+		packetsDropped = getUnsigned(buffer);
+		commandsReceived = getUnsigned(buffer);
+		commandsDropped = getUnsigned(buffer);
+
+		return true;
+	}
+
+	private static void putUnsigned(ByteBuffer buffer, long value)
+	{
+		buffer.putInt((int) Math.max(0, Math.min(value, 0xFFFFFFFFL)));
+	}
+
+	private static long getUnsigned(ByteBuffer buffer)
+	{
+		return buffer.getInt() & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Frame " + frameNumber + ", slot " + selectedSlot + (processingPaused ? " (paused)" : "") + ", settings version " + settingsVersion
+				+ ", frames dropped: " + framesDropped + ", latency: " + medianLatencyMicros + "us median, " + worstLatencyMicros + "us 99%"
+				+ ", packets sent: " + packetsSent + ", packets dropped: " + packetsDropped
+				+ ", commands received: " + commandsReceived + ", commands dropped: " + commandsDropped;
+	}
+}
@@ -0,0 +1,24 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+
+/**
+ * What TowerTrackerPipeline produces for each frame.
+ */
+public class PipelineResult
+{
+	// what should be displayed on the phone screen: the frame with the targets drawn on it, or the color filter output
+	// may be null when processing raw NV21 frames
+	public final Mat image;
+
+	// information about the targets found, best first, or null in color filter mode
+	public final ArrayList<TargetInformation> targets;
+
+	public PipelineResult(Mat image, ArrayList<TargetInformation> targets)
+	{
+		this.image = image;
+		this.targets = targets;
+	}
+}
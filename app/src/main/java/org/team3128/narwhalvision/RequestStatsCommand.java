@@ -0,0 +1,16 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Command which asks the phone to send a PhoneStats packet, followed by the ack
+ */
+
+public class RequestStatsCommand extends PhoneCommand
+{
+	@Override
+	public byte execute(CommandContext context)
+	{
+		context.sendStats(sequence);
+
+		return CommandResponse.ACK;
+	}
+}
@@ -0,0 +1,170 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Rect;
+
+/**
+ * Decides which part of the frame the pipeline needs to search.
+ *
+ * After a target is found, the following frames only search a window around where it was last seen.
+ * The whole frame is searched again once the target has been missed MAX_MISSES times in a row, and every FULL_SCAN_INTERVAL frames
+ * so that we notice better targets that show up somewhere else.
+ *
+ * The counters are written by the processing thread and can be read from any thread.
+ */
+public class RoiTracker
+{
+	// how many times the last target's width and height the search window is
+	final static double ROI_EXPANSION = 3.0;
+
+	// extra pixels added on each side of the search window so that tiny targets still get a usable window
+	final static int ROI_MIN_MARGIN = 20;
+
+	// how many frames the target can be missed in the search window before we go back to searching the whole frame
+	final static int MAX_MISSES = 3;
+
+	// the whole frame is searched at least this often, in frames
+	final static int FULL_SCAN_INTERVAL = 30;
+
+	private boolean enabled = true;
+
+	// bounding box of the last target, or null if we don't have one
+	private Rect lastTarget;
+
+	// region returned by the last call to getSearchRegion(), null for the whole frame
+	private Rect currentRegion;
+
+	private int consecutiveMisses;
+	private int framesSinceFullScan;
+
+	// stats
+	private volatile long roiHits, roiMisses, fallbacks, fullScans;
+
+	/**
+	 * Get the region of the frame to search next.
+	 *
+	 * @return the region, in frame coordinates, or null if the whole frame should be searched
+	 */
+	public Rect getSearchRegion(int frameWidth, int frameHeight)
+	{
+		if(!enabled || lastTarget == null || framesSinceFullScan >= FULL_SCAN_INTERVAL)
+		{
+			framesSinceFullScan = 0;
+			++fullScans;
+
+			currentRegion = null;
+			return null;
+		}
+
+		++framesSinceFullScan;
+
+		int marginX = (int) (lastTarget.width * (ROI_EXPANSION - 1) / 2) + ROI_MIN_MARGIN;
+		int marginY = (int) (lastTarget.height * (ROI_EXPANSION - 1) / 2) + ROI_MIN_MARGIN;
+
+		int left = Math.max(0, lastTarget.x - marginX);
+		int top = Math.max(0, lastTarget.y - marginY);
+		int right = Math.min(frameWidth, lastTarget.x + lastTarget.width + marginX);
+		int bottom = Math.min(frameHeight, lastTarget.y + lastTarget.height + marginY);
+
+		if(right <= left || bottom <= top)
+		{
+			//last target was outside of this frame (it changed size?)
+			lastTarget = null;
+			return getSearchRegion(frameWidth, frameHeight);
+		}
+
+		currentRegion = new Rect(left, top, right - left, bottom - top);
+		return currentRegion;
+	}
+
+	/**
+	 * Report the result of searching the region from the last call to getSearchRegion()
+	 *
+	 * @param bestTarget bounding box of the best target found, in frame coordinates, or null if nothing was found.
+	 */
+	public void onSearchResult(Rect bestTarget)
+	{
+		if(currentRegion == null)
+		{
+			lastTarget = bestTarget;
+			consecutiveMisses = 0;
+		}
+		else if(bestTarget != null)
+		{
+			++roiHits;
+			lastTarget = bestTarget;
+			consecutiveMisses = 0;
+		}
+		else
+		{
+			++roiMisses;
+			++consecutiveMisses;
+
+			if(consecutiveMisses >= MAX_MISSES)
+			{
+				++fallbacks;
+				lastTarget = null;
+				consecutiveMisses = 0;
+			}
+		}
+	}
+
+	/**
+	 * Enable or disable searching around the last target.  When disabled, the whole frame is always searched.
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		if(!enabled)
+		{
+			lastTarget = null;
+		}
+
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Forget the last target, so that the next frame is searched completely.
+	 */
+	public void reset()
+	{
+		lastTarget = null;
+		consecutiveMisses = 0;
+	}
+
+	/**
+	 * @return Number of searches of a window where the target was found again
+	 */
+	public long getRoiHits()
+	{
+		return roiHits;
+	}
+
+	/**
+	 * @return Number of searches of a window where the target was not found
+	 */
+	public long getRoiMisses()
+	{
+		return roiMisses;
+	}
+
+	/**
+	 * @return Number of times the target was lost and we went back to searching the whole frame
+	 */
+	public long getFallbacks()
+	{
+		return fallbacks;
+	}
+
+	/**
+	 * @return Number of times the whole frame was searched, for any reason
+	 */
+	public long getFullScans()
+	{
+		return fullScans;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ROI hits: " + roiHits + ", misses: " + roiMisses + ", fallbacks: " + fallbacks + ", full scans: " + fullScans;
+	}
+}
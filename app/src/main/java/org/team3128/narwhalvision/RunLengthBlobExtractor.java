@@ -0,0 +1,63 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+/**
+ * Blob extractor which labels the connected pixels of the mask in Java with a BlobLabeler, instead of tracing contours.
+ *
+ * The area is the number of pixels in the blob, so unlike a contour's area it doesn't include any holes,
+ * and a solid rectangle has exactly the area of its bounding box.
+ */
+public class RunLengthBlobExtractor implements BlobExtractor
+{
+	private final BlobLabeler labeler = new BlobLabeler();
+
+	private byte[] maskBytes = new byte[0];
+
+	@Override
+	public int extract(Mat mask, Point offset, double minBoundingBoxArea)
+	{
+		int width = mask.cols(), height = mask.rows();
+
+		//only grows, since the mask is the size of the search region and changes almost every frame
+		if(maskBytes.length < width * height)
+		{
+			maskBytes = new byte[width * height];
+		}
+
+		mask.get(0, 0, maskBytes, width * height);
+
+		return labeler.label(maskBytes, width, height, (int) offset.x, (int) offset.y, minBoundingBoxArea);
+	}
+
+	@Override
+	public int getLeft(int blob)
+	{
+		return labeler.getLeft(blob);
+	}
+
+	@Override
+	public int getTop(int blob)
+	{
+		return labeler.getTop(blob);
+	}
+
+	@Override
+	public int getWidth(int blob)
+	{
+		return labeler.getWidth(blob);
+	}
+
+	@Override
+	public int getHeight(int blob)
+	{
+		return labeler.getHeight(blob);
+	}
+
+	@Override
+	public double getArea(int blob)
+	{
+		return labeler.getArea(blob);
+	}
+}
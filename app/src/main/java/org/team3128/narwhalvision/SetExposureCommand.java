@@ -0,0 +1,46 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Command which changes the camera's exposure compensation
+ *
+ * Acked once a frame captured after the change has been processed.  Nacked with NACK_UNSUPPORTED if the camera can't use the value.
+ * The change is not saved, so the camera goes back to its default exposure when it restarts.
+ */
+
+public class SetExposureCommand extends PhoneCommand
+{
+	private int exposureCompensation;
+
+	//for Kryo
+	private SetExposureCommand()
+	{
+	}
+
+	public SetExposureCommand(int exposureCompensation)
+	{
+		this.exposureCompensation = exposureCompensation;
+	}
+
+	@Override
+	public byte execute(CommandContext context)
+	{
+		if(!context.requestExposureCompensation(exposureCompensation))
+		{
+			return CommandResponse.NACK_UNSUPPORTED;
+		}
+
+		return CommandResponse.PENDING;
+	}
+
+	@Override
+	public boolean isApplied(CommandContext context)
+	{
+		return context.getExposureCompensation() == exposureCompensation;
+	}
+
+	@Override
+	public Object getCoalescingKey()
+	{
+		return SetExposureCommand.class;
+	}
+}
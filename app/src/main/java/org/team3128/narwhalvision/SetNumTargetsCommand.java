@@ -0,0 +1,48 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Command which changes how many targets the selected slot looks for, and saves it for that slot
+ *
+ * Acked once a frame has been processed with the new number.
+ */
+
+public class SetNumTargetsCommand extends PhoneCommand
+{
+	private int numTargets;
+
+	//for Kryo
+	private SetNumTargetsCommand()
+	{
+	}
+
+	public SetNumTargetsCommand(int numTargets)
+	{
+		this.numTargets = numTargets;
+	}
+
+	@Override
+	public byte execute(CommandContext context)
+	{
+		if(numTargets < 1 || numTargets > TargetPacket.MAX_TARGETS)
+		{
+			return CommandResponse.NACK_INVALID;
+		}
+
+		//like slot changes, this is saved and published on the UI thread
+		SettingsPreferences.requestNumTargetsChange(numTargets);
+
+		return CommandResponse.PENDING;
+	}
+
+	@Override
+	public boolean isApplied(CommandContext context)
+	{
+		return context.getSettings().getSelectedSlot().numTargets == numTargets;
+	}
+
+	@Override
+	public Object getCoalescingKey()
+	{
+		return SetNumTargetsCommand.class;
+	}
+}
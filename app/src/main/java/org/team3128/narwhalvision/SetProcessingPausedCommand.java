@@ -0,0 +1,37 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Command which stops or restarts the vision pipeline, for when the robot doesn't need targets and the phone should stay cool
+ *
+ * Acked right away: a pause takes effect on the frame it arrived during.
+ */
+
+public class SetProcessingPausedCommand extends PhoneCommand
+{
+	private boolean paused;
+
+	//for Kryo
+	private SetProcessingPausedCommand()
+	{
+	}
+
+	public SetProcessingPausedCommand(boolean paused)
+	{
+		this.paused = paused;
+	}
+
+	@Override
+	public byte execute(CommandContext context)
+	{
+		context.setProcessingPaused(paused);
+
+		return CommandResponse.ACK;
+	}
+
+	@Override
+	public Object getCoalescingKey()
+	{
+		//pausing and resuming replace each other
+		return SetProcessingPausedCommand.class;
+	}
+}
@@ -1,14 +1,19 @@
 package org.team3128.narwhalvision;
 
-import android.content.SharedPreferences;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Class to store app-wide settings.  Uses static members, so it is not affected by things like activity switches or device rotations.
+ *
+ * They are saved and loaded by SettingsPreferences.  This class must not reference Android classes, so that the pipeline can run on a normal JVM.
+ *
+ * The fields are a working copy for whoever is editing them.  Once a change is finished, publish() copies them into a SettingsSnapshot,
+ * and other threads (i.e. the pipeline) read that with getSnapshot() instead of the fields.
  */
 public class Settings
 {
 	//which slot the settings will be saved from and loaded into
-	//takes effect when savePreferences() and loadPreferences() are called
+	//takes effect when SettingsPreferences.savePreferences() and loadPreferences() are called
 	public static int selectedSlot;
 
 	public static final int NUM_SLOTS=4;
@@ -25,92 +30,72 @@ public class Settings
 	// Maximum number of targets to find
 	public static int numTargets;
 
-	//path to last image used in image test screen
-	//null if unselected
-	//NOTE: not affected by save slots
-	public static String testImagePath;
+	//run this slot on every frame, even when another slot is selected
+	public static boolean alwaysRun;
 
-	private static SharedPreferences prefs;
+	//the other slots with alwaysRun set, which the pipeline runs alongside the selected one
+	//filled in by SettingsPreferences.loadPreferences(), and replaced rather than modified
+	public static SlotSettings[] extraSlots = new SlotSettings[0];
 
-	/**
-	 * Called by the app when it starts to set the preferences.
-	 *
-	 * Calls loadPreferences
-	 * @param sharedPrefs
-	 */
-	static void setSharedPreferences(SharedPreferences sharedPrefs)
-	{
-		prefs = sharedPrefs;
-		loadPreferences();
-	}
+	//only search around the last target after one is found
+	//NOTE: not affected by save slots
+	public static boolean roiTracking;
 
-	/**
-	 * Loads preferences from the SharedPreferences
-	 */
-	static void loadPreferences()
-	{
-		selectedSlot = prefs.getInt("selectedSlot", 1);
+	//follow targets between frames to give them IDs and smooth out noise
+	//NOTE: not affected by save slots
+	public static boolean targetTracking;
 
-		//default settings from Tower Tracker are used here
-		lowH = prefs.getInt("lowH_" + selectedSlot, 0);
-		lowS = prefs.getInt("lowS_" + selectedSlot, 0);
-		lowV = prefs.getInt("lowV_" + selectedSlot, 0);
+	//send keyframes and deltas of the targets instead of every frame's targets.  The robot has to decode them with TargetStreamDecoder.
+	//NOTE: not affected by save slots
+	public static boolean deltaStreaming;
 
-		highH = prefs.getInt("highH_" + selectedSlot, 255);
-		highS = prefs.getInt("highS_" + selectedSlot, 255);
-		highV = prefs.getInt("highV_" + selectedSlot, 255);
+	//the pipeline processes frames at 1/processingScale of the camera resolution
+	//NOTE: not affected by save slots
+	public static int processingScale;
 
-		testImagePath = prefs.getString("testImagePath", null);
+	//how many threads the pipeline splits thresholding and blob extraction between.  1 does it all on the camera thread.
+	//NOTE: not affected by save slots
+	public static int processingThreads;
 
-		numTargets = prefs.getInt("numTargets_" + selectedSlot, 1);
+	//extra places to send target packets besides the RoboRIO, as a comma separated list in the format TargetSubscriber.parse() takes
+	//NOTE: not affected by save slots
+	public static String targetSubscribers = "";
 
-		minArea = prefs.getInt("minArea_" + selectedSlot, 50);
-		targetSolidity = prefs.getInt("targetSolidity_" + selectedSlot, 50);
-		targetHeight = prefs.getInt("targetHeight_" + selectedSlot, 1);
-		targetWidth = prefs.getInt("targetWidth_" + selectedSlot, 1);
-	}
+	//path to last image used in image test screen
+	//null if unselected
+	//NOTE: not affected by save slots
+	public static String testImagePath;
+
+	//the latest published settings.  Declared after extraSlots, so that it's initialized after it.
+	private static final AtomicReference<SettingsSnapshot> snapshot = new AtomicReference<>(SettingsSnapshot.fromSettings(0));
 
 	/**
-	 * Saves the current preferences.
+	 * Get the latest published settings.  Can be called from any thread.
 	 */
-	static void savePreferences()
+	public static SettingsSnapshot getSnapshot()
 	{
-		SharedPreferences.Editor editor = prefs.edit();
-
-		//make sure to do this one first
-		editor.putInt("selectedSlot", selectedSlot);
-
-		editor.putInt("lowH_" + selectedSlot, lowH);
-		editor.putInt("lowS_" + selectedSlot, lowS);
-		editor.putInt("lowV" + selectedSlot, lowV);
-
-		editor.putInt("highH_" + selectedSlot, highH);
-		editor.putInt("highS_" + selectedSlot, highS);
-		editor.putInt("highV_" + selectedSlot, highV);
-
-		editor.putString("testImagePath", testImagePath);
-
-		editor.putInt("numTargets_" + selectedSlot, numTargets);
-
-		editor.putInt("minArea_" + selectedSlot, minArea);
-		editor.putInt("targetSolidity_" + selectedSlot, targetSolidity);
-		editor.putInt("targetHeight_" + selectedSlot, targetHeight);
-		editor.putInt("targetWidth_" + selectedSlot, targetWidth);
-
-		editor.apply();
+		return snapshot.get();
 	}
 
 	/**
-	 * Change the slot in use.
-	 * Reloads the preferences for this slot.
-	 * @param newSlot
+	 * Make the current values of the fields visible to the pipeline, as a new snapshot with the next version number.
+	 * Call this once a change is complete, not after every field.
+	 *
+	 * @return the new snapshot
 	 */
-	static void changeSlot(int newSlot)
+	public static SettingsSnapshot publish()
 	{
-		selectedSlot = newSlot;
-		prefs.edit().putInt("selectedSlot", newSlot).apply();
-
-		loadPreferences();
+		while(true)
+		{
+			SettingsSnapshot current = snapshot.get();
+			SettingsSnapshot next = SettingsSnapshot.fromSettings(current.version + 1);
+
+			//if another thread published in the meantime, make sure the version still goes up
+			if(snapshot.compareAndSet(current, next))
+			{
+				return next;
+			}
+		}
 	}
 
 	/**
@@ -12,6 +12,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -39,6 +40,18 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 	EditText editHeight;
 	EditText editWidth;
 	EditText editNumTargets;
+	EditText editProcessingScale;
+	EditText editProcessingThreads;
+
+	EditText editTargetSubscribers;
+
+	CheckBox checkAlwaysRun;
+
+	CheckBox checkRoiTracking;
+
+	CheckBox checkTargetTracking;
+
+	CheckBox checkDeltaStreaming;
 
 	View minHBlock;
 	View maxHBlock;
@@ -63,6 +76,9 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 	{
 		loadEnteredValues();
 
+		//the pipeline only sees the changes once they're published
+		Settings.publish();
+
 		Log.d(TAG, "Saved Settings");
 	}
 
@@ -71,7 +87,7 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 	{
 		super.onStop();
 		loadEnteredValues();
-		Settings.savePreferences();
+		SettingsPreferences.savePreferences();
 	}
 
 	@Override
@@ -101,6 +117,14 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 		editWidth = (EditText) content.findViewById(R.id.editWidth);
 		editHeight = (EditText) content.findViewById(R.id.editHeight);
 		editNumTargets = (EditText) content.findViewById(R.id.editNumTargets);
+		editProcessingScale = (EditText) content.findViewById(R.id.editProcessingScale);
+		editProcessingThreads = (EditText) content.findViewById(R.id.editProcessingThreads);
+		editTargetSubscribers = (EditText) content.findViewById(R.id.editTargetSubscribers);
+
+		checkAlwaysRun = (CheckBox) content.findViewById(R.id.checkAlwaysRun);
+		checkRoiTracking = (CheckBox) content.findViewById(R.id.checkRoiTracking);
+		checkTargetTracking = (CheckBox) content.findViewById(R.id.checkTargetTracking);
+		checkDeltaStreaming = (CheckBox) content.findViewById(R.id.checkDeltaStreaming);
 
 		maxHBlock = content.findViewById(R.id.maxHView);
 		maxSBlock = content.findViewById(R.id.maxSView);
@@ -125,6 +149,9 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 		editArea.setFilters(percentFilter);
 		editSolidity.setFilters(percentFilter);
 
+		editProcessingScale.setFilters(new InputFilter[]{new RangeInputFilter(1, 8)});
+		editProcessingThreads.setFilters(new InputFilter[]{new RangeInputFilter(1, 8)});
+
 		populateFromSettings();
 		updateColorViews();
 
@@ -171,6 +198,14 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 		editHeight.setText(Integer.toString(Settings.targetHeight));
 		editWidth.setText(Integer.toString(Settings.targetWidth));
 		editNumTargets.setText(Integer.toString(Settings.numTargets));
+		editProcessingScale.setText(Integer.toString(Settings.processingScale));
+		editProcessingThreads.setText(Integer.toString(Settings.processingThreads));
+		editTargetSubscribers.setText(Settings.targetSubscribers);
+
+		checkAlwaysRun.setChecked(Settings.alwaysRun);
+		checkRoiTracking.setChecked(Settings.roiTracking);
+		checkTargetTracking.setChecked(Settings.targetTracking);
+		checkDeltaStreaming.setChecked(Settings.deltaStreaming);
 	}
 
 	/**
@@ -180,7 +215,7 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 	private boolean loadEnteredValues()
 	{
 		//check for blank fields, and return if we find any
-		EditText[] requiredPopulatedFields = {editMinH, editMinS, editMinV, editMaxH, editMaxS, editMaxV, editArea, editSolidity, editHeight, editWidth, editNumTargets};
+		EditText[] requiredPopulatedFields = {editMinH, editMinS, editMinV, editMaxH, editMaxS, editMaxV, editArea, editSolidity, editHeight, editWidth, editNumTargets, editProcessingScale, editProcessingThreads};
 
 		for(EditText field : requiredPopulatedFields)
 		{
@@ -205,10 +240,22 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 			Settings.targetWidth = Integer.parseInt(editWidth.getText().toString());
 			Settings.targetHeight = Integer.parseInt(editHeight.getText().toString());
 			Settings.numTargets = Integer.parseInt(editNumTargets.getText().toString());
+			Settings.processingScale = Integer.parseInt(editProcessingScale.getText().toString());
+			Settings.processingThreads = Integer.parseInt(editProcessingThreads.getText().toString());
+
+			//parsed here only to check it, since the target sender parses it again
+			String targetSubscribers = editTargetSubscribers.getText().toString().trim();
+			TargetSubscriber.parseList(targetSubscribers, NarwhalVisionActivity.NARWHAL_VISION_PORT);
+			Settings.targetSubscribers = targetSubscribers;
+
+			Settings.alwaysRun = checkAlwaysRun.isChecked();
+			Settings.roiTracking = checkRoiTracking.isChecked();
+			Settings.targetTracking = checkTargetTracking.isChecked();
+			Settings.deltaStreaming = checkDeltaStreaming.isChecked();
 		}
-		catch(NumberFormatException ex)
+		catch(IllegalArgumentException ex)
 		{
-			//shouldn't happen if I have the right validation set up, but paranoia
+			//the subscriber list can be mistyped, but the numbers shouldn't fail if I have the right validation set up
 			Toast.makeText(getContext(), "Invalid settings values, failed to parse!", Toast.LENGTH_SHORT).show();
 			ex.printStackTrace();
 
@@ -287,10 +334,10 @@ public class SettingsFragment extends NarwhalVisionFragment implements TextWatch
 			}
 
 
-			Settings.savePreferences();
+			SettingsPreferences.savePreferences();
 
 			//now change the slot and reload
-			Settings.changeSlot(newSelectedSlot);
+			SettingsPreferences.changeSlot(newSelectedSlot);
 
 			//we don't want the listeners to fire when we update the values, so we have to de-register them
 			unregisterTextWatchers();
@@ -0,0 +1,205 @@
+package org.team3128.narwhalvision;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves the values in Settings to Android's SharedPreferences, and loads them back.
+ */
+public class SettingsPreferences
+{
+	private static SharedPreferences prefs;
+
+	// runs slot changes requested from other threads
+	private static Handler uiHandler;
+
+	private final static int NO_PENDING_SLOT = -1;
+
+	// the slot most recently passed to requestSlotChange() that the UI thread hasn't switched to yet
+	private final static AtomicInteger pendingSlot = new AtomicInteger(NO_PENDING_SLOT);
+
+	private final static Runnable changeToPendingSlot = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			int newSlot = pendingSlot.getAndSet(NO_PENDING_SLOT);
+			if(newSlot != NO_PENDING_SLOT)
+			{
+				changeSlot(newSlot);
+			}
+		}
+	};
+
+	/**
+	 * Called by the app when it starts to set the preferences.
+	 *
+	 * Calls loadPreferences
+	 * @param sharedPrefs
+	 */
+	static void setSharedPreferences(SharedPreferences sharedPrefs)
+	{
+		prefs = sharedPrefs;
+		uiHandler = new Handler(Looper.getMainLooper());
+		loadPreferences();
+	}
+
+	/**
+	 * Loads preferences from the SharedPreferences, and publishes them to the pipeline
+	 */
+	static void loadPreferences()
+	{
+		Settings.selectedSlot = prefs.getInt("selectedSlot", 1);
+
+		//default settings from Tower Tracker are used here
+		Settings.lowH = prefs.getInt("lowH_" + Settings.selectedSlot, 0);
+		Settings.lowS = prefs.getInt("lowS_" + Settings.selectedSlot, 0);
+		Settings.lowV = prefs.getInt("lowV_" + Settings.selectedSlot, 0);
+
+		Settings.highH = prefs.getInt("highH_" + Settings.selectedSlot, 255);
+		Settings.highS = prefs.getInt("highS_" + Settings.selectedSlot, 255);
+		Settings.highV = prefs.getInt("highV_" + Settings.selectedSlot, 255);
+
+		Settings.testImagePath = prefs.getString("testImagePath", null);
+		Settings.roiTracking = prefs.getBoolean("roiTracking", true);
+		Settings.targetTracking = prefs.getBoolean("targetTracking", true);
+		Settings.deltaStreaming = prefs.getBoolean("deltaStreaming", false);
+		Settings.processingScale = Math.max(1, prefs.getInt("processingScale", 1));
+		Settings.processingThreads = Math.max(1, prefs.getInt("processingThreads", 1));
+		Settings.targetSubscribers = prefs.getString("targetSubscribers", "");
+
+		Settings.numTargets = prefs.getInt("numTargets_" + Settings.selectedSlot, 1);
+
+		Settings.minArea = prefs.getInt("minArea_" + Settings.selectedSlot, 50);
+		Settings.targetSolidity = prefs.getInt("targetSolidity_" + Settings.selectedSlot, 50);
+		Settings.targetHeight = prefs.getInt("targetHeight_" + Settings.selectedSlot, 1);
+		Settings.targetWidth = prefs.getInt("targetWidth_" + Settings.selectedSlot, 1);
+
+		Settings.alwaysRun = prefs.getBoolean("alwaysRun_" + Settings.selectedSlot, false);
+
+		loadExtraSlots();
+
+		Settings.publish();
+	}
+
+	/**
+	 * Fill in Settings.extraSlots from the saved settings of every other slot that has alwaysRun set.
+	 */
+	private static void loadExtraSlots()
+	{
+		ArrayList<SlotSettings> extraSlots = new ArrayList<>();
+
+		for(int slot = 1; slot <= Settings.NUM_SLOTS; ++slot)
+		{
+			if(slot != Settings.selectedSlot && prefs.getBoolean("alwaysRun_" + slot, false))
+			{
+				extraSlots.add(loadSlot(slot));
+			}
+		}
+
+		Settings.extraSlots = extraSlots.toArray(new SlotSettings[extraSlots.size()]);
+	}
+
+	/**
+	 * Load one slot's settings without changing the selected slot.  Uses the same defaults as loadPreferences().
+	 */
+	static SlotSettings loadSlot(int slot)
+	{
+		return new SlotSettings(slot,
+				prefs.getInt("lowH_" + slot, 0), prefs.getInt("highH_" + slot, 255),
+				prefs.getInt("lowS_" + slot, 0), prefs.getInt("highS_" + slot, 255),
+				prefs.getInt("lowV_" + slot, 0), prefs.getInt("highV_" + slot, 255),
+				prefs.getInt("minArea_" + slot, 50), prefs.getInt("targetSolidity_" + slot, 50),
+				prefs.getInt("targetWidth_" + slot, 1), prefs.getInt("targetHeight_" + slot, 1),
+				prefs.getInt("numTargets_" + slot, 1));
+	}
+
+	/**
+	 * Saves the current preferences.
+	 */
+	static void savePreferences()
+	{
+		SharedPreferences.Editor editor = prefs.edit();
+
+		//make sure to do this one first
+		editor.putInt("selectedSlot", Settings.selectedSlot);
+
+		editor.putInt("lowH_" + Settings.selectedSlot, Settings.lowH);
+		editor.putInt("lowS_" + Settings.selectedSlot, Settings.lowS);
+		editor.putInt("lowV" + Settings.selectedSlot, Settings.lowV);
+
+		editor.putInt("highH_" + Settings.selectedSlot, Settings.highH);
+		editor.putInt("highS_" + Settings.selectedSlot, Settings.highS);
+		editor.putInt("highV_" + Settings.selectedSlot, Settings.highV);
+
+		editor.putString("testImagePath", Settings.testImagePath);
+		editor.putBoolean("roiTracking", Settings.roiTracking);
+		editor.putBoolean("targetTracking", Settings.targetTracking);
+		editor.putBoolean("deltaStreaming", Settings.deltaStreaming);
+		editor.putInt("processingScale", Settings.processingScale);
+		editor.putInt("processingThreads", Settings.processingThreads);
+		editor.putString("targetSubscribers", Settings.targetSubscribers);
+
+		editor.putInt("numTargets_" + Settings.selectedSlot, Settings.numTargets);
+
+		editor.putInt("minArea_" + Settings.selectedSlot, Settings.minArea);
+		editor.putInt("targetSolidity_" + Settings.selectedSlot, Settings.targetSolidity);
+		editor.putInt("targetHeight_" + Settings.selectedSlot, Settings.targetHeight);
+		editor.putInt("targetWidth_" + Settings.selectedSlot, Settings.targetWidth);
+
+		editor.putBoolean("alwaysRun_" + Settings.selectedSlot, Settings.alwaysRun);
+
+		editor.apply();
+	}
+
+	/**
+	 * Change the slot in use.
+	 * Reloads the preferences for this slot.
+	 * @param newSlot
+	 */
+	static void changeSlot(int newSlot)
+	{
+		Settings.selectedSlot = newSlot;
+		prefs.edit().putInt("selectedSlot", newSlot).apply();
+
+		loadPreferences();
+	}
+
+	/**
+	 * Change the slot in use from any thread, without waiting for it to be saved and loaded.
+	 *
+	 * The change happens on the UI thread, which also edits the Settings fields, and publishes the new slot's settings when it's done.
+	 * Requests made before the UI thread gets to them replace each other, so only the last one is saved and loaded.
+	 */
+	static void requestSlotChange(int newSlot)
+	{
+		//only the first request since the last change needs to post; later ones just replace the slot it will load
+		if(pendingSlot.getAndSet(newSlot) == NO_PENDING_SLOT)
+		{
+			uiHandler.post(changeToPendingSlot);
+		}
+	}
+
+	/**
+	 * Change the number of targets the selected slot looks for from any thread.  Like requestSlotChange(), the change is saved and
+	 * published on the UI thread.
+	 */
+	static void requestNumTargetsChange(final int numTargets)
+	{
+		uiHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Settings.numTargets = numTargets;
+				savePreferences();
+
+				Settings.publish();
+			}
+		});
+	}
+}
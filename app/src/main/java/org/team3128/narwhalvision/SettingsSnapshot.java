@@ -0,0 +1,106 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Every setting the pipeline uses, copied out of the Settings class at one moment.
+ *
+ * The Settings fields are edited on the UI thread, so instead of reading them, the pipeline reads the latest snapshot from
+ * Settings.getSnapshot() before each frame.  Snapshots never change once they are made, so a frame can't see half of an update,
+ * and the version tells the pipeline when it has to rebuild its tables.
+ *
+ * NOTE: this must not reference Android classes, so that the pipeline can run on a normal JVM
+ */
+public class SettingsSnapshot
+{
+	// goes up by one every time new settings are published
+	public final long version;
+
+	// the selected slot first, then the other slots with alwaysRun set
+	private final SlotSettings[] slots;
+
+	public final boolean roiTracking, targetTracking, deltaStreaming;
+
+	public final int processingScale, processingThreads;
+
+	// comma separated, in the format TargetSubscriber.parse() takes.  Never null.
+	public final String targetSubscribers;
+
+	public SettingsSnapshot(long version, SlotSettings[] slots, boolean roiTracking, boolean targetTracking, boolean deltaStreaming, int processingScale, int processingThreads, String targetSubscribers)
+	{
+		this.version = version;
+
+		this.slots = slots.clone();
+
+		this.roiTracking = roiTracking;
+		this.targetTracking = targetTracking;
+		this.deltaStreaming = deltaStreaming;
+
+		this.processingScale = processingScale;
+		this.processingThreads = processingThreads;
+
+		this.targetSubscribers = targetSubscribers != null ? targetSubscribers : "";
+	}
+
+	/**
+	 * Copy the current values of the Settings class.
+	 */
+	static SettingsSnapshot fromSettings(long version)
+	{
+		SlotSettings[] extraSlots = Settings.extraSlots;
+
+		SlotSettings[] slots = new SlotSettings[1 + extraSlots.length];
+		slots[0] = SlotSettings.fromSettings();
+		System.arraycopy(extraSlots, 0, slots, 1, extraSlots.length);
+
+		return new SettingsSnapshot(version, slots, Settings.roiTracking, Settings.targetTracking, Settings.deltaStreaming, Math.max(1, Settings.processingScale), Math.max(1, Settings.processingThreads), Settings.targetSubscribers);
+	}
+
+	/**
+	 * @return the number of slots to run, including the selected one
+	 */
+	public int getNumSlots()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * @param index 0 for the selected slot, then the other slots that always run
+	 */
+	public SlotSettings getSlot(int index)
+	{
+		return slots[index];
+	}
+
+	public SlotSettings getSelectedSlot()
+	{
+		return slots[0];
+	}
+
+	/**
+	 * Check whether targets being tracked with other's settings can still be tracked with these.
+	 * Only which slots run, their color ranges, the processing scale and the tracking switches matter, so
+	 * changes like the number of targets or where they are sent don't throw away the trackers.
+	 */
+	public boolean tracksSameTargets(SettingsSnapshot other)
+	{
+		if(slots.length != other.slots.length || processingScale != other.processingScale || roiTracking != other.roiTracking || targetTracking != other.targetTracking)
+		{
+			return false;
+		}
+
+		for(int index = 0; index < slots.length; ++index)
+		{
+			if(!slots[index].hasSameRange(other.slots[index]))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Settings version " + version + ", " + slots.length + " slot(s), 1/" + processingScale + " scale on " + processingThreads + " thread(s)";
+	}
+}
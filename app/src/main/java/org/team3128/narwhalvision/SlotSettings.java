@@ -0,0 +1,73 @@
+package org.team3128.narwhalvision;
+
+/**
+ * The settings that are saved separately for each slot: what color to threshold and what a target looks like.
+ *
+ * Objects of this class never change, so the pipeline can keep several slots' settings at once and read them from its own thread.
+ *
+ * NOTE: this must not reference Android classes, so that the pipeline can run on a normal JVM
+ */
+public class SlotSettings
+{
+	// which slot these came from, 1 indexed
+	public final int slot;
+
+	public final int lowH, highH, lowS, highS, lowV, highV;
+
+	public final int minArea, targetSolidity;
+
+	public final int targetWidth, targetHeight;
+
+	public final int numTargets;
+
+	public SlotSettings(int slot, int lowH, int highH, int lowS, int highS, int lowV, int highV, int minArea, int targetSolidity, int targetWidth, int targetHeight, int numTargets)
+	{
+		this.slot = slot;
+
+		this.lowH = lowH;
+		this.highH = highH;
+		this.lowS = lowS;
+		this.highS = highS;
+		this.lowV = lowV;
+		this.highV = highV;
+
+		this.minArea = minArea;
+		this.targetSolidity = targetSolidity;
+
+		this.targetWidth = targetWidth;
+		this.targetHeight = targetHeight;
+
+		this.numTargets = numTargets;
+	}
+
+	/**
+	 * Copy the selected slot's settings out of the Settings class.
+	 */
+	public static SlotSettings fromSettings()
+	{
+		return new SlotSettings(Settings.selectedSlot, Settings.lowH, Settings.highH, Settings.lowS, Settings.highS, Settings.lowV, Settings.highV,
+				Settings.minArea, Settings.targetSolidity, Settings.targetWidth, Settings.targetHeight, Settings.numTargets);
+	}
+
+	/**
+	 * @return true if other is the same slot with the same color range, so it thresholds frames into the same mask
+	 */
+	public boolean hasSameRange(SlotSettings other)
+	{
+		return slot == other.slot && lowH == other.lowH && highH == other.highH && lowS == other.lowS && highS == other.highS && lowV == other.lowV && highV == other.highV;
+	}
+
+	/**
+	 * Get the target aspect ratio as a decimal, width over height
+	 */
+	public double getTargetAspectRatio()
+	{
+		return targetWidth / ((double) targetHeight);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Slot " + slot + ": H " + lowH + "-" + highH + ", S " + lowS + "-" + highS + ", V " + lowV + "-" + highV;
+	}
+}
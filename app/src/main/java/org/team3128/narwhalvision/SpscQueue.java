@@ -0,0 +1,112 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Bounded, lock-free first-in first-out queue between exactly one producer thread and one consumer thread.
+ *
+ * Items go into a ring buffer.  Each side keeps its own position in a plain field, and only publishes it through a volatile field
+ * for the other side to read, so polling an empty queue costs a single volatile read and nothing ever allocates.
+ *
+ * offer() may only be called from the producer thread, and poll() and isEmpty() only from the consumer thread.
+ */
+public class SpscQueue<T>
+{
+	private final Object[] items;
+	private final int mask;
+
+	// number of items ever offered, written only by the producer
+	private volatile long tail;
+
+	// number of items ever polled, written only by the consumer
+	private volatile long head;
+
+	// the producer's copy of tail, and the last value of head it saw
+	private long producerTail, producerHead;
+
+	// the consumer's copy of head
+	private long consumerHead;
+
+	/**
+	 * @param capacity the most items the queue can hold.  Rounded up to a power of two.
+	 */
+	public SpscQueue(int capacity)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+		}
+
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+		{
+			size <<= 1;
+		}
+
+		items = new Object[size];
+		mask = size - 1;
+	}
+
+	public int capacity()
+	{
+		return items.length;
+	}
+
+	/**
+	 * Add an item to the back of the queue.  Never blocks.
+	 *
+	 * @return false if the queue was full, in which case the item was not added.
+	 */
+	public boolean offer(T item)
+	{
+		if(producerTail - producerHead == items.length)
+		{
+			//only look at the consumer's position when it seems to be full
+			producerHead = head;
+
+			if(producerTail - producerHead == items.length)
+			{
+				return false;
+			}
+		}
+
+		items[(int) producerTail & mask] = item;
+
+		//the volatile write makes the item visible to the consumer
+		tail = ++producerTail;
+
+		return true;
+	}
+
+	/**
+	 * Take the item at the front of the queue.  Never blocks.
+	 *
+	 * @return the item, or null if the queue was empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll()
+	{
+		long current = consumerHead;
+
+		if(current == tail)
+		{
+			return null;
+		}
+
+		int index = (int) current & mask;
+
+		T item = (T) items[index];
+		items[index] = null;
+
+		//the volatile write hands the slot back to the producer
+		head = consumerHead = current + 1;
+
+		return item;
+	}
+
+	/**
+	 * @return true if there is nothing to poll
+	 */
+	public boolean isEmpty()
+	{
+		return consumerHead == tail;
+	}
+}
@@ -2,21 +2,48 @@ package org.team3128.narwhalvision;
 
 /**
  * Command which changes the target settings slot in use on the phone
+ *
+ * Acked once a frame has been processed with the new slot's settings.
  */
 
 public class SwitchSlotCommand extends PhoneCommand
 {
 	private int newSlot;
 
+	//for Kryo
+	private SwitchSlotCommand()
+	{
+	}
+
 	public SwitchSlotCommand(int newSlot)
 	{
 		this.newSlot = newSlot;
 	}
 
 	@Override
-	public boolean execute()
+	public byte execute(CommandContext context)
+	{
+		if(newSlot < 1 || newSlot > Settings.NUM_SLOTS)
+		{
+			return CommandResponse.NACK_INVALID;
+		}
+
+		//the slot is saved and loaded on the UI thread, which publishes its settings for the pipeline
+		SettingsPreferences.requestSlotChange(newSlot);
+
+		return CommandResponse.PENDING;
+	}
+
+	@Override
+	public boolean isApplied(CommandContext context)
+	{
+		return context.getSettings().getSelectedSlot().slot == newSlot;
+	}
+
+	@Override
+	public Object getCoalescingKey()
 	{
-		Settings.changeSlot(newSlot);
-		return true;
+		//only the last slot switch matters
+		return SwitchSlotCommand.class;
 	}
 }
@@ -33,6 +33,16 @@ public class TargetInformation
 	// position in the list of targets found in this round of searching.  A lower number means that this target matched the criteria better. The best target of each round has index 1.
 	public int targetRanking;
 
+	// stays the same for one target from frame to frame while TargetTracker can follow it.  0 if the target isn't tracked.
+	public int trackId;
+
+	// how fast the center of the bounding box is moving, in pixels per second.  0 if the target isn't tracked.
+	public float velocityX, velocityY;
+
+	// which settings slot found this target, 1 indexed.  0 if unknown.
+	// targetRanking and trackId are only unique among targets from the same slot.
+	public int slot;
+
 	/**
 	 * Populate from image and index in image
 	 *
@@ -40,14 +50,31 @@ public class TargetInformation
 	 */
 	public TargetInformation(Rect target, int imageWidth, int imageHeight, float horizontalFOV, float verticalFOV, int targetRanking)
 	{
-		this.targetRanking = targetRanking;
+		set((float) target.tl().x, (float) target.tl().y, (float) target.br().x, (float) target.br().y, imageWidth, imageHeight, horizontalFOV, verticalFOV, targetRanking);
+	}
 
-		area = (float) target.area();
+	/**
+	 * Populate from the edges of the bounding box.  Used when decoding packets, which don't include the derived fields.
+	 */
+	public TargetInformation(float left, float top, float right, float bottom, int imageWidth, int imageHeight, float horizontalFOV, float verticalFOV, int targetRanking)
+	{
+		set(left, top, right, bottom, imageWidth, imageHeight, horizontalFOV, verticalFOV, targetRanking);
+	}
+
+	/**
+	 * Overwrite every field of this object, calculating the derived ones from the bounding box.
+	 * Lets a decoder reuse TargetInformation objects instead of allocating new ones.
+	 *
+	 * The tracking fields are cleared; use setTracking() to fill them in.  The slot is left alone.
+	 */
+	public void set(float left, float top, float right, float bottom, int imageWidth, int imageHeight, float horizontalFOV, float verticalFOV, int targetRanking)
+	{
+		this.targetRanking = targetRanking;
 
-		boundingRectTop = (float) target.tl().y;
-		boundingRectRight = (float) target.br().x;
-		boundingRectLeft = (float) target.tl().x;
-		boundingRectBottom = (float) target.br().y;
+		boundingRectTop = top;
+		boundingRectRight = right;
+		boundingRectLeft = left;
+		boundingRectBottom = bottom;
 
 		this.imageWidth = imageWidth;
 		this.imageHeight = imageHeight;
@@ -60,6 +87,22 @@ public class TargetInformation
 
 		boundingRectHeight = boundingRectBottom - boundingRectTop;
 		boundingRectWidth = boundingRectRight - boundingRectLeft;
+
+		area = boundingRectWidth * boundingRectHeight;
+
+		trackId = 0;
+		velocityX = 0;
+		velocityY = 0;
+	}
+
+	/**
+	 * Set the fields filled in by TargetTracker.
+	 */
+	public void setTracking(int trackId, float velocityX, float velocityY)
+	{
+		this.trackId = trackId;
+		this.velocityX = velocityX;
+		this.velocityY = velocityY;
 	}
 
 	/**
@@ -131,9 +174,23 @@ public class TargetInformation
 		return (float) Math.toDegrees(Math.atan(distanceFromCenter * Math.tan(Math.toRadians(horizontalFOV)) / imageWidth));
 	}
 
+	/**
+	 * Get how fast getHorizontalAngle() is changing, in degrees per second.  Only nonzero for tracked targets.
+	 * A robot turning to follow the target can use this to lead it.
+	 */
+	public float getHorizontalAngularVelocity()
+	{
+		float distanceFromCenter = boundingRectCenterX - imageWidth / 2.0F;
+		double pixelsToTangent = Math.tan(Math.toRadians(horizontalFOV)) / imageWidth;
+		double tangent = distanceFromCenter * pixelsToTangent;
+
+		//derivative of atan(x) is 1 / (1 + x^2)
+		return (float) Math.toDegrees(velocityX * pixelsToTangent / (1 + tangent * tangent));
+	}
+
 	@Override
 	public String toString()
 	{
-		return "TargetInformation: center: (" + boundingRectCenterX + ", " + boundingRectCenterY + "), bounding box: (" + boundingRectWidth + ", " + boundingRectHeight + "), image size: (" + imageWidth + ", " + imageHeight + "), horizontal angle offset: " + getHorizontalAngle() + " deg, vertical angle offset: " + getVerticalAngle();
+		return "TargetInformation: center: (" + boundingRectCenterX + ", " + boundingRectCenterY + "), bounding box: (" + boundingRectWidth + ", " + boundingRectHeight + "), image size: (" + imageWidth + ", " + imageHeight + "), horizontal angle offset: " + getHorizontalAngle() + " deg, vertical angle offset: " + getVerticalAngle() + " deg, slot: " + slot + ", track: " + trackId;
 	}
 }
@@ -0,0 +1,147 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Fixed layout binary format for the target packets sent to the robot.
+ *
+ * All values are big endian (Java's and the network's byte order).  A packet is a header followed by one record per target:
+ *
+ * <pre>
+ * header (HEADER_SIZE bytes):
+ *   u8   packet type (PACKET_TYPE_TARGETS)
+ *   u8   format version (VERSION)
+ *   u16  number of targets
+ *   u32  sequence number, which increases with every camera frame
+ *   i64  capture time of the frame, in nanoseconds on the phone's monotonic clock
+ *   u32  microseconds between the frame's capture and the packet being sent
+ *   u16  image width
+ *   u16  image height
+ *   f32  horizontal FOV
+ *   f32  vertical FOV
+ *
+ * target (TARGET_SIZE bytes each):
+ *   f32  bounding box left
+ *   f32  bounding box top
+ *   f32  bounding box right
+ *   f32  bounding box bottom
+ *   u8   target ranking
+ *   u8   settings slot (0 if unknown)
+ *   u16  track ID (0 if untracked)
+ *   f32  horizontal velocity of the center, in pixels per second
+ *   f32  vertical velocity of the center, in pixels per second
+ * </pre>
+ *
+ * The rest of TargetInformation's fields are derived from these, so they aren't sent.
+ * Decode packets with TargetPacketDecoder.
+ *
+ * The phone's clock means nothing to the robot, but the latency does: the frame was captured at about
+ * (receive time - latency) on the robot's clock, minus however long the network took.
+ *
+ * NOTE: like TargetInformation, this cannot reference any classes available on only one side or the other
+ */
+public class TargetPacket
+{
+	public final static byte PACKET_TYPE_TARGETS = 1;
+
+	// increase this whenever the layout changes
+	public final static byte VERSION = 4;
+
+	public final static int HEADER_SIZE = 32;
+	public final static int TARGET_SIZE = 28;
+
+	// positions of the fields which are read back or patched after encoding
+	private final static int CAPTURE_TIME_OFFSET = 8;
+	private final static int LATENCY_OFFSET = 16;
+
+	// more than this are not sent
+	public final static int MAX_TARGETS = 64;
+
+	// big enough for any packet
+	public final static int MAX_PACKET_SIZE = HEADER_SIZE + MAX_TARGETS * TARGET_SIZE;
+
+	/**
+	 * @return the size of a packet containing the given number of targets
+	 */
+	public static int getPacketSize(int numTargets)
+	{
+		return HEADER_SIZE + Math.min(numTargets, MAX_TARGETS) * TARGET_SIZE;
+	}
+
+	/**
+	 * Write a target packet at the buffer's position, and advance the position to the end of it.
+	 *
+	 * The image size and FOV are taken from the first target, since they are the same for all of them.
+	 * The latency is set to the time up to now.  Call setLatency() again right before sending to make it exact.
+	 *
+	 * @param buffer must have at least getPacketSize(targets.size()) bytes remaining
+	 * @return the number of bytes written
+	 */
+	public static int encode(ByteBuffer buffer, int sequence, long captureTimeNanos, List<TargetInformation> targets)
+	{
+		int numTargets = Math.min(targets.size(), MAX_TARGETS);
+		int startPosition = buffer.position();
+
+		buffer.put(PACKET_TYPE_TARGETS);
+		buffer.put(VERSION);
+		buffer.putShort((short) numTargets);
+		buffer.putInt(sequence);
+		buffer.putLong(captureTimeNanos);
+		buffer.putInt(getLatencyMicros(captureTimeNanos, System.nanoTime()));
+
+		if(numTargets > 0)
+		{
+			TargetInformation first = targets.get(0);
+
+			buffer.putShort((short) first.imageWidth);
+			buffer.putShort((short) first.imageHeight);
+			buffer.putFloat(first.horizontalFOV);
+			buffer.putFloat(first.verticalFOV);
+		}
+		else
+		{
+			buffer.putShort((short) 0);
+			buffer.putShort((short) 0);
+			buffer.putFloat(0);
+			buffer.putFloat(0);
+		}
+
+		for(int index = 0; index < numTargets; ++index)
+		{
+			TargetInformation target = targets.get(index);
+
+			buffer.putFloat(target.boundingRectLeft);
+			buffer.putFloat(target.boundingRectTop);
+			buffer.putFloat(target.boundingRectRight);
+			buffer.putFloat(target.boundingRectBottom);
+			buffer.put((byte) target.targetRanking);
+			buffer.put((byte) target.slot);
+			buffer.putShort((short) target.trackId);
+			buffer.putFloat(target.velocityX);
+			buffer.putFloat(target.velocityY);
+		}
+
+		return buffer.position() - startPosition;
+	}
+
+	/**
+	 * Overwrite the latency of an already encoded packet.
+	 *
+	 * @param packetStart position of the start of the packet in the buffer
+	 * @param sendTimeNanos when the packet is being sent, from System.nanoTime()
+	 * @return the new latency in microseconds
+	 */
+	public static int setLatency(ByteBuffer buffer, int packetStart, long sendTimeNanos)
+	{
+		int latencyMicros = getLatencyMicros(buffer.getLong(packetStart + CAPTURE_TIME_OFFSET), sendTimeNanos);
+		buffer.putInt(packetStart + LATENCY_OFFSET, latencyMicros);
+
+		return latencyMicros;
+	}
+
+	private static int getLatencyMicros(long captureTimeNanos, long sendTimeNanos)
+	{
+		return (int) Math.max(0, Math.min((sendTimeNanos - captureTimeNanos) / 1000, Integer.MAX_VALUE));
+	}
+}
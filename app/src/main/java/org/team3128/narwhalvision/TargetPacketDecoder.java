@@ -0,0 +1,131 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Reads the packets written by TargetPacket.  Meant to be copied into the robot code along with TargetInformation.
+ *
+ * The decoder reuses its TargetInformation objects, so copy anything that needs to outlive the next call to decode().
+ *
+ * NOTE: like TargetInformation, this cannot reference any classes available on only one side or the other
+ */
+public class TargetPacketDecoder
+{
+	private int sequence;
+	private long captureTimeNanos;
+	private int latencyMicros;
+
+	private final ArrayList<TargetInformation> targets = new ArrayList<>();
+
+	// every TargetInformation ever handed out, so they can be reused
+	private final ArrayList<TargetInformation> targetStorage = new ArrayList<>();
+
+	/**
+	 * Decode a packet from the buffer's position up to its limit.
+	 *
+	 * @return false if the data is not a target packet of the supported version, or is cut off.
+	 * In that case, the results of the previous packet are left alone.
+	 */
+	public boolean decode(ByteBuffer buffer)
+	{
+		if(buffer.remaining() < TargetPacket.HEADER_SIZE)
+		{
+			return false;
+		}
+
+		int startPosition = buffer.position();
+
+		if(buffer.get(startPosition) != TargetPacket.PACKET_TYPE_TARGETS || buffer.get(startPosition + 1) != TargetPacket.VERSION)
+		{
+			return false;
+		}
+
+		int numTargets = buffer.getShort(startPosition + 2) & 0xFFFF;
+
+		if(numTargets > TargetPacket.MAX_TARGETS || buffer.remaining() < TargetPacket.getPacketSize(numTargets))
+		{
+			return false;
+		}
+
+		buffer.position(startPosition + 4);
+
+		sequence = buffer.getInt();
+		captureTimeNanos = buffer.getLong();
+		latencyMicros = buffer.getInt();
+
+		int imageWidth = buffer.getShort() & 0xFFFF;
+		int imageHeight = buffer.getShort() & 0xFFFF;
+		float horizontalFOV = buffer.getFloat();
+		float verticalFOV = buffer.getFloat();
+
+		while(targetStorage.size() < numTargets)
+		{
+			targetStorage.add(new TargetInformation());
+		}
+
+		targets.clear();
+
+		for(int index = 0; index < numTargets; ++index)
+		{
+			float left = buffer.getFloat();
+			float top = buffer.getFloat();
+			float right = buffer.getFloat();
+			float bottom = buffer.getFloat();
+			int ranking = buffer.get() & 0xFF;
+			int slot = buffer.get() & 0xFF;
+			int trackId = buffer.getShort() & 0xFFFF;
+			float velocityX = buffer.getFloat();
+			float velocityY = buffer.getFloat();
+
+			TargetInformation target = targetStorage.get(index);
+			target.set(left, top, right, bottom, imageWidth, imageHeight, horizontalFOV, verticalFOV, ranking);
+			target.setTracking(trackId, velocityX, velocityY);
+			target.slot = slot;
+			targets.add(target);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decode a packet from part of a byte array, e.g. the one a DatagramPacket was received into.
+	 */
+	public boolean decode(byte[] data, int offset, int length)
+	{
+		return decode(ByteBuffer.wrap(data, offset, length));
+	}
+
+	/**
+	 * @return the sequence number of the last decoded packet.  Use this to throw out packets that arrive out of order.
+	 */
+	public int getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * @return when the last decoded packet's frame was captured, on the phone's clock
+	 */
+	public long getCaptureTimeNanos()
+	{
+		return captureTimeNanos;
+	}
+
+	/**
+	 * @return how long the last decoded packet's frame took to get from the camera to the network, in microseconds.
+	 * Subtract this (plus an estimate of the network delay) from the time the packet arrived to get when the frame was captured.
+	 */
+	public int getLatencyMicros()
+	{
+		return latencyMicros;
+	}
+
+	/**
+	 * @return the targets in the last decoded packet, best first
+	 */
+	public ArrayList<TargetInformation> getTargets()
+	{
+		return targets;
+	}
+}
@@ -0,0 +1,159 @@
+package org.team3128.narwhalvision;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+
+/**
+ * Sends each target packet to every subscriber.
+ *
+ * A packet is encoded once, and the same buffer is sent to each subscriber in turn from one unconnected channel, so fanning out
+ * doesn't copy or allocate anything.  Subscribers can be added and removed from any thread while packets are being sent:
+ * the registry is an array that is replaced, never changed, so the sending thread always sees a complete list.
+ */
+public class TargetPublisher
+{
+	private volatile TargetSubscriber[] subscribers = new TargetSubscriber[0];
+
+	// only written by the sending thread
+	private volatile long bytesSent;
+	private volatile long sendFailures;
+
+	public synchronized void addSubscriber(TargetSubscriber subscriber)
+	{
+		TargetSubscriber[] newSubscribers = new TargetSubscriber[subscribers.length + 1];
+		System.arraycopy(subscribers, 0, newSubscribers, 0, subscribers.length);
+		newSubscribers[subscribers.length] = subscriber;
+
+		subscribers = newSubscribers;
+	}
+
+	/**
+	 * @return false if the subscriber wasn't registered
+	 */
+	public synchronized boolean removeSubscriber(TargetSubscriber subscriber)
+	{
+		for(int index = 0; index < subscribers.length; ++index)
+		{
+			if(subscribers[index] == subscriber)
+			{
+				TargetSubscriber[] newSubscribers = new TargetSubscriber[subscribers.length - 1];
+				System.arraycopy(subscribers, 0, newSubscribers, 0, index);
+				System.arraycopy(subscribers, index + 1, newSubscribers, index, newSubscribers.length - index);
+
+				subscribers = newSubscribers;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Swap one group of subscribers for another in a single step, e.g. when the list in the settings changes.
+	 */
+	public synchronized void replaceSubscribers(List<TargetSubscriber> oldSubscribers, List<TargetSubscriber> newSubscribers)
+	{
+		for(TargetSubscriber subscriber : oldSubscribers)
+		{
+			removeSubscriber(subscriber);
+		}
+
+		for(TargetSubscriber subscriber : newSubscribers)
+		{
+			addSubscriber(subscriber);
+		}
+	}
+
+	/**
+	 * @return the current subscribers.  Don't modify the array.
+	 */
+	public TargetSubscriber[] getSubscribers()
+	{
+		return subscribers;
+	}
+
+	/**
+	 * Send a packet to every subscriber whose rate limit allows it.  Called from the sending thread.
+	 *
+	 * @param channel must not be connected.  If it is non-blocking, a full send buffer counts as a failure instead of waiting.
+	 * @param packet from its position to its limit.  The position is left where it was.
+	 * @return the number of subscribers the packet was sent to
+	 */
+	public int publish(DatagramChannel channel, ByteBuffer packet, long nowNanos)
+	{
+		int packetStart = packet.position();
+		int packetSize = packet.remaining();
+
+		//anything that isn't a full target packet is a delta, which needs the subscriber to have the keyframe before it
+		boolean keyframe = packet.get(packetStart) == TargetPacket.PACKET_TYPE_TARGETS;
+
+		int sentTo = 0;
+
+		for(TargetSubscriber subscriber : subscribers)
+		{
+			if(!subscriber.shouldSend(nowNanos, keyframe))
+			{
+				continue;
+			}
+
+			packet.position(packetStart);
+
+			try
+			{
+				if(channel.send(packet, subscriber.address) == 0)
+				{
+					subscriber.onSendFailed(keyframe);
+					++sendFailures;
+					continue;
+				}
+			}
+			catch(IOException e)
+			{
+				//one unreachable subscriber shouldn't stop the others from getting the packet
+				subscriber.onSendFailed(keyframe);
+				++sendFailures;
+				continue;
+			}
+
+			subscriber.onSent(nowNanos, keyframe);
+			bytesSent += packetSize;
+			++sentTo;
+		}
+
+		packet.position(packetStart);
+
+		return sentTo;
+	}
+
+	/**
+	 * @return total bytes sent to all subscribers
+	 */
+	public long getBytesSent()
+	{
+		return bytesSent;
+	}
+
+	/**
+	 * @return total number of sends to a subscriber that failed
+	 */
+	public long getSendFailures()
+	{
+		return sendFailures;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder("Subscribers: ");
+
+		TargetSubscriber[] currentSubscribers = subscribers;
+		for(int index = 0; index < currentSubscribers.length; ++index)
+		{
+			builder.append(index == 0 ? "" : ", ").append(currentSubscribers[index]);
+		}
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,62 @@
+package org.team3128.narwhalvision;
+
+/**
+ * The math used to measure and rank contours, pulled out of the pipeline so that it can be benchmarked and tested on its own.
+ *
+ * NOTE: this class must not reference Android or OpenCV classes (including Settings) so that it can be tested on a normal JVM.
+ */
+public class TargetScorer
+{
+	/**
+	 * @return ratio between 1 and 0 of how much of its bounding box a contour fills
+	 */
+	public static double getSolidity(double contourArea, double boundingBoxArea)
+	{
+		return contourArea / boundingBoxArea;
+	}
+
+	/**
+	 * @return factor between a contour's aspect ratio and the target ratio.  Always at least 1.
+	 */
+	public static double getAspectQuotient(double aspect, double targetAspect)
+	{
+		double aspectQuotient = aspect / targetAspect;
+
+		//if the target aspect ratio was the larger one, flip the fraction
+		if(aspectQuotient < 1.0)
+		{
+			aspectQuotient = 1.0/aspectQuotient;
+		}
+
+		return aspectQuotient;
+	}
+
+	/**
+	 * for now, we just rank by area and solidity (the goal is NOT very solid)
+	 *
+	 * @param targetSolidity target solidity in percent
+	 * @return number representing how well a contour matches the targeting criteria
+	 */
+	public static double getScore(double contourArea, double solidity, double aspectQuotient, int targetSolidity)
+	{
+		return contourArea / (1000 * Math.abs(100 * solidity - targetSolidity) * aspectQuotient);
+	}
+
+	/**
+	 * @param minArea minimum bounding box area, in percent of the frame
+	 * @return the smallest bounding box area, in pixels, which isLargeEnough() accepts
+	 */
+	public static double getMinBoundingBoxArea(int frameWidth, int frameHeight, int minArea)
+	{
+		return (((double) minArea) * frameWidth * frameHeight) / 100;
+	}
+
+	/**
+	 * @param minArea minimum bounding box area, in percent of the frame
+	 * @return false if the bounding box is too small to be a target
+	 */
+	public static boolean isLargeEnough(double boundingBoxArea, int frameWidth, int frameHeight, int minArea)
+	{
+		return (boundingBoxArea * 100) / (frameWidth * frameHeight) >= minArea;
+	}
+}
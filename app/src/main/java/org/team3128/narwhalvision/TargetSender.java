@@ -0,0 +1,340 @@
+package org.team3128.narwhalvision;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends target packets to the robot and any other subscribers from its own thread, so a slow or blocked socket never holds up the vision thread.
+ *
+ * Packets are encoded into a few preallocated direct buffers and handed to a TargetPublisher, which sends the same buffer to every subscriber,
+ * so sending does not allocate.
+ * Like the VisionWorker, only the newest packet matters: if the last one hasn't been sent by the time the next one is ready, it is dropped.
+ *
+ * Targets are either sent whole with send(), or streamed as keyframes and deltas with stream().
+ *
+ * Besides the subscribers added with addSubscriber(), packets go to the ones listed in Settings.targetSubscribers.
+ */
+public class TargetSender implements Runnable
+{
+	private final static String TAG = "NVSender";
+
+	// one being encoded, one waiting, and one being sent
+	private final static int NUM_BUFFERS = 3;
+
+	private final FrameExchanger<ByteBuffer> packetExchanger;
+	private final ObjectPool<ByteBuffer> bufferPool;
+
+	private volatile DatagramChannel channel;
+
+	private final TargetPublisher publisher = new TargetPublisher();
+
+	private Thread thread;
+
+	// only used by the sending thread
+	private long subscriberSettingsVersion = -1;
+	private String subscriberSettings = "";
+	private List<TargetSubscriber> settingsSubscribers = new ArrayList<>();
+
+	// only written by the sending thread
+	private volatile long packetsSent;
+
+	// only written by the vision thread
+	private volatile long packetsWithoutBuffer;
+
+	// time from each sent frame's capture to its packet going out
+	private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+	// only used by the vision thread
+	private final TargetStreamEncoder streamEncoder = new TargetStreamEncoder();
+
+	// set when a keyframe couldn't be sent or there are new subscribers, so the vision thread sends another
+	private volatile boolean keyframeNeeded;
+
+	public TargetSender()
+	{
+		packetExchanger = new FrameExchanger<>();
+		bufferPool = new ObjectPool<>(NUM_BUFFERS);
+
+		for(int index = 0; index < NUM_BUFFERS; ++index)
+		{
+			bufferPool.release(ByteBuffer.allocateDirect(TargetStreamEncoder.MAX_PACKET_SIZE));
+		}
+	}
+
+	public void start()
+	{
+		thread = new Thread(this, TAG);
+		thread.start();
+	}
+
+	/**
+	 * Stop the sending thread.  Blocks until it exits.
+	 */
+	public void stop()
+	{
+		if(thread != null)
+		{
+			thread.interrupt();
+
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+
+			thread = null;
+		}
+	}
+
+	/**
+	 * Set the channel to send packets on.  It must not be connected, so that it can send to every subscriber.
+	 */
+	public void setChannel(DatagramChannel channel)
+	{
+		this.channel = channel;
+	}
+
+	/**
+	 * Start sending packets to a subscriber.  Can be called from any thread.
+	 */
+	public void addSubscriber(TargetSubscriber subscriber)
+	{
+		publisher.addSubscriber(subscriber);
+
+		//a new subscriber can't decode deltas until it gets a keyframe
+		keyframeNeeded = true;
+	}
+
+	/**
+	 * Stop sending packets to a subscriber.  Can be called from any thread.
+	 */
+	public void removeSubscriber(TargetSubscriber subscriber)
+	{
+		publisher.removeSubscriber(subscriber);
+	}
+
+	public TargetPublisher getPublisher()
+	{
+		return publisher;
+	}
+
+	/**
+	 * Queue the targets found in a frame to be sent.  Called from the vision thread, and returns immediately.
+	 */
+	public void send(int sequence, long captureTimeNanos, List<TargetInformation> targets)
+	{
+		if(channel == null)
+		{
+			return;
+		}
+
+		ByteBuffer buffer = bufferPool.acquire();
+		if(buffer == null)
+		{
+			//should only happen if the sending thread is holding onto buffers it shouldn't be
+			++packetsWithoutBuffer;
+			return;
+		}
+
+		buffer.clear();
+		TargetPacket.encode(buffer, sequence, captureTimeNanos, targets);
+		buffer.flip();
+
+		queuePacket(buffer);
+	}
+
+	/**
+	 * Stream the targets found in a frame as a keyframe or delta, if the robot needs to hear about them.
+	 * Called from the vision thread for every processed frame, even ones without targets.
+	 */
+	public void stream(int sequence, long captureTimeNanos, List<TargetInformation> targets)
+	{
+		if(channel == null)
+		{
+			return;
+		}
+
+		ByteBuffer buffer = bufferPool.acquire();
+		if(buffer == null)
+		{
+			++packetsWithoutBuffer;
+			return;
+		}
+
+		if(keyframeNeeded)
+		{
+			keyframeNeeded = false;
+			streamEncoder.requestKeyframe();
+		}
+
+		buffer.clear();
+		if(streamEncoder.encode(buffer, sequence, captureTimeNanos, System.nanoTime(), targets) == 0)
+		{
+			bufferPool.release(buffer);
+			return;
+		}
+		buffer.flip();
+
+		queuePacket(buffer);
+	}
+
+	/**
+	 * Hand an encoded packet to the sending thread, dropping the one it replaces.
+	 */
+	private void queuePacket(ByteBuffer buffer)
+	{
+		ByteBuffer stalePacket = packetExchanger.offer(buffer);
+		if(stalePacket != null)
+		{
+			//deltas after a dropped keyframe would be ignored by the robot
+			if(isKeyframe(stalePacket))
+			{
+				streamEncoder.requestKeyframe();
+			}
+
+			bufferPool.release(stalePacket);
+		}
+	}
+
+	private static boolean isKeyframe(ByteBuffer packet)
+	{
+		//packets always start at the beginning of their buffer
+		return packet.get(0) == TargetPacket.PACKET_TYPE_TARGETS;
+	}
+
+	@Override
+	public void run()
+	{
+		Log.i(TAG, "Starting...");
+
+		while(!Thread.currentThread().isInterrupted())
+		{
+			ByteBuffer packet;
+
+			try
+			{
+				packet = packetExchanger.take();
+			}
+			catch(InterruptedException e)
+			{
+				break;
+			}
+
+			try
+			{
+				updateSettingsSubscribers();
+
+				long sendTime = System.nanoTime();
+				sendLatency.record(TargetPacket.setLatency(packet, packet.position(), sendTime) * 1000L);
+
+				long previousFailures = publisher.getSendFailures();
+
+				//the channel is non-blocking so the command receiver can select on it, which means a full send buffer drops the packet instead of waiting
+				if(publisher.publish(channel, packet, sendTime) > 0)
+				{
+					++packetsSent;
+				}
+
+				if(publisher.getSendFailures() != previousFailures && isKeyframe(packet))
+				{
+					keyframeNeeded = true;
+				}
+			}
+			finally
+			{
+				bufferPool.release(packet);
+			}
+		}
+
+		Log.i(TAG, "Stopped.  " + toString());
+		Log.i(TAG, publisher.toString());
+	}
+
+	/**
+	 * Pick up changes to the subscriber list in the settings.
+	 */
+	private void updateSettingsSubscribers()
+	{
+		SettingsSnapshot settings = Settings.getSnapshot();
+		if(settings.version == subscriberSettingsVersion)
+		{
+			return;
+		}
+
+		subscriberSettingsVersion = settings.version;
+
+		//most settings changes have nothing to do with subscribers, and those shouldn't reset their rate limits
+		if(settings.targetSubscribers.equals(subscriberSettings))
+		{
+			return;
+		}
+
+		subscriberSettings = settings.targetSubscribers;
+
+		List<TargetSubscriber> newSubscribers;
+		try
+		{
+			newSubscribers = TargetSubscriber.parseList(subscriberSettings, NarwhalVisionActivity.NARWHAL_VISION_PORT);
+		}
+		catch(IllegalArgumentException e)
+		{
+			Log.e(TAG, "Invalid subscriber list \"" + subscriberSettings + "\": " + e.getMessage());
+			newSubscribers = new ArrayList<>();
+		}
+
+		publisher.replaceSubscribers(settingsSubscribers, newSubscribers);
+		settingsSubscribers = newSubscribers;
+
+		Log.i(TAG, publisher.toString());
+
+		keyframeNeeded = true;
+	}
+
+	/**
+	 * @return number of packets which were sent to at least one subscriber
+	 */
+	public long getPacketsSent()
+	{
+		return packetsSent;
+	}
+
+	public long getBytesSent()
+	{
+		return publisher.getBytesSent();
+	}
+
+	public long getSendFailures()
+	{
+		return publisher.getSendFailures();
+	}
+
+	/**
+	 * @return the capture to send latency of recent packets.  Can be read from any thread.
+	 */
+	public LatencyHistogram getSendLatency()
+	{
+		return sendLatency;
+	}
+
+	/**
+	 * @return number of packets which were never sent because a newer one replaced them, or there was no free buffer
+	 */
+	public long getPacketsDropped()
+	{
+		return packetExchanger.getDroppedItems() + packetsWithoutBuffer;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Packets sent: " + packetsSent + ", bytes sent: " + publisher.getBytesSent() + ", send failures: " + publisher.getSendFailures() + ", packets dropped: " + getPacketsDropped() + ", latency: " + sendLatency
+				+ ", stream: " + streamEncoder;
+	}
+}
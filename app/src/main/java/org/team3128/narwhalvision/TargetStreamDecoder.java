@@ -0,0 +1,280 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Rebuilds the targets from the keyframes and delta packets written by TargetStreamEncoder.  Meant to be copied into the robot code
+ * along with TargetPacketDecoder and TargetInformation.
+ *
+ * Deltas for a keyframe that wasn't received are ignored until the next keyframe arrives, at most a keyframe interval later.
+ * Since the phone sends something at least every heartbeat interval, going a few heartbeat intervals without a packet means the link is down.
+ *
+ * The decoder reuses its TargetInformation objects, so copy anything that needs to outlive the next call to decode().
+ *
+ * NOTE: like TargetInformation, this cannot reference any classes available on only one side or the other
+ */
+public class TargetStreamDecoder
+{
+	private final TargetPacketDecoder keyframeDecoder = new TargetPacketDecoder();
+
+	private boolean hasKeyframe;
+	private int keyframeSequence;
+
+	private int sequence;
+	private long captureTimeNanos;
+	private int latencyMicros;
+
+	// the keyframe's targets, as received
+	private final ArrayList<TargetInformation> keyframeTargets = new ArrayList<>();
+
+	// the keyframe's targets with the latest deltas applied, one for each keyframe target
+	private final ArrayList<TargetInformation> currentTargets = new ArrayList<>();
+	private boolean[] lost = new boolean[0];
+
+	// the targets which are still being seen, best first
+	private final ArrayList<TargetInformation> targets = new ArrayList<>();
+
+	// the targets which were lost in the last decoded packet, copied since the current targets get overwritten
+	private final ArrayList<TargetInformation> lostTargets = new ArrayList<>();
+	private final ArrayList<TargetInformation> lostStorage = new ArrayList<>();
+
+	/**
+	 * Decode a keyframe or a delta packet from the buffer's position up to its limit.
+	 *
+	 * @return false if the data is not part of the stream, is cut off, belongs to a keyframe that wasn't received,
+	 * or is older than the last decoded packet.  In that case, the results of the previous packet are left alone.
+	 */
+	public boolean decode(ByteBuffer buffer)
+	{
+		if(!buffer.hasRemaining())
+		{
+			return false;
+		}
+
+		byte packetType = buffer.get(buffer.position());
+
+		if(packetType == TargetPacket.PACKET_TYPE_TARGETS)
+		{
+			return decodeKeyframe(buffer);
+		}
+		else if(packetType == TargetStreamEncoder.PACKET_TYPE_TARGET_DELTA)
+		{
+			return decodeDelta(buffer);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Decode a packet from part of a byte array, e.g. the one a DatagramPacket was received into.
+	 */
+	public boolean decode(byte[] data, int offset, int length)
+	{
+		return decode(ByteBuffer.wrap(data, offset, length));
+	}
+
+	private boolean decodeKeyframe(ByteBuffer buffer)
+	{
+		//keyframes are always taken, so a restarted phone is picked up right away
+		if(!keyframeDecoder.decode(buffer))
+		{
+			return false;
+		}
+
+		ArrayList<TargetInformation> decodedTargets = keyframeDecoder.getTargets();
+		int numTargets = decodedTargets.size();
+
+		while(keyframeTargets.size() < numTargets)
+		{
+			keyframeTargets.add(new TargetInformation());
+			currentTargets.add(new TargetInformation());
+		}
+
+		if(lost.length < numTargets)
+		{
+			lost = new boolean[numTargets];
+		}
+
+		lostTargets.clear();
+
+		//lost targets aren't in the keyframe, so they're lost now
+		for(int index = 0; index < targets.size(); ++index)
+		{
+			TargetInformation target = targets.get(index);
+			if(target.trackId != 0 && findTrack(decodedTargets, target.slot, target.trackId) == -1)
+			{
+				addLostTarget(target);
+			}
+		}
+
+		targets.clear();
+
+		for(int index = 0; index < numTargets; ++index)
+		{
+			copy(decodedTargets.get(index), keyframeTargets.get(index));
+			copy(decodedTargets.get(index), currentTargets.get(index));
+			lost[index] = false;
+
+			targets.add(currentTargets.get(index));
+		}
+
+		hasKeyframe = true;
+		keyframeSequence = keyframeDecoder.getSequence();
+		setHeader(keyframeSequence, keyframeDecoder.getCaptureTimeNanos(), keyframeDecoder.getLatencyMicros());
+
+		return true;
+	}
+
+	private boolean decodeDelta(ByteBuffer buffer)
+	{
+		int startPosition = buffer.position();
+
+		if(buffer.remaining() < TargetStreamEncoder.HEADER_SIZE || buffer.get(startPosition + 1) != TargetStreamEncoder.VERSION)
+		{
+			return false;
+		}
+
+		int numEntries = buffer.getShort(startPosition + 2) & 0xFFFF;
+		int packetSequence = buffer.getInt(startPosition + 4);
+
+		if(!hasKeyframe || buffer.getInt(startPosition + 20) != keyframeSequence || numEntries != keyframeTargets.size()
+				|| buffer.remaining() < TargetStreamEncoder.HEADER_SIZE + numEntries * TargetStreamEncoder.ENTRY_SIZE)
+		{
+			return false;
+		}
+
+		//deltas can arrive out of order, and an old one would undo newer changes
+		if(packetSequence - sequence <= 0)
+		{
+			return false;
+		}
+
+		buffer.position(startPosition + 8);
+		long packetCaptureTime = buffer.getLong();
+		int packetLatency = buffer.getInt();
+		buffer.position(startPosition + TargetStreamEncoder.HEADER_SIZE);
+
+		lostTargets.clear();
+		targets.clear();
+
+		for(int index = 0; index < numEntries; ++index)
+		{
+			boolean entryLost = (buffer.get() & TargetStreamEncoder.FLAG_LOST) != 0;
+			buffer.get();
+			float deltaCenterX = buffer.getShort() * TargetStreamEncoder.QUANTUM;
+			float deltaCenterY = buffer.getShort() * TargetStreamEncoder.QUANTUM;
+			float deltaWidth = buffer.getShort() * TargetStreamEncoder.QUANTUM;
+			float deltaHeight = buffer.getShort() * TargetStreamEncoder.QUANTUM;
+
+			TargetInformation keyframeTarget = keyframeTargets.get(index);
+			TargetInformation target = currentTargets.get(index);
+
+			float centerX = keyframeTarget.boundingRectCenterX + deltaCenterX;
+			float centerY = keyframeTarget.boundingRectCenterY + deltaCenterY;
+			float width = keyframeTarget.boundingRectWidth + deltaWidth;
+			float height = keyframeTarget.boundingRectHeight + deltaHeight;
+
+			target.set(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2,
+					keyframeTarget.imageWidth, keyframeTarget.imageHeight, keyframeTarget.horizontalFOV, keyframeTarget.verticalFOV, keyframeTarget.targetRanking);
+			target.setTracking(keyframeTarget.trackId, keyframeTarget.velocityX, keyframeTarget.velocityY);
+			target.slot = keyframeTarget.slot;
+
+			if(entryLost && !lost[index])
+			{
+				addLostTarget(target);
+			}
+
+			lost[index] = entryLost;
+
+			if(!entryLost)
+			{
+				targets.add(target);
+			}
+		}
+
+		setHeader(packetSequence, packetCaptureTime, packetLatency);
+
+		return true;
+	}
+
+	private void setHeader(int sequence, long captureTimeNanos, int latencyMicros)
+	{
+		this.sequence = sequence;
+		this.captureTimeNanos = captureTimeNanos;
+		this.latencyMicros = latencyMicros;
+	}
+
+	private void addLostTarget(TargetInformation target)
+	{
+		if(lostStorage.size() == lostTargets.size())
+		{
+			lostStorage.add(new TargetInformation());
+		}
+
+		TargetInformation lostTarget = lostStorage.get(lostTargets.size());
+		copy(target, lostTarget);
+		lostTargets.add(lostTarget);
+	}
+
+	private static int findTrack(ArrayList<TargetInformation> targets, int slot, int trackId)
+	{
+		for(int index = 0; index < targets.size(); ++index)
+		{
+			if(targets.get(index).trackId == trackId && targets.get(index).slot == slot)
+			{
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	private static void copy(TargetInformation source, TargetInformation destination)
+	{
+		destination.set(source.boundingRectLeft, source.boundingRectTop, source.boundingRectRight, source.boundingRectBottom,
+				source.imageWidth, source.imageHeight, source.horizontalFOV, source.verticalFOV, source.targetRanking);
+		destination.setTracking(source.trackId, source.velocityX, source.velocityY);
+		destination.slot = source.slot;
+	}
+
+	/**
+	 * @return the sequence number of the last decoded packet
+	 */
+	public int getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * @return when the last decoded packet's frame was captured, on the phone's clock
+	 */
+	public long getCaptureTimeNanos()
+	{
+		return captureTimeNanos;
+	}
+
+	/**
+	 * @return how long the last decoded packet's frame took to get from the camera to the network, in microseconds
+	 */
+	public int getLatencyMicros()
+	{
+		return latencyMicros;
+	}
+
+	/**
+	 * @return the targets that are still being seen, best first.  Velocities are the ones sent in the last keyframe.
+	 */
+	public ArrayList<TargetInformation> getTargets()
+	{
+		return targets;
+	}
+
+	/**
+	 * @return the targets that were seen before the last decoded packet, but not in it.  Holds their last known positions.
+	 */
+	public ArrayList<TargetInformation> getLostTargets()
+	{
+		return lostTargets;
+	}
+}
@@ -0,0 +1,371 @@
+package org.team3128.narwhalvision;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Encodes targets as a stream of keyframes and small delta packets, so that packets only go out when the targets change.
+ *
+ * A keyframe is a normal TargetPacket.  Until the next one, each frame's targets are compared to the keyframe's by slot and track ID,
+ * and a delta packet is sent only when one of them has moved or resized by at least the threshold since the last packet, or has been lost.
+ * If nothing changes, the last state is sent again every heartbeat interval, so the robot can tell "no targets" apart from a dead link.
+ *
+ * A delta packet holds one entry for every target in its keyframe, in the keyframe's order, so any one of them is enough to rebuild
+ * the current targets.  A lost delta packet just means an older state until the next one arrives.  All values are big endian:
+ *
+ * <pre>
+ * header (HEADER_SIZE bytes):
+ *   u8   packet type (PACKET_TYPE_TARGET_DELTA)
+ *   u8   format version (VERSION)
+ *   u16  number of entries, which is always the number of targets in the keyframe
+ *   u32  sequence number, which increases with every camera frame
+ *   i64  capture time of the frame, in nanoseconds on the phone's monotonic clock
+ *   u32  microseconds between the frame's capture and the packet being sent
+ *   u32  sequence number of the keyframe the entries are relative to
+ *
+ * entry (ENTRY_SIZE bytes each):
+ *   u8   flags (FLAG_LOST if the target is no longer seen)
+ *   u8   unused, always 0
+ *   i16  change in bounding box center x since the keyframe, in units of QUANTUM pixels
+ *   i16  change in bounding box center y
+ *   i16  change in bounding box width
+ *   i16  change in bounding box height
+ * </pre>
+ *
+ * The header's first 20 bytes are laid out like a TargetPacket's, so TargetPacket.setLatency() works on both.
+ * A new target, an untracked target, a change in ranking or a change too big for a delta makes the next packet a keyframe.
+ * Velocities are only sent in keyframes.  Decode the stream with TargetStreamDecoder.
+ *
+ * NOTE: like TargetInformation, this cannot reference any classes available on only one side or the other
+ */
+public class TargetStreamEncoder
+{
+	public final static byte PACKET_TYPE_TARGET_DELTA = 4;
+
+	// increase this whenever the layout changes
+	public final static byte VERSION = 1;
+
+	public final static int HEADER_SIZE = 24;
+	public final static int ENTRY_SIZE = 10;
+
+	public final static int FLAG_LOST = 1;
+
+	// size of one step of a delta, in pixels
+	public final static float QUANTUM = 0.25f;
+
+	// big enough for a keyframe or a delta packet
+	public final static int MAX_PACKET_SIZE = Math.max(TargetPacket.MAX_PACKET_SIZE, HEADER_SIZE + TargetPacket.MAX_TARGETS * ENTRY_SIZE);
+
+	public final static float DEFAULT_THRESHOLD_PIXELS = 1;
+	public final static long DEFAULT_KEYFRAME_INTERVAL_NANOS = 1000000000L;
+	public final static long DEFAULT_HEARTBEAT_INTERVAL_NANOS = 100000000L;
+
+	private final float thresholdPixels;
+	private final long keyframeIntervalNanos, heartbeatIntervalNanos;
+
+	// the last keyframe's targets
+	private boolean hasKeyframe;
+	private int keyframeSequence;
+	private long keyframeTimeNanos;
+	private int numKeyframeTargets;
+	private final int[] keySlot = new int[TargetPacket.MAX_TARGETS];
+	private final int[] keyTrackId = new int[TargetPacket.MAX_TARGETS];
+	private final int[] keyRanking = new int[TargetPacket.MAX_TARGETS];
+	private final float[] keyCenterX = new float[TargetPacket.MAX_TARGETS];
+	private final float[] keyCenterY = new float[TargetPacket.MAX_TARGETS];
+	private final float[] keyWidth = new float[TargetPacket.MAX_TARGETS];
+	private final float[] keyHeight = new float[TargetPacket.MAX_TARGETS];
+
+	// what the robot was last sent for each keyframe target
+	private final short[] sentCenterX = new short[TargetPacket.MAX_TARGETS];
+	private final short[] sentCenterY = new short[TargetPacket.MAX_TARGETS];
+	private final short[] sentWidth = new short[TargetPacket.MAX_TARGETS];
+	private final short[] sentHeight = new short[TargetPacket.MAX_TARGETS];
+	private final boolean[] sentLost = new boolean[TargetPacket.MAX_TARGETS];
+
+	// this frame's targets, relative to the keyframe
+	private final short[] centerX = new short[TargetPacket.MAX_TARGETS];
+	private final short[] centerY = new short[TargetPacket.MAX_TARGETS];
+	private final short[] width = new short[TargetPacket.MAX_TARGETS];
+	private final short[] height = new short[TargetPacket.MAX_TARGETS];
+	private final boolean[] lost = new boolean[TargetPacket.MAX_TARGETS];
+
+	private long lastSendTimeNanos;
+
+	private long keyframes, deltas, heartbeats, unchangedFrames;
+
+	public TargetStreamEncoder()
+	{
+		this(DEFAULT_THRESHOLD_PIXELS, DEFAULT_KEYFRAME_INTERVAL_NANOS, DEFAULT_HEARTBEAT_INTERVAL_NANOS);
+	}
+
+	/**
+	 * @param thresholdPixels how far a target's center or size has to change before a delta is sent
+	 * @param keyframeIntervalNanos the longest time between keyframes
+	 * @param heartbeatIntervalNanos the longest time between packets when nothing changes
+	 */
+	public TargetStreamEncoder(float thresholdPixels, long keyframeIntervalNanos, long heartbeatIntervalNanos)
+	{
+		this.thresholdPixels = thresholdPixels;
+		this.keyframeIntervalNanos = keyframeIntervalNanos;
+		this.heartbeatIntervalNanos = heartbeatIntervalNanos;
+	}
+
+	/**
+	 * Make the next packet a keyframe, e.g. because the last one might not have reached the robot.
+	 */
+	public void requestKeyframe()
+	{
+		hasKeyframe = false;
+	}
+
+	/**
+	 * Write whatever the robot needs to hear about a frame's targets at the buffer's position, and advance the position to the end of it.
+	 *
+	 * @param buffer must have at least MAX_PACKET_SIZE bytes remaining
+	 * @param nowNanos the current time, from System.nanoTime()
+	 * @return the number of bytes written, or 0 if nothing needs to be sent for this frame
+	 */
+	public int encode(ByteBuffer buffer, int sequence, long captureTimeNanos, long nowNanos, List<TargetInformation> targets)
+	{
+		if(!hasKeyframe || nowNanos - keyframeTimeNanos >= keyframeIntervalNanos || !compareToKeyframe(targets))
+		{
+			return writeKeyframe(buffer, sequence, captureTimeNanos, nowNanos, targets);
+		}
+
+		boolean changed = false;
+		for(int index = 0; index < numKeyframeTargets && !changed; ++index)
+		{
+			changed = isChanged(index);
+		}
+
+		if(!changed)
+		{
+			if(nowNanos - lastSendTimeNanos < heartbeatIntervalNanos)
+			{
+				++unchangedFrames;
+				return 0;
+			}
+
+			++heartbeats;
+		}
+		else
+		{
+			++deltas;
+		}
+
+		return writeDelta(buffer, sequence, captureTimeNanos, nowNanos);
+	}
+
+	/**
+	 * Work out where each keyframe target is now.
+	 *
+	 * @return false if the targets can't be described relative to the keyframe
+	 */
+	private boolean compareToKeyframe(List<TargetInformation> targets)
+	{
+		for(int index = 0; index < numKeyframeTargets; ++index)
+		{
+			lost[index] = true;
+		}
+
+		int numTargets = Math.min(targets.size(), TargetPacket.MAX_TARGETS);
+		for(int targetIndex = 0; targetIndex < numTargets; ++targetIndex)
+		{
+			TargetInformation target = targets.get(targetIndex);
+
+			//without a track ID, there's no telling which keyframe target this is
+			if(target.trackId == 0)
+			{
+				return false;
+			}
+
+			int index = findKeyframeTarget(target.slot, target.trackId);
+			if(index == -1 || !lost[index] || keyRanking[index] != target.targetRanking)
+			{
+				return false;
+			}
+
+			float targetWidth = target.boundingRectRight - target.boundingRectLeft;
+			float targetHeight = target.boundingRectBottom - target.boundingRectTop;
+
+			int quantizedX = quantize((target.boundingRectLeft + target.boundingRectRight) / 2 - keyCenterX[index]);
+			int quantizedY = quantize((target.boundingRectTop + target.boundingRectBottom) / 2 - keyCenterY[index]);
+			int quantizedWidth = quantize(targetWidth - keyWidth[index]);
+			int quantizedHeight = quantize(targetHeight - keyHeight[index]);
+
+			if(!fitsInShort(quantizedX) || !fitsInShort(quantizedY) || !fitsInShort(quantizedWidth) || !fitsInShort(quantizedHeight))
+			{
+				return false;
+			}
+
+			centerX[index] = (short) quantizedX;
+			centerY[index] = (short) quantizedY;
+			width[index] = (short) quantizedWidth;
+			height[index] = (short) quantizedHeight;
+			lost[index] = false;
+		}
+
+		return true;
+	}
+
+	private int findKeyframeTarget(int slot, int trackId)
+	{
+		//track IDs are only unique within a slot
+		for(int index = 0; index < numKeyframeTargets; ++index)
+		{
+			if(keyTrackId[index] == trackId && keySlot[index] == slot)
+			{
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return true if the robot needs to hear about a keyframe target's new state
+	 */
+	private boolean isChanged(int index)
+	{
+		if(lost[index] != sentLost[index])
+		{
+			return true;
+		}
+
+		if(lost[index])
+		{
+			return false;
+		}
+
+		int thresholdSteps = Math.max(1, Math.round(thresholdPixels / QUANTUM));
+
+		return Math.abs(centerX[index] - sentCenterX[index]) >= thresholdSteps || Math.abs(centerY[index] - sentCenterY[index]) >= thresholdSteps
+				|| Math.abs(width[index] - sentWidth[index]) >= thresholdSteps || Math.abs(height[index] - sentHeight[index]) >= thresholdSteps;
+	}
+
+	private int writeKeyframe(ByteBuffer buffer, int sequence, long captureTimeNanos, long nowNanos, List<TargetInformation> targets)
+	{
+		int size = TargetPacket.encode(buffer, sequence, captureTimeNanos, targets);
+
+		numKeyframeTargets = Math.min(targets.size(), TargetPacket.MAX_TARGETS);
+		for(int index = 0; index < numKeyframeTargets; ++index)
+		{
+			TargetInformation target = targets.get(index);
+
+			keySlot[index] = target.slot;
+			keyTrackId[index] = target.trackId;
+			keyRanking[index] = target.targetRanking;
+
+			//the same arithmetic the decoder does on the bounding box it receives
+			keyCenterX[index] = (target.boundingRectLeft + target.boundingRectRight) / 2;
+			keyCenterY[index] = (target.boundingRectTop + target.boundingRectBottom) / 2;
+			keyWidth[index] = target.boundingRectRight - target.boundingRectLeft;
+			keyHeight[index] = target.boundingRectBottom - target.boundingRectTop;
+
+			sentCenterX[index] = sentCenterY[index] = sentWidth[index] = sentHeight[index] = 0;
+			sentLost[index] = false;
+		}
+
+		hasKeyframe = true;
+		keyframeSequence = sequence;
+		keyframeTimeNanos = nowNanos;
+		lastSendTimeNanos = nowNanos;
+
+		++keyframes;
+
+		return size;
+	}
+
+	private int writeDelta(ByteBuffer buffer, int sequence, long captureTimeNanos, long nowNanos)
+	{
+		int startPosition = buffer.position();
+
+		buffer.put(PACKET_TYPE_TARGET_DELTA);
+		buffer.put(VERSION);
+		buffer.putShort((short) numKeyframeTargets);
+		buffer.putInt(sequence);
+		buffer.putLong(captureTimeNanos);
+		buffer.putInt((int) Math.max(0, Math.min((nowNanos - captureTimeNanos) / 1000, Integer.MAX_VALUE)));
+		buffer.putInt(keyframeSequence);
+
+		for(int index = 0; index < numKeyframeTargets; ++index)
+		{
+			if(lost[index])
+			{
+				//send the last known state along with the flag
+				buffer.put((byte) FLAG_LOST);
+				buffer.put((byte) 0);
+				buffer.putShort(sentCenterX[index]);
+				buffer.putShort(sentCenterY[index]);
+				buffer.putShort(sentWidth[index]);
+				buffer.putShort(sentHeight[index]);
+			}
+			else
+			{
+				buffer.put((byte) 0);
+				buffer.put((byte) 0);
+				buffer.putShort(centerX[index]);
+				buffer.putShort(centerY[index]);
+				buffer.putShort(width[index]);
+				buffer.putShort(height[index]);
+
+				sentCenterX[index] = centerX[index];
+				sentCenterY[index] = centerY[index];
+				sentWidth[index] = width[index];
+				sentHeight[index] = height[index];
+			}
+
+			sentLost[index] = lost[index];
+		}
+
+		lastSendTimeNanos = nowNanos;
+
+		return buffer.position() - startPosition;
+	}
+
+	private static int quantize(float pixels)
+	{
+		return Math.round(pixels / QUANTUM);
+	}
+
+	private static boolean fitsInShort(int value)
+	{
+		return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+	}
+
+	public long getKeyframes()
+	{
+		return keyframes;
+	}
+
+	/**
+	 * @return number of delta packets sent because a target changed
+	 */
+	public long getDeltas()
+	{
+		return deltas;
+	}
+
+	/**
+	 * @return number of delta packets sent only because nothing had been sent for the heartbeat interval
+	 */
+	public long getHeartbeats()
+	{
+		return heartbeats;
+	}
+
+	/**
+	 * @return number of frames for which nothing was sent
+	 */
+	public long getUnchangedFrames()
+	{
+		return unchangedFrames;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Keyframes: " + keyframes + ", deltas: " + deltas + ", heartbeats: " + heartbeats + ", unchanged frames: " + unchangedFrames;
+	}
+}
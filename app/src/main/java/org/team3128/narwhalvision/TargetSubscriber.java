@@ -0,0 +1,185 @@
+package org.team3128.narwhalvision;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+
+/**
+ * One place target packets are sent to by a TargetPublisher: the RoboRIO, a driver station laptop, a multicast group, and so on.
+ *
+ * Each subscriber can have its own rate limit.  Packets that arrive sooner than the limit allows are skipped for that subscriber only.
+ * When streaming, a subscriber that skips or fails to get a keyframe skips deltas until it gets the next one, since it couldn't decode them.
+ *
+ * The send state is only used by the sending thread.  The counters can be read from any thread.
+ */
+public class TargetSubscriber
+{
+	public final InetSocketAddress address;
+
+	// 0 for no limit
+	public final int maxPacketsPerSecond;
+
+	private final long minIntervalNanos;
+
+	// only used by the sending thread
+	private boolean hasSent;
+	private long lastSendTimeNanos;
+	private boolean needsKeyframe = true;
+
+	// only written by the sending thread
+	private volatile long packetsSent;
+	private volatile long packetsSkipped;
+	private volatile long sendFailures;
+
+	public TargetSubscriber(InetSocketAddress address, int maxPacketsPerSecond)
+	{
+		if(maxPacketsPerSecond < 0)
+		{
+			throw new IllegalArgumentException("maxPacketsPerSecond can't be negative, got " + maxPacketsPerSecond);
+		}
+
+		this.address = address;
+		this.maxPacketsPerSecond = maxPacketsPerSecond;
+
+		minIntervalNanos = maxPacketsPerSecond == 0 ? 0 : 1000000000L / maxPacketsPerSecond;
+	}
+
+	/**
+	 * Decide whether a packet goes to this subscriber.  Counts it as skipped if not.
+	 *
+	 * @param keyframe true for a full target packet, false for a delta
+	 */
+	boolean shouldSend(long nowNanos, boolean keyframe)
+	{
+		if(!keyframe && needsKeyframe)
+		{
+			++packetsSkipped;
+			return false;
+		}
+
+		if(hasSent && nowNanos - lastSendTimeNanos < minIntervalNanos)
+		{
+			++packetsSkipped;
+			needsKeyframe |= keyframe;
+			return false;
+		}
+
+		return true;
+	}
+
+	void onSent(long nowNanos, boolean keyframe)
+	{
+		hasSent = true;
+		lastSendTimeNanos = nowNanos;
+
+		if(keyframe)
+		{
+			needsKeyframe = false;
+		}
+
+		++packetsSent;
+	}
+
+	void onSendFailed(boolean keyframe)
+	{
+		needsKeyframe |= keyframe;
+
+		++sendFailures;
+	}
+
+	public boolean isMulticast()
+	{
+		return address.getAddress().isMulticastAddress();
+	}
+
+	public long getPacketsSent()
+	{
+		return packetsSent;
+	}
+
+	/**
+	 * @return number of packets not sent because of the rate limit, or because they couldn't be decoded without a missed keyframe
+	 */
+	public long getPacketsSkipped()
+	{
+		return packetsSkipped;
+	}
+
+	public long getSendFailures()
+	{
+		return sendFailures;
+	}
+
+	/**
+	 * Read a subscriber written as "address[:port][@maxPacketsPerSecond]", e.g. "10.31.28.5", "10.31.28.5:5800" or "239.31.28.1:5800@10".
+	 * The address must be a numeric IPv4 address, so that nothing has to be looked up.
+	 *
+	 * @throws IllegalArgumentException if it can't be read
+	 */
+	public static TargetSubscriber parse(String subscriber, int defaultPort)
+	{
+		String text = subscriber.trim();
+
+		int maxPacketsPerSecond = 0;
+		int rateStart = text.indexOf('@');
+		if(rateStart != -1)
+		{
+			maxPacketsPerSecond = Integer.parseInt(text.substring(rateStart + 1).trim());
+			text = text.substring(0, rateStart).trim();
+		}
+
+		int port = defaultPort;
+		int portStart = text.indexOf(':');
+		if(portStart != -1)
+		{
+			port = Integer.parseInt(text.substring(portStart + 1).trim());
+			text = text.substring(0, portStart).trim();
+		}
+
+		if(!text.matches("\\d{1,3}(\\.\\d{1,3}){3}"))
+		{
+			throw new IllegalArgumentException("Not an IPv4 address: \"" + text + "\"");
+		}
+
+		try
+		{
+			//a numeric address is never looked up
+			return new TargetSubscriber(new InetSocketAddress(InetAddress.getByName(text), port), maxPacketsPerSecond);
+		}
+		catch(UnknownHostException e)
+		{
+			throw new IllegalArgumentException("Not an IPv4 address: \"" + text + "\"", e);
+		}
+	}
+
+	/**
+	 * Read a comma separated list of subscribers in the format parse() takes.  Blank entries are ignored.
+	 *
+	 * @throws IllegalArgumentException if any of them can't be read
+	 */
+	public static ArrayList<TargetSubscriber> parseList(String subscribers, int defaultPort)
+	{
+		ArrayList<TargetSubscriber> list = new ArrayList<>();
+
+		if(subscribers != null)
+		{
+			for(String subscriber : subscribers.split(","))
+			{
+				if(!subscriber.trim().isEmpty())
+				{
+					list.add(parse(subscriber, defaultPort));
+				}
+			}
+		}
+
+		return list;
+	}
+
+	@Override
+	public String toString()
+	{
+		return (isMulticast() ? "multicast " : "") + address.getAddress().getHostAddress() + ":" + address.getPort() + (maxPacketsPerSecond != 0 ? " at " + maxPacketsPerSecond + "/s" : "")
+				+ " (sent: " + packetsSent + ", skipped: " + packetsSkipped + ", failures: " + sendFailures + ")";
+	}
+}
@@ -0,0 +1,265 @@
+package org.team3128.narwhalvision;
+
+import java.util.List;
+
+/**
+ * Follows targets from frame to frame, so each one keeps the same ID and its position isn't thrown around by one noisy frame.
+ *
+ * Each frame's detections are matched to the existing tracks by distance from where each track was predicted to be,
+ * closest pairs first.  Matched tracks update a Kalman filter on the center and size of the bounding box, and the
+ * detection is replaced with the filtered box plus its velocity.  Detections with no nearby track start new ones,
+ * and tracks which go unmatched for a few frames are dropped.
+ *
+ * Nothing is allocated after construction.  Only one thread may use a tracker.
+ *
+ * NOTE: this must not reference Android classes, so that the pipeline can run on a normal JVM
+ */
+public class TargetTracker
+{
+	// more targets than this are passed through untracked
+	private final static int MAX_TRACKS = 16;
+
+	// how many frames a track lasts without a detection before it is dropped
+	private final static int MAX_MISSED_FRAMES = 5;
+
+	// frame interval to assume for the first frame, or if the timestamps are bad
+	private final static double DEFAULT_FRAME_INTERVAL = 1 / 30.0;
+
+	// frames further apart than this are treated as a new scene
+	private final static double MAX_FRAME_INTERVAL = 1.0;
+
+	// standard deviation of the targets' acceleration on screen, in pixels / s^2.  Higher follows faster movements but smooths less.
+	private final static double ACCELERATION_STD_DEV = 300;
+
+	// standard deviation of the detected box edges, in pixels
+	private final static double MEASUREMENT_STD_DEV = 2;
+
+	// how fast a new target could be moving, in pixels / s
+	private final static double INITIAL_VELOCITY_STD_DEV = 300;
+
+	// a detection can only match a track if it is within this many track widths (or GATE_MIN_DISTANCE pixels) of the prediction
+	private final static double GATE_SIZE = 1.0;
+	private final static double GATE_MIN_DISTANCE = 20;
+
+	private static class Track
+	{
+		final ConstantVelocityFilter centerX = newFilter(), centerY = newFilter(), width = newFilter(), height = newFilter();
+
+		int id;
+		int missedFrames;
+		boolean active;
+	}
+
+	private static ConstantVelocityFilter newFilter()
+	{
+		return new ConstantVelocityFilter(ACCELERATION_STD_DEV * ACCELERATION_STD_DEV, MEASUREMENT_STD_DEV * MEASUREMENT_STD_DEV);
+	}
+
+	private final Track[] tracks = new Track[MAX_TRACKS];
+
+	// which track each detection was matched to, or -1
+	private final int[] detectionTracks = new int[MAX_TRACKS];
+
+	// whether each track was matched this frame
+	private final boolean[] trackMatched = new boolean[MAX_TRACKS];
+
+	private int nextTrackId = 1;
+	private long lastFrameTimeNanos;
+	private boolean hasLastFrame;
+
+	public TargetTracker()
+	{
+		for(int index = 0; index < MAX_TRACKS; ++index)
+		{
+			tracks[index] = new Track();
+		}
+	}
+
+	/**
+	 * Forget every track.
+	 */
+	public void reset()
+	{
+		for(Track track : tracks)
+		{
+			track.active = false;
+		}
+
+		hasLastFrame = false;
+	}
+
+	/**
+	 * Match this frame's detections to the tracks, and replace each one's bounding box with the smoothed one.
+	 * Their track IDs and velocities are filled in.  The order of the list is not changed.
+	 *
+	 * @param frameTimeNanos when the frame was captured, from System.nanoTime()
+	 */
+	public void update(List<TargetInformation> detections, long frameTimeNanos)
+	{
+		double dt = hasLastFrame ? (frameTimeNanos - lastFrameTimeNanos) / 1e9 : DEFAULT_FRAME_INTERVAL;
+		if(dt <= 0)
+		{
+			dt = DEFAULT_FRAME_INTERVAL;
+		}
+		else if(dt > MAX_FRAME_INTERVAL)
+		{
+			reset();
+		}
+
+		lastFrameTimeNanos = frameTimeNanos;
+		hasLastFrame = true;
+
+		for(Track track : tracks)
+		{
+			if(track.active)
+			{
+				track.centerX.predict(dt);
+				track.centerY.predict(dt);
+				track.width.predict(dt);
+				track.height.predict(dt);
+			}
+		}
+
+		int numDetections = Math.min(detections.size(), MAX_TRACKS);
+
+		associate(detections, numDetections);
+
+		for(int detectionIndex = 0; detectionIndex < numDetections; ++detectionIndex)
+		{
+			TargetInformation detection = detections.get(detectionIndex);
+
+			int trackIndex = detectionTracks[detectionIndex];
+			if(trackIndex < 0)
+			{
+				trackIndex = startTrack(detection);
+				if(trackIndex < 0)
+				{
+					continue;
+				}
+			}
+			else
+			{
+				Track track = tracks[trackIndex];
+				track.centerX.update(detection.boundingRectCenterX);
+				track.centerY.update(detection.boundingRectCenterY);
+				track.width.update(detection.boundingRectWidth);
+				track.height.update(detection.boundingRectHeight);
+			}
+
+			applyTrack(tracks[trackIndex], detection);
+		}
+
+		for(int trackIndex = 0; trackIndex < MAX_TRACKS; ++trackIndex)
+		{
+			Track track = tracks[trackIndex];
+
+			if(track.active && !trackMatched[trackIndex] && ++track.missedFrames > MAX_MISSED_FRAMES)
+			{
+				track.active = false;
+			}
+		}
+	}
+
+	/**
+	 * Fill in detectionTracks and trackMatched by repeatedly pairing up the closest detection and track.
+	 */
+	private void associate(List<TargetInformation> detections, int numDetections)
+	{
+		for(int index = 0; index < MAX_TRACKS; ++index)
+		{
+			detectionTracks[index] = -1;
+			trackMatched[index] = false;
+		}
+
+		while(true)
+		{
+			int bestDetection = -1, bestTrack = -1;
+			double bestDistanceSquared = Double.MAX_VALUE;
+
+			for(int detectionIndex = 0; detectionIndex < numDetections; ++detectionIndex)
+			{
+				if(detectionTracks[detectionIndex] >= 0)
+				{
+					continue;
+				}
+
+				TargetInformation detection = detections.get(detectionIndex);
+
+				for(int trackIndex = 0; trackIndex < MAX_TRACKS; ++trackIndex)
+				{
+					Track track = tracks[trackIndex];
+					if(!track.active || trackMatched[trackIndex])
+					{
+						continue;
+					}
+
+					double deltaX = detection.boundingRectCenterX - track.centerX.getPosition();
+					double deltaY = detection.boundingRectCenterY - track.centerY.getPosition();
+					double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+
+					double gate = Math.max(GATE_MIN_DISTANCE, GATE_SIZE * track.width.getPosition());
+
+					if(distanceSquared < gate * gate && distanceSquared < bestDistanceSquared)
+					{
+						bestDistanceSquared = distanceSquared;
+						bestDetection = detectionIndex;
+						bestTrack = trackIndex;
+					}
+				}
+			}
+
+			if(bestDetection < 0)
+			{
+				return;
+			}
+
+			detectionTracks[bestDetection] = bestTrack;
+			trackMatched[bestTrack] = true;
+			tracks[bestTrack].missedFrames = 0;
+		}
+	}
+
+	/**
+	 * @return the index of the new track, or -1 if there's no room for one
+	 */
+	private int startTrack(TargetInformation detection)
+	{
+		for(int trackIndex = 0; trackIndex < MAX_TRACKS; ++trackIndex)
+		{
+			Track track = tracks[trackIndex];
+			if(track.active)
+			{
+				continue;
+			}
+
+			double velocityVariance = INITIAL_VELOCITY_STD_DEV * INITIAL_VELOCITY_STD_DEV;
+
+			track.centerX.reset(detection.boundingRectCenterX, velocityVariance);
+			track.centerY.reset(detection.boundingRectCenterY, velocityVariance);
+			track.width.reset(detection.boundingRectWidth, velocityVariance);
+			track.height.reset(detection.boundingRectHeight, velocityVariance);
+
+			track.id = nextTrackId;
+			track.missedFrames = 0;
+			track.active = true;
+			trackMatched[trackIndex] = true;
+
+			//IDs are sent as 16 bits, and 0 means untracked
+			nextTrackId = nextTrackId % 0xFFFF + 1;
+
+			return trackIndex;
+		}
+
+		return -1;
+	}
+
+	private static void applyTrack(Track track, TargetInformation target)
+	{
+		float centerX = (float) track.centerX.getPosition(), centerY = (float) track.centerY.getPosition();
+		float halfWidth = (float) Math.max(0, track.width.getPosition()) / 2, halfHeight = (float) Math.max(0, track.height.getPosition()) / 2;
+
+		target.set(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight,
+				target.imageWidth, target.imageHeight, target.horizontalFOV, target.verticalFOV, target.targetRanking);
+		target.setTracking(track.id, (float) track.centerX.getVelocity(), (float) track.centerY.getVelocity());
+	}
+}
@@ -0,0 +1,168 @@
+package org.team3128.narwhalvision;
+
+/**
+ * Picks the k highest scoring items out of a stream, without sorting all of them.
+ *
+ * Items are identified by an int index (e.g. their position in a list) and kept in a min-heap of at most k entries backed by
+ * primitive arrays, so each offer() is O(log k) and nothing is allocated once the arrays are big enough.
+ * The same selector should be reused for every frame.
+ *
+ * NOTE: this must not reference Android classes, so that the pipeline can run on a normal JVM
+ */
+public class TopKSelector
+{
+	private double[] scores;
+	private int[] indices;
+
+	private int k;
+	private int size;
+
+	public TopKSelector(int initialCapacity)
+	{
+		scores = new double[Math.max(1, initialCapacity)];
+		indices = new int[scores.length];
+	}
+
+	/**
+	 * Forget the last selection and start a new one.
+	 *
+	 * @param k how many items to keep
+	 */
+	public void reset(int k)
+	{
+		this.k = Math.max(0, k);
+		size = 0;
+
+		if(this.k > scores.length)
+		{
+			scores = new double[this.k];
+			indices = new int[this.k];
+		}
+	}
+
+	/**
+	 * Consider an item for the selection.  Items with NaN scores are never selected.
+	 */
+	public void offer(int index, double score)
+	{
+		if(k == 0 || Double.isNaN(score))
+		{
+			return;
+		}
+
+		if(size < k)
+		{
+			scores[size] = score;
+			indices[size] = index;
+			siftUp(size++);
+		}
+		else if(isBetter(score, index, scores[0], indices[0]))
+		{
+			//replace the worst of the kept items
+			scores[0] = score;
+			indices[0] = index;
+			siftDown(0, size);
+		}
+	}
+
+	/**
+	 * Put the selected items in order, best first.  Call this once all of the items have been offered.
+	 */
+	public void finish()
+	{
+		//heapsort: repeatedly move the worst remaining item to the end
+		for(int end = size - 1; end > 0; --end)
+		{
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	/**
+	 * @return the number of items selected, which is at most k
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param rank 0 for the best item.  Only valid after finish().
+	 * @return the index that was passed to offer() with the item
+	 */
+	public int getIndex(int rank)
+	{
+		return indices[rank];
+	}
+
+	/**
+	 * @param rank 0 for the best item.  Only valid after finish().
+	 */
+	public double getScore(int rank)
+	{
+		return scores[rank];
+	}
+
+	/**
+	 * Ties go to the item offered with the lower index, so the results don't depend on the heap's layout.
+	 */
+	private static boolean isBetter(double score, int index, double otherScore, int otherIndex)
+	{
+		int comparison = Double.compare(score, otherScore);
+		return comparison > 0 || (comparison == 0 && index < otherIndex);
+	}
+
+	private void siftUp(int position)
+	{
+		while(position > 0)
+		{
+			int parent = (position - 1) / 2;
+
+			//the worst item is at the root
+			if(!isBetter(scores[parent], indices[parent], scores[position], indices[position]))
+			{
+				return;
+			}
+
+			swap(position, parent);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position, int heapSize)
+	{
+		while(true)
+		{
+			int worst = position;
+			int left = 2 * position + 1, right = left + 1;
+
+			if(left < heapSize && isBetter(scores[worst], indices[worst], scores[left], indices[left]))
+			{
+				worst = left;
+			}
+			if(right < heapSize && isBetter(scores[worst], indices[worst], scores[right], indices[right]))
+			{
+				worst = right;
+			}
+
+			if(worst == position)
+			{
+				return;
+			}
+
+			swap(position, worst);
+			position = worst;
+		}
+	}
+
+	private void swap(int first, int second)
+	{
+		double score = scores[first];
+		scores[first] = scores[second];
+		scores[second] = score;
+
+		int index = indices[first];
+		indices[first] = indices[second];
+		indices[second] = index;
+	}
+}
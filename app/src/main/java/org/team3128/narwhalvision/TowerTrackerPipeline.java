@@ -1,18 +1,13 @@
 package org.team3128.narwhalvision;
 
-import android.util.Log;
-import android.util.Pair;
-
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 
 /**
  * Class which processes frames of the camera and recognizes features.
@@ -23,23 +18,100 @@ public class TowerTrackerPipeline
 {
 	final static String TAG = "TTPipeline";
 
-	Mat rgbImg, hsvImage, filteredImage, outputImage, hierarchy;
+	Mat filteredImage, outputImage;
+
+	//RGBA frames are shrunk into this when the processing scale is more than 1
+	Mat scaledImage;
+
+	//frames are processed at 1/processingScale of their full resolution
+	int processingScale;
+
+	//turns the frame into a mask of the pixels inside the color range
+	MaskStage maskStage;
+
+	//does the same for raw camera frames
+	NV21MaskStage nv21MaskStage;
 
 	Scalar upperLimit;
 	Scalar lowerLimit;
 
-	ArrayList<MatOfPoint> foundContours;
+	//settings of every slot being run, with the selected slot first
+	SlotSettings[] slots;
+
+	//settings snapshot everything was set up from, and its version
+	SettingsSnapshot settings;
+	long settingsVersion;
+
+	//thresholds every slot in one pass when more than one is being run
+	final MultiSlotMaskStage multiSlotMaskStage;
+
+	//one mask for each slot, when more than one is being run
+	final Mat[] slotMasks;
+
+	//finds and measures the blobs in the mask
+	BlobExtractor blobExtractor;
+
+	//when processingThreads is more than 1, thresholds and finds blobs on that many threads instead of maskStage and blobExtractor.  Otherwise null.
+	ParallelBlobStage parallelStage;
+
+	//contours which passed the size check, reused every frame
+	ArrayList<TargetData> candidateContours;
+
+	//TargetData objects to put in candidateContours, so they aren't allocated every frame
+	final ArrayList<TargetData> targetDataPool;
+
+	//picks the best numTargets candidates
+	final TopKSelector targetSelector;
 
 	final Scalar RED = new Scalar(255, 0, 0);
 	final Scalar GREEN = new Scalar(0, 255, 0);
+	final Scalar BLUE = new Scalar(0, 0, 255);
+
+	final Point ORIGIN = new Point(0, 0);
+
+	//decides whether to search the whole frame or just around the last target
+	final RoiTracker roiTracker;
+
+	//give targets stable IDs and smooth them between frames, one for each slot
+	final TargetTracker[] targetTrackers;
+	boolean targetTracking;
 
 	//used for constructing TargetInformation classes
 	final private float horizontalFOV, verticalFOV;
 
-	private class TargetData implements Comparable<TargetData>
+	/**
+	 * Parts of processing a frame which are timed separately.
+	 */
+	public enum Stage
+	{
+		DOWNSCALE,
+		THRESHOLD, //color conversion and range check
+		FIND_CONTOURS, //or whatever the blob extractor does
+		SCORING, //measuring, filtering and sorting contours
+		TRACKING, //matching targets to the last frame's and smoothing them
+		DRAWING,
+		TOTAL
+	}
+
+	//how long each stage took on recent frames, indexed by Stage.ordinal()
+	final private LatencyHistogram[] stageLatencies;
+
+	//how long each stage took on the last frame
+	final private long[] lastStageTimes;
+
+	private class TargetData
 	{
+		// frame to draw on, may be null
 		Mat sourceFrame;
-		Rect boundingBox;
+		int frameWidth, frameHeight;
+
+		// settings of the slot this contour was found for
+		SlotSettings slot;
+
+		// whether this contour was picked as one of the slot's targets
+		boolean selected;
+
+		final Rect boundingBox = new Rect();
 
 		// area of the arbitrarily shaped surface that makes up the target
 		double contourArea;
@@ -62,31 +134,39 @@ public class TowerTrackerPipeline
 		// number representing how well this contour mateches the targeting criteria
 		private double score;
 
-		public TargetData(Mat sourceFrame, MatOfPoint contour)
+		/**
+		 * Measure a contour.  TargetData objects are pooled, so this replaces everything from the last one.
+		 *
+		 * @param slot settings to score the contour with
+		 * @param contours blobs found in the downscaled frame
+		 * @param contour index of this blob in the extractor
+		 * @param scale factor that the frame was downscaled by.  The bounding box and area are scaled back up to full resolution.
+		 */
+		void set(Mat sourceFrame, int frameWidth, int frameHeight, SlotSettings slot, BlobExtractor contours, int contour, int scale)
 		{
 			this.sourceFrame = sourceFrame;
+			this.frameWidth = frameWidth;
+			this.frameHeight = frameHeight;
+			this.slot = slot;
+
+			selected = false;
 
-			boundingBox = Imgproc.boundingRect(contour);
+			boundingBox.x = contours.getLeft(contour) * scale;
+			boundingBox.y = contours.getTop(contour) * scale;
+			boundingBox.width = contours.getWidth(contour) * scale;
+			boundingBox.height = contours.getHeight(contour) * scale;
 
 			aspect = ((double)boundingBox.width) / ((double)boundingBox.height);
 
-			contourArea = Imgproc.contourArea(contour);
+			contourArea = contours.getArea(contour) * scale * scale;
 			boundingBoxArea = boundingBox.area();
 
-			solidity = boundingBoxArea / contourArea;
+			solidity = TargetScorer.getSolidity(contourArea, boundingBoxArea);
 
 			// now we calculate the score
-			//for now, we just rank by area and solidity (the goal is NOT very solid)
+			aspectQuotient = TargetScorer.getAspectQuotient(aspect, slot.getTargetAspectRatio());
 
-			aspectQuotient = aspect / Settings.getTargetAspectRatio();
-
-			//if the target aspect ratio was the larger one, flip the fraction
-			if(aspectQuotient < 1.0)
-			{
-				this.aspectQuotient = 1.0/aspectQuotient;
-			}
-
-			score =  contourArea / (1000 * Math.abs(100 * solidity - Settings.targetSolidity) * aspectQuotient);
+			score = TargetScorer.getScore(contourArea, solidity, aspectQuotient, slot.targetSolidity);
 		}
 
 		/**
@@ -96,7 +176,7 @@ public class TowerTrackerPipeline
 		boolean isPotentialTarget()
 		{
 			// too small?
-			if((boundingBox.area() * 100)/ (sourceFrame.width() * sourceFrame.height()) < Settings.minArea)
+			if(!TargetScorer.isLargeEnough(boundingBoxArea, frameWidth, frameHeight, slot.minArea))
 			{
 				return false;
 			}
@@ -111,17 +191,14 @@ public class TowerTrackerPipeline
 		}
 
 		/**
-		 * Draw this contour's bounding box on the source frame
+		 * Draw this contour's bounding box on the source frame, if there is one
 		 */
 		void drawBoundingBox(Scalar color)
 		{
-			Imgproc.rectangle(sourceFrame, boundingBox.br(), boundingBox.tl(), color);
-		}
-
-		@Override
-		public int compareTo(TargetData another)
-		{
-			return (int)(score - another.score);
+			if(sourceFrame != null)
+			{
+				Imgproc.rectangle(sourceFrame, boundingBox.br(), boundingBox.tl(), color);
+			}
 		}
 	}
 
@@ -129,104 +206,603 @@ public class TowerTrackerPipeline
 	Only construct this class after OpenCV is loaded.
 	This allows it to use OpenCV constructs as class variables.
 
-	Settings from the Settings class are read and stored when the pipeline is constructed.  Changes to them will not take affect
-	until loadSettings() is called.
+	The latest settings snapshot is read when the pipeline is constructed.  Before each frame, the pipeline checks whether a newer one
+	has been published with Settings.publish(), and if so sets itself up again from it.
 	 */
 	public TowerTrackerPipeline(float horizontalFOV, float verticalFOV)
 	{
 		this.horizontalFOV = horizontalFOV;
 		this.verticalFOV = verticalFOV;
 
-		rgbImg = new Mat();
-		hsvImage = new Mat();
 		filteredImage = new Mat();
 		outputImage = new Mat();
-		hierarchy = new Mat();
+		scaledImage = new Mat();
+
+		blobExtractor = new ContourBuffer();
+		candidateContours = new ArrayList<>();
+		targetDataPool = new ArrayList<>();
+		targetSelector = new TopKSelector(TargetPacket.MAX_TARGETS);
+
+		maskStage = new LookupTableMaskStage();
+		nv21MaskStage = new NV21MaskStage();
+		roiTracker = new RoiTracker();
 
-		foundContours = new ArrayList<>();
+		multiSlotMaskStage = new MultiSlotMaskStage();
+		slotMasks = new Mat[MultiSlotMaskStage.MAX_SLOTS];
+		targetTrackers = new TargetTracker[MultiSlotMaskStage.MAX_SLOTS];
+		for(int index = 0; index < MultiSlotMaskStage.MAX_SLOTS; ++index)
+		{
+			slotMasks[index] = new Mat();
+			targetTrackers[index] = new TargetTracker();
+		}
+
+		stageLatencies = new LatencyHistogram[Stage.values().length];
+		lastStageTimes = new long[Stage.values().length];
+		for(int index = 0; index < stageLatencies.length; ++index)
+		{
+			stageLatencies[index] = new LatencyHistogram();
+		}
 
 		loadSettings();
 	}
 
 	/**
-	 * Reloads the color settings from the global variables.
-	 * THe other settings are used as soon as they are changed in the Settings class
+	 * Set everything up again from the latest published settings, even if their version hasn't changed.
+	 * This resets the search region and target tracking.
 	 */
 	public void loadSettings()
 	{
-		lowerLimit = new Scalar(Settings.lowH, Settings.lowS, Settings.lowV);
-		upperLimit = new Scalar(Settings.highH, Settings.highS, Settings.highV);
+		loadSettings(Settings.getSnapshot());
+		resetTracking();
+	}
+
+	/**
+	 * Pick up the latest published settings, if they are new.  Every frame does this before it is processed,
+	 * so this only needs to be called while frames aren't being processed, e.g. while processing is paused.
+	 *
+	 * @return the settings the pipeline is now using
+	 */
+	public SettingsSnapshot updateSettings()
+	{
+		//only rebuild anything when the settings really are new
+		SettingsSnapshot latest = Settings.getSnapshot();
+		if(latest.version != settingsVersion)
+		{
+			loadSettings(latest);
+		}
 
-		Log.i(TAG, "Thresholding from " + lowerLimit.toString() + " to " + upperLimit.toString());
+		return settings;
+	}
+
+	/**
+	 * Set up the tables, stages and trackers for a settings snapshot.
+	 */
+	private void loadSettings(SettingsSnapshot settings)
+	{
+		//most new versions don't change what is being tracked, e.g. a new number of targets, so keep the targets' IDs and smoothing
+		boolean trackingChanged = this.settings == null || !settings.tracksSameTargets(this.settings);
+
+		this.settings = settings;
+		settingsVersion = settings.version;
+
+		//the selected slot always runs, and goes first
+		SlotSettings[] newSlots = new SlotSettings[Math.min(settings.getNumSlots(), MultiSlotMaskStage.MAX_SLOTS)];
+		for(int index = 0; index < newSlots.length; ++index)
+		{
+			newSlots[index] = settings.getSlot(index);
+		}
+		slots = newSlots;
+
+		lowerLimit = new Scalar(slots[0].lowH, slots[0].lowS, slots[0].lowV);
+		upperLimit = new Scalar(slots[0].highH, slots[0].highS, slots[0].highV);
+
+		maskStage.setLimits(lowerLimit, upperLimit);
+		nv21MaskStage.setLimits(lowerLimit, upperLimit);
+		multiSlotMaskStage.setSlots(slots);
+
+		processingScale = settings.processingScale;
+
+		int processingThreads = settings.processingThreads;
+		if(parallelStage != null && parallelStage.getNumThreads() != processingThreads)
+		{
+			parallelStage.shutdown();
+			parallelStage = null;
+		}
+
+		if(parallelStage == null && processingThreads > 1)
+		{
+			parallelStage = new ParallelBlobStage(processingThreads);
+		}
+
+		if(parallelStage != null)
+		{
+			parallelStage.setLimits(lowerLimit, upperLimit);
+		}
+
+		roiTracker.setEnabled(settings.roiTracking);
+		targetTracking = settings.targetTracking;
+
+		if(trackingChanged)
+		{
+			resetTracking();
+		}
+	}
+
+	/**
+	 * Forget the search region and every tracked target.
+	 */
+	private void resetTracking()
+	{
+		roiTracker.reset();
+
+		for(TargetTracker targetTracker : targetTrackers)
+		{
+			targetTracker.reset();
+		}
+	}
+
+	/**
+	 * Change the stage used to threshold frames, e.g. to compare the lookup table and OpenCV implementations.
+	 */
+	public void setMaskStage(MaskStage maskStage)
+	{
+		maskStage.setLimits(lowerLimit, upperLimit);
+		this.maskStage = maskStage;
+	}
+
+	/**
+	 * Change how blobs are found in the mask, e.g. to compare contour tracing with run length labeling.
+	 */
+	public void setBlobExtractor(BlobExtractor blobExtractor)
+	{
+		this.blobExtractor = blobExtractor;
+	}
+
+	/**
+	 * @return the version of the settings snapshot the pipeline is using
+	 */
+	public long getSettingsVersion()
+	{
+		return settingsVersion;
+	}
+
+	/**
+	 * @return the settings snapshot the pipeline is using
+	 */
+	public SettingsSnapshot getSettings()
+	{
+		return settings;
+	}
+
+	/**
+	 * Stop any worker threads.  Call this once the pipeline won't be used any more.
+	 */
+	public void release()
+	{
+		if(parallelStage != null)
+		{
+			parallelStage.shutdown();
+			parallelStage = null;
+		}
+	}
+
+	/**
+	 * Get the timings of one stage of the pipeline.  They can be read from any thread.
+	 *
+	 * In color filter mode only DOWNSCALE and THRESHOLD are recorded.
+	 */
+	public LatencyHistogram getStageLatency(Stage stage)
+	{
+		return stageLatencies[stage.ordinal()];
+	}
+
+	/**
+	 * Get how long one stage took on the last frame processed, in nanoseconds.  Only valid on the processing thread.
+	 */
+	public long getLastStageTime(Stage stage)
+	{
+		return lastStageTimes[stage.ordinal()];
+	}
+
+	public float getHorizontalFOV()
+	{
+		return horizontalFOV;
+	}
+
+	public float getVerticalFOV()
+	{
+		return verticalFOV;
+	}
+
+	/**
+	 * Get the region of interest tracker, which has the hit and miss statistics.
+	 */
+	public RoiTracker getRoiTracker()
+	{
+		return roiTracker;
+	}
+
+	@Override
+	public String toString()
+	{
+		String description = "Thresholding from " + lowerLimit.toString() + " to " + upperLimit.toString() + " at 1/" + processingScale + " scale";
+
+		if(parallelStage != null)
+		{
+			description += " on " + parallelStage.getNumThreads() + " threads";
+		}
+
+		for(int index = 1; index < slots.length; ++index)
+		{
+			description += ", and " + slots[index].toString();
+		}
+
+		return description;
 	}
 
 	/**
 	 * Process a frame according the the current settings.
 	 *
+	 * @param captureTimeNanos when the frame was captured, from System.nanoTime().  Used to track targets between frames.
+	 *
 	 * @return What should be displayed on the phone screen, and information about the target if one was found.
 	 */
-	public Pair<Mat, ArrayList<TargetInformation>> processImage(Mat frame, boolean showColorFilter)
+	public PipelineResult processImage(Mat frame, long captureTimeNanos, boolean showColorFilter)
 	{
-		//RGBA to RGB
-		Imgproc.cvtColor(frame, rgbImg, Imgproc.COLOR_RGBA2RGB);
+		return process(frame, null, frame.width(), frame.height(), captureTimeNanos, showColorFilter);
+	}
 
-		//RGB to HSV
-		Imgproc.cvtColor(rgbImg, hsvImage, Imgproc.COLOR_RGB2HSV);
+	/**
+	 * Process a raw camera frame according the the current settings.
+	 * This skips converting the frame to RGBA, but nothing is drawn on it.
+	 *
+	 * @param yuvFrame CV_8UC1 Mat of NV21 data, (height * 3/2) rows by width columns
+	 * @param width width of the camera image
+	 * @param height height of the camera image
+	 * @param captureTimeNanos when the frame was captured, from System.nanoTime().  Used to track targets between frames.
+	 *
+	 * @return The color filter output if showColorFilter is true (otherwise null), and information about the target if one was found.
+	 */
+	public PipelineResult processNV21Image(Mat yuvFrame, int width, int height, long captureTimeNanos, boolean showColorFilter)
+	{
+		return process(null, yuvFrame, width, height, captureTimeNanos, showColorFilter);
+	}
 
-		//HSV threshold
-		Core.inRange(hsvImage, lowerLimit, upperLimit, filteredImage);
+	/**
+	 * Process either an RGBA frame or an NV21 one.
+	 * Whichever one is not used should be null.
+	 *
+	 * The frame is thresholded at 1/processingScale resolution, but everything that comes out of this function
+	 * (drawing, the search region, and the TargetInformation) is in full resolution coordinates.
+	 *
+	 * When other slots are running alongside the selected one, the frame is thresholded for all of them in one pass,
+	 * and each slot's best targets are added to the list in turn, selected slot first.
+	 *
+	 * When only the selected slot is running and there is a parallel stage, it does both the thresholding and the blob extraction
+	 * on its worker threads.  The color filter preview is always made on this thread.
+	 */
+	private PipelineResult process(Mat rgbaFrame, Mat yuvFrame, int width, int height, long captureTimeNanos, boolean showColorFilter)
+	{
+		//new settings are only picked up between frames
+		SettingsSnapshot settings = updateSettings();
+
+		final long startTime = System.nanoTime();
+		long stageStartTime = startTime;
+
+		final int scale = processingScale;
+		final int scaledWidth = width / scale, scaledHeight = height / scale;
+
+		if(rgbaFrame != null)
+		{
+			downscale(rgbaFrame, scale, scaledWidth, scaledHeight);
+		}
+
+		stageStartTime = recordStage(Stage.DOWNSCALE, stageStartTime);
 
 		if(showColorFilter)
 		{
+			//HSV threshold
+			threshold(rgbaFrame, yuvFrame, width, height, scale, null);
+
 			Imgproc.cvtColor(filteredImage, outputImage, Imgproc.COLOR_GRAY2RGBA);
-			return new Pair<>(outputImage, null);
+
+			//the preview has to be the same size as the camera image
+			if(scale > 1)
+			{
+				Imgproc.resize(outputImage, outputImage, new Size(width, height), 0, 0, Imgproc.INTER_NEAREST);
+			}
+
+			recordStage(Stage.THRESHOLD, stageStartTime);
+
+			return new PipelineResult(outputImage, null);
 		}
 
-		//find contours
-		foundContours.clear();
-		Imgproc.findContours(filteredImage, foundContours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+		final int numSlots = slots.length;
+
+		//the search region follows the selected slot's best target, which would hide the other slots' targets
+		final boolean multiSlot = numSlots > 1;
+
+		final boolean parallel = parallelStage != null && !multiSlot;
+
+		//whatever finds the blobs this frame
+		final BlobExtractor blobs = parallel ? parallelStage : blobExtractor;
 
-		//Log.i(TAG, "Found contours: " + foundContours.size());
+		//if we found a target recently, only look around it
+		Rect searchRegion = multiSlot ? null : roiTracker.getSearchRegion(width, height);
 
-		ArrayList<TargetData> candidateContours = new ArrayList<>();
+		//the tracker works in full resolution coordinates, so shrink its region to match the scaled frame
+		Rect scaledSearchRegion = null;
+		Point searchOffset = ORIGIN;
 
-		// make sure the contours that are detected are at least 20x20
-		// pixels with an area of 400 and an aspect ratio greater then 1
-		for(Iterator<MatOfPoint> matPointIter = foundContours.iterator(); matPointIter.hasNext();)
+		if(searchRegion != null)
 		{
-			MatOfPoint matOfPoint = matPointIter.next();
+			int left = searchRegion.x / scale;
+			int top = searchRegion.y / scale;
+			int right = Math.min(scaledWidth, (searchRegion.x + searchRegion.width + scale - 1) / scale);
+			int bottom = Math.min(scaledHeight, (searchRegion.y + searchRegion.height + scale - 1) / scale);
 
-			TargetData contourData = new TargetData(frame, matOfPoint);
-			if(contourData.isPotentialTarget())
-			{
-				candidateContours.add(contourData);
-				contourData.drawBoundingBox(RED);
-			}
+			scaledSearchRegion = new Rect(left, top, right - left, bottom - top);
+			searchOffset = scaledSearchRegion.tl();
+		}
+
+		//HSV threshold
+		if(parallel)
+		{
+			thresholdParallel(rgbaFrame, yuvFrame, width, height, scale, scaledSearchRegion);
+		}
+		else if(!multiSlot)
+		{
+			threshold(rgbaFrame, yuvFrame, width, height, scale, scaledSearchRegion);
+		}
+		else if(yuvFrame != null)
+		{
+			multiSlotMaskStage.applyNV21(yuvFrame, width, height, scale, slotMasks);
+		}
+		else
+		{
+			multiSlotMaskStage.apply(scale == 1 ? rgbaFrame : scaledImage, slotMasks);
 		}
 
+		stageStartTime = recordStage(Stage.THRESHOLD, stageStartTime);
+
+		candidateContours.clear();
+
 		ArrayList<TargetInformation> foundTargetInformation = new ArrayList<>();
 
-		if(!candidateContours.isEmpty())
+		Rect bestTargetBox = null;
+
+		//each slot's contours are found, scored and tracked separately, so add up the time each stage takes across all of them
+		long findContoursTime = 0, scoringTime = 0, trackingTime = 0;
+
+		for(int slotIndex = 0; slotIndex < numSlots; ++slotIndex)
 		{
-			//now that we've removed the riff-raff, find the best contour
-			Collections.sort(candidateContours);
+			SlotSettings slot = slots[slotIndex];
 
-			for(int index = 1; index <= Math.min(candidateContours.size(), Settings.numTargets); ++index)
+			//find contours
+			//the offset puts them back into (scaled) full frame coordinates
+			//contours too small to pass isPotentialTarget() are dropped as they're read, before anything else is done with them
+			double minBoundingBoxArea = TargetScorer.getMinBoundingBoxArea(width, height, slot.minArea) / (scale * scale);
+
+			int numContours;
+			if(parallel)
 			{
-				TargetData selectedContour = candidateContours.get(index - 1);
+				//the parallel stage kept its own mask
+				numContours = parallelStage.extractThresholded(searchOffset, minBoundingBoxArea);
+			}
+			else
+			{
+				numContours = blobExtractor.extract(multiSlot ? slotMasks[slotIndex] : filteredImage, searchOffset, minBoundingBoxArea);
+			}
+
+			//Log.i(TAG, "Found contours: " + numContours);
+
+			long currentTime = System.nanoTime();
+			findContoursTime += currentTime - stageStartTime;
+			stageStartTime = currentTime;
+
+			int firstCandidate = candidateContours.size();
+
+			// make sure the contours that are detected are at least 20x20
+			// pixels with an area of 400 and an aspect ratio greater then 1
+			for(int contour = 0; contour < numContours; ++contour)
+			{
+				if(targetDataPool.size() == candidateContours.size())
+				{
+					targetDataPool.add(new TargetData());
+				}
+
+				TargetData contourData = targetDataPool.get(candidateContours.size());
+				contourData.set(rgbaFrame, width, height, slot, blobs, contour, scale);
+				if(contourData.isPotentialTarget())
+				{
+					candidateContours.add(contourData);
+				}
+			}
+
+			//now that we've removed the riff-raff, find the best contours
+			targetSelector.reset(slot.numTargets);
+			for(int index = firstCandidate; index < candidateContours.size(); ++index)
+			{
+				targetSelector.offer(index, candidateContours.get(index).score);
+			}
+			targetSelector.finish();
+
+			int firstTarget = foundTargetInformation.size();
+
+			for(int rank = 0; rank < targetSelector.size(); ++rank)
+			{
+				TargetData selectedContour = candidateContours.get(targetSelector.getIndex(rank));
+				selectedContour.selected = true;
 				//Log.d(TAG, "area: " + selectedContour.contourArea + " aspect quotient: " + selectedContour.aspectQuotient);
 
-				selectedContour.drawBoundingBox(GREEN);
+				if(rank == 0 && slotIndex == 0)
+				{
+					//the ROI tracker keeps this, and the pooled one will be overwritten next frame
+					bestTargetBox = selectedContour.boundingBox.clone();
+				}
 
-				TargetInformation targetInfo = new TargetInformation(selectedContour.boundingBox, frame.width(), frame.height(), horizontalFOV, verticalFOV, index);
+				TargetInformation targetInfo = new TargetInformation(selectedContour.boundingBox, width, height, horizontalFOV, verticalFOV, rank + 1);
+				targetInfo.slot = slot.slot;
 				foundTargetInformation.add(targetInfo);
+			}
+
+			currentTime = System.nanoTime();
+			scoringTime += currentTime - stageStartTime;
+			stageStartTime = currentTime;
+
+			if(targetTracking)
+			{
+				targetTrackers[slotIndex].update(foundTargetInformation.subList(firstTarget, foundTargetInformation.size()), captureTimeNanos);
+			}
+
+			currentTime = System.nanoTime();
+			trackingTime += currentTime - stageStartTime;
+			stageStartTime = currentTime;
+		}
+
+		if(!multiSlot)
+		{
+			roiTracker.onSearchResult(bestTargetBox);
+		}
+
+		recordStageTime(Stage.FIND_CONTOURS, findContoursTime);
+		recordStageTime(Stage.SCORING, scoringTime);
+		recordStageTime(Stage.TRACKING, trackingTime);
+
+		//only RGBA frames are drawn on
+		if(rgbaFrame != null)
+		{
+			if(searchRegion != null)
+			{
+				Imgproc.rectangle(rgbaFrame, searchRegion.tl(), searchRegion.br(), BLUE);
+			}
+
+			for(TargetData candidate : candidateContours)
+			{
+				candidate.drawBoundingBox(RED);
+			}
+
+			//selected ones go on top
+			for(TargetData candidate : candidateContours)
+			{
+				if(candidate.selected)
+				{
+					candidate.drawBoundingBox(GREEN);
+				}
+			}
+		}
+
+		recordStage(Stage.DRAWING, stageStartTime);
+		recordStage(Stage.TOTAL, startTime);
+
+		return new PipelineResult(rgbaFrame, foundTargetInformation);
+	}
+
+	/**
+	 * Record the time since the stage started.
+	 *
+	 * @return the current time, which is when the next stage starts
+	 */
+	private long recordStage(Stage stage, long stageStartTime)
+	{
+		long currentTime = System.nanoTime();
+
+		recordStageTime(stage, currentTime - stageStartTime);
+
+		return currentTime;
+	}
+
+	private void recordStageTime(Stage stage, long stageTimeNanos)
+	{
+		lastStageTimes[stage.ordinal()] = stageTimeNanos;
+		stageLatencies[stage.ordinal()].record(stageTimeNanos);
+	}
+
+	/**
+	 * Shrink an RGBA frame into scaledImage.
+	 * Power of two scales use an image pyramid, which is faster than a general resize.
+	 */
+	private void downscale(Mat rgbaFrame, int scale, int scaledWidth, int scaledHeight)
+	{
+		if(scale == 1)
+		{
+			return;
+		}
 
+		if((scale & (scale - 1)) == 0)
+		{
+			Mat source = rgbaFrame;
+			for(int level = scale; level > 1; level /= 2)
+			{
+				Imgproc.pyrDown(source, scaledImage, new Size(source.cols() / 2, source.rows() / 2));
+				source = scaledImage;
 			}
 		}
+		else
+		{
+			Imgproc.resize(rgbaFrame, scaledImage, new Size(scaledWidth, scaledHeight), 0, 0, Imgproc.INTER_AREA);
+		}
+	}
 
-		return new Pair<>(frame, foundTargetInformation);
+	/**
+	 * Threshold the search region of whichever frame was provided into filteredImage.
+	 * RGBA frames must have been downscaled first.
+	 *
+	 * @param searchRegion area of the scaled frame to threshold, or null for the whole frame
+	 */
+	private void threshold(Mat rgbaFrame, Mat yuvFrame, int width, int height, int scale, Rect searchRegion)
+	{
+		if(yuvFrame != null)
+		{
+			//the NV21 stage downscales as it goes
+			nv21MaskStage.apply(yuvFrame, width, height, scale, searchRegion, filteredImage);
+		}
+		else
+		{
+			Mat source = scale == 1 ? rgbaFrame : scaledImage;
 
+			if(searchRegion == null)
+			{
+				maskStage.apply(source, filteredImage);
+			}
+			else
+			{
+				//submat() makes a new native header every frame, so release it now instead of leaving it to the finalizer
+				Mat region = source.submat(searchRegion);
+				maskStage.apply(region, filteredImage);
+				region.release();
+			}
+		}
+	}
 
+	/**
+	 * Threshold the search region of whichever frame was provided with the parallel stage, which keeps the mask itself.
+	 * RGBA frames must have been downscaled first.
+	 *
+	 * @param searchRegion area of the scaled frame to threshold, or null for the whole frame
+	 */
+	private void thresholdParallel(Mat rgbaFrame, Mat yuvFrame, int width, int height, int scale, Rect searchRegion)
+	{
+		if(yuvFrame != null)
+		{
+			//shares the NV21 stage's table, which the color filter preview uses too
+			parallelStage.thresholdNV21(nv21MaskStage.getTable(), yuvFrame, width, height, scale, searchRegion);
+		}
+		else
+		{
+			Mat source = scale == 1 ? rgbaFrame : scaledImage;
+
+			if(searchRegion == null)
+			{
+				parallelStage.threshold(source);
+			}
+			else
+			{
+				Mat region = source.submat(searchRegion);
+				parallelStage.threshold(region);
+				region.release();
+			}
+		}
 	}
 
 
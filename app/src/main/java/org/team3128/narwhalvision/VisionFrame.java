@@ -0,0 +1,31 @@
+package org.team3128.narwhalvision;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+
+/**
+ * A camera frame waiting for, or being processed by, the VisionWorker.
+ *
+ * These are pooled and reused, so don't hold onto them after they are released.
+ */
+public class VisionFrame
+{
+	// raw NV21 image from the camera
+	public final Mat image = new Mat();
+
+	// size of the camera image (not the NV21 Mat, which is taller)
+	public int width, height;
+
+	// counts up from 1 for each frame received from the camera
+	public long frameNumber;
+
+	// when the camera delivered the frame, from System.nanoTime()
+	public long captureTimeNanos;
+
+	// the exposure compensation the camera had been set to when it delivered the frame
+	public int exposureCompensation;
+
+	// what the pipeline found in the frame, once it has been processed.  null in color filter mode.
+	public ArrayList<TargetInformation> targets;
+}
@@ -0,0 +1,438 @@
+package org.team3128.narwhalvision;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the vision pipeline on its own thread, so that a slow frame doesn't hold up the camera or the preview.
+ *
+ * Frames are processed in the camera's NV21 format, so the only color conversion left is the one the preview needs.
+ *
+ * The camera thread hands frames over with submitFrame().  Only the newest frame is kept: if the worker is still busy when the next one
+ * arrives, the older waiting frame is dropped.  The preview can then draw the most recent results at whatever rate the camera runs.
+ *
+ * When recording is switched on, processed frames are passed on to a FrameRecorder instead of straight back to the pool.
+ *
+ * Commands from the robot run on this thread before each frame, and see the worker as their CommandContext.
+ */
+public class VisionWorker implements Runnable, CommandContext
+{
+	private final static String TAG = "NVWorker";
+
+	// returned by takeExposureRequest() when no command has asked for a new exposure
+	public final static int NO_EXPOSURE_REQUEST = Integer.MIN_VALUE;
+
+	// one being filled by the camera, one waiting and one being processed here, and one waiting and one being written in the FrameRecorder.
+	// So even when storage falls behind, the camera always has a free one and the newest frame is never the one dropped.
+	private final static int NUM_FRAME_BUFFERS = 5;
+
+	private final TowerTrackerPipeline pipeline;
+	private final NarwhalVisionActivity activity;
+
+	private final FrameExchanger<VisionFrame> frameExchanger;
+	private final ObjectPool<VisionFrame> framePool;
+	private final VisionFrame[] frameBuffers;
+
+	private final FrameRecorder recorder;
+
+	private Thread thread;
+
+	private volatile boolean showColorFilter;
+
+	// settings version that was last logged, only used by the processing thread
+	private long loggedSettingsVersion = -1;
+
+	// only used by the processing thread
+	private VisionFrame currentFrame;
+	private boolean processingPaused;
+	private final PhoneStats stats = new PhoneStats();
+
+	// exposure range of the camera, set by the camera thread.  Both 0 if the camera can't change it.
+	private volatile int minExposureCompensation, maxExposureCompensation;
+
+	// exposure asked for by a command, which the camera thread hasn't set yet
+	private final AtomicInteger exposureRequest = new AtomicInteger(NO_EXPOSURE_REQUEST);
+
+	// only used by the camera thread
+	private long frameCounter;
+	private long framesWithoutBuffer;
+
+	// results of the last processed frame
+	private volatile ArrayList<TargetInformation> latestTargets;
+	private volatile long latestFrameNumber;
+
+	// time from each frame's capture until its results are ready
+	private final LatencyHistogram frameLatency = new LatencyHistogram();
+
+	// copy of the last color filter output, for the preview
+	private final Object filterPreviewLock = new Object();
+	private final Mat filterPreview;
+	private boolean hasFilterPreview;
+
+	/**
+	 * @param recordingDirectory where the FrameRecorder puts its files
+	 */
+	public VisionWorker(TowerTrackerPipeline pipeline, NarwhalVisionActivity activity, File recordingDirectory)
+	{
+		this.pipeline = pipeline;
+		this.activity = activity;
+
+		frameExchanger = new FrameExchanger<>();
+		framePool = new ObjectPool<>(NUM_FRAME_BUFFERS);
+		frameBuffers = new VisionFrame[NUM_FRAME_BUFFERS];
+
+		for(int index = 0; index < NUM_FRAME_BUFFERS; ++index)
+		{
+			frameBuffers[index] = new VisionFrame();
+			framePool.release(frameBuffers[index]);
+		}
+
+		filterPreview = new Mat();
+
+		recorder = new FrameRecorder(recordingDirectory, framePool, pipeline.getHorizontalFOV(), pipeline.getVerticalFOV());
+	}
+
+	public void start()
+	{
+		thread = new Thread(this, TAG);
+		thread.start();
+
+		recorder.start();
+	}
+
+	/**
+	 * Stop the processing thread and free the frame buffers.  Blocks until the thread exits.
+	 */
+	public void stop()
+	{
+		if(thread != null)
+		{
+			thread.interrupt();
+
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+
+			thread = null;
+		}
+
+		recorder.stop();
+		pipeline.release();
+
+		for(VisionFrame frame : frameBuffers)
+		{
+			frame.image.release();
+		}
+
+		filterPreview.release();
+	}
+
+	/**
+	 * Called from the camera thread with each new frame.  Copies the frame and returns immediately.
+	 *
+	 * @param yuvFrame the raw NV21 frame from the camera
+	 * @param width width of the camera image
+	 * @param height height of the camera image
+	 * @param captureTimeNanos when the camera delivered the frame, from System.nanoTime()
+	 * @param exposureCompensation the exposure compensation the camera was set to
+	 */
+	public void submitFrame(Mat yuvFrame, int width, int height, long captureTimeNanos, int exposureCompensation)
+	{
+		++frameCounter;
+
+		VisionFrame frame = framePool.acquire();
+		if(frame == null)
+		{
+			//should only happen if the worker is holding onto frames it shouldn't be
+			++framesWithoutBuffer;
+			return;
+		}
+
+		yuvFrame.copyTo(frame.image);
+		frame.width = width;
+		frame.height = height;
+		frame.frameNumber = frameCounter;
+		frame.captureTimeNanos = captureTimeNanos;
+		frame.exposureCompensation = exposureCompensation;
+		frame.targets = null;
+
+		VisionFrame staleFrame = frameExchanger.offer(frame);
+		if(staleFrame != null)
+		{
+			framePool.release(staleFrame);
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		Log.i(TAG, "Starting...");
+
+		while(!Thread.currentThread().isInterrupted())
+		{
+			VisionFrame frame;
+
+			try
+			{
+				frame = frameExchanger.take();
+			}
+			catch(InterruptedException e)
+			{
+				break;
+			}
+
+			try
+			{
+				processFrame(frame);
+			}
+			finally
+			{
+				if(!recorder.offer(frame))
+				{
+					framePool.release(frame);
+				}
+			}
+		}
+
+		Log.i(TAG, "Stopped.  Frames dropped: " + frameExchanger.getDroppedItems() + ", frames with no free buffer: " + framesWithoutBuffer);
+	}
+
+	private void processFrame(VisionFrame frame)
+	{
+		currentFrame = frame;
+
+		//commands that change settings publish them, and the pipeline picks them up itself
+		activity.executeCommands(this);
+
+		if(processingPaused)
+		{
+			//don't leave the last targets on the preview
+			latestTargets = null;
+
+			//keep up with the settings anyway, so commands that changed them can be acked
+			pipeline.updateSettings();
+
+			activity.checkPendingCommands(this);
+			return;
+		}
+
+		boolean colorFilter = showColorFilter;
+
+		PipelineResult result = pipeline.processNV21Image(frame.image, frame.width, frame.height, frame.captureTimeNanos, colorFilter);
+		frame.targets = result.targets;
+
+		if(pipeline.getSettingsVersion() != loggedSettingsVersion)
+		{
+			loggedSettingsVersion = pipeline.getSettingsVersion();
+			Log.i(TAG, pipeline.toString());
+		}
+
+		if(colorFilter)
+		{
+			synchronized(filterPreviewLock)
+			{
+				result.image.copyTo(filterPreview);
+				hasFilterPreview = true;
+			}
+		}
+		else
+		{
+			frameLatency.record(System.nanoTime() - frame.captureTimeNanos);
+
+			latestTargets = result.targets;
+			latestFrameNumber = frame.frameNumber;
+
+			if(pipeline.getSettings().deltaStreaming)
+			{
+				//frames without targets are streamed too, so the robot finds out when targets are lost
+				activity.streamTargetInformation((int) frame.frameNumber, frame.captureTimeNanos, result.targets != null ? result.targets : Collections.<TargetInformation>emptyList());
+			}
+			else if(result.targets != null && result.targets.size() > 0)
+			{
+				Log.v(TAG, "Sending Target: " + result.targets);
+
+				activity.sendTargetInformation((int) frame.frameNumber, frame.captureTimeNanos, result.targets);
+			}
+		}
+
+		//commands are acked after the frame they affected
+		activity.checkPendingCommands(this);
+	}
+
+	@Override
+	public long getFrameNumber()
+	{
+		return currentFrame.frameNumber;
+	}
+
+	@Override
+	public SettingsSnapshot getSettings()
+	{
+		return pipeline.getSettings();
+	}
+
+	@Override
+	public boolean requestExposureCompensation(int exposureCompensation)
+	{
+		if(exposureCompensation < minExposureCompensation || exposureCompensation > maxExposureCompensation || minExposureCompensation == maxExposureCompensation)
+		{
+			return false;
+		}
+
+		exposureRequest.set(exposureCompensation);
+		return true;
+	}
+
+	@Override
+	public int getExposureCompensation()
+	{
+		return currentFrame.exposureCompensation;
+	}
+
+	@Override
+	public void setProcessingPaused(boolean paused)
+	{
+		if(paused != processingPaused)
+		{
+			Log.i(TAG, paused ? "Processing paused" : "Processing resumed");
+			processingPaused = paused;
+		}
+	}
+
+	@Override
+	public boolean isProcessingPaused()
+	{
+		return processingPaused;
+	}
+
+	@Override
+	public void sendStats(int requestSequence)
+	{
+		TargetSender sender = activity.getTargetSender();
+		CommandReceiver receiver = activity.getCommandReceiver();
+		SettingsSnapshot settings = pipeline.getSettings();
+
+		stats.requestSequence = requestSequence;
+		stats.selectedSlot = settings.getSelectedSlot().slot;
+		stats.processingPaused = processingPaused;
+		stats.frameNumber = latestFrameNumber;
+		stats.settingsVersion = settings.version;
+		stats.framesDropped = frameExchanger.getDroppedItems();
+		stats.medianLatencyMicros = frameLatency.getPercentile(50) / 1000;
+		stats.worstLatencyMicros = frameLatency.getPercentile(99) / 1000;
+		stats.packetsSent = sender.getPacketsSent();
+		stats.packetsDropped = sender.getPacketsDropped();
+		stats.commandsReceived = receiver.getCommandsReceived();
+		stats.commandsDropped = receiver.getCommandsDropped();
+
+		receiver.sendStats(stats);
+	}
+
+	@Override
+	public void sendResponse(CommandResponse response)
+	{
+		activity.getCommandReceiver().sendResponse(response);
+	}
+
+	/**
+	 * Tell the worker which exposure compensation values the camera takes.  Called from the camera thread when it starts.
+	 */
+	public void setExposureRange(int minExposureCompensation, int maxExposureCompensation)
+	{
+		this.minExposureCompensation = minExposureCompensation;
+		this.maxExposureCompensation = maxExposureCompensation;
+	}
+
+	/**
+	 * Called from the camera thread before each frame.
+	 *
+	 * @return the exposure compensation a command asked for since the last call, or NO_EXPOSURE_REQUEST
+	 */
+	public int takeExposureRequest()
+	{
+		return exposureRequest.getAndSet(NO_EXPOSURE_REQUEST);
+	}
+
+	/**
+	 * Set whether the thresholded image should be produced instead of targets.
+	 */
+	public void setShowColorFilter(boolean showColorFilter)
+	{
+		this.showColorFilter = showColorFilter;
+	}
+
+	/**
+	 * Start or stop recording processed frames.  Should be called from the camera thread.
+	 */
+	public void setRecording(boolean recording)
+	{
+		recorder.setRecording(recording);
+	}
+
+	public FrameRecorder getRecorder()
+	{
+		return recorder;
+	}
+
+	/**
+	 * Copy the most recent color filter output into the destination Mat.
+	 *
+	 * @return false if there isn't one yet, in which case the destination is unchanged.
+	 */
+	public boolean copyFilterPreview(Mat destination)
+	{
+		synchronized(filterPreviewLock)
+		{
+			if(!hasFilterPreview)
+			{
+				return false;
+			}
+
+			filterPreview.copyTo(destination);
+			return true;
+		}
+	}
+
+	/**
+	 * @return the targets found in the most recently processed frame, or null if nothing has been processed yet.
+	 */
+	public ArrayList<TargetInformation> getLatestTargets()
+	{
+		return latestTargets;
+	}
+
+	/**
+	 * @return the camera frame number of the most recently processed frame
+	 */
+	public long getLatestFrameNumber()
+	{
+		return latestFrameNumber;
+	}
+
+	/**
+	 * @return the time from capture until the results were ready for recent frames.  Can be read from any thread.
+	 */
+	public LatencyHistogram getFrameLatency()
+	{
+		return frameLatency;
+	}
+
+	/**
+	 * @return number of frames which were replaced by a newer one before they could be processed
+	 */
+	public long getDroppedFrames()
+	{
+		return frameExchanger.getDroppedItems();
+	}
+}
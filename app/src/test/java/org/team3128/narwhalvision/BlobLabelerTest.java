@@ -0,0 +1,129 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks BlobLabeler against a simple flood fill.
+ */
+public class BlobLabelerTest
+{
+	/**
+	 * left, top, width, height, area of each 8-connected blob, in scan order of their first pixel
+	 */
+	private static ArrayList<long[]> floodFill(byte[] mask, int width, int height)
+	{
+		ArrayList<long[]> blobs = new ArrayList<>();
+		boolean[] visited = new boolean[mask.length];
+
+		for(int start = 0; start < mask.length; ++start)
+		{
+			if(mask[start] == 0 || visited[start])
+			{
+				continue;
+			}
+
+			int left = width, top = height, right = -1, bottom = -1;
+			long area = 0;
+
+			ArrayDeque<Integer> queue = new ArrayDeque<>();
+			queue.add(start);
+			visited[start] = true;
+
+			while(!queue.isEmpty())
+			{
+				int pixel = queue.poll();
+				int x = pixel % width, y = pixel / width;
+
+				left = Math.min(left, x);
+				right = Math.max(right, x);
+				top = Math.min(top, y);
+				bottom = Math.max(bottom, y);
+				++area;
+
+				for(int neighborY = Math.max(0, y - 1); neighborY <= Math.min(height - 1, y + 1); ++neighborY)
+				{
+					for(int neighborX = Math.max(0, x - 1); neighborX <= Math.min(width - 1, x + 1); ++neighborX)
+					{
+						int neighbor = neighborY * width + neighborX;
+						if(mask[neighbor] != 0 && !visited[neighbor])
+						{
+							visited[neighbor] = true;
+							queue.add(neighbor);
+						}
+					}
+				}
+			}
+
+			blobs.add(new long[]{left, top, right - left + 1, bottom - top + 1, area});
+		}
+
+		return blobs;
+	}
+
+	@Test
+	public void label_matchesFloodFill() throws Exception
+	{
+		Random random = new Random(3128);
+		BlobLabeler labeler = new BlobLabeler();
+
+		for(int trial = 0; trial < 50; ++trial)
+		{
+			int width = 1 + random.nextInt(60), height = 1 + random.nextInt(60);
+			double density = random.nextDouble();
+
+			byte[] mask = new byte[width * height];
+			for(int pixel = 0; pixel < mask.length; ++pixel)
+			{
+				mask[pixel] = random.nextDouble() < density ? (byte) 255 : 0;
+			}
+
+			ArrayList<long[]> expected = floodFill(mask, width, height);
+
+			assertEquals(expected.size(), labeler.label(mask, width, height, 0, 0, 0));
+
+			for(int blob = 0; blob < expected.size(); ++blob)
+			{
+				long[] expectedBlob = expected.get(blob);
+				assertEquals(expectedBlob[0], labeler.getLeft(blob));
+				assertEquals(expectedBlob[1], labeler.getTop(blob));
+				assertEquals(expectedBlob[2], labeler.getWidth(blob));
+				assertEquals(expectedBlob[3], labeler.getHeight(blob));
+				assertEquals(expectedBlob[4], labeler.getArea(blob));
+			}
+		}
+	}
+
+	@Test
+	public void rectangle_measuredWithOffset() throws Exception
+	{
+		int width = 20, height = 10;
+		byte[] mask = new byte[width * height];
+
+		//4x3 rectangle at (5, 2), and a single pixel that's too small to keep
+		for(int y = 2; y < 5; ++y)
+		{
+			for(int x = 5; x < 9; ++x)
+			{
+				mask[y * width + x] = 1;
+			}
+		}
+		mask[8 * width + 15] = 1;
+
+		BlobLabeler labeler = new BlobLabeler();
+		assertEquals(1, labeler.label(mask, width, height, 100, 200, 2));
+
+		assertEquals(105, labeler.getLeft(0));
+		assertEquals(202, labeler.getTop(0));
+		assertEquals(4, labeler.getWidth(0));
+		assertEquals(3, labeler.getHeight(0));
+		assertEquals(12, labeler.getArea(0));
+		assertEquals(106.5, labeler.getCentroidX(0), 1e-9);
+		assertEquals(203, labeler.getCentroidY(0), 1e-9);
+	}
+}
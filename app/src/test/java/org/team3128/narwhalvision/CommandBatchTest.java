@@ -0,0 +1,226 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class CommandBatchTest
+{
+	private static class RecordingCommand extends PhoneCommand
+	{
+		private final ArrayList<String> log;
+		private final String name;
+		private final Object key;
+		private final byte status;
+
+		// frame number from which isApplied() returns true
+		long appliedAtFrame;
+
+		RecordingCommand(ArrayList<String> log, int sequence, String name, Object key, byte status)
+		{
+			this.log = log;
+			this.sequence = sequence;
+			this.name = name;
+			this.key = key;
+			this.status = status;
+		}
+
+		@Override
+		public byte execute(CommandContext context)
+		{
+			log.add(name);
+			return status;
+		}
+
+		@Override
+		public boolean isApplied(CommandContext context)
+		{
+			return context.getFrameNumber() >= appliedAtFrame;
+		}
+
+		@Override
+		public Object getCoalescingKey()
+		{
+			return key;
+		}
+	}
+
+	private static class TestContext implements CommandContext
+	{
+		long frameNumber;
+
+		// responses in the order they were sent, as strings since the object is reused
+		final ArrayList<String> responses = new ArrayList<>();
+
+		@Override
+		public long getFrameNumber()
+		{
+			return frameNumber;
+		}
+
+		@Override
+		public SettingsSnapshot getSettings()
+		{
+			return null;
+		}
+
+		@Override
+		public boolean requestExposureCompensation(int exposureCompensation)
+		{
+			return false;
+		}
+
+		@Override
+		public int getExposureCompensation()
+		{
+			return 0;
+		}
+
+		@Override
+		public void setProcessingPaused(boolean paused)
+		{
+		}
+
+		@Override
+		public boolean isProcessingPaused()
+		{
+			return false;
+		}
+
+		@Override
+		public void sendStats(int requestSequence)
+		{
+		}
+
+		@Override
+		public void sendResponse(CommandResponse response)
+		{
+			responses.add(response.commandSequence + ":" + response.status + "@" + response.frameNumber);
+		}
+	}
+
+	private final static byte ACK = CommandResponse.ACK, PENDING = CommandResponse.PENDING;
+
+	@Test
+	public void execute_onlyLastOfEachKeyRuns() throws Exception
+	{
+		ArrayList<String> log = new ArrayList<>();
+		TestContext context = new TestContext();
+		context.frameNumber = 7;
+
+		SpscQueue<PhoneCommand> queue = new SpscQueue<>(16);
+		queue.offer(new RecordingCommand(log, 1, "slot 1", "slot", ACK));
+		queue.offer(new RecordingCommand(log, 2, "a", null, ACK));
+		queue.offer(new RecordingCommand(log, 3, "slot 2", "slot", ACK));
+		queue.offer(new RecordingCommand(log, 4, "exposure 1", "exposure", ACK));
+		queue.offer(new RecordingCommand(log, 0, "b", null, ACK));
+		queue.offer(new RecordingCommand(log, 5, "slot 3", "slot", ACK));
+
+		CommandBatch batch = new CommandBatch(2);
+
+		assertEquals(4, batch.executeAll(queue, context, 0));
+
+		//the survivors keep their original order
+		assertEquals("[a, exposure 1, b, slot 3]", log.toString());
+		assertEquals(2, batch.getCommandsCoalesced());
+		assertEquals(0, batch.size());
+		assertTrue(queue.isEmpty());
+
+		//replaced commands are nacked as they're skipped, and sequence 0 gets no response
+		assertEquals("[1:3@0, 2:0@7, 3:3@0, 4:0@7, 5:0@7]", context.responses.toString());
+	}
+
+	@Test
+	public void execute_keysOnlyCoalesceWithinOneBatch() throws Exception
+	{
+		ArrayList<String> log = new ArrayList<>();
+		TestContext context = new TestContext();
+		CommandBatch batch = new CommandBatch(4);
+
+		batch.add(new RecordingCommand(log, 1, "slot 1", "slot", ACK));
+		assertEquals(1, batch.execute(context, 0));
+
+		batch.add(new RecordingCommand(log, 2, "slot 2", "slot", ACK));
+		assertEquals(1, batch.execute(context, 0));
+
+		assertEquals("[slot 1, slot 2]", log.toString());
+		assertEquals(0, batch.getCommandsCoalesced());
+	}
+
+	@Test
+	public void resentCommand_answeredOnce() throws Exception
+	{
+		ArrayList<String> log = new ArrayList<>();
+		TestContext context = new TestContext();
+		CommandBatch batch = new CommandBatch(4);
+
+		batch.add(new RecordingCommand(log, 9, "slot 2", "slot", ACK));
+		batch.add(new RecordingCommand(log, 9, "slot 2", "slot", ACK));
+		batch.execute(context, 0);
+
+		assertEquals("[slot 2]", log.toString());
+		assertEquals("[9:0@0]", context.responses.toString());
+	}
+
+	@Test
+	public void pending_ackedAtFrameItTookEffect() throws Exception
+	{
+		ArrayList<String> log = new ArrayList<>();
+		TestContext context = new TestContext();
+		CommandBatch batch = new CommandBatch(4);
+
+		RecordingCommand command = new RecordingCommand(log, 3, "slot 2", "slot", PENDING);
+		command.appliedAtFrame = 12;
+
+		context.frameNumber = 10;
+		batch.add(command);
+		batch.execute(context, 0);
+		batch.checkPending(context, 0);
+
+		assertEquals(1, batch.getNumPending());
+		assertTrue(context.responses.isEmpty());
+
+		context.frameNumber = 11;
+		batch.checkPending(context, 0);
+		context.frameNumber = 12;
+		batch.checkPending(context, 0);
+
+		assertEquals(0, batch.getNumPending());
+		assertEquals("[3:0@12]", context.responses.toString());
+	}
+
+	@Test
+	public void pending_supersededByNewerCommandOrTimedOut() throws Exception
+	{
+		ArrayList<String> log = new ArrayList<>();
+		TestContext context = new TestContext();
+		CommandBatch batch = new CommandBatch(4);
+
+		RecordingCommand slot2 = new RecordingCommand(log, 1, "slot 2", "slot", PENDING);
+		RecordingCommand exposure = new RecordingCommand(log, 2, "exposure", "exposure", PENDING);
+		slot2.appliedAtFrame = exposure.appliedAtFrame = Long.MAX_VALUE;
+
+		batch.add(slot2);
+		batch.add(exposure);
+		batch.execute(context, 0);
+
+		//next frame, a newer slot switch replaces the one that never took effect
+		RecordingCommand slot3 = new RecordingCommand(log, 3, "slot 3", "slot", PENDING);
+		slot3.appliedAtFrame = Long.MAX_VALUE;
+		slot3.receiveTimeNanos = CommandBatch.PENDING_TIMEOUT_NANOS;
+
+		batch.add(slot3);
+		batch.execute(context, CommandBatch.PENDING_TIMEOUT_NANOS);
+
+		assertEquals("[1:3@0]", context.responses.toString());
+		assertEquals(2, batch.getNumPending());
+
+		//the exposure command has been waiting longer than the timeout, but the new slot switch hasn't
+		batch.checkPending(context, CommandBatch.PENDING_TIMEOUT_NANOS + 1);
+
+		assertEquals("[1:3@0, 2:4@0]", context.responses.toString());
+		assertEquals(1, batch.getNumPending());
+	}
+}
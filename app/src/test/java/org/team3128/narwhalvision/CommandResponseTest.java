@@ -0,0 +1,93 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class CommandResponseTest
+{
+	@Test
+	public void encodeDecode_roundTrip() throws Exception
+	{
+		CommandResponse response = new CommandResponse();
+		response.set(0x89ABCDEF, CommandResponse.NACK_TIMEOUT, 1234, 56789);
+
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		assertEquals(CommandResponse.PACKET_SIZE, response.encode(buffer));
+		assertEquals(CommandResponse.PACKET_SIZE, buffer.position());
+		buffer.flip();
+
+		CommandResponse decoded = new CommandResponse();
+		assertTrue(decoded.decode(buffer));
+
+		assertEquals(0x89ABCDEF, decoded.commandSequence);
+		assertEquals(CommandResponse.NACK_TIMEOUT, decoded.status);
+		assertFalse(decoded.isAck());
+		assertEquals(1234, decoded.frameNumber);
+		assertEquals(56789, decoded.latencyMicros);
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void decode_rejectsOtherPackets() throws Exception
+	{
+		ByteBuffer targets = ByteBuffer.allocate(TargetPacket.MAX_PACKET_SIZE);
+		TargetPacket.encode(targets, 1, 0, new ArrayList<TargetInformation>());
+		targets.flip();
+
+		CommandResponse response = new CommandResponse();
+		assertFalse(response.decode(targets));
+		assertEquals(0, targets.position());
+
+		ByteBuffer cutOff = ByteBuffer.allocate(CommandResponse.PACKET_SIZE);
+		new CommandResponse().encode(cutOff);
+		cutOff.flip().limit(CommandResponse.PACKET_SIZE - 1);
+		assertFalse(response.decode(cutOff));
+	}
+
+	@Test
+	public void stats_roundTripAndCapCounters() throws Exception
+	{
+		PhoneStats stats = new PhoneStats();
+		stats.requestSequence = 42;
+		stats.selectedSlot = 3;
+		stats.processingPaused = true;
+		stats.frameNumber = 100000;
+		stats.settingsVersion = 17;
+		stats.framesDropped = 5;
+		stats.medianLatencyMicros = 30000;
+		stats.worstLatencyMicros = 90000;
+		stats.packetsSent = 1L << 40;
+		stats.packetsDropped = 2;
+		stats.commandsReceived = 9;
+		stats.commandsDropped = 0;
+
+		ByteBuffer buffer = ByteBuffer.allocate(PhoneStats.PACKET_SIZE);
+		assertEquals(PhoneStats.PACKET_SIZE, stats.encode(buffer));
+		assertFalse(buffer.hasRemaining());
+		buffer.flip();
+
+		PhoneStats decoded = new PhoneStats();
+		assertTrue(decoded.decode(buffer));
+
+		assertEquals(42, decoded.requestSequence);
+		assertEquals(3, decoded.selectedSlot);
+		assertTrue(decoded.processingPaused);
+		assertEquals(100000, decoded.frameNumber);
+		assertEquals(17, decoded.settingsVersion);
+		assertEquals(5, decoded.framesDropped);
+		assertEquals(30000, decoded.medianLatencyMicros);
+		assertEquals(90000, decoded.worstLatencyMicros);
+		assertEquals(0xFFFFFFFFL, decoded.packetsSent);
+		assertEquals(2, decoded.packetsDropped);
+		assertEquals(9, decoded.commandsReceived);
+		assertEquals(0, decoded.commandsDropped);
+
+		//a stats packet isn't a response
+		buffer.rewind();
+		assertFalse(new CommandResponse().decode(buffer));
+	}
+}
@@ -0,0 +1,67 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that ContourBuffer measures contours the same way boundingRect() and contourArea() do.
+ */
+public class ContourBufferTest
+{
+	@Test
+	public void rectangle_measuredLikeOpenCV() throws Exception
+	{
+		ContourBuffer contours = new ContourBuffer();
+
+		//corners of a filled 10x5 pixel rectangle at (2, 3), as CHAIN_APPROX_SIMPLE returns them
+		assertTrue(contours.addContour(new int[]{2, 3, 2, 7, 11, 7, 11, 3}, 4, 0));
+
+		assertEquals(1, contours.size());
+		assertEquals(2, contours.getLeft(0));
+		assertEquals(3, contours.getTop(0));
+		assertEquals(10, contours.getWidth(0));
+		assertEquals(5, contours.getHeight(0));
+
+		//contourArea() goes through the pixel centers, so it's one smaller in each direction
+		assertEquals(9 * 4, contours.getArea(0), 0);
+	}
+
+	@Test
+	public void smallBoxes_rejectedBeforePacking() throws Exception
+	{
+		ContourBuffer contours = new ContourBuffer();
+
+		//3x3 box is 9 pixels
+		assertFalse(contours.addContour(new int[]{0, 0, 0, 2, 2, 2, 2, 0}, 4, 10));
+		assertEquals(0, contours.size());
+
+		assertTrue(contours.addContour(new int[]{5, 5, 5, 7, 7, 7, 7, 5}, 4, 9));
+		assertEquals(1, contours.size());
+		assertEquals(0, contours.getPointStart(0));
+		assertEquals(5, contours.getPoints()[0]);
+	}
+
+	@Test
+	public void points_packedAcrossGrowth() throws Exception
+	{
+		ContourBuffer contours = new ContourBuffer();
+		int[] triangle = new int[6];
+
+		for(int index = 0; index < 1000; ++index)
+		{
+			triangle[0] = index;
+			triangle[2] = index + 4;
+			triangle[5] = 6;
+			contours.addContour(triangle, 3, 0);
+		}
+
+		assertEquals(1000, contours.size());
+		assertEquals(999 * 3, contours.getPointStart(999));
+		assertEquals(999, contours.getPoints()[999 * 6]);
+		assertEquals(12, contours.getArea(999), 0);
+
+		contours.clear();
+		assertEquals(0, contours.size());
+	}
+}
@@ -0,0 +1,90 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads back a FrameRecording file whose ring has wrapped around.
+ */
+public class FrameRecordingReaderTest
+{
+	private final static int WIDTH = 4, HEIGHT = 2, SLOT_COUNT = 4;
+
+	private static void writeSlot(ByteBuffer file, int slot, int sequence, byte fill, ArrayList<TargetInformation> targets)
+	{
+		int slotSize = FrameRecording.getSlotSize(FrameRecording.FORMAT_NV21, WIDTH, HEIGHT);
+		int slotStart = (int) FrameRecording.getSlotPosition(slotSize, slot);
+
+		file.putInt(slotStart + FrameRecording.SEQUENCE_OFFSET, sequence);
+		file.putLong(slotStart + FrameRecording.CAPTURE_TIME_OFFSET, sequence * 1000L);
+
+		file.position(slotStart + FrameRecording.TARGET_DATA_OFFSET);
+		int targetDataLength = TargetPacket.encode(file, sequence, sequence * 1000L, targets);
+		file.putShort(slotStart + FrameRecording.TARGET_DATA_LENGTH_OFFSET, (short) targetDataLength);
+
+		for(int index = 0; index < FrameRecording.getFrameSize(FrameRecording.FORMAT_NV21, WIDTH, HEIGHT); ++index)
+		{
+			file.put(slotStart + FrameRecording.FRAME_OFFSET + index, fill);
+		}
+	}
+
+	@Test
+	public void reader_returnsFramesInSequenceOrder() throws Exception
+	{
+		int slotSize = FrameRecording.getSlotSize(FrameRecording.FORMAT_NV21, WIDTH, HEIGHT);
+		ByteBuffer data = ByteBuffer.allocate((int) FrameRecording.getSlotPosition(slotSize, SLOT_COUNT));
+		FrameRecording.writeHeader(data, FrameRecording.FORMAT_NV21, WIDTH, HEIGHT, SLOT_COUNT, 60, 45);
+
+		ArrayList<TargetInformation> targets = new ArrayList<>();
+		targets.add(new TargetInformation(1, 0, 3, 2, WIDTH, HEIGHT, 60, 45, 1));
+
+		//the ring wrapped: frame 5 overwrote slot 0, and slot 2 was cut off while being written
+		writeSlot(data, 0, 5, (byte) 50, targets);
+		writeSlot(data, 1, 3, (byte) 30, new ArrayList<TargetInformation>());
+		writeSlot(data, 2, 0, (byte) 99, targets);
+		writeSlot(data, 3, 4, (byte) 40, targets);
+
+		File recordingFile = File.createTempFile("recording", ".nvfr");
+		recordingFile.deleteOnExit();
+		try(RandomAccessFile file = new RandomAccessFile(recordingFile, "rw"))
+		{
+			file.write(data.array());
+		}
+
+		FrameRecordingReader reader = new FrameRecordingReader(recordingFile);
+
+		assertEquals(WIDTH, reader.getWidth());
+		assertEquals(HEIGHT, reader.getHeight());
+		assertEquals(FrameRecording.FORMAT_NV21, reader.getFormat());
+		assertEquals(60, reader.getHorizontalFOV(), 0);
+		assertEquals(3, reader.getFrameCount());
+
+		byte[] frame = new byte[reader.getFrameSize()];
+		int[] expectedSequences = {3, 4, 5};
+
+		for(int index = 0; index < expectedSequences.length; ++index)
+		{
+			assertEquals(expectedSequences[index], reader.getSequence(index));
+			assertEquals(expectedSequences[index] * 1000L, reader.getCaptureTimeNanos(index));
+
+			reader.readFrame(index, frame);
+			assertEquals(expectedSequences[index] * 10, frame[frame.length - 1]);
+		}
+
+		TargetPacketDecoder decoder = new TargetPacketDecoder();
+		assertTrue(reader.decodeTargets(2, decoder));
+		assertEquals(1, decoder.getTargets().size());
+		assertEquals(3, decoder.getTargets().get(0).boundingRectRight, 0);
+
+		assertTrue(reader.decodeTargets(0, decoder));
+		assertEquals(0, decoder.getTargets().size());
+
+		reader.close();
+	}
+}
@@ -0,0 +1,163 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the lookup table threshold against values produced by OpenCV's cvtColor(COLOR_RGB2HSV) and inRange().
+ */
+public class HSVRangeTableTest
+{
+	private static int hsv(int h, int s, int v)
+	{
+		return (h << 16) | (s << 8) | v;
+	}
+
+	@Test
+	public void rgbToHSV_matchesOpenCV() throws Exception
+	{
+		// reference values from OpenCV 3.1
+		assertEquals(hsv(0, 255, 255), HSVRangeTable.rgbToHSV(255, 0, 0));
+		assertEquals(hsv(60, 255, 255), HSVRangeTable.rgbToHSV(0, 255, 0));
+		assertEquals(hsv(120, 255, 255), HSVRangeTable.rgbToHSV(0, 0, 255));
+		assertEquals(hsv(30, 255, 255), HSVRangeTable.rgbToHSV(255, 255, 0));
+		assertEquals(hsv(90, 255, 255), HSVRangeTable.rgbToHSV(0, 255, 255));
+		assertEquals(hsv(150, 255, 255), HSVRangeTable.rgbToHSV(255, 0, 255));
+		assertEquals(hsv(105, 127, 200), HSVRangeTable.rgbToHSV(100, 150, 200));
+
+		// grays have no hue or saturation
+		assertEquals(hsv(0, 0, 0), HSVRangeTable.rgbToHSV(0, 0, 0));
+		assertEquals(hsv(0, 0, 128), HSVRangeTable.rgbToHSV(128, 128, 128));
+		assertEquals(hsv(0, 0, 255), HSVRangeTable.rgbToHSV(255, 255, 255));
+	}
+
+	@Test
+	public void contains_isInclusive() throws Exception
+	{
+		// pure green is (60, 255, 255)
+		HSVRangeTable table = new HSVRangeTable(60, 255, 255, 60, 255, 255);
+
+		assertTrue(table.contains(0, 255, 0));
+		assertFalse(table.contains(0, 0, 255));
+		assertFalse(table.contains(0, 254, 0));
+	}
+
+	@Test
+	public void threshold_matchesContains() throws Exception
+	{
+		HSVRangeTable table = new HSVRangeTable(40, 100, 50, 80, 255, 255);
+
+		final int numPixels = 4096;
+		byte[] rgba = new byte[numPixels * 4];
+		new java.util.Random(3128).nextBytes(rgba);
+
+		byte[] mask = new byte[numPixels];
+		table.threshold(rgba, 4, mask, numPixels);
+
+		for(int pixel = 0; pixel < numPixels; ++pixel)
+		{
+			boolean inRange = table.contains(rgba[pixel * 4] & 0xFF, rgba[pixel * 4 + 1] & 0xFF, rgba[pixel * 4 + 2] & 0xFF);
+			assertEquals(inRange ? (byte)255 : (byte)0, mask[pixel]);
+		}
+	}
+
+	@Test
+	public void thresholdNV21_matchesRGBThreshold() throws Exception
+	{
+		HSVRangeTable rgbTable = new HSVRangeTable(HSVRangeTable.ColorFormat.RGB, 40, 100, 50, 80, 255, 255);
+		HSVRangeTable yuvTable = new HSVRangeTable(HSVRangeTable.ColorFormat.YUV, 40, 100, 50, 80, 255, 255);
+
+		final int width = 64, height = 48;
+		byte[] nv21 = new byte[width * height * 3 / 2];
+		new java.util.Random(3128).nextBytes(nv21);
+
+		// an odd region, so that it starts and ends in the middle of the 2x2 chroma blocks
+		final int left = 5, top = 7, regionWidth = 31, regionHeight = 21;
+
+		byte[] yPlane = new byte[regionHeight * width];
+		System.arraycopy(nv21, top * width, yPlane, 0, yPlane.length);
+
+		byte[] vuPlane = new byte[((top + regionHeight - 1) / 2 - top / 2 + 1) * width];
+		System.arraycopy(nv21, (height + top / 2) * width, vuPlane, 0, vuPlane.length);
+
+		byte[] mask = new byte[regionWidth * regionHeight];
+		yuvTable.thresholdNV21(yPlane, vuPlane, width, left, top, regionWidth, regionHeight, 1, mask);
+
+		for(int row = 0; row < regionHeight; ++row)
+		{
+			for(int column = 0; column < regionWidth; ++column)
+			{
+				int frameRow = top + row, frameColumn = left + column;
+
+				int vuIndex = (height + frameRow / 2) * width + (frameColumn & ~1);
+				int rgb = HSVRangeTable.yuvToRGB(nv21[frameRow * width + frameColumn] & 0xFF, nv21[vuIndex + 1] & 0xFF, nv21[vuIndex] & 0xFF);
+
+				boolean inRange = rgbTable.contains(rgb >>> 16, (rgb >>> 8) & 0xFF, rgb & 0xFF);
+				assertEquals(inRange ? (byte)255 : (byte)0, mask[row * regionWidth + column]);
+			}
+		}
+	}
+
+	@Test
+	public void thresholdNV21_downscaleSamplesEveryNthPixel() throws Exception
+	{
+		HSVRangeTable yuvTable = new HSVRangeTable(HSVRangeTable.ColorFormat.YUV, 40, 100, 50, 80, 255, 255);
+
+		final int width = 64, height = 48, step = 3;
+		byte[] nv21 = new byte[width * height * 3 / 2];
+		new java.util.Random(3128).nextBytes(nv21);
+
+		// region in downscaled coordinates
+		final int left = 2, top = 3, regionWidth = 15, regionHeight = 11;
+
+		int firstRow = top * step, lastRow = (top + regionHeight - 1) * step;
+
+		byte[] yPlane = new byte[(lastRow - firstRow + 1) * width];
+		System.arraycopy(nv21, firstRow * width, yPlane, 0, yPlane.length);
+
+		byte[] vuPlane = new byte[(lastRow / 2 - firstRow / 2 + 1) * width];
+		System.arraycopy(nv21, (height + firstRow / 2) * width, vuPlane, 0, vuPlane.length);
+
+		byte[] mask = new byte[regionWidth * regionHeight];
+		yuvTable.thresholdNV21(yPlane, vuPlane, width, left, top, regionWidth, regionHeight, step, mask);
+
+		for(int row = 0; row < regionHeight; ++row)
+		{
+			for(int column = 0; column < regionWidth; ++column)
+			{
+				int frameRow = (top + row) * step, frameColumn = (left + column) * step;
+
+				int vuIndex = (height + frameRow / 2) * width + (frameColumn & ~1);
+				boolean inRange = yuvTable.contains(nv21[frameRow * width + frameColumn] & 0xFF, nv21[vuIndex + 1] & 0xFF, nv21[vuIndex] & 0xFF);
+
+				assertEquals(inRange ? (byte)255 : (byte)0, mask[row * regionWidth + column]);
+			}
+		}
+	}
+
+	@Test
+	public void thresholdSlots_matchesEachTable() throws Exception
+	{
+		//overlapping ranges, so some pixels are in both
+		HSVRangeTable[] tables = {new HSVRangeTable(40, 100, 50, 80, 255, 255), new HSVRangeTable(0, 0, 100, 60, 255, 255)};
+
+		final int numPixels = 4096;
+		byte[] rgba = new byte[numPixels * 4];
+		new java.util.Random(3128).nextBytes(rgba);
+
+		byte[] slotMask = new byte[numPixels];
+		HSVRangeTable.thresholdSlots(tables, tables.length, rgba, 4, slotMask, numPixels);
+
+		for(int slot = 0; slot < tables.length; ++slot)
+		{
+			byte[] mask = new byte[numPixels];
+			tables[slot].threshold(rgba, 4, mask, numPixels);
+
+			for(int pixel = 0; pixel < numPixels; ++pixel)
+			{
+				assertEquals(mask[pixel] != 0, ((slotMask[pixel] >> slot) & 1) != 0);
+			}
+		}
+	}
+}
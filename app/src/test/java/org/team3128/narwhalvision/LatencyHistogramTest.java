@@ -0,0 +1,50 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the histogram's percentiles against known distributions.
+ */
+public class LatencyHistogramTest
+{
+	// buckets are 1/16 of a power of two wide
+	private static void assertAbout(long expected, long actual)
+	{
+		assertEquals(expected, actual, expected / 16.0);
+	}
+
+	@Test
+	public void percentiles_ofUniformSamples() throws Exception
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for(int sample = 1; sample <= 100; ++sample)
+		{
+			histogram.record(sample * 1000000L);
+		}
+
+		assertEquals(100, histogram.getSampleCount());
+		assertAbout(50000000L, histogram.getPercentile(50));
+		assertAbout(95000000L, histogram.getPercentile(95));
+		assertAbout(99000000L, histogram.getPercentile(99));
+		assertAbout(100000000L, histogram.getMax());
+	}
+
+	@Test
+	public void oldSamples_leaveTheWindow() throws Exception
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		histogram.record(500000000L);
+
+		for(int sample = 0; sample < LatencyHistogram.WINDOW_SIZE; ++sample)
+		{
+			histogram.record(1000);
+		}
+
+		assertEquals(LatencyHistogram.WINDOW_SIZE, histogram.getSampleCount());
+		assertAbout(1000, histogram.getMax());
+	}
+}
@@ -0,0 +1,166 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that splitting a mask into bands finds the same blobs as labeling it in one piece.
+ */
+public class ParallelBlobLabelerTest
+{
+	private static void assertSameBlobs(BlobLabeler expected, ParallelBlobLabeler actual)
+	{
+		assertEquals(expected.size(), actual.size());
+
+		for(int blob = 0; blob < expected.size(); ++blob)
+		{
+			assertEquals(expected.getLeft(blob), actual.getLeft(blob));
+			assertEquals(expected.getTop(blob), actual.getTop(blob));
+			assertEquals(expected.getWidth(blob), actual.getWidth(blob));
+			assertEquals(expected.getHeight(blob), actual.getHeight(blob));
+			assertEquals(expected.getArea(blob), actual.getArea(blob));
+			assertEquals(expected.getCentroidX(blob), actual.getCentroidX(blob), 1e-9);
+			assertEquals(expected.getCentroidY(blob), actual.getCentroidY(blob), 1e-9);
+		}
+	}
+
+	@Test
+	public void label_matchesBlobLabeler() throws Exception
+	{
+		Random random = new Random(3128);
+		BlobLabeler expected = new BlobLabeler();
+
+		for(int threads = 1; threads <= 4; ++threads)
+		{
+			ParallelBlobLabeler labeler = new ParallelBlobLabeler(threads);
+
+			try
+			{
+				for(int trial = 0; trial < 50; ++trial)
+				{
+					//heights smaller than the number of threads get fewer bands
+					int width = 1 + random.nextInt(60), height = 1 + random.nextInt(60);
+					double density = random.nextDouble();
+					double minArea = random.nextBoolean() ? 0 : random.nextInt(20);
+
+					byte[] mask = new byte[width * height];
+					for(int pixel = 0; pixel < mask.length; ++pixel)
+					{
+						mask[pixel] = random.nextDouble() < density ? (byte) 255 : 0;
+					}
+
+					expected.label(mask, width, height, 7, 11, minArea);
+					labeler.label(mask, width, height, 7, 11, minArea);
+
+					assertSameBlobs(expected, labeler);
+				}
+			}
+			finally
+			{
+				labeler.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void label_joinsBlobsAcrossBands() throws Exception
+	{
+		int width = 10, height = 8;
+		byte[] mask = new byte[width * height];
+
+		//a U shape whose arms are only joined in the bottom band, and a diagonal line crossing the middle band edge
+		for(int y = 0; y < 8; ++y)
+		{
+			mask[y * width] = 1;
+			mask[y * width + 3] = 1;
+		}
+		mask[7 * width + 1] = 1;
+		mask[7 * width + 2] = 1;
+
+		for(int y = 1; y < 7; ++y)
+		{
+			mask[y * width + y + 3] = 1;
+		}
+
+		ParallelBlobLabeler labeler = new ParallelBlobLabeler(4);
+
+		try
+		{
+			//the diagonal touches the U's right arm at (4, 1), so it's all one blob
+			assertEquals(1, labeler.label(mask, width, height, 0, 0, 0));
+			assertEquals(0, labeler.getLeft(0));
+			assertEquals(0, labeler.getTop(0));
+			assertEquals(10, labeler.getWidth(0));
+			assertEquals(8, labeler.getHeight(0));
+			assertEquals(8 + 8 + 2 + 6, labeler.getArea(0));
+
+			//big enough as a whole, even though no band's part of it is
+			assertEquals(1, labeler.label(mask, width, height, 0, 0, 80));
+		}
+		finally
+		{
+			labeler.shutdown();
+		}
+	}
+
+	@Test
+	public void label_bandFailure_labelerStillUsable() throws Exception
+	{
+		int width = 10, height = 8;
+
+		ParallelBlobLabeler labeler = new ParallelBlobLabeler(4);
+
+		try
+		{
+			//too short for the size, so the bands run off the end
+			try
+			{
+				labeler.label(new byte[width], width, height, 0, 0, 0);
+				fail("Expected the failed bands to be reported");
+			}
+			catch(RuntimeException e)
+			{
+				assertTrue(e.getCause() instanceof ArrayIndexOutOfBoundsException);
+			}
+
+			byte[] mask = new byte[width * height];
+			mask[0] = 1;
+			mask[width * height - 1] = 1;
+
+			assertEquals(2, labeler.label(mask, width, height, 0, 0, 0));
+		}
+		finally
+		{
+			labeler.shutdown();
+		}
+	}
+
+	@Test
+	public void threshold_matchesHSVRangeTable() throws Exception
+	{
+		Random random = new Random(3128);
+		HSVRangeTable table = new HSVRangeTable(40, 50, 60, 90, 255, 255);
+
+		int width = 37, height = 23;
+		byte[] pixels = new byte[width * height * 4];
+		random.nextBytes(pixels);
+
+		byte[] expected = new byte[width * height];
+		table.threshold(pixels, 4, expected, width * height);
+
+		ParallelBlobLabeler labeler = new ParallelBlobLabeler(3);
+
+		try
+		{
+			labeler.threshold(table, pixels, 4, width, height);
+			assertArrayEquals(expected, labeler.getMask());
+		}
+		finally
+		{
+			labeler.shutdown();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that published settings are copied, not shared with the Settings fields.
+ */
+public class SettingsSnapshotTest
+{
+	@Test
+	public void publish_incrementsVersion() throws Exception
+	{
+		SettingsSnapshot first = Settings.publish();
+		SettingsSnapshot second = Settings.publish();
+
+		assertEquals(first.version + 1, second.version);
+		assertSame(second, Settings.getSnapshot());
+	}
+
+	@Test
+	public void snapshot_unaffectedByLaterChanges() throws Exception
+	{
+		Settings.selectedSlot = 2;
+		Settings.lowH = 40;
+		Settings.processingScale = 2;
+		Settings.processingThreads = 4;
+		Settings.extraSlots = new SlotSettings[]{new SlotSettings(3, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11)};
+
+		SettingsSnapshot snapshot = Settings.publish();
+
+		Settings.lowH = 90;
+		Settings.processingScale = 1;
+		Settings.extraSlots = new SlotSettings[0];
+
+		assertEquals(2, snapshot.getNumSlots());
+		assertEquals(2, snapshot.getSelectedSlot().slot);
+		assertEquals(40, snapshot.getSelectedSlot().lowH);
+		assertEquals(3, snapshot.getSlot(1).slot);
+		assertEquals(2, snapshot.processingScale);
+		assertEquals(4, snapshot.processingThreads);
+
+		//the fields only matter once they're published again
+		assertSame(snapshot, Settings.getSnapshot());
+	}
+
+	@Test
+	public void tracksSameTargets_onlyRangesScaleAndTrackingMatter() throws Exception
+	{
+		SlotSettings slot = new SlotSettings(1, 40, 90, 50, 255, 60, 255, 100, 20, 20, 14, 1);
+		SlotSettings moreTargets = new SlotSettings(1, 40, 90, 50, 255, 60, 255, 100, 20, 20, 14, 3);
+		SlotSettings newRange = new SlotSettings(1, 41, 90, 50, 255, 60, 255, 100, 20, 20, 14, 1);
+
+		SettingsSnapshot snapshot = new SettingsSnapshot(1, new SlotSettings[]{slot}, true, true, false, 2, 1, "");
+
+		//the number of targets, threads, streaming mode and subscribers don't change what is tracked
+		assertTrue(snapshot.tracksSameTargets(new SettingsSnapshot(2, new SlotSettings[]{moreTargets}, true, true, true, 2, 4, "10.31.28.5")));
+
+		assertFalse(snapshot.tracksSameTargets(new SettingsSnapshot(2, new SlotSettings[]{newRange}, true, true, false, 2, 1, "")));
+		assertFalse(snapshot.tracksSameTargets(new SettingsSnapshot(2, new SlotSettings[]{slot, slot}, true, true, false, 2, 1, "")));
+		assertFalse(snapshot.tracksSameTargets(new SettingsSnapshot(2, new SlotSettings[]{slot}, true, true, false, 1, 1, "")));
+		assertFalse(snapshot.tracksSameTargets(new SettingsSnapshot(2, new SlotSettings[]{slot}, false, true, false, 2, 1, "")));
+		assertFalse(snapshot.tracksSameTargets(new SettingsSnapshot(2, new SlotSettings[]{slot}, true, false, false, 2, 1, "")));
+	}
+}
@@ -0,0 +1,82 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpscQueueTest
+{
+	@Test
+	public void capacity_roundedUpToPowerOfTwo() throws Exception
+	{
+		assertEquals(1, new SpscQueue<Integer>(1).capacity());
+		assertEquals(16, new SpscQueue<Integer>(16).capacity());
+		assertEquals(32, new SpscQueue<Integer>(17).capacity());
+	}
+
+	@Test
+	public void offerAndPoll_firstInFirstOut() throws Exception
+	{
+		SpscQueue<Integer> queue = new SpscQueue<>(4);
+
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+
+		//go around the ring a few times
+		for(int round = 0; round < 3; ++round)
+		{
+			for(int item = 0; item < 4; ++item)
+			{
+				assertTrue(queue.offer(round * 10 + item));
+			}
+
+			assertFalse(queue.offer(-1));
+			assertFalse(queue.isEmpty());
+
+			for(int item = 0; item < 4; ++item)
+			{
+				assertEquals(Integer.valueOf(round * 10 + item), queue.poll());
+			}
+
+			assertTrue(queue.isEmpty());
+			assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void twoThreads_everyItemArrivesInOrder() throws Exception
+	{
+		final int numItems = 200000;
+		final SpscQueue<Integer> queue = new SpscQueue<>(8);
+
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for(int item = 0; item < numItems; ++item)
+				{
+					while(!queue.offer(item))
+					{
+						Thread.yield();
+					}
+				}
+			}
+		});
+		producer.start();
+
+		for(int expected = 0; expected < numItems; ++expected)
+		{
+			Integer item;
+			while((item = queue.poll()) == null)
+			{
+				Thread.yield();
+			}
+
+			assertEquals(expected, item.intValue());
+		}
+
+		producer.join();
+		assertTrue(queue.isEmpty());
+	}
+}
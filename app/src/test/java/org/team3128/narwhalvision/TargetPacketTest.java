@@ -0,0 +1,69 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips targets through TargetPacket and TargetPacketDecoder.
+ */
+public class TargetPacketTest
+{
+	@Test
+	public void encode_decode_roundTrip() throws Exception
+	{
+		ArrayList<TargetInformation> targets = new ArrayList<>();
+		targets.add(new TargetInformation(10.5f, 20, 110, 70.25f, 640, 480, 60, 45, 1));
+		targets.add(new TargetInformation(300, 200, 340, 260, 640, 480, 60, 45, 2));
+		targets.get(1).setTracking(513, -12.5f, 40);
+		targets.get(1).slot = 3;
+
+		ByteBuffer buffer = ByteBuffer.allocate(TargetPacket.MAX_PACKET_SIZE);
+		int packetSize = TargetPacket.encode(buffer, 3128, 123456789012L, targets);
+
+		assertEquals(TargetPacket.getPacketSize(2), packetSize);
+
+		// 2.5 ms after capture
+		assertEquals(2500, TargetPacket.setLatency(buffer, 0, 123456789012L + 2500000L));
+
+		TargetPacketDecoder decoder = new TargetPacketDecoder();
+		assertTrue(decoder.decode(buffer.array(), 0, packetSize));
+
+		assertEquals(3128, decoder.getSequence());
+		assertEquals(123456789012L, decoder.getCaptureTimeNanos());
+		assertEquals(2500, decoder.getLatencyMicros());
+		assertEquals(2, decoder.getTargets().size());
+
+		for(int index = 0; index < targets.size(); ++index)
+		{
+			TargetInformation expected = targets.get(index), actual = decoder.getTargets().get(index);
+
+			assertEquals(expected.boundingRectLeft, actual.boundingRectLeft, 0);
+			assertEquals(expected.boundingRectBottom, actual.boundingRectBottom, 0);
+			assertEquals(expected.boundingRectCenterX, actual.boundingRectCenterX, 0);
+			assertEquals(expected.area, actual.area, 0);
+			assertEquals(expected.imageWidth, actual.imageWidth);
+			assertEquals(expected.verticalFOV, actual.verticalFOV, 0);
+			assertEquals(expected.targetRanking, actual.targetRanking);
+			assertEquals(expected.slot, actual.slot);
+			assertEquals(expected.trackId, actual.trackId);
+			assertEquals(expected.velocityX, actual.velocityX, 0);
+			assertEquals(expected.velocityY, actual.velocityY, 0);
+		}
+	}
+
+	@Test
+	public void decode_rejectsTruncatedPacket() throws Exception
+	{
+		ArrayList<TargetInformation> targets = new ArrayList<>();
+		targets.add(new TargetInformation(0, 0, 10, 10, 640, 480, 60, 45, 1));
+
+		ByteBuffer buffer = ByteBuffer.allocate(TargetPacket.MAX_PACKET_SIZE);
+		int packetSize = TargetPacket.encode(buffer, 1, 0, targets);
+
+		assertFalse(new TargetPacketDecoder().decode(buffer.array(), 0, packetSize - 1));
+	}
+}
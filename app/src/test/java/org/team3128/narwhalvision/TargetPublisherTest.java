@@ -0,0 +1,132 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TargetPublisherTest
+{
+	private final static long MILLIS = 1000000L;
+
+	@Test
+	public void parse_addressPortAndRate() throws Exception
+	{
+		TargetSubscriber subscriber = TargetSubscriber.parse(" 10.31.28.5 ", 3128);
+		assertEquals(new InetSocketAddress(InetAddress.getByName("10.31.28.5"), 3128), subscriber.address);
+		assertEquals(0, subscriber.maxPacketsPerSecond);
+		assertFalse(subscriber.isMulticast());
+
+		subscriber = TargetSubscriber.parse("239.31.28.1:5800@10", 3128);
+		assertEquals(5800, subscriber.address.getPort());
+		assertEquals(10, subscriber.maxPacketsPerSecond);
+		assertTrue(subscriber.isMulticast());
+
+		assertEquals(2, TargetSubscriber.parseList("10.31.28.5, ,10.31.28.6:5800", 3128).size());
+		assertEquals(0, TargetSubscriber.parseList("", 3128).size());
+
+		for(String invalid : new String[]{"driverstation.local", "10.31.28", "10.31.28.5:port", "10.31.28.5@-1"})
+		{
+			try
+			{
+				TargetSubscriber.parse(invalid, 3128);
+				fail("Parsed " + invalid);
+			}
+			catch(IllegalArgumentException expected)
+			{
+			}
+		}
+	}
+
+	@Test
+	public void shouldSend_rateLimitAndKeyframes() throws Exception
+	{
+		TargetSubscriber subscriber = new TargetSubscriber(new InetSocketAddress(InetAddress.getByName("10.31.28.5"), 3128), 10);
+
+		//can't decode a delta before its first keyframe
+		assertFalse(subscriber.shouldSend(0, false));
+		assertTrue(subscriber.shouldSend(0, true));
+		subscriber.onSent(0, true);
+
+		assertTrue(subscriber.shouldSend(100 * MILLIS, false));
+		subscriber.onSent(100 * MILLIS, false);
+
+		//too soon, and since it was a keyframe, the deltas after it are useless too
+		assertFalse(subscriber.shouldSend(150 * MILLIS, true));
+		assertFalse(subscriber.shouldSend(300 * MILLIS, false));
+		assertTrue(subscriber.shouldSend(310 * MILLIS, true));
+
+		assertEquals(2, subscriber.getPacketsSent());
+		assertEquals(3, subscriber.getPacketsSkipped());
+	}
+
+	@Test
+	public void publish_sameBufferToEverySubscriber() throws Exception
+	{
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+
+		List<DatagramChannel> receivers = new ArrayList<>();
+		DatagramChannel sendChannel = DatagramChannel.open();
+
+		try
+		{
+			TargetPublisher publisher = new TargetPublisher();
+
+			for(int index = 0; index < 3; ++index)
+			{
+				DatagramChannel receiver = DatagramChannel.open();
+				receiver.socket().bind(new InetSocketAddress(localhost, 0));
+				receivers.add(receiver);
+
+				//the last one only takes 1 packet per second
+				publisher.addSubscriber(new TargetSubscriber(new InetSocketAddress(localhost, receiver.socket().getLocalPort()), index == 2 ? 1 : 0));
+			}
+
+			ArrayList<TargetInformation> targets = new ArrayList<>();
+			targets.add(new TargetInformation(10, 20, 110, 70, 640, 480, 60, 45, 1));
+
+			ByteBuffer packet = ByteBuffer.allocateDirect(TargetPacket.MAX_PACKET_SIZE);
+			int packetSize = TargetPacket.encode(packet, 5, 0, targets);
+			packet.flip();
+
+			assertEquals(3, publisher.publish(sendChannel, packet, 0));
+			assertEquals(0, packet.position());
+
+			assertEquals(2, publisher.publish(sendChannel, packet, 10 * MILLIS));
+			assertEquals(5 * packetSize, publisher.getBytesSent());
+
+			TargetPacketDecoder decoder = new TargetPacketDecoder();
+			ByteBuffer received = ByteBuffer.allocate(TargetPacket.MAX_PACKET_SIZE);
+
+			for(DatagramChannel receiver : receivers)
+			{
+				received.clear();
+				receiver.receive(received);
+				received.flip();
+
+				assertTrue(decoder.decode(received));
+				assertEquals(5, decoder.getSequence());
+				assertEquals(1, decoder.getTargets().size());
+			}
+
+			assertEquals("Subscribers: ", publisher.toString().substring(0, 13));
+			assertTrue(publisher.removeSubscriber(publisher.getSubscribers()[1]));
+			assertEquals(2, publisher.getSubscribers().length);
+		}
+		finally
+		{
+			sendChannel.close();
+
+			for(DatagramChannel receiver : receivers)
+			{
+				receiver.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams targets through TargetStreamEncoder and TargetStreamDecoder.
+ */
+public class TargetStreamTest
+{
+	private final static long MILLIS = 1000000L;
+
+	private final TargetStreamEncoder encoder = new TargetStreamEncoder(1, 1000 * MILLIS, 100 * MILLIS);
+	private final TargetStreamDecoder decoder = new TargetStreamDecoder();
+	private final ByteBuffer buffer = ByteBuffer.allocate(TargetStreamEncoder.MAX_PACKET_SIZE);
+
+	private static TargetInformation target(float left, float top, float right, float bottom, int ranking, int trackId)
+	{
+		TargetInformation target = new TargetInformation(left, top, right, bottom, 640, 480, 60, 45, ranking);
+		target.setTracking(trackId, 5, -5);
+		target.slot = 1;
+		return target;
+	}
+
+	private static ArrayList<TargetInformation> targets(TargetInformation... targets)
+	{
+		ArrayList<TargetInformation> list = new ArrayList<>();
+		for(TargetInformation target : targets)
+		{
+			list.add(target);
+		}
+		return list;
+	}
+
+	/**
+	 * @return the packet type sent, or 0 if nothing was sent.  Decodes whatever was sent.
+	 */
+	private int stream(int sequence, long nowNanos, ArrayList<TargetInformation> frameTargets)
+	{
+		buffer.clear();
+		int size = encoder.encode(buffer, sequence, 0, nowNanos, frameTargets);
+		if(size == 0)
+		{
+			return 0;
+		}
+
+		assertEquals(size, buffer.position());
+		buffer.flip();
+		assertTrue(decoder.decode(buffer));
+
+		return buffer.get(0);
+	}
+
+	@Test
+	public void smallMovements_notSent() throws Exception
+	{
+		assertEquals(TargetPacket.PACKET_TYPE_TARGETS, stream(1, 0, targets(target(100, 100, 140, 120, 1, 7))));
+
+		//under a pixel
+		assertEquals(0, stream(2, 10 * MILLIS, targets(target(100.5f, 100, 140.5f, 120, 1, 7))));
+
+		//past the threshold, and quantized to a quarter pixel
+		assertEquals(TargetStreamEncoder.PACKET_TYPE_TARGET_DELTA, stream(3, 20 * MILLIS, targets(target(103.1f, 100, 145.1f, 121, 1, 7))));
+
+		TargetInformation decoded = decoder.getTargets().get(0);
+		assertEquals(124.0f, decoded.boundingRectCenterX, 0.125f);
+		assertEquals(42.0f, decoded.boundingRectWidth, 0.125f);
+		assertEquals(21.0f, decoded.boundingRectHeight, 0.125f);
+		assertEquals(7, decoded.trackId);
+		assertEquals(3, decoder.getSequence());
+
+		assertEquals(1, encoder.getKeyframes());
+		assertEquals(1, encoder.getDeltas());
+		assertEquals(1, encoder.getUnchangedFrames());
+	}
+
+	@Test
+	public void lostTarget_reportedOnceThenHeartbeats() throws Exception
+	{
+		TargetInformation first = target(100, 100, 140, 120, 1, 7);
+		TargetInformation second = target(300, 100, 340, 120, 2, 8);
+
+		stream(1, 0, targets(first, second));
+
+		assertEquals(TargetStreamEncoder.PACKET_TYPE_TARGET_DELTA, stream(2, 10 * MILLIS, targets(first)));
+		assertEquals(1, decoder.getTargets().size());
+		assertEquals(1, decoder.getLostTargets().size());
+		assertEquals(8, decoder.getLostTargets().get(0).trackId);
+		assertEquals(320, decoder.getLostTargets().get(0).boundingRectCenterX, 0);
+
+		//nothing new until the heartbeat, which doesn't report the loss again
+		assertEquals(0, stream(3, 50 * MILLIS, targets(first)));
+		assertEquals(TargetStreamEncoder.PACKET_TYPE_TARGET_DELTA, stream(4, 110 * MILLIS, targets(first)));
+		assertEquals(1, decoder.getTargets().size());
+		assertEquals(0, decoder.getLostTargets().size());
+		assertEquals(1, encoder.getHeartbeats());
+
+		//no targets at all is still a heartbeat
+		assertEquals(TargetStreamEncoder.PACKET_TYPE_TARGET_DELTA, stream(5, 120 * MILLIS, targets()));
+		assertEquals(0, decoder.getTargets().size());
+		assertEquals(0, stream(6, 130 * MILLIS, targets()));
+		assertEquals(TargetStreamEncoder.PACKET_TYPE_TARGET_DELTA, stream(7, 230 * MILLIS, targets()));
+	}
+
+	@Test
+	public void keyframes_forNewTargetsAndInterval() throws Exception
+	{
+		TargetInformation first = target(100, 100, 140, 120, 1, 7);
+
+		stream(1, 0, targets(first));
+
+		//a track the keyframe doesn't have
+		assertEquals(TargetPacket.PACKET_TYPE_TARGETS, stream(2, 10 * MILLIS, targets(first, target(300, 100, 340, 120, 2, 9))));
+		assertEquals(2, decoder.getTargets().size());
+
+		//a ranking change
+		assertEquals(TargetPacket.PACKET_TYPE_TARGETS, stream(3, 20 * MILLIS, targets(target(300, 100, 340, 120, 1, 9), target(100, 100, 140, 120, 2, 7))));
+
+		//the keyframe interval, even though nothing changed
+		assertEquals(0, stream(4, 30 * MILLIS, targets(target(300, 100, 340, 120, 1, 9), target(100, 100, 140, 120, 2, 7))));
+		assertEquals(TargetPacket.PACKET_TYPE_TARGETS, stream(5, 1020 * MILLIS, targets(target(300, 100, 340, 120, 1, 9), target(100, 100, 140, 120, 2, 7))));
+
+		//untracked targets are always sent whole
+		assertEquals(TargetPacket.PACKET_TYPE_TARGETS, stream(6, 1030 * MILLIS, targets(target(300, 100, 340, 120, 1, 0))));
+		assertEquals(TargetPacket.PACKET_TYPE_TARGETS, stream(7, 1040 * MILLIS, targets(target(300, 100, 340, 120, 1, 0))));
+	}
+
+	@Test
+	public void decoder_ignoresDeltasForMissedKeyframe() throws Exception
+	{
+		TargetInformation first = target(100, 100, 140, 120, 1, 7);
+
+		stream(1, 0, targets(first));
+
+		//the robot misses this keyframe
+		buffer.clear();
+		encoder.encode(buffer, 2, 0, 10 * MILLIS, targets(first, target(300, 100, 340, 120, 2, 9)));
+
+		buffer.clear();
+		assertTrue(encoder.encode(buffer, 3, 0, 20 * MILLIS, targets(first)) > 0);
+		buffer.flip();
+		assertFalse(decoder.decode(buffer));
+		assertEquals(1, decoder.getSequence());
+
+		//a delta older than the last packet is ignored too
+		encoder.requestKeyframe();
+		stream(10, 30 * MILLIS, targets(first));
+
+		ByteBuffer oldDelta = ByteBuffer.allocate(TargetStreamEncoder.MAX_PACKET_SIZE);
+		encoder.encode(oldDelta, 9, 0, 40 * MILLIS, targets(target(110, 100, 150, 120, 1, 7)));
+		oldDelta.flip();
+		assertFalse(decoder.decode(oldDelta));
+		assertEquals(120, decoder.getTargets().get(0).boundingRectCenterX, 0);
+	}
+}
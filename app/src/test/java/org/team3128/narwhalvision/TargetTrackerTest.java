@@ -0,0 +1,117 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds TargetTracker targets moving across the frame.
+ */
+public class TargetTrackerTest
+{
+	private final static long FRAME_INTERVAL_NANOS = 1000000000L / 30;
+
+	private static TargetInformation box(float centerX, float centerY, float size, int ranking)
+	{
+		return new TargetInformation(centerX - size / 2, centerY - size / 2, centerX + size / 2, centerY + size / 2, 640, 480, 60, 45, ranking);
+	}
+
+	@Test
+	public void trackIds_stayWithTargetsWhenRankingsSwap() throws Exception
+	{
+		TargetTracker tracker = new TargetTracker();
+		int leftId = 0, rightId = 0;
+
+		for(int frame = 0; frame < 30; ++frame)
+		{
+			TargetInformation left = box(100 + frame, 200, 40, 1);
+			TargetInformation right = box(500 - frame, 200, 40, 2);
+
+			//the two targets trade places in the ranking every frame
+			ArrayList<TargetInformation> detections = new ArrayList<>();
+			if(frame % 2 == 0)
+			{
+				detections.add(left);
+				detections.add(right);
+			}
+			else
+			{
+				detections.add(right);
+				detections.add(left);
+			}
+
+			tracker.update(detections, frame * FRAME_INTERVAL_NANOS);
+
+			if(frame == 0)
+			{
+				leftId = left.trackId;
+				rightId = right.trackId;
+
+				assertTrue(leftId != 0);
+				assertTrue(leftId != rightId);
+			}
+			else
+			{
+				assertEquals(leftId, left.trackId);
+				assertEquals(rightId, right.trackId);
+			}
+		}
+	}
+
+	@Test
+	public void velocity_convergesAndNoiseIsSmoothed() throws Exception
+	{
+		TargetTracker tracker = new TargetTracker();
+
+		//60 pixels per second to the right, with the detected center jumping back and forth by 3 pixels
+		double rawError = 0, smoothedError = 0;
+		TargetInformation target = null;
+
+		for(int frame = 0; frame < 90; ++frame)
+		{
+			float trueCenterX = 100 + frame * 2;
+			float noise = (frame % 2 == 0) ? 3 : -3;
+
+			target = box(trueCenterX + noise, 240, 40, 1);
+			ArrayList<TargetInformation> detections = new ArrayList<>();
+			detections.add(target);
+
+			tracker.update(detections, frame * FRAME_INTERVAL_NANOS);
+
+			if(frame >= 30)
+			{
+				rawError += Math.abs(noise);
+				smoothedError += Math.abs(target.boundingRectCenterX - trueCenterX);
+			}
+		}
+
+		assertEquals(60, target.velocityX, 10);
+		assertEquals(0, target.velocityY, 5);
+		assertTrue("smoothed error " + smoothedError + " should be less than raw error " + rawError, smoothedError < rawError / 2);
+	}
+
+	@Test
+	public void track_survivesShortDropout() throws Exception
+	{
+		TargetTracker tracker = new TargetTracker();
+		ArrayList<TargetInformation> detections = new ArrayList<>();
+
+		TargetInformation target = box(320, 240, 40, 1);
+		detections.add(target);
+		tracker.update(detections, 0);
+		int id = target.trackId;
+
+		//two frames with nothing found
+		detections.clear();
+		tracker.update(detections, FRAME_INTERVAL_NANOS);
+		tracker.update(detections, 2 * FRAME_INTERVAL_NANOS);
+
+		target = box(322, 240, 40, 1);
+		detections.add(target);
+		tracker.update(detections, 3 * FRAME_INTERVAL_NANOS);
+
+		assertEquals(id, target.trackId);
+	}
+}
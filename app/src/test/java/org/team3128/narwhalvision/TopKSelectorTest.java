@@ -0,0 +1,79 @@
+package org.team3128.narwhalvision;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks TopKSelector against sorting everything.
+ */
+public class TopKSelectorTest
+{
+	@Test
+	public void select_matchesFullSort() throws Exception
+	{
+		Random random = new Random(3128);
+		TopKSelector selector = new TopKSelector(1);
+
+		for(int trial = 0; trial < 100; ++trial)
+		{
+			int numItems = random.nextInt(200);
+			int k = random.nextInt(10);
+
+			double[] scores = new double[numItems];
+			selector.reset(k);
+
+			for(int index = 0; index < numItems; ++index)
+			{
+				scores[index] = random.nextDouble() * 10;
+				selector.offer(index, scores[index]);
+			}
+			selector.finish();
+
+			double[] sorted = scores.clone();
+			Arrays.sort(sorted);
+
+			assertEquals(Math.min(k, numItems), selector.size());
+
+			for(int rank = 0; rank < selector.size(); ++rank)
+			{
+				assertEquals(sorted[numItems - 1 - rank], selector.getScore(rank), 0);
+				assertEquals(scores[selector.getIndex(rank)], selector.getScore(rank), 0);
+			}
+		}
+	}
+
+	@Test
+	public void select_keepsSmallDifferences() throws Exception
+	{
+		//casting the difference of these to int would call them equal
+		TopKSelector selector = new TopKSelector(2);
+		selector.reset(1);
+		selector.offer(0, 0.25);
+		selector.offer(1, 0.75);
+		selector.offer(2, Double.NaN);
+		selector.offer(3, 0.5);
+		selector.finish();
+
+		assertEquals(1, selector.size());
+		assertEquals(1, selector.getIndex(0));
+	}
+
+	@Test
+	public void ties_goToLowerIndex() throws Exception
+	{
+		TopKSelector selector = new TopKSelector(2);
+		selector.reset(2);
+		selector.offer(0, 1);
+		selector.offer(1, 2);
+		selector.offer(2, 2);
+		selector.offer(3, 2);
+		selector.finish();
+
+		assertEquals(1, selector.getIndex(0));
+		assertEquals(2, selector.getIndex(1));
+	}
+}
@@ -0,0 +1,84 @@
+package org.team3128.narwhalvision.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.team3128.narwhalvision.BlobLabeler;
+import org.team3128.narwhalvision.HSVRangeTable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to label the blobs in one thresholded frame with BlobLabeler.
+ *
+ * findContours() needs the native library, so it can't be run here.  To compare the two on real frames, run the replay tool
+ * on a recording with and without --blobs runs and look at the FIND_CONTOURS time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlobBenchmark
+{
+	private final static int NUM_FRAMES = 8;
+
+	@Param({"640x480", "1280x720"})
+	public String resolution;
+
+	// more targets means more runs, and the background noise adds lots of tiny blobs
+	@Param({"3", "30"})
+	public int targetsPerFrame;
+
+	private byte[][] masks;
+	private int frameIndex;
+
+	private int width, height;
+
+	private BlobLabeler labeler;
+
+	@Setup
+	public void setUp()
+	{
+		String[] dimensions = resolution.split("x");
+		width = Integer.parseInt(dimensions[0]);
+		height = Integer.parseInt(dimensions[1]);
+
+		SyntheticFrames frames = new SyntheticFrames(width, height, NUM_FRAMES, targetsPerFrame, 3128);
+		HSVRangeTable table = new HSVRangeTable(HSVRangeTable.ColorFormat.RGB, SyntheticFrames.LOW_H, SyntheticFrames.LOW_S, SyntheticFrames.LOW_V, SyntheticFrames.HIGH_H, SyntheticFrames.HIGH_S, SyntheticFrames.HIGH_V);
+
+		masks = new byte[NUM_FRAMES][width * height];
+		for(int frame = 0; frame < NUM_FRAMES; ++frame)
+		{
+			table.threshold(frames.rgbaFrames[frame], 4, masks[frame], width * height);
+		}
+
+		labeler = new BlobLabeler();
+	}
+
+	@Benchmark
+	public int label()
+	{
+		frameIndex = (frameIndex + 1) % NUM_FRAMES;
+		return labeler.label(masks[frameIndex], width, height, 0, 0, 0);
+	}
+
+	/**
+	 * Same, but with a minimum area of 1% of the frame, so the noise is dropped before it is returned.
+	 */
+	@Benchmark
+	public int labelWithMinArea()
+	{
+		frameIndex = (frameIndex + 1) % NUM_FRAMES;
+		return labeler.label(masks[frameIndex], width, height, 0, 0, width * height / 100.0);
+	}
+}
@@ -0,0 +1,103 @@
+package org.team3128.narwhalvision.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.team3128.narwhalvision.HSVRangeTable;
+import org.team3128.narwhalvision.ParallelBlobLabeler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to threshold a frame and label its blobs with ParallelBlobLabeler, to see how it scales with the number of threads.
+ *
+ * The 1 thread case runs everything on the benchmark thread, so it's the baseline the others should be compared to.
+ * Results above the number of cores on the machine running the benchmark don't mean much.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParallelBlobBenchmark
+{
+	private final static int NUM_FRAMES = 8;
+
+	@Param({"640x480", "1280x720"})
+	public String resolution;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private byte[][] rgbaFrames;
+
+	// the NV21 frames split into planes, like ParallelBlobStage does
+	private byte[][] yPlanes;
+	private byte[][] vuPlanes;
+
+	private int frameIndex;
+
+	private int width, height;
+
+	private HSVRangeTable rgbTable, yuvTable;
+
+	private ParallelBlobLabeler labeler;
+
+	@Setup
+	public void setUp()
+	{
+		String[] dimensions = resolution.split("x");
+		width = Integer.parseInt(dimensions[0]);
+		height = Integer.parseInt(dimensions[1]);
+
+		SyntheticFrames frames = new SyntheticFrames(width, height, NUM_FRAMES, 30, 3128);
+		rgbaFrames = frames.rgbaFrames;
+
+		yPlanes = new byte[NUM_FRAMES][width * height];
+		vuPlanes = new byte[NUM_FRAMES][width * height / 2];
+		for(int frame = 0; frame < NUM_FRAMES; ++frame)
+		{
+			System.arraycopy(frames.nv21Frames[frame], 0, yPlanes[frame], 0, width * height);
+			System.arraycopy(frames.nv21Frames[frame], width * height, vuPlanes[frame], 0, width * height / 2);
+		}
+
+		rgbTable = new HSVRangeTable(HSVRangeTable.ColorFormat.RGB, SyntheticFrames.LOW_H, SyntheticFrames.LOW_S, SyntheticFrames.LOW_V, SyntheticFrames.HIGH_H, SyntheticFrames.HIGH_S, SyntheticFrames.HIGH_V);
+		yuvTable = new HSVRangeTable(HSVRangeTable.ColorFormat.YUV, SyntheticFrames.LOW_H, SyntheticFrames.LOW_S, SyntheticFrames.LOW_V, SyntheticFrames.HIGH_H, SyntheticFrames.HIGH_S, SyntheticFrames.HIGH_V);
+
+		labeler = new ParallelBlobLabeler(threads);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		labeler.shutdown();
+	}
+
+	@Benchmark
+	public int thresholdAndLabelRGBA()
+	{
+		frameIndex = (frameIndex + 1) % NUM_FRAMES;
+
+		labeler.threshold(rgbTable, rgbaFrames[frameIndex], 4, width, height);
+		return labeler.label(0, 0, 0);
+	}
+
+	@Benchmark
+	public int thresholdAndLabelNV21()
+	{
+		frameIndex = (frameIndex + 1) % NUM_FRAMES;
+
+		labeler.thresholdNV21(yuvTable, yPlanes[frameIndex], vuPlanes[frameIndex], 0, width, 0, 0, width, height, 1);
+		return labeler.label(0, 0, 0);
+	}
+}
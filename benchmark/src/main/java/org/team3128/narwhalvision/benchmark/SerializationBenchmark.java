@@ -0,0 +1,103 @@
+package org.team3128.narwhalvision.benchmark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.team3128.narwhalvision.TargetInformation;
+import org.team3128.narwhalvision.TargetPacket;
+import org.team3128.narwhalvision.TargetPacketDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a list of targets into bytes: the old Kryo serialization against TargetPacket, plus decoding on the robot side.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SerializationBenchmark
+{
+	// what the app used to use for every packet
+	private final static int KRYO_BUFFER_SIZE = 1024;
+
+	@Param({"1", "4", "16"})
+	public int numTargets;
+
+	private ArrayList<TargetInformation> targets;
+
+	private Kryo kryo;
+	private ByteBufferOutput kryoOutput;
+
+	private ByteBuffer packetBuffer;
+	private ByteBuffer encodedPacket;
+	private TargetPacketDecoder decoder;
+
+	private int sequence;
+
+	@Setup
+	public void setUp()
+	{
+		targets = new ArrayList<>();
+		for(int index = 0; index < numTargets; ++index)
+		{
+			targets.add(new TargetInformation(10 * index, 20, 10 * index + 50, 45, 640, 480, 60, 45, index + 1));
+		}
+
+		//same registrations as the app
+		kryo = new Kryo();
+		kryo.register(TargetInformation.class, 0);
+		kryoOutput = new ByteBufferOutput(ByteBuffer.allocate(KRYO_BUFFER_SIZE));
+
+		packetBuffer = ByteBuffer.allocateDirect(TargetPacket.MAX_PACKET_SIZE);
+
+		encodedPacket = ByteBuffer.allocate(TargetPacket.MAX_PACKET_SIZE);
+		TargetPacket.encode(encodedPacket, 1, 0, targets);
+		encodedPacket.flip();
+
+		decoder = new TargetPacketDecoder();
+	}
+
+	@Benchmark
+	public int kryoSerialize()
+	{
+		kryoOutput.setPosition(0);
+
+		for(TargetInformation target : targets)
+		{
+			kryo.writeObject(kryoOutput, target);
+		}
+
+		kryoOutput.flush();
+		return kryoOutput.position();
+	}
+
+	@Benchmark
+	public int packetEncode()
+	{
+		packetBuffer.clear();
+		return TargetPacket.encode(packetBuffer, ++sequence, System.nanoTime(), targets);
+	}
+
+	@Benchmark
+	public boolean packetDecode()
+	{
+		encodedPacket.rewind();
+		return decoder.decode(encodedPacket);
+	}
+}
@@ -0,0 +1,105 @@
+package org.team3128.narwhalvision.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates repeatable fake camera frames: a noisy, dim background with a few bright green rectangles (the "targets") on it.
+ *
+ * Frames are made in both RGBA and NV21, which is what the camera really delivers.
+ */
+public class SyntheticFrames
+{
+	// HSV range that the green targets fall inside, and most of the background doesn't
+	public final static int LOW_H = 50, LOW_S = 100, LOW_V = 100;
+	public final static int HIGH_H = 70, HIGH_S = 255, HIGH_V = 255;
+
+	public final int width, height;
+
+	public final byte[][] rgbaFrames;
+	public final byte[][] nv21Frames;
+
+	/**
+	 * @param seed the same seed always gives the same frames
+	 */
+	public SyntheticFrames(int width, int height, int numFrames, int targetsPerFrame, long seed)
+	{
+		this.width = width;
+		this.height = height;
+
+		rgbaFrames = new byte[numFrames][];
+		nv21Frames = new byte[numFrames][];
+
+		Random random = new Random(seed);
+
+		for(int frame = 0; frame < numFrames; ++frame)
+		{
+			byte[] rgba = new byte[width * height * 4];
+
+			//background noise, mostly too dark to pass the threshold
+			for(int pixel = 0; pixel < width * height; ++pixel)
+			{
+				rgba[pixel * 4] = (byte) random.nextInt(120);
+				rgba[pixel * 4 + 1] = (byte) random.nextInt(120);
+				rgba[pixel * 4 + 2] = (byte) random.nextInt(120);
+				rgba[pixel * 4 + 3] = (byte) 255;
+			}
+
+			for(int target = 0; target < targetsPerFrame; ++target)
+			{
+				int targetWidth = width / 20 + random.nextInt(width / 8);
+				int targetHeight = height / 20 + random.nextInt(height / 8);
+				int left = random.nextInt(width - targetWidth);
+				int top = random.nextInt(height - targetHeight);
+
+				for(int y = top; y < top + targetHeight; ++y)
+				{
+					for(int x = left; x < left + targetWidth; ++x)
+					{
+						int pixel = y * width + x;
+						rgba[pixel * 4] = (byte) random.nextInt(40);
+						rgba[pixel * 4 + 1] = (byte) (200 + random.nextInt(56));
+						rgba[pixel * 4 + 2] = (byte) random.nextInt(40);
+					}
+				}
+			}
+
+			rgbaFrames[frame] = rgba;
+			nv21Frames[frame] = toNV21(rgba, width, height);
+		}
+	}
+
+	/**
+	 * Convert an RGBA image to NV21 with the usual BT.601 video range formulas.
+	 * Each VU pair is taken from the top left pixel of its 2x2 block.
+	 */
+	private static byte[] toNV21(byte[] rgba, int width, int height)
+	{
+		byte[] nv21 = new byte[width * height * 3 / 2];
+		int vuStart = width * height;
+
+		for(int y = 0; y < height; ++y)
+		{
+			for(int x = 0; x < width; ++x)
+			{
+				int pixel = y * width + x;
+				int red = rgba[pixel * 4] & 0xFF, green = rgba[pixel * 4 + 1] & 0xFF, blue = rgba[pixel * 4 + 2] & 0xFF;
+
+				nv21[pixel] = (byte) clamp(((66 * red + 129 * green + 25 * blue + 128) >> 8) + 16);
+
+				if((x & 1) == 0 && (y & 1) == 0)
+				{
+					int vuIndex = vuStart + (y / 2) * width + x;
+					nv21[vuIndex] = (byte) clamp(((112 * red - 94 * green - 18 * blue + 128) >> 8) + 128);
+					nv21[vuIndex + 1] = (byte) clamp(((-38 * red - 74 * green + 112 * blue + 128) >> 8) + 128);
+				}
+			}
+		}
+
+		return nv21;
+	}
+
+	private static int clamp(int value)
+	{
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+}
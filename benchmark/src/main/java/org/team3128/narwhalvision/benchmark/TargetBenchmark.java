@@ -0,0 +1,150 @@
+package org.team3128.narwhalvision.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opencv.core.Rect;
+import org.team3128.narwhalvision.TargetInformation;
+import org.team3128.narwhalvision.TargetScorer;
+import org.team3128.narwhalvision.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-contour work the pipeline does after findContours(): scoring, selecting the best, and building TargetInformation,
+ * for a frame with the given number of contours.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TargetBenchmark
+{
+	private final static int WIDTH = 640, HEIGHT = 480;
+
+	// settings used by the scoring
+	private final static double TARGET_ASPECT_RATIO = 2;
+	private final static int TARGET_SOLIDITY = 50;
+	private final static int MIN_AREA = 1;
+	private final static int NUM_TARGETS = 3;
+
+	@Param({"4", "32", "256"})
+	public int numContours;
+
+	private Rect[] boundingBoxes;
+	private double[] contourAreas;
+
+	private ArrayList<TargetInformation> targets;
+
+	private TopKSelector selector;
+
+	/**
+	 * The pipeline's TargetData, minus the OpenCV parts.
+	 */
+	static class ScoredContour
+	{
+		Rect boundingBox;
+		double score;
+	}
+
+	@Setup
+	public void setUp()
+	{
+		Random random = new Random(3128);
+
+		boundingBoxes = new Rect[numContours];
+		contourAreas = new double[numContours];
+
+		for(int index = 0; index < numContours; ++index)
+		{
+			int width = 4 + random.nextInt(WIDTH / 4), height = 4 + random.nextInt(HEIGHT / 4);
+			boundingBoxes[index] = new Rect(random.nextInt(WIDTH - width), random.nextInt(HEIGHT - height), width, height);
+
+			//contours fill part of their bounding box
+			contourAreas[index] = boundingBoxes[index].area() * (0.2 + 0.8 * random.nextDouble());
+		}
+
+		selector = new TopKSelector(NUM_TARGETS);
+
+		targets = new ArrayList<>();
+		for(int index = 0; index < numContours; ++index)
+		{
+			targets.add(new TargetInformation(boundingBoxes[index], WIDTH, HEIGHT, 60, 45, index + 1));
+		}
+	}
+
+	/**
+	 * Score and filter every contour, then pick the best few like the pipeline does.
+	 */
+	@Benchmark
+	public TopKSelector scoreAndSelect()
+	{
+		ArrayList<ScoredContour> candidates = new ArrayList<>();
+
+		for(int index = 0; index < numContours; ++index)
+		{
+			Rect boundingBox = boundingBoxes[index];
+			double boundingBoxArea = boundingBox.area();
+
+			if(!TargetScorer.isLargeEnough(boundingBoxArea, WIDTH, HEIGHT, MIN_AREA))
+			{
+				continue;
+			}
+
+			double aspect = ((double)boundingBox.width) / ((double)boundingBox.height);
+			double solidity = TargetScorer.getSolidity(contourAreas[index], boundingBoxArea);
+			double aspectQuotient = TargetScorer.getAspectQuotient(aspect, TARGET_ASPECT_RATIO);
+
+			ScoredContour candidate = new ScoredContour();
+			candidate.boundingBox = boundingBox;
+			candidate.score = TargetScorer.getScore(contourAreas[index], solidity, aspectQuotient, TARGET_SOLIDITY);
+			candidates.add(candidate);
+		}
+
+		selector.reset(NUM_TARGETS);
+		for(int index = 0; index < candidates.size(); ++index)
+		{
+			selector.offer(index, candidates.get(index).score);
+		}
+		selector.finish();
+
+		return selector;
+	}
+
+	@Benchmark
+	public ArrayList<TargetInformation> constructTargetInformation()
+	{
+		ArrayList<TargetInformation> result = new ArrayList<>(numContours);
+
+		for(int index = 0; index < numContours; ++index)
+		{
+			result.add(new TargetInformation(boundingBoxes[index], WIDTH, HEIGHT, 60, 45, index + 1));
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	public void angleMath(Blackhole blackhole)
+	{
+		for(TargetInformation target : targets)
+		{
+			blackhole.consume(target.getHorizontalAngle());
+			blackhole.consume(target.getVerticalAngle());
+			blackhole.consume(target.getTargetDistance(200, 30));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.team3128.narwhalvision.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.team3128.narwhalvision.HSVRangeTable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to threshold one frame with the lookup table, for both frame formats and a few processing scales.
+ * Each call thresholds the next frame of the corpus, so the results don't depend on one lucky frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ThresholdBenchmark
+{
+	private final static int NUM_FRAMES = 8;
+
+	@Param({"640x480", "1280x720"})
+	public String resolution;
+
+	private SyntheticFrames frames;
+
+	// the NV21 frames split into planes, like NV21MaskStage does
+	private byte[][] yPlanes;
+	private byte[][] vuPlanes;
+
+	private HSVRangeTable rgbTable;
+	private HSVRangeTable yuvTable;
+
+	private byte[] mask;
+	private int frameIndex;
+
+	private int width, height;
+
+	@Setup
+	public void setUp()
+	{
+		String[] dimensions = resolution.split("x");
+		width = Integer.parseInt(dimensions[0]);
+		height = Integer.parseInt(dimensions[1]);
+
+		frames = new SyntheticFrames(width, height, NUM_FRAMES, 3, 3128);
+
+		yPlanes = new byte[NUM_FRAMES][width * height];
+		vuPlanes = new byte[NUM_FRAMES][width * height / 2];
+		for(int frame = 0; frame < NUM_FRAMES; ++frame)
+		{
+			System.arraycopy(frames.nv21Frames[frame], 0, yPlanes[frame], 0, width * height);
+			System.arraycopy(frames.nv21Frames[frame], width * height, vuPlanes[frame], 0, width * height / 2);
+		}
+
+		rgbTable = new HSVRangeTable(HSVRangeTable.ColorFormat.RGB, SyntheticFrames.LOW_H, SyntheticFrames.LOW_S, SyntheticFrames.LOW_V, SyntheticFrames.HIGH_H, SyntheticFrames.HIGH_S, SyntheticFrames.HIGH_V);
+		yuvTable = new HSVRangeTable(HSVRangeTable.ColorFormat.YUV, SyntheticFrames.LOW_H, SyntheticFrames.LOW_S, SyntheticFrames.LOW_V, SyntheticFrames.HIGH_H, SyntheticFrames.HIGH_S, SyntheticFrames.HIGH_V);
+
+		mask = new byte[width * height];
+	}
+
+	private int nextFrame()
+	{
+		frameIndex = (frameIndex + 1) % NUM_FRAMES;
+		return frameIndex;
+	}
+
+	private byte[] thresholdNV21(int scale)
+	{
+		int frame = nextFrame();
+		yuvTable.thresholdNV21(yPlanes[frame], vuPlanes[frame], width, 0, 0, width / scale, height / scale, scale, mask);
+		return mask;
+	}
+
+	@Benchmark
+	public byte[] thresholdRGBA()
+	{
+		rgbTable.threshold(frames.rgbaFrames[nextFrame()], 4, mask, width * height);
+		return mask;
+	}
+
+	@Benchmark
+	public byte[] thresholdNV21()
+	{
+		return thresholdNV21(1);
+	}
+
+	@Benchmark
+	public byte[] thresholdNV21HalfScale()
+	{
+		return thresholdNV21(2);
+	}
+
+	@Benchmark
+	public byte[] thresholdNV21QuarterScale()
+	{
+		return thresholdNV21(4);
+	}
+}
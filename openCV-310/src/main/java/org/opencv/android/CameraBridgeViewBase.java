@@ -187,6 +187,17 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
          * This method returns single channel gray scale Mat with frame
          */
         public Mat gray();
+
+        /**
+         * This method returns the raw NV21 (YUV420sp) frame from the camera, without any conversion.
+         * It is a single channel Mat with height * 3/2 rows: the Y plane followed by interleaved V and U.
+         */
+        public Mat yuv();
+
+        /**
+         * This method returns when the camera delivered the frame, from System.nanoTime()
+         */
+        public long timestampNanos();
     };
 
     public void surfaceChanged(SurfaceHolder arg0, int arg1, int arg2, int arg3) {
@@ -300,9 +300,11 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
+        long timestamp = System.nanoTime();
         Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
         synchronized (this) {
             mFrameChain[mChainIdx].put(0, 0, frame);
+            mCameraFrame[mChainIdx].mTimestampNanos = timestamp;
             mCameraFrameReady = true;
             this.notify();
         }
@@ -322,6 +324,16 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             return mRgba;
         }
 
+        @Override
+        public Mat yuv() {
+            return mYuvFrameData;
+        }
+
+        @Override
+        public long timestampNanos() {
+            return mTimestampNanos;
+        }
+
         public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
             super();
             mWidth = width;
@@ -335,6 +347,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         }
 
         private Mat mYuvFrameData;
+        private long mTimestampNanos;
         private Mat mRgba;
         private int mWidth;
         private int mHeight;
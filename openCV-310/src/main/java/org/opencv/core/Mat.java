@@ -912,6 +912,25 @@ public class Mat {
         super.finalize();
     }
 
+    // Access to native Mats that have no Java object, like the contours filled in by
+    // Imgproc.findContours(Mat, Mat, Mat, int, int, Point).  Reading them this way avoids creating
+    // a Java Mat per contour, which can only be freed by the finalizer.
+
+    // rows() of a native Mat
+    public static int nativeRows(long addr) {
+        return n_rows(addr);
+    }
+
+    // get(0, 0, data) of a native CV_32S Mat, reading only the first count values
+    public static int nativeGetInts(long addr, int[] data, int count) {
+        return nGetI(addr, 0, 0, count, data);
+    }
+
+    // frees a native Mat.  Never pass the nativeObj of a Java Mat, or its finalizer will free it again.
+    public static void nativeDelete(long addr) {
+        n_delete(addr);
+    }
+
     // javadoc:Mat::toString()
     @Override
     public String toString() {
@@ -1015,6 +1034,21 @@ public class Mat {
         throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    // get(row, col, data), but only reading the first count values, so that data can be a reused buffer bigger than the Mat
+    public int get(int row, int col, byte[] data, int count) {
+        int t = type();
+        if (data == null || count < 0 || count > data.length || count % CvType.channels(t) != 0)
+            throw new java.lang.UnsupportedOperationException(
+                    "Provided data element number (" +
+                            count +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and fit in the provided array");
+        if (CvType.depth(t) == CvType.CV_8U || CvType.depth(t) == CvType.CV_8S) {
+            return nGetB(nativeObj, row, col, count, data);
+        }
+        throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
     // javadoc:Mat::get(row,col,data)
     public int get(int row, int col, short[] data) {
         int t = type();
@@ -2104,6 +2104,16 @@ public class Imgproc {
         return;
     }
 
+    // findContours(image, contours, hierarchy, mode, method, offset), without converting the contours to Java objects.
+    // contours_mat is left as the native vector<Mat> encoding: a CV_32SC2 column holding the address of one native
+    // CV_32SC2 Mat of points per contour (high 32 bits, then low 32 bits).  Read them with Mat.nativeRows() and
+    // Mat.nativeGetInts(), and free every one with Mat.nativeDelete().
+    public static void findContours(Mat image, Mat contours_mat, Mat hierarchy, int mode, int method, Point offset)
+    {
+        findContours_0(image.nativeObj, contours_mat.nativeObj, hierarchy.nativeObj, mode, method, offset.x, offset.y);
+        return;
+    }
+
     //javadoc: findContours(image, contours, hierarchy, mode, method)
     public static void findContours(Mat image, List<MatOfPoint> contours, Mat hierarchy, int mode, int method)
     {
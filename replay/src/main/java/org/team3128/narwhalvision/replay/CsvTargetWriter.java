@@ -0,0 +1,68 @@
+package org.team3128.narwhalvision.replay;
+
+import org.team3128.narwhalvision.TargetInformation;
+import org.team3128.narwhalvision.TowerTrackerPipeline;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes one CSV row per target found, with the frame's timings on every row.
+ *
+ * Frames with no targets get a single row with a ranking of 0 and empty target columns, so every frame shows up in the output.
+ */
+public class CsvTargetWriter implements ReplayEngine.FrameListener
+{
+	private final PrintWriter output;
+
+	public CsvTargetWriter(PrintWriter output)
+	{
+		this.output = output;
+
+		output.print("frame,name,captureTimeNanos,slot,ranking,left,top,right,bottom,area,horizontalAngle,verticalAngle,trackId,velocityX,velocityY");
+		for(TowerTrackerPipeline.Stage stage : TowerTrackerPipeline.Stage.values())
+		{
+			output.print(',');
+			output.print(stage.name().toLowerCase(Locale.US));
+			output.print("Ms");
+		}
+		output.println();
+	}
+
+	@Override
+	public void onFrame(int frameIndex, String frameName, long captureTimeNanos, List<TargetInformation> targets, TowerTrackerPipeline pipeline)
+	{
+		String timings = formatTimings(pipeline);
+
+		if(targets.isEmpty())
+		{
+			output.printf(Locale.US, "%d,%s,%d,,0,,,,,,,,,,%s%n", frameIndex, frameName, captureTimeNanos, timings);
+			return;
+		}
+
+		for(TargetInformation target : targets)
+		{
+			output.printf(Locale.US, "%d,%s,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.3f,%.3f,%d,%.1f,%.1f%s%n", frameIndex, frameName, captureTimeNanos, target.slot, target.targetRanking,
+					target.boundingRectLeft, target.boundingRectTop, target.boundingRectRight, target.boundingRectBottom, target.area,
+					target.getHorizontalAngle(), target.getVerticalAngle(), target.trackId, target.velocityX, target.velocityY, timings);
+		}
+	}
+
+	private static String formatTimings(TowerTrackerPipeline pipeline)
+	{
+		StringBuilder timings = new StringBuilder();
+
+		for(TowerTrackerPipeline.Stage stage : TowerTrackerPipeline.Stage.values())
+		{
+			timings.append(String.format(Locale.US, ",%.3f", pipeline.getLastStageTime(stage) / 1e6));
+		}
+
+		return timings.toString();
+	}
+
+	public void close()
+	{
+		output.close();
+	}
+}
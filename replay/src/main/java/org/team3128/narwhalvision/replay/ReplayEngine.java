@@ -0,0 +1,229 @@
+package org.team3128.narwhalvision.replay;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.team3128.narwhalvision.BlobExtractor;
+import org.team3128.narwhalvision.FrameRecording;
+import org.team3128.narwhalvision.FrameRecordingReader;
+import org.team3128.narwhalvision.PipelineResult;
+import org.team3128.narwhalvision.TargetInformation;
+import org.team3128.narwhalvision.TowerTrackerPipeline;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams recorded frames through a TowerTrackerPipeline as fast as it can process them.
+ *
+ * Frames come from either a directory of image files, processed in order of file name, or a FrameRecording file.
+ * Settings are read from the Settings class when the pipeline is created, the same as on the phone.
+ */
+public class ReplayEngine
+{
+	/**
+	 * Gets told what the pipeline found in each frame.
+	 */
+	public interface FrameListener
+	{
+		/**
+		 * Called after each frame is processed, on the replay thread.
+		 *
+		 * @param frameName the image's file name, or the sequence number of the recorded frame
+		 * @param targets what the pipeline found, best first.  Only valid until the next frame.
+		 * @param pipeline use getLastStageTime() to get how long this frame took
+		 */
+		void onFrame(int frameIndex, String frameName, long captureTimeNanos, List<TargetInformation> targets, TowerTrackerPipeline pipeline);
+	}
+
+	private final static String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp"};
+
+	// image files have no timestamps, so they are treated as a 30 fps video for target tracking
+	private final static long IMAGE_FRAME_INTERVAL_NANOS = 1000000000L / 30;
+
+	// used for image files, which don't store it
+	private final float horizontalFOV, verticalFOV;
+
+	private final FrameListener listener;
+
+	// finds blobs instead of the pipeline's default, or null
+	private BlobExtractor blobExtractor;
+
+	private int framesProcessed;
+	private long processingTimeNanos;
+
+	// how long all frames spent in each stage, indexed by TowerTrackerPipeline.Stage.ordinal()
+	private final long[] stageTimeNanos = new long[TowerTrackerPipeline.Stage.values().length];
+
+	public ReplayEngine(float horizontalFOV, float verticalFOV, FrameListener listener)
+	{
+		this.horizontalFOV = horizontalFOV;
+		this.verticalFOV = verticalFOV;
+		this.listener = listener;
+	}
+
+	/**
+	 * Find blobs with something other than the pipeline's default, to compare them.
+	 */
+	public void setBlobExtractor(BlobExtractor blobExtractor)
+	{
+		this.blobExtractor = blobExtractor;
+	}
+
+	private TowerTrackerPipeline createPipeline(float horizontalFOV, float verticalFOV)
+	{
+		TowerTrackerPipeline pipeline = new TowerTrackerPipeline(horizontalFOV, verticalFOV);
+
+		if(blobExtractor != null)
+		{
+			pipeline.setBlobExtractor(blobExtractor);
+		}
+
+		return pipeline;
+	}
+
+	/**
+	 * Replay a recording file, or every image in a directory.
+	 */
+	public void replay(File source) throws IOException
+	{
+		if(source.isDirectory())
+		{
+			replayImages(source);
+		}
+		else
+		{
+			replayRecording(source);
+		}
+	}
+
+	public void replayImages(File directory) throws IOException
+	{
+		File[] imageFiles = directory.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				String lowerName = name.toLowerCase();
+				for(String extension : IMAGE_EXTENSIONS)
+				{
+					if(lowerName.endsWith(extension))
+					{
+						return true;
+					}
+				}
+				return false;
+			}
+		});
+
+		if(imageFiles == null || imageFiles.length == 0)
+		{
+			throw new IOException("No images found in " + directory);
+		}
+
+		Arrays.sort(imageFiles);
+
+		TowerTrackerPipeline pipeline = createPipeline(horizontalFOV, verticalFOV);
+		Mat rgbaImage = new Mat();
+
+		for(int index = 0; index < imageFiles.length; ++index)
+		{
+			Mat bgrImage = Imgcodecs.imread(imageFiles[index].getAbsolutePath());
+			if(bgrImage.empty())
+			{
+				throw new IOException("Could not read image " + imageFiles[index]);
+			}
+
+			//the pipeline expects frames from the camera, which are RGBA
+			Imgproc.cvtColor(bgrImage, rgbaImage, Imgproc.COLOR_BGR2RGBA);
+			bgrImage.release();
+
+			long captureTimeNanos = index * IMAGE_FRAME_INTERVAL_NANOS;
+
+			PipelineResult result = pipeline.processImage(rgbaImage, captureTimeNanos, false);
+			onFrameProcessed(index, imageFiles[index].getName(), captureTimeNanos, result, pipeline);
+		}
+
+		rgbaImage.release();
+		pipeline.release();
+	}
+
+	public void replayRecording(File recordingFile) throws IOException
+	{
+		FrameRecordingReader reader = new FrameRecordingReader(recordingFile);
+
+		try
+		{
+			int width = reader.getWidth(), height = reader.getHeight();
+			boolean isNV21 = reader.getFormat() == FrameRecording.FORMAT_NV21;
+
+			TowerTrackerPipeline pipeline = createPipeline(reader.getHorizontalFOV(), reader.getVerticalFOV());
+
+			byte[] frameData = new byte[reader.getFrameSize()];
+			Mat frame = isNV21 ? new Mat(height * 3 / 2, width, CvType.CV_8UC1) : new Mat(height, width, CvType.CV_8UC4);
+
+			for(int index = 0; index < reader.getFrameCount(); ++index)
+			{
+				reader.readFrame(index, frameData);
+				frame.put(0, 0, frameData);
+
+				long captureTimeNanos = reader.getCaptureTimeNanos(index);
+
+				PipelineResult result = isNV21 ? pipeline.processNV21Image(frame, width, height, captureTimeNanos, false) : pipeline.processImage(frame, captureTimeNanos, false);
+				onFrameProcessed(index, Integer.toString(reader.getSequence(index)), captureTimeNanos, result, pipeline);
+			}
+
+			frame.release();
+			pipeline.release();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private void onFrameProcessed(int frameIndex, String frameName, long captureTimeNanos, PipelineResult result, TowerTrackerPipeline pipeline)
+	{
+		++framesProcessed;
+		processingTimeNanos += pipeline.getLastStageTime(TowerTrackerPipeline.Stage.TOTAL);
+
+		for(TowerTrackerPipeline.Stage stage : TowerTrackerPipeline.Stage.values())
+		{
+			stageTimeNanos[stage.ordinal()] += pipeline.getLastStageTime(stage);
+		}
+
+		List<TargetInformation> targets = result.targets;
+		if(targets == null)
+		{
+			targets = Collections.emptyList();
+		}
+
+		listener.onFrame(frameIndex, frameName, captureTimeNanos, targets, pipeline);
+	}
+
+	public int getFramesProcessed()
+	{
+		return framesProcessed;
+	}
+
+	/**
+	 * @return the total time spent inside the pipeline, not counting reading frames
+	 */
+	public long getProcessingTimeNanos()
+	{
+		return processingTimeNanos;
+	}
+
+	/**
+	 * @return the total time all frames spent in one stage of the pipeline
+	 */
+	public long getStageTimeNanos(TowerTrackerPipeline.Stage stage)
+	{
+		return stageTimeNanos[stage.ordinal()];
+	}
+}
@@ -0,0 +1,237 @@
+package org.team3128.narwhalvision.replay;
+
+import org.opencv.core.Core;
+import org.team3128.narwhalvision.BlobExtractor;
+import org.team3128.narwhalvision.ConnectedComponentsBlobExtractor;
+import org.team3128.narwhalvision.RunLengthBlobExtractor;
+import org.team3128.narwhalvision.Settings;
+import org.team3128.narwhalvision.SlotSettings;
+import org.team3128.narwhalvision.TowerTrackerPipeline;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Command line entry point for replaying frames through the pipeline.
+ *
+ * Targets are written as CSV to standard output or the --output file, and a throughput summary is printed to standard error.
+ */
+public class ReplayMain
+{
+	private final static String USAGE =
+			"Usage: replay [options] <image directory or recording file>\n" +
+			"  --settings <file>   .properties file of settings, named like the fields of the Settings class (lowH=50, roiTracking=false...)\n" +
+			"  --extra-slot <file> also run another slot's settings on every frame.  Can be given more than once.\n" +
+			"  --scale <n>         process frames at 1/n resolution, overriding the settings file\n" +
+			"  --threads <n>       threshold and find blobs on n threads, overriding the settings file\n" +
+			"  --fov <h> <v>       camera field of view in degrees, for image directories (default 67 67)\n" +
+			"  --output <file>     write the CSV here instead of standard output\n" +
+			"  --blobs <method>    how blobs are found in the mask: contours (default), runs or components";
+
+	public static void main(String[] args) throws IOException
+	{
+		File source = null;
+		File settingsFile = null;
+		ArrayList<File> extraSlotFiles = new ArrayList<>();
+		File outputFile = null;
+		int scale = 0;
+		int threads = 0;
+		BlobExtractor blobExtractor = null;
+		float horizontalFOV = 67, verticalFOV = 67;
+
+		try
+		{
+			for(int index = 0; index < args.length; ++index)
+			{
+				switch(args[index])
+				{
+					case "--settings":
+						settingsFile = new File(args[++index]);
+						break;
+					case "--extra-slot":
+						extraSlotFiles.add(new File(args[++index]));
+						break;
+					case "--scale":
+						scale = Integer.parseInt(args[++index]);
+						break;
+					case "--threads":
+						threads = Integer.parseInt(args[++index]);
+						break;
+					case "--fov":
+						horizontalFOV = Float.parseFloat(args[++index]);
+						verticalFOV = Float.parseFloat(args[++index]);
+						break;
+					case "--output":
+						outputFile = new File(args[++index]);
+						break;
+					case "--blobs":
+						blobExtractor = parseBlobMethod(args[++index]);
+						break;
+					default:
+						source = new File(args[index]);
+				}
+			}
+		}
+		catch(ArrayIndexOutOfBoundsException | IllegalArgumentException e)
+		{
+			source = null;
+		}
+
+		if(source == null)
+		{
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+		loadSettings(settingsFile);
+		loadExtraSlots(extraSlotFiles);
+		if(scale > 0)
+		{
+			Settings.processingScale = scale;
+		}
+		if(threads > 0)
+		{
+			Settings.processingThreads = threads;
+		}
+
+		//the pipeline only reads published settings
+		Settings.publish();
+
+		PrintWriter output = new PrintWriter(new OutputStreamWriter(outputFile == null ? System.out : new FileOutputStream(outputFile), "UTF-8"));
+		CsvTargetWriter csvWriter = new CsvTargetWriter(output);
+
+		ReplayEngine engine = new ReplayEngine(horizontalFOV, verticalFOV, csvWriter);
+		engine.setBlobExtractor(blobExtractor);
+
+		long startTime = System.nanoTime();
+		try
+		{
+			engine.replay(source);
+		}
+		finally
+		{
+			csvWriter.close();
+		}
+		long wallTime = System.nanoTime() - startTime;
+
+		printSummary(engine, wallTime);
+	}
+
+	/**
+	 * @return the extractor for a --blobs argument, or null for the pipeline's default
+	 */
+	private static BlobExtractor parseBlobMethod(String method)
+	{
+		switch(method)
+		{
+			case "contours":
+				return null;
+			case "runs":
+				return new RunLengthBlobExtractor();
+			case "components":
+				return new ConnectedComponentsBlobExtractor();
+			default:
+				throw new IllegalArgumentException("Unknown blob method " + method);
+		}
+	}
+
+	/**
+	 * Set the Settings class up like the phone would, with anything in the file replacing the app's defaults.
+	 */
+	private static void loadSettings(File settingsFile) throws IOException
+	{
+		Properties properties = settingsFile == null ? new Properties() : loadProperties(settingsFile);
+
+		Settings.selectedSlot = 1;
+
+		//same defaults as SettingsPreferences
+		Settings.lowH = getInt(properties, "lowH", 0);
+		Settings.lowS = getInt(properties, "lowS", 0);
+		Settings.lowV = getInt(properties, "lowV", 0);
+
+		Settings.highH = getInt(properties, "highH", 255);
+		Settings.highS = getInt(properties, "highS", 255);
+		Settings.highV = getInt(properties, "highV", 255);
+
+		Settings.roiTracking = Boolean.parseBoolean(properties.getProperty("roiTracking", "true"));
+		Settings.targetTracking = Boolean.parseBoolean(properties.getProperty("targetTracking", "true"));
+		Settings.processingScale = Math.max(1, getInt(properties, "processingScale", 1));
+		Settings.processingThreads = Math.max(1, getInt(properties, "processingThreads", 1));
+
+		Settings.numTargets = getInt(properties, "numTargets", 1);
+
+		Settings.minArea = getInt(properties, "minArea", 50);
+		Settings.targetSolidity = getInt(properties, "targetSolidity", 50);
+		Settings.targetHeight = getInt(properties, "targetHeight", 1);
+		Settings.targetWidth = getInt(properties, "targetWidth", 1);
+	}
+
+	/**
+	 * Load each file's slot settings into Settings.extraSlots.  The selected slot is 1, so they are numbered from 2.
+	 */
+	private static void loadExtraSlots(List<File> slotFiles) throws IOException
+	{
+		SlotSettings[] extraSlots = new SlotSettings[slotFiles.size()];
+
+		for(int index = 0; index < extraSlots.length; ++index)
+		{
+			Properties properties = loadProperties(slotFiles.get(index));
+
+			extraSlots[index] = new SlotSettings(index + 2,
+					getInt(properties, "lowH", 0), getInt(properties, "highH", 255),
+					getInt(properties, "lowS", 0), getInt(properties, "highS", 255),
+					getInt(properties, "lowV", 0), getInt(properties, "highV", 255),
+					getInt(properties, "minArea", 50), getInt(properties, "targetSolidity", 50),
+					getInt(properties, "targetWidth", 1), getInt(properties, "targetHeight", 1),
+					getInt(properties, "numTargets", 1));
+		}
+
+		Settings.extraSlots = extraSlots;
+	}
+
+	private static Properties loadProperties(File file) throws IOException
+	{
+		Properties properties = new Properties();
+
+		try(InputStream input = new FileInputStream(file))
+		{
+			properties.load(input);
+		}
+
+		return properties;
+	}
+
+	private static int getInt(Properties properties, String key, int defaultValue)
+	{
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private static void printSummary(ReplayEngine engine, long wallTimeNanos)
+	{
+		int frames = engine.getFramesProcessed();
+		if(frames == 0)
+		{
+			System.err.println("No frames processed");
+			return;
+		}
+
+		System.err.printf("%d frames in %.2f s: %.1f fps overall, %.1f fps in the pipeline%n", frames, wallTimeNanos / 1e9,
+				frames / (wallTimeNanos / 1e9), frames / (engine.getProcessingTimeNanos() / 1e9));
+
+		for(TowerTrackerPipeline.Stage stage : TowerTrackerPipeline.Stage.values())
+		{
+			System.err.printf("  %-14s %8.3f ms/frame%n", stage.name(), engine.getStageTimeNanos(stage) / 1e6 / frames);
+		}
+	}
+}